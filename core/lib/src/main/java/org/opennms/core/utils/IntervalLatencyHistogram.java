@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+/**
+ * <p>
+ * Records latencies into a {@link LatencyHistogram} that is replaced by an
+ * empty one at a fixed interval, so that percentiles describe the latencies
+ * of the last interval instead of everything since startup.
+ * </p>
+ *
+ * <p>
+ * Readers get the histogram of the last complete interval, so every
+ * attribute read during one collection describes the same values. A value
+ * recorded while the interval rotates may count towards the interval that
+ * just closed.
+ * </p>
+ */
+public class IntervalLatencyHistogram {
+
+    /** The default interval of 5 minutes, the default data collection interval. */
+    public static final long DEFAULT_INTERVAL = 300000L;
+
+    private final long m_interval;
+
+    private volatile LatencyHistogram m_current = new LatencyHistogram();
+
+    private volatile LatencyHistogram m_last = new LatencyHistogram();
+
+    private volatile long m_intervalEnd;
+
+    /**
+     * <p>Constructor for IntervalLatencyHistogram with the default interval.</p>
+     */
+    public IntervalLatencyHistogram() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * <p>Constructor for IntervalLatencyHistogram.</p>
+     *
+     * @param interval the length of an interval in milliseconds
+     */
+    public IntervalLatencyHistogram(long interval) {
+        this(interval, System.currentTimeMillis());
+    }
+
+    IntervalLatencyHistogram(long interval, long now) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be greater than 0");
+        }
+        m_interval = interval;
+        m_intervalEnd = now + interval;
+    }
+
+    /**
+     * Record a value in the current interval.
+     *
+     * @param value the latency in milliseconds
+     */
+    public void record(long value) {
+        record(value, System.currentTimeMillis());
+    }
+
+    void record(long value, long now) {
+        rotateIfNecessary(now);
+        m_current.record(value);
+    }
+
+    /**
+     * Wrap a runnable so that the time between now and the moment it starts
+     * running is recorded. This is how long the runnable waited in the queue
+     * of an executor.
+     *
+     * @param runnable the runnable to wrap
+     * @return a runnable that records its wait and then runs <code>runnable</code>
+     */
+    public Runnable recordWait(final Runnable runnable) {
+        final long queued = System.currentTimeMillis();
+        return new Runnable() {
+            @Override
+            public void run() {
+                record(System.currentTimeMillis() - queued);
+                runnable.run();
+            }
+
+            @Override
+            public String toString() {
+                return runnable.toString();
+            }
+        };
+    }
+
+    /**
+     * <p>getIntervalHistogram</p>
+     *
+     * @return the latencies recorded in the last complete interval
+     */
+    public LatencyHistogram getIntervalHistogram() {
+        return getIntervalHistogram(System.currentTimeMillis());
+    }
+
+    LatencyHistogram getIntervalHistogram(long now) {
+        rotateIfNecessary(now);
+        return m_last;
+    }
+
+    /**
+     * <p>getInterval</p>
+     *
+     * @return the length of an interval in milliseconds
+     */
+    public long getInterval() {
+        return m_interval;
+    }
+
+    /**
+     * Forget the values of the current and the last interval.
+     */
+    public synchronized void reset() {
+        m_current = new LatencyHistogram();
+        m_last = new LatencyHistogram();
+    }
+
+    private void rotateIfNecessary(long now) {
+        if (now >= m_intervalEnd) {
+            rotate(now);
+        }
+    }
+
+    private synchronized void rotate(long now) {
+        if (now < m_intervalEnd) {
+            return;
+        }
+        // if a whole interval passed without a rotation, nothing was recorded in it
+        m_last = now < m_intervalEnd + m_interval ? m_current : new LatencyHistogram();
+        m_current = new LatencyHistogram();
+        m_intervalEnd += ((now - m_intervalEnd) / m_interval + 1) * m_interval;
+    }
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A lock-free histogram of latencies in milliseconds, in the manner of
+ * HdrHistogram. Values are counted in log-linear buckets: each power of two
+ * is split into 16 buckets, so a percentile is reported with an error of at
+ * most 1/16 of its value while the histogram stays a fixed array of a few
+ * hundred counters, whatever the range of the values.
+ * </p>
+ *
+ * <p>
+ * Recording is a couple of atomic increments and never blocks, so it can be
+ * done from every poller thread on every poll.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values are capped at 2^40 ms, about 35 years. */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong m_count = new AtomicLong();
+
+    private final AtomicLong m_total = new AtomicLong();
+
+    private final AtomicLong m_max = new AtomicLong();
+
+    /**
+     * Record a value.
+     *
+     * @param value the latency in milliseconds, negative values are counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, Math.min(value, (1L << (MAX_EXPONENT + 1)) - 1));
+        m_counts.incrementAndGet(indexOf(value));
+        m_count.incrementAndGet();
+        m_total.addAndGet(value);
+        long max = m_max.get();
+        while (value > max && !m_max.compareAndSet(max, value)) {
+            max = m_max.get();
+        }
+    }
+
+    /**
+     * <p>getCount</p>
+     *
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return m_count.get();
+    }
+
+    /**
+     * <p>getMax</p>
+     *
+     * @return the largest value recorded, or 0 if none was
+     */
+    public long getMax() {
+        return m_max.get();
+    }
+
+    /**
+     * <p>getMean</p>
+     *
+     * @return the mean of the values recorded, or 0 if none was
+     */
+    public double getMean() {
+        final long count = m_count.get();
+        return count == 0 ? 0 : m_total.get() / (double) count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded
+     * values fall.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = m_counts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the number of recorded values up to a value. The values that
+     * share a bucket with <code>value</code> are all counted, so the result
+     * is exact up to 31 and within the precision of the histogram above.
+     *
+     * @param value a latency in milliseconds
+     * @return the number of values recorded at or below <code>value</code>
+     */
+    public long getCountAtOrBelow(long value) {
+        if (value < 0) {
+            return 0;
+        }
+        final int last = indexOf(Math.min(value, (1L << (MAX_EXPONENT + 1)) - 1));
+        long count = 0;
+        for (int i = 0; i <= last; i++) {
+            count += m_counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Forget every value recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            m_counts.set(i, 0);
+        }
+        m_count.set(0);
+        m_total.set(0);
+        m_max.set(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " mean=" + Math.round(getMean()) + "ms 50%=" + getValueAtPercentile(50)
+            + "ms 95%=" + getValueAtPercentile(95) + "ms 99%=" + getValueAtPercentile(99) + "ms max=" + getMax() + "ms";
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        final int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binds several UDP sockets to the same address with SO_REUSEPORT, so that
+ * the kernel spreads the datagrams sent to the address over them and each
+ * socket can be read by a thread of its own.
+ */
+public abstract class ReusePortUtils {
+
+    /**
+     * SO_REUSEPORT is only in {@link StandardSocketOptions} from Java 9 on.
+     *
+     * @return the SO_REUSEPORT option, or null if the JVM does not know it
+     */
+    @SuppressWarnings("unchecked")
+    public static SocketOption<Boolean> getReusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Bind <code>count</code> datagram channels to the address with
+     * SO_REUSEPORT.
+     *
+     * @param address the address to bind to
+     * @param count the number of channels
+     * @return the bound channels, or null if the JVM or the operating system
+     *         does not support SO_REUSEPORT
+     * @throws IOException if a channel cannot be bound; the channels already
+     *         bound are closed
+     */
+    public static List<DatagramChannel> openChannels(final InetSocketAddress address, final int count) throws IOException {
+        final SocketOption<Boolean> reusePort = getReusePortOption();
+        if (reusePort == null) {
+            return null;
+        }
+
+        final List<DatagramChannel> channels = new ArrayList<DatagramChannel>(count);
+        try {
+            while (channels.size() < count) {
+                final DatagramChannel channel = DatagramChannel.open();
+                channels.add(channel);
+                if (!channel.supportedOptions().contains(reusePort)) {
+                    close(channels);
+                    return null;
+                }
+                channel.setOption(reusePort, Boolean.TRUE);
+                channel.bind(address);
+            }
+        } catch (final IOException e) {
+            close(channels);
+            throw e;
+        }
+        return channels;
+    }
+
+    private static void close(final List<DatagramChannel> channels) {
+        for (final DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                // already failing
+            }
+        }
+    }
+}
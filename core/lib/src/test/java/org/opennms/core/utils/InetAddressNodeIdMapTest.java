@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InetAddressNodeIdMapTest {
+
+    @Test
+    public void testIpv4() {
+        final InetAddressNodeIdMap map = new InetAddressNodeIdMap();
+        assertEquals(-1, map.put(addr("192.168.1.1"), 1));
+        assertEquals(-1, map.put("10.0.0.1", 2));
+        assertEquals(-1, map.put(addr("0.0.0.0"), 0));
+        assertEquals(-1, map.put(addr("255.255.255.255"), 4));
+
+        assertEquals(1, map.get("192.168.1.1"));
+        assertEquals(2, map.get(addr("10.0.0.1")));
+        assertEquals(0, map.get("0.0.0.0"));
+        assertEquals(4, map.get("255.255.255.255"));
+        assertEquals(-1, map.get("10.0.0.2"));
+        assertEquals(4, map.size());
+
+        assertEquals(2, map.put("10.0.0.1", 3));
+        assertEquals(3, map.get("10.0.0.1"));
+        assertEquals(4, map.size());
+
+        assertEquals(3, map.remove(addr("10.0.0.1")));
+        assertEquals(-1, map.remove("10.0.0.1"));
+        assertFalse(map.containsKey(addr("10.0.0.1")));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testIpv6() {
+        final InetAddressNodeIdMap map = new InetAddressNodeIdMap();
+        map.put(addr("fe80::1"), 1);
+        map.put("2001:db8::1", 2);
+
+        assertEquals(1, map.get("fe80:0:0:0:0:0:0:1"));
+        assertEquals(2, map.get(addr("2001:db8:0:0:0:0:0:1")));
+        assertEquals(-1, map.get("2001:db8::2"));
+        assertEquals(-1, map.get("0.0.0.1"));
+        assertEquals(2, map.size());
+
+        assertEquals(1, map.remove("fe80::1"));
+        assertEquals(1, map.size());
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get("2001:db8::1"));
+    }
+
+    @Test
+    public void testInvalid() {
+        final InetAddressNodeIdMap map = new InetAddressNodeIdMap();
+        assertEquals(-1, map.put("10.0.0.1", -5));
+        assertEquals(0, map.size());
+
+        for (final String bad : new String[] { null, "", "localhost", "10.0.0", "10.0.0.256", "10.0.0.1.", ".10.0.0.1", "10..0.1", "1000.0.0.1", "not:an:address" }) {
+            assertEquals(bad, -1, map.get(bad));
+            assertEquals(bad, -1, map.put(bad, 1));
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testAgainstHashMap() throws Exception {
+        final InetAddressNodeIdMap map = new InetAddressNodeIdMap();
+        final Map<InetAddress, Integer> expected = new HashMap<InetAddress, Integer>();
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            final byte[] bytes = new byte[random.nextBoolean() ? 4 : 16];
+            // keep the address space small so that there are many collisions, updates and removals
+            bytes[bytes.length - 1] = (byte)random.nextInt(256);
+            bytes[bytes.length - 2] = (byte)random.nextInt(16);
+            final InetAddress addr = InetAddress.getByAddress(bytes);
+            if (random.nextInt(3) == 0) {
+                final Integer previous = expected.remove(addr);
+                assertEquals(previous == null ? -1 : previous.intValue(), map.remove(addr));
+            } else {
+                final int nodeId = random.nextInt(1000);
+                final Integer previous = expected.put(addr, nodeId);
+                assertEquals(previous == null ? -1 : previous.intValue(), map.put(addr, nodeId));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (final Map.Entry<InetAddress, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+            assertTrue(map.containsKey(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class IntervalLatencyHistogramTest {
+
+    @Test
+    public void testReportsLastCompleteInterval() {
+        final IntervalLatencyHistogram histogram = new IntervalLatencyHistogram(1000, 0);
+        histogram.record(10, 100);
+        histogram.record(20, 200);
+        // the first interval is not complete yet
+        assertEquals(0, histogram.getIntervalHistogram(500).getCount());
+
+        histogram.record(1000, 1100);
+        LatencyHistogram last = histogram.getIntervalHistogram(1200);
+        assertEquals(2, last.getCount());
+        assertEquals(20, last.getMax());
+
+        last = histogram.getIntervalHistogram(2000);
+        assertEquals(1, last.getCount());
+        assertEquals(1000, last.getMax());
+        // reading again in the same interval gives the same values
+        assertEquals(1, histogram.getIntervalHistogram(2500).getCount());
+    }
+
+    @Test
+    public void testIdleIntervalIsEmpty() {
+        final IntervalLatencyHistogram histogram = new IntervalLatencyHistogram(1000, 0);
+        histogram.record(10, 100);
+        // nothing was recorded between 1000 and 2000
+        assertEquals(0, histogram.getIntervalHistogram(2100).getCount());
+        histogram.record(30, 2200);
+        assertEquals(1, histogram.getIntervalHistogram(3000).getCount());
+        assertEquals(30, histogram.getIntervalHistogram(3000).getMax());
+    }
+
+    @Test
+    public void testReset() {
+        final IntervalLatencyHistogram histogram = new IntervalLatencyHistogram(1000, 0);
+        histogram.record(10, 100);
+        histogram.getIntervalHistogram(1100);
+        histogram.reset();
+        assertEquals(0, histogram.getIntervalHistogram(1200).getCount());
+    }
+
+    @Test
+    public void testRecordWait() throws InterruptedException {
+        final IntervalLatencyHistogram histogram = new IntervalLatencyHistogram(100);
+        final AtomicBoolean ran = new AtomicBoolean();
+        final Runnable wrapped = histogram.recordWait(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        Thread.sleep(20);
+        wrapped.run();
+        assertTrue(ran.get());
+        Thread.sleep(110);
+        final LatencyHistogram last = histogram.getIntervalHistogram();
+        assertEquals(1, last.getCount());
+        assertTrue(last.getMax() >= 20);
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReusePortUtilsTest {
+
+    private static InetSocketAddress getFreeAddress() throws IOException {
+        final DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        try {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void close(final List<DatagramChannel> channels) throws IOException {
+        for (final DatagramChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testOpenChannels() throws Exception {
+        final InetSocketAddress address = getFreeAddress();
+        final List<DatagramChannel> channels = ReusePortUtils.openChannels(address, 3);
+        if (channels == null) {
+            // SO_REUSEPORT is not supported here
+            return;
+        }
+
+        try {
+            assertEquals(3, channels.size());
+            for (final DatagramChannel channel : channels) {
+                assertEquals(address, channel.getLocalAddress());
+                channel.configureBlocking(false);
+            }
+
+            final int count = 10;
+            final DatagramChannel sender = DatagramChannel.open();
+            try {
+                for (int i = 0; i < count; i++) {
+                    sender.send(ByteBuffer.wrap(new byte[] { (byte) i }), address);
+                }
+            } finally {
+                sender.close();
+            }
+
+            // the datagrams are spread over the channels, but all of them arrive
+            int received = 0;
+            final ByteBuffer buffer = ByteBuffer.allocate(16);
+            final long end = System.currentTimeMillis() + 5000;
+            while (received < count && System.currentTimeMillis() < end) {
+                for (final DatagramChannel channel : channels) {
+                    buffer.clear();
+                    if (channel.receive(buffer) != null) {
+                        received++;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            assertEquals(count, received);
+        } finally {
+            close(channels);
+        }
+    }
+
+    @Test
+    public void testOpenChannelsOnPortInUse() throws Exception {
+        final InetSocketAddress address = getFreeAddress();
+        if (ReusePortUtils.getReusePortOption() == null) {
+            return;
+        }
+
+        // a socket bound without SO_REUSEPORT keeps the port to itself
+        final DatagramChannel owner = DatagramChannel.open();
+        owner.bind(address);
+        try {
+            ReusePortUtils.openChannels(address, 2);
+            fail("binding to a port in use should fail");
+        } catch (final IOException e) {
+            // expected
+        } finally {
+            owner.close();
+        }
+
+        // the channels of the failed attempt were closed, so the port is free again
+        final List<DatagramChannel> channels = ReusePortUtils.openChannels(address, 2);
+        assertNotNull(channels);
+        close(channels);
+    }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+/**
+ * Notified when an {@link SnmpWalker} has finished, so that callers do not
+ * need a thread blocked in {@link SnmpWalker#waitFor()}.
+ */
+public interface SnmpWalkCallback {
+
+    /**
+     * Called once the walk has finished and the session has been closed.
+     * This is called on the thread of the SNMP library that received the
+     * last response or timeout, so it must return quickly.
+     *
+     * @param walker the finished walker, see {@link SnmpWalker#failed()}
+     *            and {@link SnmpWalker#timedOut()} for the outcome
+     * @param t the error that ended the walk, or <code>null</code>
+     */
+    void complete(SnmpWalker walker, Throwable t);
+
+}
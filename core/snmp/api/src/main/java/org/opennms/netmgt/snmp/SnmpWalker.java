@@ -61,6 +61,7 @@ public abstract class SnmpWalker implements Closeable {
     private boolean m_error = false;
     private String m_errorMessage = "";
     private Throwable m_errorThrowable = null;
+    private SnmpWalkCallback m_callback = null;
     
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, CollectionTracker tracker) {
         m_address = address;
@@ -162,6 +163,26 @@ public abstract class SnmpWalker implements Closeable {
         } catch (IOException e) {
             LOG.error("{}: Unexpected Error occured closing SNMP session for: {}", getName(), m_address, e);
         }
+        final SnmpWalkCallback callback;
+        synchronized (this) {
+            callback = m_callback;
+            m_callback = null;
+        }
+        if (callback != null) {
+            try {
+                callback.complete(this, m_errorThrowable);
+            } catch (Throwable t) {
+                LOG.warn("{}: Unexpected error in walk callback for: {}", getName(), m_address, t);
+            }
+        }
+    }
+
+    /**
+     * Call back when the walk has finished instead of waiting for it. The
+     * callback must be set before {@link #start()} and is called only once.
+     */
+    public synchronized void setCallback(final SnmpWalkCallback callback) {
+        m_callback = callback;
     }
 
     @Override
@@ -74,7 +74,8 @@ public abstract class TrapInformation implements TrapNotification {
         // by default we do nothing;
     }
     
-    protected InetAddress getAgentAddress() {
+    @Override
+    public InetAddress getAgentAddress() {
         return getAgent();
     }
 
@@ -28,8 +28,16 @@
 
 package org.opennms.netmgt.snmp;
 
+import java.net.InetAddress;
+
 public interface TrapNotification {
 
     TrapProcessor getTrapProcessor();
 
+    /**
+     * Returns the address the trap was received from. Unlike
+     * {@link #getTrapProcessor()} this does not decode the trap.
+     */
+    InetAddress getAgentAddress();
+
 }
\ No newline at end of file
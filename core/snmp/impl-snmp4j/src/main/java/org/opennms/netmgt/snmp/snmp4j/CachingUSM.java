@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.security.UsmUserEntry;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * A USM that keeps the users it has localized to an engine ID in a
+ * concurrent map keyed by engine ID and user name.
+ *
+ * <p>The USM looks up the user of every incoming SNMPv3 message. SNMP4J
+ * does that in a synchronized user table, and localizes the keys of a user
+ * configured without an engine ID for the engine of the sender, which
+ * hashes the passphrases a megabyte at a time. With several threads reading
+ * traps from thousands of agents, the lookups should neither wait on each
+ * other nor localize again, so the localized entries, which carry the
+ * authentication and privacy keys, are kept here and handed out without
+ * locking. The cache is cleared whenever users are added or removed.</p>
+ */
+public class CachingUSM extends USM {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingUSM.class);
+
+    /**
+     * The largest number of localized users kept. Engine IDs are chosen by
+     * the senders, so a flood of them must not grow the cache without end.
+     */
+    static final int MAX_ENTRIES = 100000;
+
+    private final ConcurrentMap<UserKey, UsmUserEntry> m_localizedUsers = new ConcurrentHashMap<UserKey, UsmUserEntry>();
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private static final class UserKey {
+        private final OctetString m_engineID;
+        private final OctetString m_securityName;
+        private final int m_hashCode;
+
+        private UserKey(final OctetString engineID, final OctetString securityName) {
+            m_engineID = engineID;
+            m_securityName = securityName;
+            m_hashCode = engineID.hashCode() * 31 + securityName.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj instanceof UserKey) {
+                final UserKey key = (UserKey) obj;
+                return m_hashCode == key.m_hashCode && m_engineID.equals(key.m_engineID) && m_securityName.equals(key.m_securityName);
+            }
+            return false;
+        }
+    }
+
+    public CachingUSM() {
+        super();
+    }
+
+    public CachingUSM(final SecurityProtocols securityProtocols, final OctetString localEngineID, final int engineBoots) {
+        super(securityProtocols, localEngineID, engineBoots);
+    }
+
+    @Override
+    public UsmUserEntry getUser(final OctetString engineID, final OctetString securityName) {
+        if (engineID == null || engineID.length() == 0 || securityName == null || securityName.length() == 0) {
+            return super.getUser(engineID, securityName);
+        }
+        final UserKey key = new UserKey(engineID, securityName);
+        UsmUserEntry entry = m_localizedUsers.get(key);
+        if (entry != null) {
+            m_hits.incrementAndGet();
+            return entry;
+        }
+        m_misses.incrementAndGet();
+        entry = super.getUser(engineID, securityName);
+        if (entry != null) {
+            if (m_localizedUsers.size() >= MAX_ENTRIES) {
+                LOG.info("More than {} SNMPv3 engine and user combinations seen, clearing the localized user cache", MAX_ENTRIES);
+                m_localizedUsers.clear();
+            }
+            m_localizedUsers.put(key, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public void addUser(final OctetString userName, final UsmUser user) {
+        super.addUser(userName, user);
+        m_localizedUsers.clear();
+    }
+
+    @Override
+    public void addUser(final OctetString userName, final OctetString engineID, final UsmUser user) {
+        super.addUser(userName, engineID, user);
+        m_localizedUsers.clear();
+    }
+
+    @Override
+    public UsmUser removeUser(final OctetString engineID, final OctetString userName) {
+        final UsmUser user = super.removeUser(engineID, userName);
+        m_localizedUsers.clear();
+        return user;
+    }
+
+    @Override
+    public void removeAllUsers() {
+        super.removeAllUsers();
+        m_localizedUsers.clear();
+    }
+
+    /**
+     * @return the number of user lookups answered from the cache
+     */
+    public long getCacheHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of user lookups that went to the USM user table
+     */
+    public long getCacheMisses() {
+        return m_misses.get();
+    }
+
+    /**
+     * @return the number of engine and user combinations in the cache
+     */
+    public int getCacheSize() {
+        return m_localizedUsers.size();
+    }
+}
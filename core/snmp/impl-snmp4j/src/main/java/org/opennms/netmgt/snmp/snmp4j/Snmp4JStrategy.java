@@ -33,6 +33,7 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,14 +70,12 @@ import org.snmp4j.mp.PduHandle;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.security.SecurityModel;
 import org.snmp4j.security.SecurityModels;
-import org.snmp4j.security.USM;
 import org.snmp4j.security.UsmUser;
 import org.snmp4j.smi.IpAddress;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.SMIConstants;
 import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.VariableBinding;
-import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 public class Snmp4JStrategy implements SnmpStrategy {
 	
@@ -85,9 +84,28 @@ public class Snmp4JStrategy implements SnmpStrategy {
     private static Map<TrapNotificationListener, RegistrationInfo> s_registrations = new HashMap<TrapNotificationListener, RegistrationInfo>();
     
     private static boolean s_initialized = false;
+
+    /**
+     * The USM shared by the trap sessions, which keeps the users it has
+     * localized for the engines that send traps.
+     */
+    private static CachingUSM s_usm;
+
+    /**
+     * The number of sockets, each with its own listen thread, that traps are
+     * received on. More than one needs SO_REUSEPORT.
+     */
+    private static final int TRAP_RECEIVERS = Math.max(1, Integer.getInteger("org.opennms.snmp.snmp4j.trapReceivers", 1));
     
     private Snmp4JValueFactory m_valueFactory;
 
+    /**
+     * @return the USM of the trap sessions, once a strategy was created
+     */
+    static CachingUSM getUsm() {
+        return s_usm;
+    }
+
     /**
      * Initialize for v3 communications
      */
@@ -98,8 +116,8 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
         SNMP4JSettings.setEnterpriseID(5813);
         //USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
-        USM usm = new USM();
-        SecurityModels.getInstance().addSecurityModel(usm);
+        s_usm = new CachingUSM();
+        SecurityModels.getInstance().addSecurityModel(s_usm);
         
         // Enable extensibility in SNMP4J so that we can subclass some SMI classes to work around
         // agent bugs
@@ -361,6 +379,7 @@ public class Snmp4JStrategy implements SnmpStrategy {
         Snmp m_trapSession;
         Snmp4JTrapNotifier m_trapHandler;
         private TransportMapping<UdpAddress> m_transportMapping;
+        private List<Snmp4JTrapTransport> m_transports = Collections.emptyList();
 		private InetAddress m_address;
 		private int m_port;
         
@@ -411,6 +430,14 @@ public class Snmp4JStrategy implements SnmpStrategy {
         public TransportMapping<UdpAddress> getTransportMapping() {
             return m_transportMapping;
         }
+
+        public void setTransports(final List<Snmp4JTrapTransport> transports) {
+            m_transports = transports;
+        }
+
+        public List<Snmp4JTrapTransport> getTransports() {
+            return m_transports;
+        }
         
         @Override
         public int hashCode() {
@@ -441,9 +468,13 @@ public class Snmp4JStrategy implements SnmpStrategy {
         } else {
         	udpAddress = new UdpAddress(address, snmpTrapPort);
         }
-        final TransportMapping<UdpAddress> transport = new DefaultUdpTransportMapping(udpAddress);
-        info.setTransportMapping(transport);
-        Snmp snmp = new Snmp(transport);
+        final List<Snmp4JTrapTransport> transports = Snmp4JTrapTransport.open(udpAddress, TRAP_RECEIVERS);
+        info.setTransports(transports);
+        info.setTransportMapping(transports.get(0));
+        Snmp snmp = new Snmp(transports.get(0));
+        for (int i = 1; i < transports.size(); i++) {
+            snmp.addTransportMapping(transports.get(i));
+        }
         snmp.addCommandResponder(m_trapHandler);
 
         if (snmpUsers != null) {
@@ -479,6 +510,10 @@ public class Snmp4JStrategy implements SnmpStrategy {
         s_registrations.put(listener, info);
         
         snmp.listen();
+
+        for (Snmp4JTrapTransport transport : transports) {
+            transport.registerMBean();
+        }
     }
     
         @Override
@@ -494,13 +529,13 @@ public class Snmp4JStrategy implements SnmpStrategy {
         @Override
     public void unregisterForTraps(final TrapNotificationListener listener, InetAddress address, int snmpTrapPort) throws IOException {
         RegistrationInfo info = s_registrations.remove(listener);
-        closeQuietly(info.getSession());
+        closeQuietly(info);
     }
 
         @Override
     public void unregisterForTraps(final TrapNotificationListener listener, final int snmpTrapPort) throws IOException {
         RegistrationInfo info = s_registrations.remove(listener);
-        closeQuietly(info.getSession());
+        closeQuietly(info);
     }
 
         @Override
@@ -595,6 +630,13 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
     }
 
+    private void closeQuietly(RegistrationInfo info) {
+        for (Snmp4JTrapTransport transport : info.getTransports()) {
+            transport.unregisterMBean();
+        }
+        closeQuietly(info.getSession());
+    }
+
     private void closeQuietly(Snmp session) {
         if (session == null) {
             return;
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.opennms.core.utils.ReusePortUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * A UDP transport for receiving traps that counts the messages it reads.
+ * Several of them can be bound to the same port with SO_REUSEPORT so that
+ * the kernel spreads the traps over their sockets, each of which is read by
+ * its own listen thread.
+ */
+public class Snmp4JTrapTransport extends DefaultUdpTransportMapping implements Snmp4JTrapTransportMBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(Snmp4JTrapTransport.class);
+
+    private final int m_index;
+
+    private final boolean m_reusePort;
+
+    private final AtomicLong m_messagesReceived = new AtomicLong();
+
+    private final AtomicLong m_bytesReceived = new AtomicLong();
+
+    private final AtomicLong m_messagesDropped = new AtomicLong();
+
+    /**
+     * Bind a socket to the address the way {@link DefaultUdpTransportMapping} does.
+     */
+    private Snmp4JTrapTransport(final UdpAddress address) throws SocketException {
+        super(address);
+        m_index = 0;
+        m_reusePort = false;
+    }
+
+    /**
+     * Use a socket that is already bound with SO_REUSEPORT. The superclass
+     * insists on binding a socket of its own, so it gets an ephemeral port
+     * that is closed again right away.
+     */
+    private Snmp4JTrapTransport(final UdpAddress address, final int index, final DatagramSocket socket) throws SocketException {
+        super();
+        this.socket.close();
+        this.socket = socket;
+        this.udpAddress = address;
+        m_index = index;
+        m_reusePort = true;
+    }
+
+    /**
+     * Bind <code>count</code> transports to the address with SO_REUSEPORT.
+     * If the JVM or the operating system does not support SO_REUSEPORT, or
+     * only one transport is asked for, a single transport is bound instead.
+     */
+    public static List<Snmp4JTrapTransport> open(final UdpAddress address, final int count) throws IOException {
+        final InetSocketAddress bindAddress = new InetSocketAddress(address.getInetAddress(), address.getPort());
+        final List<DatagramChannel> channels = count > 1 ? ReusePortUtils.openChannels(bindAddress, count) : null;
+        if (channels == null) {
+            if (count > 1) {
+                LOG.info("SO_REUSEPORT is not supported, traps will be received on one socket on {}", address);
+            }
+            return Collections.singletonList(new Snmp4JTrapTransport(address));
+        }
+
+        final List<Snmp4JTrapTransport> transports = new ArrayList<Snmp4JTrapTransport>(count);
+        try {
+            for (final DatagramChannel channel : channels) {
+                transports.add(new Snmp4JTrapTransport(address, transports.size(), channel.socket()));
+            }
+        } catch (final IOException e) {
+            for (final DatagramChannel channel : channels) {
+                channel.close();
+            }
+            throw e;
+        }
+        LOG.debug("Bound {} trap sockets to {} with SO_REUSEPORT", count, address);
+        return transports;
+    }
+
+    @Override
+    protected void fireProcessMessage(final UdpAddress address, final ByteBuffer buf, final TransportStateReference tmStateReference) {
+        m_messagesReceived.incrementAndGet();
+        m_bytesReceived.addAndGet(buf.remaining());
+        try {
+            super.fireProcessMessage(address, buf, tmStateReference);
+        } catch (final RuntimeException e) {
+            m_messagesDropped.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getLocalAddress() {
+        final DatagramSocket s = socket;
+        return s == null ? null : String.valueOf(s.getLocalSocketAddress());
+    }
+
+    @Override
+    public boolean isReusePort() {
+        return m_reusePort;
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return m_messagesReceived.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return m_bytesReceived.get();
+    }
+
+    @Override
+    public long getMessagesDropped() {
+        return m_messagesDropped.get();
+    }
+
+    private ObjectName getObjectName() throws MalformedObjectNameException {
+        return new ObjectName("OpenNMS:Name=Snmp4JTrapReceiver,Port=" + udpAddress.getPort() + ",Socket=" + m_index);
+    }
+
+    /**
+     * Expose the counters of this transport over JMX, replacing those of an
+     * earlier transport on the same port.
+     */
+    public void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(this, Snmp4JTrapTransportMBean.class), name);
+        } catch (final Exception e) {
+            LOG.warn("Unable to register statistics for trap socket {} with JMX", udpAddress, e);
+        }
+    }
+
+    public void unregisterMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to unregister statistics for trap socket {} from JMX", udpAddress, e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+/**
+ * One of the sockets that traps are received on, registered with JMX as
+ * <code>OpenNMS:Name=Snmp4JTrapReceiver,Port=&lt;port&gt;,Socket=&lt;n&gt;</code>.
+ *
+ * The message counts are counters since the socket was bound. Datagrams
+ * that the kernel drops because the socket's receive buffer is full are not
+ * counted here; on Linux they show up in the drops column of
+ * <code>/proc/net/udp</code>.
+ */
+public interface Snmp4JTrapTransportMBean {
+    /**
+     * @return the local address and port the socket is bound to
+     */
+    String getLocalAddress();
+
+    /**
+     * @return whether the socket shares its port with others through SO_REUSEPORT
+     */
+    boolean isReusePort();
+
+    /**
+     * @return the number of messages read from the socket
+     */
+    long getMessagesReceived();
+
+    /**
+     * @return the number of bytes read from the socket
+     */
+    long getBytesReceived();
+
+    /**
+     * @return the number of messages read from the socket that failed to be dispatched
+     */
+    long getMessagesDropped();
+}
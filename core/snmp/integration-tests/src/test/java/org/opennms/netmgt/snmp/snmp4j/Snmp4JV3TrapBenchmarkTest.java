@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpV3User;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.TrapIdentity;
+import org.opennms.netmgt.snmp.TrapNotification;
+import org.opennms.netmgt.snmp.TrapNotificationListener;
+import org.opennms.netmgt.snmp.TrapProcessor;
+import org.opennms.netmgt.snmp.TrapProcessorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.PDU;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.UserTarget;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * Measures how many SHA/AES SNMPv3 traps per second the trap receiver of
+ * {@link Snmp4JStrategy} authenticates and decrypts. Traps from a number of
+ * agents, each with its own engine ID, are encoded once and then replayed
+ * to the receiver, keeping a bounded number in flight so that none are lost
+ * in the socket buffer.
+ */
+public class Snmp4JV3TrapBenchmarkTest implements TrapProcessorFactory, TrapNotificationListener {
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JV3TrapBenchmarkTest.class);
+
+    private static final int PORT = 9163;
+
+    private static final String USER = "benchUser";
+
+    private static final String PASSPHRASE = "0p3nNMSv3";
+
+    private static final int AGENTS = 20;
+
+    private static final int TRAPS_PER_AGENT = 50;
+
+    private static final int ROUNDS = 10;
+
+    private static final int IN_FLIGHT = 100;
+
+    private final Snmp4JStrategy m_strategy = new Snmp4JStrategy();
+
+    private final AtomicInteger m_received = new AtomicInteger();
+
+    private final AtomicInteger m_errors = new AtomicInteger();
+
+    @Test
+    public void testV3TrapDecodeThroughput() throws Exception {
+        final InetAddress localhost = InetAddress.getLoopbackAddress();
+        final List<byte[]> messages = encodeTraps(localhost);
+        assertEquals(AGENTS * TRAPS_PER_AGENT, messages.size());
+
+        final CachingUSM usm = Snmp4JStrategy.getUsm();
+        final long missesBefore = usm.getCacheMisses();
+        final long hitsBefore = usm.getCacheHits();
+
+        m_strategy.registerForTraps(this, this, localhost, PORT, Collections.singletonList(new SnmpV3User(USER, "SHA", PASSPHRASE, "AES", PASSPHRASE)));
+        final DatagramSocket socket = new DatagramSocket();
+        try {
+            final int total = messages.size() * ROUNDS;
+            final long start = System.nanoTime();
+            int sent = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                for (final byte[] message : messages) {
+                    waitForReceived(sent - IN_FLIGHT, TimeUnit.SECONDS.toNanos(10));
+                    socket.send(new DatagramPacket(message, message.length, localhost, PORT));
+                    sent++;
+                }
+            }
+            waitForReceived(total, TimeUnit.SECONDS.toNanos(30));
+            final long elapsed = System.nanoTime() - start;
+
+            LOG.info("Decoded {} SHA/AES traps from {} agents in {} ms, {} traps/s; user cache hits {}, misses {}",
+                     m_received.get(), AGENTS, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                     (long) m_received.get() * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed),
+                     usm.getCacheHits() - hitsBefore, usm.getCacheMisses() - missesBefore);
+
+            assertEquals(0, m_errors.get());
+            assertEquals(total, m_received.get());
+            // every agent's keys are localized once, after that the cache answers
+            assertTrue(usm.getCacheMisses() - missesBefore <= AGENTS);
+            assertTrue(usm.getCacheHits() - hitsBefore >= total - AGENTS);
+        } finally {
+            socket.close();
+            m_strategy.unregisterForTraps(this, localhost, PORT);
+        }
+    }
+
+    private void waitForReceived(final int count, final long timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout;
+        while (m_received.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Encode linkDown traps the way agents with distinct engine IDs would send
+     * them, by sending them to a socket of our own and keeping the datagrams.
+     */
+    private static List<byte[]> encodeTraps(final InetAddress localhost) throws Exception {
+        final List<byte[]> messages = new ArrayList<byte[]>(AGENTS * TRAPS_PER_AGENT);
+        final DatagramSocket capture = new DatagramSocket(0, localhost);
+        capture.setSoTimeout(5000);
+        try {
+            final UserTarget target = new UserTarget();
+            target.setAddress(new UdpAddress(localhost, capture.getLocalPort()));
+            target.setVersion(SnmpConstants.version3);
+            target.setSecurityLevel(SecurityLevel.AUTH_PRIV);
+            target.setSecurityName(new OctetString(USER));
+
+            for (int agent = 0; agent < AGENTS; agent++) {
+                final Snmp sender = createSender();
+                try {
+                    for (int i = 0; i < TRAPS_PER_AGENT; i++) {
+                        final int ifIndex = i + 1;
+                        final ScopedPDU pdu = new ScopedPDU();
+                        pdu.setType(PDU.TRAP);
+                        pdu.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(i)));
+                        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID(".1.3.6.1.6.3.1.1.5.3")));
+                        pdu.add(new VariableBinding(new OID(".1.3.6.1.2.1.2.2.1.1." + ifIndex), new Integer32(ifIndex)));
+                        pdu.add(new VariableBinding(new OID(".1.3.6.1.2.1.2.2.1.7." + ifIndex), new Integer32(1)));
+                        pdu.add(new VariableBinding(new OID(".1.3.6.1.2.1.2.2.1.8." + ifIndex), new Integer32(2)));
+                        sender.send(pdu, target);
+
+                        final DatagramPacket packet = new DatagramPacket(new byte[65535], 65535);
+                        capture.receive(packet);
+                        messages.add(Arrays.copyOf(packet.getData(), packet.getLength()));
+                    }
+                } finally {
+                    sender.close();
+                }
+            }
+        } finally {
+            capture.close();
+        }
+        return messages;
+    }
+
+    /**
+     * An SNMP session with a USM of its own, so that it sends with an engine
+     * ID of its own like a separate agent.
+     */
+    private static Snmp createSender() throws Exception {
+        final Snmp sender = new Snmp(new DefaultUdpTransportMapping());
+        final USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+        usm.addUser(new OctetString(USER), new UsmUser(new OctetString(USER), AuthSHA.ID, new OctetString(PASSPHRASE), PrivAES128.ID, new OctetString(PASSPHRASE)));
+        final MessageDispatcher dispatcher = sender.getMessageDispatcher();
+        final MessageProcessingModel oldModel = dispatcher.getMessageProcessingModel(MessageProcessingModel.MPv3);
+        if (oldModel != null) {
+            dispatcher.removeMessageProcessingModel(oldModel);
+        }
+        dispatcher.addMessageProcessingModel(new MPv3(usm));
+        sender.listen();
+        return sender;
+    }
+
+    @Override
+    public void trapReceived(final TrapNotification trapNotification) {
+        m_received.incrementAndGet();
+    }
+
+    @Override
+    public void trapError(final int error, final String msg) {
+        LOG.warn("Trap error {}: {}", error, msg);
+        m_errors.incrementAndGet();
+    }
+
+    @Override
+    public TrapProcessor createTrapProcessor() {
+        return new TrapProcessor() {
+            @Override
+            public void setCommunity(final String community) {}
+            @Override
+            public void setTimeStamp(final long timeStamp) {}
+            @Override
+            public void setVersion(final String version) {}
+            @Override
+            public void setAgentAddress(final InetAddress agentAddress) {}
+            @Override
+            public void processVarBind(final SnmpObjId name, final SnmpValue value) {}
+            @Override
+            public void setTrapAddress(final InetAddress trapAddress) {}
+            @Override
+            public void setTrapIdentity(final TrapIdentity trapIdentity) {}
+        };
+    }
+}
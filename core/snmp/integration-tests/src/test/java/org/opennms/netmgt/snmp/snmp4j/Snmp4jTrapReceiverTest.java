@@ -148,6 +148,55 @@ public class Snmp4jTrapReceiverTest extends MockSnmpAgentTestCase implements Tra
         assertEquals(2, m_trapCount);
     }
 
+    @Test
+    public void testTrapReceiverWithReusePort() throws Exception {
+        assertEquals(0, m_trapCount);
+        LOG.debug("SNMP4J: Register for Traps on several sockets");
+        final List<Snmp4JTrapTransport> transports = Snmp4JTrapTransport.open(new UdpAddress(9162), 4);
+        final Snmp snmp = new Snmp(transports.get(0));
+
+        try {
+            for (int i = 1; i < transports.size(); i++) {
+                snmp.addTransportMapping(transports.get(i));
+            }
+            snmp.addCommandResponder(this);
+            snmp.getUSM().addUser(
+                new OctetString("opennmsUser"),
+                new UsmUser(
+                    new OctetString("opennmsUser"),
+                    AuthMD5.ID,
+                    new OctetString("0p3nNMSv3"),
+                    PrivDES.ID,
+                    new OctetString("0p3nNMSv3")
+                )
+            );
+
+            snmp.listen();
+            sendTraps();
+            long waitUntil = System.currentTimeMillis() + 30000L;
+            do {
+                Thread.sleep(200);
+                if (m_trapCount == 2) break;
+            } while (System.currentTimeMillis() < waitUntil);
+        } finally {
+            try {
+                snmp.close();
+            } catch (final IOException e) {
+                LOG.debug("Failed to close Snmp object: {}", snmp, e);
+            }
+        }
+
+        assertEquals(2, m_trapCount);
+
+        long received = 0;
+        for (final Snmp4JTrapTransport transport : transports) {
+            assertEquals(transports.size() > 1, transport.isReusePort());
+            received += transport.getMessagesReceived();
+        }
+        LOG.debug("Received traps on {} sockets", transports.size());
+        assertEquals(2, received);
+    }
+
     @Test
     public void testTrapReceiverWithOpenNMS() {
         assertEquals(0, m_trapCount);
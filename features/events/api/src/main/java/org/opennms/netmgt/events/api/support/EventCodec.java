@@ -0,0 +1,1197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.events.api.support;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Autoacknowledge;
+import org.opennms.netmgt.xml.event.Autoaction;
+import org.opennms.netmgt.xml.event.Correlation;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Forward;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.opennms.netmgt.xml.event.Logmsg;
+import org.opennms.netmgt.xml.event.Mask;
+import org.opennms.netmgt.xml.event.Maskelement;
+import org.opennms.netmgt.xml.event.Operaction;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Script;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Tticket;
+import org.opennms.netmgt.xml.event.UpdateField;
+import org.opennms.netmgt.xml.event.Value;
+
+/**
+ * A compact binary encoding of event logs and event receipts, an alternative
+ * to the event.xsd XML for high volume senders.
+ *
+ * Messages use the protocol buffers wire format, so the schema below can be
+ * turned into a .proto file to talk to eventd from other languages. Nested
+ * messages are written with a five byte length so that a log is encoded in a
+ * single pass; protocol buffers parsers accept such padded varints. Fields
+ * that are null are not written, and absent fields keep the defaults of the
+ * model classes, the same as an omitted XML element. Unknown fields are
+ * skipped, so fields can be added without a new version.
+ *
+ * <pre>
+ * Log:         1 header (Header), 2 event (Event, repeated)
+ * Header:      1 ver, 2 dpName, 3 created, 4 mstation
+ * Event:       1 uuid, 2 dbid (int32), 3 distPoller, 4 creationTime (int64 ms),
+ *              5 masterStation, 6 mask (Mask), 7 uei, 8 source, 9 nodeid (int64),
+ *              10 time (int64 ms), 11 host, 12 interface (bytes, the raw address),
+ *              13 snmphost, 14 service, 15 snmp (Snmp), 16 parm (Parm, repeated),
+ *              17 descr, 18 logmsg (Logmsg), 19 severity, 20 pathoutage,
+ *              21 correlation (Correlation), 22 operinstruct,
+ *              23 autoaction (Autoaction, repeated), 24 operaction (Operaction, repeated),
+ *              25 autoacknowledge (Autoacknowledge), 26 loggroup (repeated),
+ *              27 tticket (Tticket), 28 forward (Forward, repeated),
+ *              29 script (Script, repeated), 30 ifIndex (int32), 31 ifAlias,
+ *              32 mouseovertext, 33 alarmData (AlarmData)
+ * Mask:        1 maskelement (Maskelement, repeated)
+ * Maskelement: 1 mename, 2 mevalue (repeated)
+ * Snmp:        1 id, 2 idtext, 3 version, 4 specific (int32), 5 generic (int32),
+ *              6 community, 7 timeStamp (int64)
+ * Parm:        1 parmName, 2 value (Value)
+ * Value:       1 content, 2 type, 3 encoding
+ * Logmsg:      1 content, 2 notify (bool), 3 dest
+ * Correlation: 1 cuei (repeated), 2 cmin, 3 cmax, 4 ctime, 5 state, 6 path
+ * Autoaction, Autoacknowledge, Tticket: 1 content, 2 state
+ * Operaction:  1 content, 2 state, 3 menutext
+ * Forward:     1 content, 2 state, 3 mechanism
+ * Script:      1 content, 2 language
+ * AlarmData:   1 reductionKey, 2 alarmType (int32), 3 clearKey, 4 autoClean (bool),
+ *              5 x733AlarmType, 6 x733ProbableCause (int32),
+ *              7 updateField (UpdateField, repeated)
+ * UpdateField: 1 fieldName, 2 updateOnReduction (bool)
+ * EventReceipt: 1 uuid (repeated)
+ * </pre>
+ *
+ * Fields without a type are strings. The has methods of the model decide
+ * whether a field with a default getter, e.g. {@link Event#getNodeid()}, is written. On a stream each message is sent as a
+ * frame: the bytes 0x00 'E', the version ({@value #VERSION}) and the length
+ * of the message as a four byte big-endian integer, followed by the message.
+ * The leading zero byte can never start an XML document, so a receiver can
+ * tell the two encodings apart from the first byte.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+public final class EventCodec {
+
+    /** The version of the frame and message format. */
+    public static final byte VERSION = 1;
+
+    /** The length of the frame header that comes before each message. */
+    public static final int HEADER_LENGTH = 7;
+
+    /** Frames with a longer message are rejected. */
+    public static final int MAX_MESSAGE_LENGTH = 16 * 1024 * 1024;
+
+    private static final byte MAGIC_0 = 0;
+
+    private static final byte MAGIC_1 = 'E';
+
+    private static final int VARINT = 0;
+
+    private static final int FIXED64 = 1;
+
+    private static final int LENGTH_DELIMITED = 2;
+
+    private static final int FIXED32 = 5;
+
+    /** Nested messages reserve the longest varint of an int for their length. */
+    private static final int RESERVED_LENGTH = 5;
+
+    /**
+     * The buffer is only kept per thread if it did not grow beyond this.
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<Output> s_output = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output();
+        }
+    };
+
+    private EventCodec() {
+    }
+
+    /**
+     * Encodes the log as a frame.
+     *
+     * @param log the log to encode
+     * @return the frame, header included
+     */
+    public static byte[] encode(final Log log) {
+        final Output out = s_output.get();
+        try {
+            writeLog(out, log);
+            return out.toByteArray();
+        } finally {
+            release(out);
+        }
+    }
+
+    /**
+     * Encodes the receipt as a frame.
+     *
+     * @param receipt the receipt to encode
+     * @return the frame, header included
+     */
+    public static byte[] encode(final EventReceipt receipt) {
+        final Output out = s_output.get();
+        try {
+            writeReceipt(out, receipt);
+            return out.toByteArray();
+        } finally {
+            release(out);
+        }
+    }
+
+    /**
+     * Writes the log as a frame to the stream, without copying the encoded bytes.
+     *
+     * @param log the log to encode
+     * @param stream the stream, it is not flushed
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(final Log log, final OutputStream stream) throws IOException {
+        final Output out = s_output.get();
+        try {
+            writeLog(out, log);
+            out.writeTo(stream);
+        } finally {
+            release(out);
+        }
+    }
+
+    /**
+     * Writes the receipt as a frame to the stream.
+     *
+     * @param receipt the receipt to encode
+     * @param stream the stream, it is not flushed
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(final EventReceipt receipt, final OutputStream stream) throws IOException {
+        final Output out = s_output.get();
+        try {
+            writeReceipt(out, receipt);
+            out.writeTo(stream);
+        } finally {
+            release(out);
+        }
+    }
+
+    /**
+     * Checks whether the data starts with a frame rather than with XML.
+     *
+     * @param data the received bytes
+     * @param offset the start of the data
+     * @param length the number of bytes received, at least one
+     * @return true if the first bytes are those of a frame header
+     */
+    public static boolean isFrame(final byte[] data, final int offset, final int length) {
+        return length > 0 && data[offset] == MAGIC_0 && (length < 2 || data[offset + 1] == MAGIC_1);
+    }
+
+    /**
+     * Parses a frame header.
+     *
+     * @param header the bytes of the header
+     * @param offset the start of the header, {@link #HEADER_LENGTH} bytes are read
+     * @return the length of the message that follows the header
+     * @throws IOException if this is not a frame header, it has an unsupported
+     *         version or the message is longer than {@link #MAX_MESSAGE_LENGTH}
+     */
+    public static int getMessageLength(final byte[] header, final int offset) throws IOException {
+        if (header[offset] != MAGIC_0 || header[offset + 1] != MAGIC_1) {
+            throw new IOException("Not an event frame");
+        }
+        if (header[offset + 2] != VERSION) {
+            throw new IOException("Unsupported event frame version " + header[offset + 2]);
+        }
+        final int length = (header[offset + 3] & 0xff) << 24 | (header[offset + 4] & 0xff) << 16 | (header[offset + 5] & 0xff) << 8 | header[offset + 6] & 0xff;
+        if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+            throw new IOException("Event frame of " + (length & 0xffffffffL) + " bytes is too long");
+        }
+        return length;
+    }
+
+    /**
+     * Decodes a log frame.
+     *
+     * @param data the bytes of the frame
+     * @param offset the start of the frame header
+     * @param length the length of the frame, header included
+     * @return the decoded log
+     * @throws IOException if the frame is invalid or truncated
+     */
+    public static Log decodeLog(final byte[] data, final int offset, final int length) throws IOException {
+        return readLog(new Input(data, offset + HEADER_LENGTH, checkFrame(data, offset, length)));
+    }
+
+    /**
+     * Decodes a receipt frame.
+     *
+     * @param data the bytes of the frame
+     * @param offset the start of the frame header
+     * @param length the length of the frame, header included
+     * @return the decoded receipt
+     * @throws IOException if the frame is invalid or truncated
+     */
+    public static EventReceipt decodeReceipt(final byte[] data, final int offset, final int length) throws IOException {
+        return readReceipt(new Input(data, offset + HEADER_LENGTH, checkFrame(data, offset, length)));
+    }
+
+    /**
+     * Reads the next log frame from the stream.
+     *
+     * @param stream the stream
+     * @return the decoded log, or null if the stream ended before the next frame
+     * @throws IOException if the frame is invalid or the stream ends in the middle of it
+     */
+    public static Log readLog(final InputStream stream) throws IOException {
+        final byte[] frame = readFrame(stream);
+        return frame == null ? null : decodeLog(frame, 0, frame.length);
+    }
+
+    /**
+     * Reads the next receipt frame from the stream.
+     *
+     * @param stream the stream
+     * @return the decoded receipt, or null if the stream ended before the next frame
+     * @throws IOException if the frame is invalid or the stream ends in the middle of it
+     */
+    public static EventReceipt readReceipt(final InputStream stream) throws IOException {
+        final byte[] frame = readFrame(stream);
+        return frame == null ? null : decodeReceipt(frame, 0, frame.length);
+    }
+
+    private static byte[] readFrame(final InputStream stream) throws IOException {
+        final byte[] header = new byte[HEADER_LENGTH];
+        final int first = stream.read();
+        if (first == -1) {
+            return null;
+        }
+        header[0] = (byte)first;
+        readFully(stream, header, 1, HEADER_LENGTH - 1);
+        final byte[] frame = Arrays.copyOf(header, HEADER_LENGTH + getMessageLength(header, 0));
+        readFully(stream, frame, HEADER_LENGTH, frame.length - HEADER_LENGTH);
+        return frame;
+    }
+
+    private static void readFully(final InputStream stream, final byte[] buf, final int offset, final int length) throws IOException {
+        for (int read = 0; read < length; ) {
+            final int count = stream.read(buf, offset + read, length - read);
+            if (count == -1) {
+                throw new EOFException("Stream ended inside an event frame");
+            }
+            read += count;
+        }
+    }
+
+    private static int checkFrame(final byte[] data, final int offset, final int length) throws IOException {
+        if (length < HEADER_LENGTH) {
+            throw new EOFException("Truncated event frame header");
+        }
+        final int messageLength = getMessageLength(data, offset);
+        if (messageLength != length - HEADER_LENGTH) {
+            throw new IOException("Event frame of " + length + " bytes does not match its header");
+        }
+        return offset + length;
+    }
+
+    private static void release(final Output out) {
+        if (out.capacity() > MAX_RETAINED_BUFFER) {
+            s_output.remove();
+        } else {
+            out.reset();
+        }
+    }
+
+    private static void writeLog(final Output out, final Log log) {
+        final int frame = out.beginFrame();
+        final Header header = log.getHeader();
+        if (header != null) {
+            final int start = out.beginMessage(1);
+            out.writeString(1, header.getVer());
+            out.writeString(2, header.getDpName());
+            out.writeString(3, header.getCreated());
+            out.writeString(4, header.getMstation());
+            out.endMessage(start);
+        }
+        final Events events = log.getEvents();
+        if (events != null) {
+            for (final Event event : events.getEventCollection()) {
+                final int start = out.beginMessage(2);
+                writeEvent(out, event);
+                out.endMessage(start);
+            }
+        }
+        out.endFrame(frame);
+    }
+
+    private static void writeReceipt(final Output out, final EventReceipt receipt) {
+        final int frame = out.beginFrame();
+        for (final String uuid : receipt.getUuidCollection()) {
+            out.writeString(1, uuid);
+        }
+        out.endFrame(frame);
+    }
+
+    private static void writeEvent(final Output out, final Event event) {
+        int start;
+        out.writeString(1, event.getUuid());
+        if (event.hasDbid()) {
+            out.writeInt(2, event.getDbid());
+        }
+        out.writeString(3, event.getDistPoller());
+        out.writeDate(4, event.getCreationTime());
+        out.writeString(5, event.getMasterStation());
+        final Mask mask = event.getMask();
+        if (mask != null) {
+            start = out.beginMessage(6);
+            for (final Maskelement element : mask.getMaskelementCollection()) {
+                final int elementStart = out.beginMessage(1);
+                out.writeString(1, element.getMename());
+                for (final String value : element.getMevalueCollection()) {
+                    out.writeString(2, value);
+                }
+                out.endMessage(elementStart);
+            }
+            out.endMessage(start);
+        }
+        out.writeString(7, event.getUei());
+        out.writeString(8, event.getSource());
+        if (event.hasNodeid()) {
+            out.writeLong(9, event.getNodeid());
+        }
+        out.writeDate(10, event.getTime());
+        out.writeString(11, event.getHost());
+        final InetAddress address = event.getInterfaceAddress();
+        if (address != null) {
+            out.writeBytes(12, address.getAddress());
+        }
+        out.writeString(13, event.getSnmphost());
+        out.writeString(14, event.getService());
+        final Snmp snmp = event.getSnmp();
+        if (snmp != null) {
+            start = out.beginMessage(15);
+            out.writeString(1, snmp.getId());
+            out.writeString(2, snmp.getIdtext());
+            out.writeString(3, snmp.getVersion());
+            if (snmp.hasSpecific()) {
+                out.writeInt(4, snmp.getSpecific());
+            }
+            if (snmp.hasGeneric()) {
+                out.writeInt(5, snmp.getGeneric());
+            }
+            out.writeString(6, snmp.getCommunity());
+            if (snmp.hasTimeStamp()) {
+                out.writeLong(7, snmp.getTimeStamp());
+            }
+            out.endMessage(start);
+        }
+        for (final Parm parm : event.getParmCollection()) {
+            start = out.beginMessage(16);
+            out.writeString(1, parm.getParmName());
+            final Value value = parm.getValue();
+            if (value != null) {
+                final int valueStart = out.beginMessage(2);
+                out.writeString(1, value.getContent());
+                out.writeString(2, value.getType());
+                out.writeString(3, value.getEncoding());
+                out.endMessage(valueStart);
+            }
+            out.endMessage(start);
+        }
+        out.writeString(17, event.getDescr());
+        final Logmsg logmsg = event.getLogmsg();
+        if (logmsg != null) {
+            start = out.beginMessage(18);
+            out.writeString(1, logmsg.getContent());
+            if (logmsg.hasNotify()) {
+                out.writeBoolean(2, logmsg.getNotify());
+            }
+            out.writeString(3, logmsg.getDest());
+            out.endMessage(start);
+        }
+        out.writeString(19, event.getSeverity());
+        out.writeString(20, event.getPathoutage());
+        final Correlation correlation = event.getCorrelation();
+        if (correlation != null) {
+            start = out.beginMessage(21);
+            for (final String cuei : correlation.getCueiCollection()) {
+                out.writeString(1, cuei);
+            }
+            out.writeString(2, correlation.getCmin());
+            out.writeString(3, correlation.getCmax());
+            out.writeString(4, correlation.getCtime());
+            out.writeString(5, correlation.getState());
+            out.writeString(6, correlation.getPath());
+            out.endMessage(start);
+        }
+        out.writeString(22, event.getOperinstruct());
+        for (final Autoaction autoaction : event.getAutoactionCollection()) {
+            start = out.beginMessage(23);
+            out.writeString(1, autoaction.getContent());
+            out.writeString(2, autoaction.getState());
+            out.endMessage(start);
+        }
+        for (final Operaction operaction : event.getOperactionCollection()) {
+            start = out.beginMessage(24);
+            out.writeString(1, operaction.getContent());
+            out.writeString(2, operaction.getState());
+            out.writeString(3, operaction.getMenutext());
+            out.endMessage(start);
+        }
+        final Autoacknowledge autoacknowledge = event.getAutoacknowledge();
+        if (autoacknowledge != null) {
+            start = out.beginMessage(25);
+            out.writeString(1, autoacknowledge.getContent());
+            out.writeString(2, autoacknowledge.getState());
+            out.endMessage(start);
+        }
+        for (final String loggroup : event.getLoggroupCollection()) {
+            out.writeString(26, loggroup);
+        }
+        final Tticket tticket = event.getTticket();
+        if (tticket != null) {
+            start = out.beginMessage(27);
+            out.writeString(1, tticket.getContent());
+            out.writeString(2, tticket.getState());
+            out.endMessage(start);
+        }
+        for (final Forward forward : event.getForwardCollection()) {
+            start = out.beginMessage(28);
+            out.writeString(1, forward.getContent());
+            out.writeString(2, forward.getState());
+            out.writeString(3, forward.getMechanism());
+            out.endMessage(start);
+        }
+        for (final Script script : event.getScriptCollection()) {
+            start = out.beginMessage(29);
+            out.writeString(1, script.getContent());
+            out.writeString(2, script.getLanguage());
+            out.endMessage(start);
+        }
+        if (event.hasIfIndex()) {
+            out.writeInt(30, event.getIfIndex());
+        }
+        out.writeString(31, event.getIfAlias());
+        out.writeString(32, event.getMouseovertext());
+        final AlarmData alarmData = event.getAlarmData();
+        if (alarmData != null) {
+            start = out.beginMessage(33);
+            out.writeString(1, alarmData.getReductionKey());
+            if (alarmData.hasAlarmType()) {
+                out.writeInt(2, alarmData.getAlarmType());
+            }
+            out.writeString(3, alarmData.getClearKey());
+            if (alarmData.hasAutoClean()) {
+                out.writeBoolean(4, alarmData.getAutoClean());
+            }
+            out.writeString(5, alarmData.getX733AlarmType());
+            if (alarmData.hasX733ProbableCause()) {
+                out.writeInt(6, alarmData.getX733ProbableCause());
+            }
+            for (final UpdateField field : alarmData.getUpdateFieldList()) {
+                final int fieldStart = out.beginMessage(7);
+                out.writeString(1, field.getFieldName());
+                out.writeBoolean(2, field.isUpdateOnReduction());
+                out.endMessage(fieldStart);
+            }
+            out.endMessage(start);
+        }
+    }
+
+    private static Log readLog(final Input in) throws IOException {
+        final Log log = new Log();
+        final Events events = new Events();
+        log.setEvents(events);
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                final int limit = in.beginMessage(tag);
+                final Header header = new Header();
+                while (in.hasMore()) {
+                    final int headerTag = in.readTag();
+                    switch (headerTag >>> 3) {
+                    case 1: header.setVer(in.readString(headerTag)); break;
+                    case 2: header.setDpName(in.readString(headerTag)); break;
+                    case 3: header.setCreated(in.readString(headerTag)); break;
+                    case 4: header.setMstation(in.readString(headerTag)); break;
+                    default: in.skip(headerTag);
+                    }
+                }
+                in.endMessage(limit);
+                log.setHeader(header);
+                break;
+            case 2:
+                events.addEvent(readEvent(in, tag));
+                break;
+            default:
+                in.skip(tag);
+            }
+        }
+        return log;
+    }
+
+    private static EventReceipt readReceipt(final Input in) throws IOException {
+        final EventReceipt receipt = new EventReceipt();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            if (tag >>> 3 == 1) {
+                receipt.addUuid(in.readString(tag));
+            } else {
+                in.skip(tag);
+            }
+        }
+        return receipt;
+    }
+
+    private static Event readEvent(final Input in, final int eventTag) throws IOException {
+        final int limit = in.beginMessage(eventTag);
+        final Event event = new Event();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: event.setUuid(in.readString(tag)); break;
+            case 2: event.setDbid(in.readInt(tag)); break;
+            case 3: event.setDistPoller(in.readString(tag)); break;
+            case 4: event.setCreationTime(new Date(in.readLong(tag))); break;
+            case 5: event.setMasterStation(in.readString(tag)); break;
+            case 6: event.setMask(readMask(in, tag)); break;
+            case 7: event.setUei(in.readString(tag)); break;
+            case 8: event.setSource(in.readString(tag)); break;
+            case 9: event.setNodeid(in.readLong(tag)); break;
+            case 10: event.setTime(new Date(in.readLong(tag))); break;
+            case 11: event.setHost(in.readString(tag)); break;
+            case 12: event.setInterfaceAddress(InetAddress.getByAddress(in.readBytes(tag))); break;
+            case 13: event.setSnmphost(in.readString(tag)); break;
+            case 14: event.setService(in.readString(tag)); break;
+            case 15: event.setSnmp(readSnmp(in, tag)); break;
+            case 16: readParm(in, tag, event); break;
+            case 17: event.setDescr(in.readString(tag)); break;
+            case 18: event.setLogmsg(readLogmsg(in, tag)); break;
+            case 19: event.setSeverity(in.readString(tag)); break;
+            case 20: event.setPathoutage(in.readString(tag)); break;
+            case 21: event.setCorrelation(readCorrelation(in, tag)); break;
+            case 22: event.setOperinstruct(in.readString(tag)); break;
+            case 23: event.addAutoaction(readAutoaction(in, tag)); break;
+            case 24: event.addOperaction(readOperaction(in, tag)); break;
+            case 25: event.setAutoacknowledge(readAutoacknowledge(in, tag)); break;
+            case 26: event.addLoggroup(in.readString(tag)); break;
+            case 27: event.setTticket(readTticket(in, tag)); break;
+            case 28: event.addForward(readForward(in, tag)); break;
+            case 29: event.addScript(readScript(in, tag)); break;
+            case 30: event.setIfIndex(in.readInt(tag)); break;
+            case 31: event.setIfAlias(in.readString(tag)); break;
+            case 32: event.setMouseovertext(in.readString(tag)); break;
+            case 33: event.setAlarmData(readAlarmData(in, tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return event;
+    }
+
+    private static Mask readMask(final Input in, final int maskTag) throws IOException {
+        final int limit = in.beginMessage(maskTag);
+        final Mask mask = new Mask();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            if (tag >>> 3 == 1) {
+                final int elementLimit = in.beginMessage(tag);
+                final Maskelement element = new Maskelement();
+                while (in.hasMore()) {
+                    final int elementTag = in.readTag();
+                    switch (elementTag >>> 3) {
+                    case 1: element.setMename(in.readString(elementTag)); break;
+                    case 2: element.addMevalue(in.readString(elementTag)); break;
+                    default: in.skip(elementTag);
+                    }
+                }
+                in.endMessage(elementLimit);
+                mask.addMaskelement(element);
+            } else {
+                in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return mask;
+    }
+
+    private static Snmp readSnmp(final Input in, final int snmpTag) throws IOException {
+        final int limit = in.beginMessage(snmpTag);
+        final Snmp snmp = new Snmp();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: snmp.setId(in.readString(tag)); break;
+            case 2: snmp.setIdtext(in.readString(tag)); break;
+            case 3: snmp.setVersion(in.readString(tag)); break;
+            case 4: snmp.setSpecific(in.readInt(tag)); break;
+            case 5: snmp.setGeneric(in.readInt(tag)); break;
+            case 6: snmp.setCommunity(in.readString(tag)); break;
+            case 7: snmp.setTimeStamp(in.readLong(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return snmp;
+    }
+
+    /**
+     * Adds the parm to the event, without Parm and Value objects if it has a value.
+     */
+    private static void readParm(final Input in, final int parmTag, final Event event) throws IOException {
+        final int limit = in.beginMessage(parmTag);
+        String name = null;
+        boolean hasValue = false;
+        String content = "";
+        String type = null;
+        String encoding = null;
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                name = in.readString(tag);
+                break;
+            case 2:
+                final int valueLimit = in.beginMessage(tag);
+                hasValue = true;
+                while (in.hasMore()) {
+                    final int valueTag = in.readTag();
+                    switch (valueTag >>> 3) {
+                    case 1: content = in.readString(valueTag); break;
+                    case 2: type = in.readString(valueTag); break;
+                    case 3: encoding = in.readString(valueTag); break;
+                    default: in.skip(valueTag);
+                    }
+                }
+                in.endMessage(valueLimit);
+                break;
+            default:
+                in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+
+        if (hasValue) {
+            event.addParm(name, content, type, encoding);
+        } else {
+            final Parm parm = new Parm();
+            parm.setParmName(name);
+            event.addParm(parm);
+        }
+    }
+
+    private static Logmsg readLogmsg(final Input in, final int logmsgTag) throws IOException {
+        final int limit = in.beginMessage(logmsgTag);
+        final Logmsg logmsg = new Logmsg();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: logmsg.setContent(in.readString(tag)); break;
+            case 2: logmsg.setNotify(in.readBoolean(tag)); break;
+            case 3: logmsg.setDest(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return logmsg;
+    }
+
+    private static Correlation readCorrelation(final Input in, final int correlationTag) throws IOException {
+        final int limit = in.beginMessage(correlationTag);
+        final Correlation correlation = new Correlation();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: correlation.addCuei(in.readString(tag)); break;
+            case 2: correlation.setCmin(in.readString(tag)); break;
+            case 3: correlation.setCmax(in.readString(tag)); break;
+            case 4: correlation.setCtime(in.readString(tag)); break;
+            case 5: correlation.setState(in.readString(tag)); break;
+            case 6: correlation.setPath(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return correlation;
+    }
+
+    private static Autoaction readAutoaction(final Input in, final int autoactionTag) throws IOException {
+        final int limit = in.beginMessage(autoactionTag);
+        final Autoaction autoaction = new Autoaction();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: autoaction.setContent(in.readString(tag)); break;
+            case 2: autoaction.setState(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return autoaction;
+    }
+
+    private static Operaction readOperaction(final Input in, final int operactionTag) throws IOException {
+        final int limit = in.beginMessage(operactionTag);
+        final Operaction operaction = new Operaction();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: operaction.setContent(in.readString(tag)); break;
+            case 2: operaction.setState(in.readString(tag)); break;
+            case 3: operaction.setMenutext(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return operaction;
+    }
+
+    private static Autoacknowledge readAutoacknowledge(final Input in, final int autoacknowledgeTag) throws IOException {
+        final int limit = in.beginMessage(autoacknowledgeTag);
+        final Autoacknowledge autoacknowledge = new Autoacknowledge();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: autoacknowledge.setContent(in.readString(tag)); break;
+            case 2: autoacknowledge.setState(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return autoacknowledge;
+    }
+
+    private static Tticket readTticket(final Input in, final int tticketTag) throws IOException {
+        final int limit = in.beginMessage(tticketTag);
+        final Tticket tticket = new Tticket();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: tticket.setContent(in.readString(tag)); break;
+            case 2: tticket.setState(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return tticket;
+    }
+
+    private static Forward readForward(final Input in, final int forwardTag) throws IOException {
+        final int limit = in.beginMessage(forwardTag);
+        final Forward forward = new Forward();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: forward.setContent(in.readString(tag)); break;
+            case 2: forward.setState(in.readString(tag)); break;
+            case 3: forward.setMechanism(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return forward;
+    }
+
+    private static Script readScript(final Input in, final int scriptTag) throws IOException {
+        final int limit = in.beginMessage(scriptTag);
+        final Script script = new Script();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: script.setContent(in.readString(tag)); break;
+            case 2: script.setLanguage(in.readString(tag)); break;
+            default: in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return script;
+    }
+
+    private static AlarmData readAlarmData(final Input in, final int alarmDataTag) throws IOException {
+        final int limit = in.beginMessage(alarmDataTag);
+        final AlarmData alarmData = new AlarmData();
+        while (in.hasMore()) {
+            final int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                alarmData.setReductionKey(in.readString(tag));
+                break;
+            case 2:
+                alarmData.setAlarmType(in.readInt(tag));
+                break;
+            case 3:
+                alarmData.setClearKey(in.readString(tag));
+                break;
+            case 4:
+                alarmData.setAutoClean(in.readBoolean(tag));
+                break;
+            case 5:
+                alarmData.setX733AlarmType(in.readString(tag));
+                break;
+            case 6:
+                alarmData.setX733ProbableCause(in.readInt(tag));
+                break;
+            case 7:
+                final int fieldLimit = in.beginMessage(tag);
+                final UpdateField field = new UpdateField();
+                while (in.hasMore()) {
+                    final int fieldTag = in.readTag();
+                    switch (fieldTag >>> 3) {
+                    case 1: field.setFieldName(in.readString(fieldTag)); break;
+                    case 2: field.setUpdateOnReduction(in.readBoolean(fieldTag)); break;
+                    default: in.skip(fieldTag);
+                    }
+                }
+                in.endMessage(fieldLimit);
+                alarmData.getUpdateFieldList().add(field);
+                break;
+            default:
+                in.skip(tag);
+            }
+        }
+        in.endMessage(limit);
+        return alarmData;
+    }
+
+    /**
+     * A growable buffer that messages are encoded into.
+     */
+    private static final class Output {
+        private byte[] m_buf = new byte[1024];
+
+        private int m_pos;
+
+        private int capacity() {
+            return m_buf.length;
+        }
+
+        private void reset() {
+            m_pos = 0;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(m_buf, m_pos);
+        }
+
+        private void writeTo(final OutputStream stream) throws IOException {
+            stream.write(m_buf, 0, m_pos);
+        }
+
+        private void ensure(final int length) {
+            if (m_pos + length > m_buf.length) {
+                m_buf = Arrays.copyOf(m_buf, Math.max(m_buf.length * 2, m_pos + length));
+            }
+        }
+
+        private int beginFrame() {
+            ensure(HEADER_LENGTH);
+            final int start = m_pos;
+            m_buf[m_pos++] = MAGIC_0;
+            m_buf[m_pos++] = MAGIC_1;
+            m_buf[m_pos++] = VERSION;
+            m_pos += 4;
+            return start;
+        }
+
+        private void endFrame(final int start) {
+            final int length = m_pos - start - HEADER_LENGTH;
+            m_buf[start + 3] = (byte)(length >>> 24);
+            m_buf[start + 4] = (byte)(length >>> 16);
+            m_buf[start + 5] = (byte)(length >>> 8);
+            m_buf[start + 6] = (byte)length;
+        }
+
+        private int beginMessage(final int field) {
+            writeTag(field, LENGTH_DELIMITED);
+            ensure(RESERVED_LENGTH);
+            final int start = m_pos;
+            m_pos += RESERVED_LENGTH;
+            return start;
+        }
+
+        private void endMessage(final int start) {
+            int length = m_pos - start - RESERVED_LENGTH;
+            for (int i = 0; i < RESERVED_LENGTH - 1; i++) {
+                m_buf[start + i] = (byte)(length & 0x7f | 0x80);
+                length >>>= 7;
+            }
+            m_buf[start + RESERVED_LENGTH - 1] = (byte)length;
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                m_buf[m_pos++] = (byte)(value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            m_buf[m_pos++] = (byte)value;
+        }
+
+        private void writeTag(final int field, final int wireType) {
+            writeVarint(field << 3 | wireType);
+        }
+
+        private void writeInt(final int field, final int value) {
+            writeTag(field, VARINT);
+            writeVarint(value);
+        }
+
+        private void writeLong(final int field, final long value) {
+            writeTag(field, VARINT);
+            writeVarint(value);
+        }
+
+        private void writeDate(final int field, final Date value) {
+            if (value != null) {
+                writeTag(field, VARINT);
+                writeVarint(value.getTime());
+            }
+        }
+
+        private void writeBoolean(final int field, final Boolean value) {
+            if (value != null) {
+                writeTag(field, VARINT);
+                writeVarint(value.booleanValue() ? 1 : 0);
+            }
+        }
+
+        private void writeBytes(final int field, final byte[] value) {
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(value.length);
+            ensure(value.length);
+            System.arraycopy(value, 0, m_buf, m_pos, value.length);
+            m_pos += value.length;
+        }
+
+        /**
+         * Writes the string as UTF-8 straight into the buffer. Unpaired
+         * surrogates are written as '?', like {@link String#getBytes(Charset)} does.
+         */
+        private void writeString(final int field, final String value) {
+            if (value == null) {
+                return;
+            }
+            final int chars = value.length();
+            int length = chars;
+            for (int i = 0; i < chars; i++) {
+                final char c = value.charAt(i);
+                if (c >= 0x80) {
+                    if (c < 0x800) {
+                        length++;
+                    } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        length += 2;
+                        i++;
+                    } else if (!Character.isSurrogate(c)) {
+                        length += 2;
+                    }
+                }
+            }
+
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(length);
+            ensure(length);
+            final byte[] buf = m_buf;
+            int pos = m_pos;
+            for (int i = 0; i < chars; i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte)c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte)(0xc0 | c >>> 6);
+                    buf[pos++] = (byte)(0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buf[pos++] = (byte)(0xf0 | codePoint >>> 18);
+                    buf[pos++] = (byte)(0x80 | codePoint >>> 12 & 0x3f);
+                    buf[pos++] = (byte)(0x80 | codePoint >>> 6 & 0x3f);
+                    buf[pos++] = (byte)(0x80 | codePoint & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    buf[pos++] = '?';
+                } else {
+                    buf[pos++] = (byte)(0xe0 | c >>> 12);
+                    buf[pos++] = (byte)(0x80 | c >>> 6 & 0x3f);
+                    buf[pos++] = (byte)(0x80 | c & 0x3f);
+                }
+            }
+            m_pos = pos;
+        }
+    }
+
+    /**
+     * Reads the fields of a message, nested messages narrow the limit while
+     * they are read.
+     */
+    private static final class Input {
+        private final byte[] m_buf;
+
+        private int m_pos;
+
+        private int m_limit;
+
+        private Input(final byte[] buf, final int offset, final int limit) {
+            m_buf = buf;
+            m_pos = offset;
+            m_limit = limit;
+        }
+
+        private boolean hasMore() {
+            return m_pos < m_limit;
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (m_pos >= m_limit) {
+                    throw new EOFException("Truncated event message");
+                }
+                final byte b = m_buf[m_pos++];
+                value |= (long)(b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in event message");
+        }
+
+        private int readTag() throws IOException {
+            final int tag = (int)readVarint();
+            if (tag >>> 3 == 0) {
+                throw new IOException("Invalid field number in event message");
+            }
+            return tag;
+        }
+
+        private void expect(final int tag, final int wireType) throws IOException {
+            if ((tag & 7) != wireType) {
+                throw new IOException("Field " + (tag >>> 3) + " of an event message has wire type " + (tag & 7) + " instead of " + wireType);
+            }
+        }
+
+        private int readLength() throws IOException {
+            final long length = readVarint();
+            if (length < 0 || length > m_limit - m_pos) {
+                throw new EOFException("Truncated event message");
+            }
+            return (int)length;
+        }
+
+        private int readInt(final int tag) throws IOException {
+            expect(tag, VARINT);
+            return (int)readVarint();
+        }
+
+        private long readLong(final int tag) throws IOException {
+            expect(tag, VARINT);
+            return readVarint();
+        }
+
+        private boolean readBoolean(final int tag) throws IOException {
+            expect(tag, VARINT);
+            return readVarint() != 0;
+        }
+
+        private String readString(final int tag) throws IOException {
+            expect(tag, LENGTH_DELIMITED);
+            final int length = readLength();
+            final String value = new String(m_buf, m_pos, length, UTF_8);
+            m_pos += length;
+            return value;
+        }
+
+        private byte[] readBytes(final int tag) throws IOException {
+            expect(tag, LENGTH_DELIMITED);
+            final int length = readLength();
+            final byte[] value = Arrays.copyOfRange(m_buf, m_pos, m_pos + length);
+            m_pos += length;
+            return value;
+        }
+
+        /**
+         * @return the limit to restore with {@link #endMessage(int)}
+         */
+        private int beginMessage(final int tag) throws IOException {
+            expect(tag, LENGTH_DELIMITED);
+            final int length = readLength();
+            final int limit = m_limit;
+            m_limit = m_pos + length;
+            return limit;
+        }
+
+        private void endMessage(final int limit) {
+            m_limit = limit;
+        }
+
+        private void skip(final int tag) throws IOException {
+            switch (tag & 7) {
+            case VARINT:
+                readVarint();
+                break;
+            case FIXED64:
+                skipBytes(8);
+                break;
+            case LENGTH_DELIMITED:
+                skipBytes(readLength());
+                break;
+            case FIXED32:
+                skipBytes(4);
+                break;
+            default:
+                throw new IOException("Unsupported wire type " + (tag & 7) + " in event message");
+            }
+        }
+
+        private void skipBytes(final int length) throws IOException {
+            if (length > m_limit - m_pos) {
+                throw new EOFException("Truncated event message");
+            }
+            m_pos += length;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.ConnectException;
@@ -68,6 +69,9 @@ public final class TcpEventProxy implements EventProxy {
     /** Constant <code>DEFAULT_PORT=5817</code> */
     public static final int DEFAULT_PORT = 5817;
 
+    /** Constant <code>DEFAULT_BINARY_PORT=5818</code> */
+    public static final int DEFAULT_BINARY_PORT = 5818;
+
     /** Constant <code>DEFAULT_TIMEOUT=2000</code> */
     public static final int DEFAULT_TIMEOUT = 2000;
 
@@ -75,6 +79,8 @@ public final class TcpEventProxy implements EventProxy {
     
     private int m_timeout = DEFAULT_TIMEOUT;
 
+    private boolean m_binary = false;
+
     /**
      * <p>Constructor for TcpEventProxy.</p>
      *
@@ -104,6 +110,19 @@ public final class TcpEventProxy implements EventProxy {
         m_timeout = timeout;
     }
 
+    /**
+     * <p>Constructor for TcpEventProxy.</p>
+     *
+     * @param address a {@link java.net.InetSocketAddress} object.
+     * @param timeout a int.
+     * @param binary send events with the {@link EventCodec} instead of as
+     *        XML, the receiver at the address must be a binary one.
+     */
+    public TcpEventProxy(InetSocketAddress address, int timeout, boolean binary) {
+        this(address, timeout);
+        m_binary = binary;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -136,9 +155,15 @@ public final class TcpEventProxy implements EventProxy {
         Connection connection = null;
         try {
             connection = new Connection();
-            final Writer writer = connection.getWriter();
-            JaxbUtils.marshal(eventLog, writer);
-            writer.flush();
+            if (m_binary) {
+                final OutputStream output = connection.getOutput();
+                EventCodec.write(eventLog, output);
+                output.flush();
+            } else {
+                final Writer writer = connection.getWriter();
+                JaxbUtils.marshal(eventLog, writer);
+                writer.flush();
+            }
         } catch (ConnectException e) {
             throw new EventProxyException("Could not connect to event daemon " + m_address + " to send event: " + e.getMessage(), e);
         } catch (Throwable e) {
@@ -153,6 +178,8 @@ public final class TcpEventProxy implements EventProxy {
     private class Connection {
         private Socket m_sock;
 
+        private OutputStream m_output;
+
         private Writer m_writer;
         
         private InputStream m_input;
@@ -165,7 +192,8 @@ public final class TcpEventProxy implements EventProxy {
             m_sock.setSoTimeout(500);
             LOG.debug("Default Charset:", Charset.defaultCharset().displayName());
             LOG.debug("Setting Charset: UTF-8");
-            m_writer = new OutputStreamWriter(new BufferedOutputStream(m_sock.getOutputStream()), Charset.forName("UTF-8"));
+            m_output = new BufferedOutputStream(m_sock.getOutputStream());
+            m_writer = new OutputStreamWriter(m_output, Charset.forName("UTF-8"));
             m_input = m_sock.getInputStream();
             m_rdrThread = new Thread("TcpEventProxy Input Discarder") {
                 @Override
@@ -186,6 +214,10 @@ public final class TcpEventProxy implements EventProxy {
             m_rdrThread.start();
         }
 
+        public OutputStream getOutput() {
+            return m_output;
+        }
+
         public Writer getWriter() {
             return m_writer;
         }
@@ -369,10 +369,41 @@ public class Event implements Serializable {
 
 	public void addParm(final Parm parm) {
 	    if (_parms == null) {
-	        _parms = new ArrayList<Parm>();
+	        _parms = new ParmList();
 	    }
 	    _parms.add(parm);
 	}
+
+	/**
+	 * Adds a parm without creating {@link Parm} and {@link Value} objects for
+	 * it until they are asked for.
+	 *
+	 * @param name the parm name
+	 * @param content the value content
+	 * @param type the value type, null for the default
+	 * @param encoding the value encoding, null for the default
+	 */
+	public void addParm(final String name, final String content, final String type, final String encoding) {
+	    if (_parms == null) {
+	        _parms = new ParmList();
+	    }
+	    if (_parms instanceof ParmList) {
+	        ((ParmList)_parms).add(name, content, type, encoding);
+	    } else {
+	        final Value value = new Value();
+	        value.setContent(content);
+	        if (type != null) {
+	            value.setType(type);
+	        }
+	        if (encoding != null) {
+	            value.setEncoding(encoding);
+	        }
+	        final Parm parm = new Parm();
+	        parm.setParmName(name);
+	        parm.setValue(value);
+	        _parms.add(parm);
+	    }
+	}
 	
 	/**
 	 * 
@@ -869,6 +900,9 @@ public class Event implements Serializable {
         if (key == null) {
             throw new IllegalArgumentException("Parameter key cannot be null!");
         }
+        if (_parms instanceof ParmList) {
+            return ((ParmList)_parms).get(key);
+        }
 
         for (final Parm parm : _parms) {
             if (key.equals(parm.getParmName())) {
@@ -879,6 +913,34 @@ public class Event implements Serializable {
         return null;
     }
 
+    /**
+     * Returns the first parm whose name, without leading and trailing
+     * whitespace, is the key.
+     *
+     * @param key the parm name
+     * @return the parm, or null if there is none
+     */
+    public Parm getParmTrimmed(final String key) {
+        if (_parms == null) {
+            return null;
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Parameter key cannot be null!");
+        }
+        if (_parms instanceof ParmList) {
+            return ((ParmList)_parms).getTrimmed(key);
+        }
+
+        for (final Parm parm : _parms) {
+            final String name = parm.getParmName();
+            if (name != null && name.trim().equals(key)) {
+                return parm;
+            }
+        }
+
+        return null;
+    }
+
 	/**
 	 * Returns the value of field 'pathoutage'. The field 'pathoutage' has the
 	 * following description: The path outage information
@@ -40,11 +40,14 @@ package org.opennms.netmgt.xml.event;
 //---------------------------------/
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 
@@ -76,6 +79,20 @@ public class Parm implements Serializable {
 	@XmlElement(name="value", required=true)
 	private org.opennms.netmgt.xml.event.Value _value;
 
+	/**
+	 * The {@link ParmList} this parm has been added to, which has to drop
+	 * its name index when the parm is renamed
+	 */
+	@XmlTransient
+	private transient ParmList _list;
+
+	/**
+	 * Any further lists this parm has been added to, null unless the parm is
+	 * shared between events
+	 */
+	@XmlTransient
+	private transient List<ParmList> _otherLists;
+
 
       //----------------/
      //- Constructors -/
@@ -128,6 +145,14 @@ public class Parm implements Serializable {
     public void setParmName(
             final java.lang.String parmName) {
         this._parmName = parmName;
+        if (this._list != null) {
+            this._list.renamed();
+        }
+        if (this._otherLists != null) {
+            for (final ParmList list : this._otherLists) {
+                list.renamed();
+            }
+        }
     }
 
     /**
@@ -150,6 +175,19 @@ public class Parm implements Serializable {
     }
 
 
+	void addList(final ParmList list) {
+		if (this._list == null || this._list == list) {
+			this._list = list;
+		} else {
+			if (this._otherLists == null) {
+				this._otherLists = new ArrayList<ParmList>(1);
+			}
+			if (!this._otherLists.contains(list)) {
+				this._otherLists.add(list);
+			}
+		}
+	}
+
 	public boolean isValid() {
 		return getParmName() != null && getValue() != null;
 	}
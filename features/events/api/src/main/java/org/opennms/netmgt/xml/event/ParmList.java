@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.event;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The parms of an {@link Event}, kept as parallel arrays of names, contents,
+ * types and encodings instead of as {@link Parm} and {@link Value} objects.
+ *
+ * A parm is only turned into a {@link Parm} when it is asked for through the
+ * {@link java.util.List} methods, e.g. to iterate or to marshal the event, or
+ * when it is looked up by name. From then on that Parm object is the parm,
+ * so changes made to it are kept as with an ArrayList.
+ *
+ * Lookups by name use an index of the names which is built on the first
+ * lookup once the list has {@link #INDEX_THRESHOLD} parms, and is rebuilt
+ * after the list changed or one of its parms was renamed.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+final class ParmList extends AbstractList<Parm> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Shorter lists are scanned instead of indexed.
+     */
+    static final int INDEX_THRESHOLD = 8;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] m_names = new String[INITIAL_CAPACITY];
+
+    private String[] m_contents = new String[INITIAL_CAPACITY];
+
+    private String[] m_types = new String[INITIAL_CAPACITY];
+
+    private String[] m_encodings = new String[INITIAL_CAPACITY];
+
+    /**
+     * The parms that have been handed out, null until the first one is.
+     */
+    private Parm[] m_parms;
+
+    /**
+     * Whether the parm at an index is one that was added as null.
+     */
+    private boolean[] m_null;
+
+    private int m_size = 0;
+
+    /**
+     * The first index of each trimmed parm name.
+     */
+    private transient Map<String, Integer> m_index;
+
+    /**
+     * Whether all names were trimmed when the index was built, so that it
+     * also serves exact lookups.
+     */
+    private transient boolean m_indexExact;
+
+    /**
+     * Appends a parm without creating Parm and Value objects for it.
+     *
+     * @param name the parm name
+     * @param content the value content
+     * @param type the value type, null for the default of {@link Value}
+     * @param encoding the value encoding, null for the default of {@link Value}
+     */
+    synchronized void add(final String name, final String content, final String type, final String encoding) {
+        ensureCapacity(m_size + 1);
+        m_names[m_size] = name;
+        m_contents[m_size] = content;
+        m_types[m_size] = type;
+        m_encodings[m_size] = encoding;
+        m_size++;
+        modCount++;
+        appended(name);
+    }
+
+    @Override
+    public synchronized boolean add(final Parm parm) {
+        ensureCapacity(m_size + 1);
+        store(m_size, parm);
+        m_size++;
+        modCount++;
+        appended(parm == null ? null : parm.getParmName());
+        return true;
+    }
+
+    @Override
+    public synchronized void add(final int index, final Parm parm) {
+        if (index < 0 || index > m_size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+        }
+        if (index == m_size) {
+            add(parm);
+            return;
+        }
+        ensureCapacity(m_size + 1);
+        move(index, index + 1, m_size - index);
+        store(index, parm);
+        m_size++;
+        modCount++;
+        m_index = null;
+    }
+
+    @Override
+    public synchronized Parm get(final int index) {
+        checkIndex(index);
+        if (m_parms != null && (m_parms[index] != null || m_null[index])) {
+            return m_parms[index];
+        }
+
+        final Value value = new Value();
+        value.setContent(m_contents[index]);
+        if (m_types[index] != null) {
+            value.setType(m_types[index]);
+        }
+        if (m_encodings[index] != null) {
+            value.setEncoding(m_encodings[index]);
+        }
+        final Parm parm = new Parm();
+        parm.setParmName(m_names[index]);
+        parm.setValue(value);
+        store(index, parm);
+        return parm;
+    }
+
+    @Override
+    public synchronized Parm set(final int index, final Parm parm) {
+        final Parm previous = get(index);
+        store(index, parm);
+        m_index = null;
+        return previous;
+    }
+
+    @Override
+    public synchronized Parm remove(final int index) {
+        final Parm previous = get(index);
+        move(index + 1, index, m_size - index - 1);
+        m_size--;
+        clear(m_size);
+        modCount++;
+        m_index = null;
+        return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < m_size; i++) {
+            clear(i);
+        }
+        m_size = 0;
+        modCount++;
+        m_index = null;
+    }
+
+    @Override
+    public synchronized int size() {
+        return m_size;
+    }
+
+    /**
+     * @param name the parm name
+     * @return the first parm with exactly this name, or null
+     */
+    synchronized Parm get(final String name) {
+        if (useIndex() && m_indexExact) {
+            final Integer index = m_index.get(name);
+            return index == null ? null : get(index);
+        }
+        for (int i = 0; i < m_size; i++) {
+            if (name.equals(getName(i))) {
+                return get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name the parm name
+     * @return the first parm whose name is this name once it is trimmed, or null
+     */
+    synchronized Parm getTrimmed(final String name) {
+        if (useIndex()) {
+            final Integer index = m_index.get(name);
+            return index == null ? null : get(index);
+        }
+        for (int i = 0; i < m_size; i++) {
+            final String parmName = getName(i);
+            if (parmName != null && parmName.trim().equals(name)) {
+                return get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called by a parm of this list when it is renamed. The parm may have
+     * been removed from the list since, which only costs a rebuild.
+     */
+    synchronized void renamed() {
+        m_index = null;
+    }
+
+    private String getName(final int index) {
+        final Parm parm = m_parms == null ? null : m_parms[index];
+        return parm == null ? m_names[index] : parm.getParmName();
+    }
+
+    /**
+     * Builds the index if the list is long enough to need one.
+     *
+     * @return true if the index can be used
+     */
+    private boolean useIndex() {
+        if (m_size < INDEX_THRESHOLD) {
+            return false;
+        }
+        if (m_index == null) {
+            m_index = new HashMap<String, Integer>(m_size * 2);
+            m_indexExact = true;
+            for (int i = 0; i < m_size; i++) {
+                index(getName(i), i);
+            }
+        }
+        return true;
+    }
+
+    private void appended(final String name) {
+        if (m_index != null) {
+            index(name, m_size - 1);
+        }
+    }
+
+    private void index(final String name, final int index) {
+        if (name == null) {
+            return;
+        }
+        final String trimmed = name.trim();
+        if (trimmed != name) {
+            m_indexExact = false;
+        }
+        if (!m_index.containsKey(trimmed)) {
+            m_index.put(trimmed, index);
+        }
+    }
+
+    /**
+     * Makes the parm object the parm at the index.
+     */
+    private void store(final int index, final Parm parm) {
+        if (m_parms == null) {
+            m_parms = new Parm[m_names.length];
+            m_null = new boolean[m_names.length];
+        }
+        m_parms[index] = parm;
+        m_null[index] = parm == null;
+        m_names[index] = null;
+        m_contents[index] = null;
+        m_types[index] = null;
+        m_encodings[index] = null;
+        if (parm != null) {
+            parm.addList(this);
+        }
+    }
+
+    private void clear(final int index) {
+        m_names[index] = null;
+        m_contents[index] = null;
+        m_types[index] = null;
+        m_encodings[index] = null;
+        if (m_parms != null) {
+            m_parms[index] = null;
+            m_null[index] = false;
+        }
+    }
+
+    private void move(final int from, final int to, final int length) {
+        System.arraycopy(m_names, from, m_names, to, length);
+        System.arraycopy(m_contents, from, m_contents, to, length);
+        System.arraycopy(m_types, from, m_types, to, length);
+        System.arraycopy(m_encodings, from, m_encodings, to, length);
+        if (m_parms != null) {
+            System.arraycopy(m_parms, from, m_parms, to, length);
+            System.arraycopy(m_null, from, m_null, to, length);
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= m_names.length) {
+            return;
+        }
+        final int length = Math.max(capacity, m_names.length * 2);
+        m_names = Arrays.copyOf(m_names, length);
+        m_contents = Arrays.copyOf(m_contents, length);
+        m_types = Arrays.copyOf(m_types, length);
+        m_encodings = Arrays.copyOf(m_encodings, length);
+        if (m_parms != null) {
+            m_parms = Arrays.copyOf(m_parms, length);
+            m_null = Arrays.copyOf(m_null, length);
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= m_size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+        }
+    }
+
+    private synchronized void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (m_parms != null) {
+            for (final Parm parm : m_parms) {
+                if (parm != null) {
+                    parm.addList(this);
+                }
+            }
+        }
+    }
+}
@@ -817,6 +817,14 @@ public abstract class AbstractEventUtil implements EventUtil {
 			// Get the value between the '[' and ']'
 			String eparmname = parm.substring(PARM_BEGIN_LENGTH, end);
 
+			// indexed lookup, only trapped events with more than one parm of that name need the scan
+			final Parm first = event.getParmTrimmed(eparmname);
+			if (first == null) {
+				return null;
+			} else if (first.getValue() != null) {
+				return EventConstants.getValueAsString(first.getValue());
+			}
+
 			for (Parm evParm : event.getParmCollection()) {
 				String parmName = evParm.getParmName();
 				if (parmName != null
@@ -898,73 +906,24 @@ public abstract class AbstractEventUtil implements EventUtil {
 	 * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
 	 */
 	public String expandParms(String inp, Event event, Map<String, Map<String, String>> decode) {
-		int index1 = -1;
-		int index2 = -1;
-
-		if (inp == null) {
+		if (inp == null || inp.indexOf(PERCENT) == -1) {
 			return null;
 		}
+		return ExpansionTemplate.compile(inp).expand(this, event, decode);
+	}
 
-		StringBuffer ret = new StringBuffer();
-
-		String tempInp = inp;
-		int inpLen = inp.length();
-
-		// check input string to see if it has any %xxx% substring
-		while ((tempInp != null) && ((index1 = tempInp.indexOf(PERCENT)) != -1)) {
-			// copy till first %
-			ret.append(tempInp.substring(0, index1));
-			tempInp = tempInp.substring(index1);
-
-			index2 = tempInp.indexOf(PERCENT, 1);
-			if (index2 != -1) {
-				// Get the value between the %s
-				String parm = tempInp.substring(1, index2);
-				// m_logger.debug("parm: " + parm + " found in value");
-
-				// If there's any whitespace in between the % signs, then do not try to 
-				// expand it with a parameter value
-				if (parm.matches(".*\\s.*")) {
-					ret.append(PERCENT);
-					tempInp = tempInp.substring(1);
-					continue;
-				}
-
-				String parmVal = getValueOfParm(parm, event);
-				// m_logger.debug("value of parm: " + parmVal);
-
-				if (parmVal != null) {
-					if (decode != null && decode.containsKey(parm) && decode.get(parm).containsKey(parmVal)) {
-					ret.append(decode.get(parm).get(parmVal));
-					ret.append("(");
-					ret.append(parmVal);
-					ret.append(")");
-					} else {
-					ret.append(parmVal);
-					}
-				}
-
-				if (index2 < (inpLen - 1)) {
-					tempInp = tempInp.substring(index2 + 1);
-				} else {
-					tempInp = null;
-				}
-			}
-			else {
-				break;
-			}
-		}
-
-		if ((index1 == -1 || index2 == -1) && (tempInp != null)) {
-			ret.append(tempInp);
-		}
-
-		String retStr = ret.toString();
-		if (retStr != null && !retStr.equals(inp)) {
-			return retStr;
-		} else {
-			return null;
-		}
+	/**
+	 * Expand a template compiled in advance, see
+	 * {@link #expandParms(String, Event, Map)}.
+	 *
+	 * @param template the compiled string
+	 * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+	 * @param decode the varbind decode for this event, may be null
+	 * @return expanded value if the value had any parameter to expand, null
+	 *         otherwise
+	 */
+	public String expandParms(ExpansionTemplate template, Event event, Map<String, Map<String, String>> decode) {
+		return template.expand(this, event, decode);
 	}
 
 	/**
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.netmgt.xml.eventconf.AlarmData;
+import org.opennms.netmgt.xml.eventconf.Autoaction;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
+import org.opennms.netmgt.xml.eventconf.Operaction;
+
+/**
+ * The expansion templates of the strings that the eventconf events of one
+ * event tree copy into the events they match.
+ *
+ * The templates are compiled when the tree is first used and dropped with
+ * it, so they are bounded by the size of the eventconf. Strings that are not
+ * in the tree, e.g. a descr sent with the event, are not cached.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+final class EventConfTemplates {
+
+    private final Events m_root;
+
+    private final Map<String, ExpansionTemplate> m_templates;
+
+    EventConfTemplates(final Events root) {
+        m_root = root;
+        m_templates = root == null ? new HashMap<String, ExpansionTemplate>() : root.forEachEvent(new HashMap<String, ExpansionTemplate>(), new EventCallback<Map<String, ExpansionTemplate>>() {
+            @Override
+            public Map<String, ExpansionTemplate> process(final Map<String, ExpansionTemplate> templates, final Event event) {
+                add(templates, event.getDescr());
+                if (event.getLogmsg() != null) {
+                    add(templates, event.getLogmsg().getContent());
+                }
+                add(templates, event.getOperinstruct());
+                for (final Autoaction autoaction : event.getAutoactionCollection()) {
+                    add(templates, autoaction.getContent());
+                }
+                for (final Operaction operaction : event.getOperactionCollection()) {
+                    add(templates, operaction.getContent());
+                }
+                if (event.getTticket() != null) {
+                    add(templates, event.getTticket().getContent());
+                }
+                final AlarmData alarmData = event.getAlarmData();
+                if (alarmData != null) {
+                    add(templates, alarmData.getReductionKey());
+                    add(templates, alarmData.getClearKey());
+                }
+                return templates;
+            }
+        });
+    }
+
+    private static void add(final Map<String, ExpansionTemplate> templates, final String source) {
+        if (source != null && source.indexOf('%') != -1 && !templates.containsKey(source)) {
+            templates.put(source, ExpansionTemplate.compile(source));
+        }
+    }
+
+    /**
+     * @param root the root of the event tree currently published by the DAO
+     * @return true if these are the templates of that tree
+     */
+    boolean isFor(final Events root) {
+        return m_root == root;
+    }
+
+    /**
+     * @param source a string to expand
+     * @return the template of the string, or null if no eventconf event of
+     *         the tree has it
+     */
+    ExpansionTemplate get(final String source) {
+        return source == null ? null : m_templates.get(source);
+    }
+
+    int size() {
+        return m_templates.size();
+    }
+}
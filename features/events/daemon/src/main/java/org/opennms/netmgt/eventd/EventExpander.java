@@ -45,6 +45,7 @@ import org.opennms.netmgt.xml.event.Operaction;
 import org.opennms.netmgt.xml.event.Tticket;
 import org.opennms.netmgt.xml.event.UpdateField;
 import org.opennms.netmgt.xml.eventconf.Decode;
+import org.opennms.netmgt.xml.eventconf.Events;
 import org.opennms.netmgt.xml.eventconf.Maskelement;
 import org.opennms.netmgt.xml.eventconf.Varbindsdecode;
 import org.springframework.beans.factory.InitializingBean;
@@ -98,6 +99,18 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
     private EventConfDao m_eventConfDao;
 
+    /**
+     * Optional; when not set, the instance registered with
+     * {@link AbstractEventUtil} is used.
+     */
+    private EventUtil m_eventUtil;
+
+    /**
+     * The expansion templates of the event tree the DAO last published,
+     * replaced together with the tree.
+     */
+    private volatile EventConfTemplates m_templates;
+
     /**
      * The default event UEI - if the event lookup into the 'event.conf' fails,
      * the event is loaded with information from this default UEI
@@ -404,8 +417,8 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event logmsg
      */
-    private void expandParms(Logmsg logmsg, Event event, Map<String, Map<String, String>> decode) {
-        String strRet = AbstractEventUtil.getInstance().expandParms(logmsg.getContent(), event, decode);
+    private void expandParms(Logmsg logmsg, Event event, Map<String, Map<String, String>> decode, EventConfTemplates templates) {
+        String strRet = expandParms(logmsg.getContent(), event, decode, templates);
         if (strRet != null) {
             logmsg.setContent(strRet);
         }
@@ -414,11 +427,11 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event autoaction(s)
      */
-    private void expandParms(Autoaction[] autoactions, Event event) {
+    private void expandParms(Autoaction[] autoactions, Event event, EventConfTemplates templates) {
         boolean expanded = false;
 
         for (Autoaction action : autoactions) {
-            String strRet = AbstractEventUtil.getInstance().expandParms(action.getContent(), event);
+            String strRet = expandParms(action.getContent(), event, null, templates);
             if (strRet != null) {
                 action.setContent(strRet);
                 expanded = true;
@@ -433,11 +446,11 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event operaction(s)
      */
-    private void expandParms(Operaction[] operactions, Event event) {
+    private void expandParms(Operaction[] operactions, Event event, EventConfTemplates templates) {
         boolean expanded = false;
 
         for (Operaction action : operactions) {
-            String strRet = AbstractEventUtil.getInstance().expandParms(action.getContent(), event);
+            String strRet = expandParms(action.getContent(), event, null, templates);
             if (strRet != null) {
                 action.setContent(strRet);
                 expanded = true;
@@ -452,8 +465,8 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event tticket
      */
-    private void expandParms(Tticket tticket, Event event) {
-        String strRet = AbstractEventUtil.getInstance().expandParms(tticket.getContent(), event);
+    private void expandParms(Tticket tticket, Event event, EventConfTemplates templates) {
+        String strRet = expandParms(tticket.getContent(), event, null, templates);
         if (strRet != null) {
             tticket.setContent(strRet);
         }
@@ -471,12 +484,12 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      * value of the parameter number 'num', if present - %parm[##]% is replaced
      * by the number of parameters
      */
-    private void expandParms(Event event, Map<String, Map<String, String>> decode) {
+    private void expandParms(Event event, Map<String, Map<String, String>> decode, EventConfTemplates templates) {
         String strRet = null;
 
         // description
         if (event.getDescr() != null) {
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getDescr(), event,decode);
+            strRet = expandParms(event.getDescr(), event, decode, templates);
             if (strRet != null) {
                 event.setDescr(strRet);
                 strRet = null;
@@ -485,12 +498,12 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
         // logmsg
         if (event.getLogmsg() != null) {
-            expandParms(event.getLogmsg(), event, decode);
+            expandParms(event.getLogmsg(), event, decode, templates);
         }
 
         // operinstr
         if (event.getOperinstruct() != null) {
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getOperinstruct(), event);
+            strRet = expandParms(event.getOperinstruct(), event, null, templates);
             if (strRet != null) {
                 event.setOperinstruct(strRet);
                 strRet = null;
@@ -499,27 +512,27 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
         // autoaction
         if (event.getAutoaction() != null) {
-            expandParms(event.getAutoaction(), event);
+            expandParms(event.getAutoaction(), event, templates);
         }
 
         // operaction
         if (event.getOperaction() != null) {
-            expandParms(event.getOperaction(), event);
+            expandParms(event.getOperaction(), event, templates);
         }
 
         // tticket
         if (event.getTticket() != null) {
-            expandParms(event.getTticket(), event);
+            expandParms(event.getTticket(), event, templates);
         }
         
         // reductionKey
         if (event.getAlarmData() != null) {
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getAlarmData().getReductionKey(), event);
+            strRet = expandParms(event.getAlarmData().getReductionKey(), event, null, templates);
             if (strRet != null) {
                 event.getAlarmData().setReductionKey(strRet);
             }
             strRet = null;
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getAlarmData().getClearKey(), event);
+            strRet = expandParms(event.getAlarmData().getClearKey(), event, null, templates);
             if (strRet != null) {
             	event.getAlarmData().setClearKey(strRet);
             }
@@ -527,6 +540,37 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
     }
 
+    /**
+     * Expand a string with the template compiled for it from the eventconf,
+     * or compile it now if it did not come from there.
+     */
+    private String expandParms(String inp, Event event, Map<String, Map<String, String>> decode, EventConfTemplates templates) {
+        final ExpansionTemplate template = templates.get(inp);
+        if (template == null) {
+            return getEventUtil().expandParms(inp, event, decode);
+        }
+        return getEventUtil().expandParms(template, event, decode);
+    }
+
+    /**
+     * @return the expansion templates of the event tree currently published
+     *         by the DAO, compiled the first time the tree is used
+     */
+    private EventConfTemplates getTemplates() {
+        final Events root = m_eventConfDao.getRootEvents();
+        EventConfTemplates templates = m_templates;
+        if (templates == null || !templates.isFor(root)) {
+            synchronized (this) {
+                templates = m_templates;
+                if (templates == null || !templates.isFor(root)) {
+                    templates = new EventConfTemplates(root);
+                    m_templates = templates;
+                }
+            }
+        }
+        return templates;
+    }
+
     /**
      * <p>
      * This method is invoked to check and configure a received event. The event
@@ -541,10 +585,17 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      * expansion.
      * </p>
      *
+     * <p>
+     * This method is not synchronized: it only reads the immutable lookup
+     * structures of the {@link EventConfDao} and modifies nothing but the
+     * passed event, so all eventd handler threads can expand events
+     * concurrently.
+     * </p>
+     *
      * @param e
      *            The event to expand if necessary.
      */
-    public synchronized void expandEvent(Event e) {
+    public void expandEvent(Event e) {
         org.opennms.netmgt.xml.eventconf.Event econf = lookup(m_eventConfDao, e);
 
         if (econf != null) {
@@ -739,7 +790,7 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
         }// end fill of event using econf
 
         // do the event parm expansion
-        expandParms(e, decode);
+        expandParms(e, decode, getTemplates());
 
     } // end expandEvent()
 
@@ -767,4 +818,26 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     public void setEventConfDao(EventConfDao eventConfDao) {
         m_eventConfDao = eventConfDao;
     }
+
+    /**
+     * <p>getEventUtil</p>
+     *
+     * @return the configured {@link EventUtil}, or the one returned by
+     *         {@link AbstractEventUtil#getInstance()} if none was set.
+     */
+    public EventUtil getEventUtil() {
+        return m_eventUtil == null ? AbstractEventUtil.getInstance() : m_eventUtil;
+    }
+
+    /**
+     * <p>setEventUtil</p>
+     *
+     * <p>Setting this avoids looking the bean up in the eventd bean factory,
+     * which is synchronized, for every expanded string.</p>
+     *
+     * @param eventUtil a {@link org.opennms.netmgt.eventd.EventUtil} object.
+     */
+    public void setEventUtil(EventUtil eventUtil) {
+        m_eventUtil = eventUtil;
+    }
 }
@@ -28,21 +28,30 @@
 
 package org.opennms.netmgt.eventd;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventHandler;
@@ -55,6 +64,7 @@ import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -66,7 +76,7 @@ import org.springframework.util.StringUtils;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroadcaster, InitializingBean {
+public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroadcaster, InitializingBean, DisposableBean {
     
     
     private static final Logger LOG = LoggerFactory.getLogger(EventIpcManagerDefaultImpl.class);
@@ -109,6 +119,12 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      */
     private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
 
+    /**
+     * Immutable copy of the three collections above for broadcastNow(),
+     * replaced by every method that changes them
+     */
+    private volatile Subscriptions m_subscriptions = new Subscriptions();
+
     /**
      * The thread pool handling the events
      */
@@ -120,75 +136,101 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     
     private Integer m_handlerQueueLength;
 
+    private EventListenerQueuePolicy m_defaultQueuePolicy = EventListenerQueuePolicy.DROP;
+
     /**
-     * A thread dedicated to each listener. The events meant for each listener
-     * is added to an execution queue when the 'sendNow()' is called. The
-     * ListenerThread reads events off of this queue and sends them to the
-     * appropriate listener.
+     * Queue policies that differ from the default, keyed by listener name
      */
-    private static class EventListenerExecutor {
-        /**
-         * Listener to which this thread is dedicated
-         */
-        private final EventListener m_listener;
+    private Map<String, EventListenerQueuePolicy> m_queuePolicies = new HashMap<String, EventListenerQueuePolicy>();
 
-        /**
-         * The thread that is running this runnable.
-         */
-        private final ExecutorService m_delegateThread;
+    private File m_spillDirectory;
+
+    private File m_spoolDirectory;
+
+    private int m_spoolSegmentSize = EventLogSpool.DEFAULT_SEGMENT_SIZE;
 
+    private int m_spoolMaxSegments = EventLogSpool.DEFAULT_MAX_SEGMENTS;
+
+    /**
+     * The spool between sendNow() and the event handler pool, null unless
+     * spoolDirectory is set
+     */
+    private EventLogSpool m_spool;
+
+    private Thread m_spoolDispatcher;
+
+    /**
+     * Free slots in the event handler pool queue, so that the spool
+     * dispatcher waits instead of having its logs rejected
+     */
+    private Semaphore m_spoolPermits;
+
+    /**
+     * The listeners to send each event to, as of the last time a listener
+     * was added or removed. The executors for the UEI-specific listeners are
+     * looked up once per distinct UEI and then reused, so that broadcasting
+     * an event only costs a map lookup.
+     */
+    private static class Subscriptions {
         /**
-         * Constructor
+         * Upper bound for the cache of resolved UEIs. UEIs that come in after
+         * the cache is full are resolved against the trie every time.
          */
-        EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
-            m_listener = listener;
-            // You could also do Executors.newSingleThreadExecutor() here
-            m_delegateThread = new ThreadPoolExecutor(
-                    1,
-                    1,
-                    0L,
-                    TimeUnit.MILLISECONDS,
-                    handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
-                    // This ThreadFactory will ensure that the log prefix of the calling thread
-                    // is used for all events that this listener handles. Therefore, if Notifd
-                    // registers for an event then all logs for handling that event will end up
-                    // inside notifd.log.
-                    new LogPreservingThreadFactory(m_listener.getName(), 1),
-                    new RejectedExecutionHandler() {
-                        @Override
-                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
-                        }
-                    }
-            );
+        private static final int MAX_CACHED_UEIS = 10000;
+
+        private static final EventListenerExecutor[] NO_EXECUTORS = new EventListenerExecutor[0];
+
+        private final EventListenerExecutor[] m_matchAllExecutors;
+
+        private final UeiPrefixTrie<EventListener> m_ueiListeners;
+
+        private final Map<String, EventListenerExecutor> m_executors;
+
+        private final ConcurrentMap<String, EventListenerExecutor[]> m_executorsByUei = new ConcurrentHashMap<String, EventListenerExecutor[]>();
+
+        Subscriptions() {
+            this(Collections.<EventListener>emptyList(), Collections.<String, List<EventListener>>emptyMap(), Collections.<String, EventListenerExecutor>emptyMap());
         }
 
-        public void addEvent(final Event event) {
-            m_delegateThread.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        LOG.debug("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), event.getUei(), event.getDbid(), event.getTime());
+        Subscriptions(final List<EventListener> listeners, final Map<String, List<EventListener>> ueiListeners, final Map<String, EventListenerExecutor> listenerThreads) {
+            m_executors = new HashMap<String, EventListenerExecutor>(listenerThreads);
+            m_matchAllExecutors = getExecutors(listeners);
+            m_ueiListeners = new UeiPrefixTrie<EventListener>(ueiListeners);
+        }
 
-                        // Make sure we restore our log4j logging prefix after onEvent is called
-                        Map<String,String> mdc = Logging.getCopyOfContextMap();
-                        try {
-                            m_listener.onEvent(event);
-                        } finally {
-                            Logging.setContextMap(mdc);
-                        }
-                    } catch (Throwable t) {
-                        LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
-                    }
-                }
-            });
+        public EventListenerExecutor[] getMatchAllExecutors() {
+            return m_matchAllExecutors;
         }
 
         /**
-         * Stops the execution of this listener.
+         * Returns the executors of the listeners subscribed to the UEI or to
+         * any of its "directories", see {@link UeiPrefixTrie}.
          */
-        public void stop() {
-            m_delegateThread.shutdown();
+        public EventListenerExecutor[] getExecutors(final String uei) {
+            EventListenerExecutor[] executors = m_executorsByUei.get(uei);
+            if (executors == null) {
+                executors = m_ueiListeners.size() == 0 ? NO_EXECUTORS : getExecutors(m_ueiListeners.resolve(uei));
+                if (m_executorsByUei.size() < MAX_CACHED_UEIS) {
+                    m_executorsByUei.putIfAbsent(uei, executors);
+                }
+            }
+            return executors;
+        }
+
+        private EventListenerExecutor[] getExecutors(final List<EventListener> listeners) {
+            if (listeners.isEmpty()) {
+                return NO_EXECUTORS;
+            }
+            final List<EventListenerExecutor> executors = new ArrayList<EventListenerExecutor>(listeners.size());
+            for (final EventListener listener : listeners) {
+                final EventListenerExecutor executor = m_executors.get(listener.getName());
+                if (executor == null) {
+                    LOG.warn("Listener {} has no listener thread, not sending events to it", listener.getName());
+                } else {
+                    executors.add(executor);
+                }
+            }
+            return executors.toArray(new EventListenerExecutor[executors.size()]);
         }
     }
 
@@ -236,7 +278,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     /**
      * Called by a service to send a set of events to other listeners.
      * Creates a new event handler for the event log and queues it to the
-     * event handler thread pool.
+     * event handler thread pool, or appends it to the event spool if there
+     * is one.
      *
      * @param eventLog a {@link org.opennms.netmgt.xml.event.Log} object.
      */
@@ -246,6 +289,16 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         LOG.debug("sending: {}", eventLog);
 
+        final EventLogSpool spool = m_spool;
+        if (spool != null) {
+            try {
+                spool.append(eventLog);
+                return;
+            } catch (IOException e) {
+                LOG.warn("Unable to append event log to the event spool, queueing it to the event handler pool", e);
+            }
+        }
+
         try {
             m_eventHandlerPool.execute(m_eventHandler.createRunnable(eventLog));
         } catch (RejectedExecutionException e) {
@@ -262,13 +315,15 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     public void broadcastNow(Event event) {
         LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
 
-        if (m_listeners.isEmpty()) {
+        final Subscriptions subscriptions = m_subscriptions;
+
+        if (subscriptions.getMatchAllExecutors().length == 0) {
             LOG.debug("No listeners interested in all events");
         }
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            queueEventToListener(event, listener);
+        for (final EventListenerExecutor executor : subscriptions.getMatchAllExecutors()) {
+            executor.addEvent(event);
         }
 
         if (event.getUei() == null) {
@@ -277,40 +332,19 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
 
         /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
+         * Send to listeners who are interested in this event UEI,
+         * including partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        queueEventToListener(event, listener);
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        final EventListenerExecutor[] executors = subscriptions.getExecutors(event.getUei());
+        for (final EventListenerExecutor executor : executors) {
+            executor.addEvent(event);
         }
-        
-        if (sentToListeners.isEmpty()) {
+
+        if (executors.length == 0) {
             LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
         }
     }
 
-    private void queueEventToListener(Event event, EventListener listener) {
-        m_listenerThreads.get(listener.getName()).addEvent(event);
-    }
-
     /**
      * {@inheritDoc}
      *
@@ -329,6 +363,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        updateSubscriptions();
     }
 
     /**
@@ -356,6 +392,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        updateSubscriptions();
     }
 
     /**
@@ -390,6 +428,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        updateSubscriptions();
     }
 
     /**
@@ -409,6 +449,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        updateSubscriptions();
     }
 
     /**
@@ -434,7 +476,18 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             m_listenerThreads.get(listener.getName()).stop();
 
             m_listenerThreads.remove(listener.getName());
+            unregisterListenerMBean(listener.getName());
         }
+
+        updateSubscriptions();
+    }
+
+    /**
+     * Publish the current listeners to broadcastNow(). Must be called while
+     * holding the lock on this object.
+     */
+    private void updateSubscriptions() {
+        m_subscriptions = new Subscriptions(m_listeners, m_ueiListeners, m_listenerThreads);
     }
 
     /**
@@ -446,8 +499,47 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength, getQueuePolicy(listener.getName()), getSpillDirectory());
         m_listenerThreads.put(listener.getName(), listenerThread);
+        registerListenerMBean(listenerThread);
+    }
+
+    private EventListenerQueuePolicy getQueuePolicy(String listenerName) {
+        EventListenerQueuePolicy policy = m_queuePolicies.get(listenerName);
+        return policy == null ? m_defaultQueuePolicy : policy;
+    }
+
+    private static ObjectName getListenerObjectName(String listenerName) throws MalformedObjectNameException {
+        return new ObjectName("OpenNMS:Name=Eventd,Listener=" + ObjectName.quote(listenerName));
+    }
+
+    /**
+     * Expose the queue statistics of the listener over JMX, replacing those
+     * of an earlier listener with the same name.
+     */
+    private static void registerListenerMBean(EventListenerExecutor listenerThread) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getListenerObjectName(listenerThread.getListenerName());
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(listenerThread, EventListenerQueueMBean.class), name);
+        } catch (final Exception e) {
+            LOG.warn("Unable to register queue statistics for listener {} with JMX", listenerThread.getListenerName(), e);
+        }
+    }
+
+    private static void unregisterListenerMBean(String listenerName) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getListenerObjectName(listenerName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to unregister queue statistics for listener {} from JMX", listenerName, e);
+        }
     }
 
     /**
@@ -518,6 +610,101 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             }
             
         });
+
+        if (m_spoolDirectory != null) {
+            startSpool();
+        }
+    }
+
+    private void startSpool() {
+        try {
+            m_spool = new EventLogSpool(m_spoolDirectory, m_spoolSegmentSize, m_spoolMaxSegments);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the event spool in " + m_spoolDirectory, e);
+        }
+        m_spoolPermits = new Semaphore(m_handlerQueueLength == null ? Integer.MAX_VALUE : m_handlerQueueLength);
+
+        m_spoolDispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Logging.withPrefix(Eventd.LOG4J_CATEGORY, new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatchSpool();
+                    }
+                });
+            }
+        }, "Event Spool Dispatcher");
+        m_spoolDispatcher.setDaemon(true);
+        m_spoolDispatcher.start();
+    }
+
+    /**
+     * Hands the logs in the spool to the event handler pool, in order, and
+     * marks each one as complete once it has been handled.
+     */
+    private void dispatchSpool() {
+        final EventLogSpool spool = m_spool;
+        try {
+            while (true) {
+                m_spoolPermits.acquire();
+                final EventLogSpool.Entry entry = spool.take();
+                if (entry == null) {
+                    return;
+                }
+
+                final Runnable handler = m_eventHandler.createRunnable(entry.getLog());
+                final Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        // this task is out of the queue now
+                        m_spoolPermits.release();
+                        try {
+                            handler.run();
+                        } finally {
+                            spool.complete(entry.getPosition());
+                        }
+                    }
+                };
+
+                while (true) {
+                    try {
+                        m_eventHandlerPool.execute(task);
+                        break;
+                    } catch (RejectedExecutionException e) {
+                        if (m_eventHandlerPool.isShutdown()) {
+                            // the log is handed out again the next time the spool is opened
+                            LOG.warn("Unable to queue spooled event log to the event handler pool", e);
+                            return;
+                        }
+                        // logs that could not be spooled went straight to the pool and filled it up
+                        Thread.sleep(10);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("Event spool dispatcher interrupted");
+        }
+    }
+
+    /**
+     * <p>destroy</p>
+     *
+     * Stops the spool dispatcher and closes the spool. Event logs that have
+     * not been handled yet stay in the spool.
+     *
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void destroy() throws Exception {
+        final EventLogSpool spool = m_spool;
+        if (spool == null) {
+            return;
+        }
+        m_spool = null;
+        m_spoolDispatcher.interrupt();
+        m_spoolDispatcher.join();
+        spool.close();
     }
 
     /**
@@ -576,4 +763,96 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.state(m_eventHandlerPool == null, "handlerQueueLength property cannot be set after afterPropertiesSet() is called");
         m_handlerQueueLength = size;
     }
+
+    public EventListenerQueuePolicy getDefaultQueuePolicy() {
+        return m_defaultQueuePolicy;
+    }
+
+    /**
+     * <p>setDefaultQueuePolicy</p>
+     *
+     * @param policy what to do with events for listeners whose queue is full
+     *            and that have no policy of their own, {@link EventListenerQueuePolicy#DROP}
+     *            unless set
+     */
+    public void setDefaultQueuePolicy(EventListenerQueuePolicy policy) {
+        Assert.notNull(policy, "policy argument cannot be null");
+        m_defaultQueuePolicy = policy;
+    }
+
+    public Map<String, EventListenerQueuePolicy> getQueuePolicies() {
+        return Collections.unmodifiableMap(m_queuePolicies);
+    }
+
+    /**
+     * <p>setQueuePolicies</p>
+     *
+     * Only applies to listeners added after it is called.
+     *
+     * @param policies the queue policy for each listener name that should not use the default
+     */
+    public synchronized void setQueuePolicies(Map<String, EventListenerQueuePolicy> policies) {
+        m_queuePolicies = new HashMap<String, EventListenerQueuePolicy>(policies);
+    }
+
+    /**
+     * <p>getSpillDirectory</p>
+     *
+     * @return the directory for the files of listeners with the
+     *         {@link EventListenerQueuePolicy#SPILL} policy, by default
+     *         <code>${opennms.home}/share/eventd/spill</code>
+     */
+    public File getSpillDirectory() {
+        if (m_spillDirectory == null) {
+            return new File(System.getProperty("opennms.home", System.getProperty("java.io.tmpdir")), "share" + File.separator + "eventd" + File.separator + "spill");
+        }
+        return m_spillDirectory;
+    }
+
+    public void setSpillDirectory(File spillDirectory) {
+        m_spillDirectory = spillDirectory;
+    }
+
+    public File getSpoolDirectory() {
+        return m_spoolDirectory;
+    }
+
+    /**
+     * <p>setSpoolDirectory</p>
+     *
+     * Puts an {@link EventLogSpool} in this directory between sendNow() and
+     * the event handler pool, so that bursts are kept on disk instead of
+     * being rejected by a full pool queue, and event logs that were not
+     * handled are replayed after a restart. No spool is used unless set.
+     *
+     * @param spoolDirectory a {@link java.io.File} object.
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        Assert.state(m_eventHandlerPool == null, "spoolDirectory property cannot be set after afterPropertiesSet() is called");
+        m_spoolDirectory = spoolDirectory;
+    }
+
+    public int getSpoolSegmentSize() {
+        return m_spoolSegmentSize;
+    }
+
+    public void setSpoolSegmentSize(int spoolSegmentSize) {
+        Assert.state(m_eventHandlerPool == null, "spoolSegmentSize property cannot be set after afterPropertiesSet() is called");
+        m_spoolSegmentSize = spoolSegmentSize;
+    }
+
+    public int getSpoolMaxSegments() {
+        return m_spoolMaxSegments;
+    }
+
+    /**
+     * <p>setSpoolMaxSegments</p>
+     *
+     * @param spoolMaxSegments the number of segment files after which event
+     *            logs go straight to the event handler pool again
+     */
+    public void setSpoolMaxSegments(int spoolMaxSegments) {
+        Assert.state(m_eventHandlerPool == null, "spoolMaxSegments property cannot be set after afterPropertiesSet() is called");
+        m_spoolMaxSegments = spoolMaxSegments;
+    }
 }
@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.LatencyHistogram;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread dedicated to each listener. The events meant for each listener
+ * is added to an execution queue when the 'sendNow()' is called. The
+ * ListenerThread reads events off of this queue and sends them to the
+ * appropriate listener.
+ *
+ * What happens to an event when the queue is full is decided by the
+ * {@link EventListenerQueuePolicy} of the listener.
+ */
+final class EventListenerExecutor implements EventListenerQueueMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventListenerExecutor.class);
+
+    /**
+     * Listener to which this thread is dedicated
+     */
+    private final EventListener m_listener;
+
+    private final EventListenerQueuePolicy m_policy;
+
+    private final BlockingQueue<Runnable> m_queue;
+
+    /**
+     * The thread that is running this runnable.
+     */
+    private final ThreadPoolExecutor m_delegateThread;
+
+    /**
+     * Only used with {@link EventListenerQueuePolicy#SPILL}, all access
+     * synchronized on it.
+     */
+    private final EventSpillFile m_spill;
+
+    private final AtomicLong m_queued = new AtomicLong();
+
+    private final AtomicLong m_delivered = new AtomicLong();
+
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    private final AtomicLong m_coalesced = new AtomicLong();
+
+    private final AtomicLong m_spilled = new AtomicLong();
+
+    private final AtomicLong m_blocked = new AtomicLong();
+
+    /**
+     * Inclusive upper bounds of the buckets of {@link #getHandlerTimeHistogram()};
+     * a last bucket holds everything above the last bound.
+     */
+    private static final long[] HANDLER_TIME_BOUNDS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private final LatencyHistogram m_handlerTime = new LatencyHistogram();
+
+    /**
+     * Constructor
+     *
+     * @param spillDirectory where the spill file is created if the policy is
+     *            {@link EventListenerQueuePolicy#SPILL}
+     */
+    EventListenerExecutor(final EventListener listener, final Integer handlerQueueLength, final EventListenerQueuePolicy policy, final File spillDirectory) {
+        m_listener = listener;
+        m_queue = handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength);
+
+        EventSpillFile spill = null;
+        if (policy == EventListenerQueuePolicy.SPILL) {
+            final File file = new File(spillDirectory, m_listener.getName().replaceAll("[^A-Za-z0-9._-]", "_") + ".spill");
+            try {
+                spill = new EventSpillFile(file);
+            } catch (final IOException e) {
+                LOG.warn("Unable to create spill file {} for listener {}, dropping events when its queue is full", file, m_listener.getName(), e);
+            }
+        }
+        m_spill = spill;
+        m_policy = (policy == EventListenerQueuePolicy.SPILL && spill == null) ? EventListenerQueuePolicy.DROP : policy;
+
+        // You could also do Executors.newSingleThreadExecutor() here
+        m_delegateThread = new ThreadPoolExecutor(
+                1,
+                1,
+                0L,
+                TimeUnit.MILLISECONDS,
+                m_queue,
+                // This ThreadFactory will ensure that the log prefix of the calling thread
+                // is used for all events that this listener handles. Therefore, if Notifd
+                // registers for an event then all logs for handling that event will end up
+                // inside notifd.log.
+                new LogPreservingThreadFactory(m_listener.getName(), 1),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        queueFull((ListenerTask)r, executor);
+                    }
+                }
+        );
+    }
+
+    public void addEvent(final Event event) {
+        m_queued.incrementAndGet();
+
+        if (m_spill == null) {
+            m_delegateThread.execute(new ListenerTask(event));
+            return;
+        }
+
+        synchronized (m_spill) {
+            // once events are spilled, later events follow them so that the order is kept
+            if (!m_spill.isEmpty() || m_queue.remainingCapacity() == 0) {
+                spill(event);
+            } else {
+                m_delegateThread.execute(new ListenerTask(event));
+            }
+        }
+    }
+
+    private void queueFull(final ListenerTask task, final ExecutorService executor) {
+        if (executor.isShutdown()) {
+            LOG.debug("Listener {} has been stopped, discarding event {}", m_listener.getName(), task.getEvent().getUei());
+            m_dropped.incrementAndGet();
+            return;
+        }
+
+        switch (m_policy) {
+        case BLOCK:
+            block(task);
+            break;
+        case DROP_OLDEST:
+            final Runnable oldest = m_queue.poll();
+            if (oldest != null) {
+                LOG.warn("Listener {}'s event queue is full, discarding oldest event {}", m_listener.getName(), ((ListenerTask)oldest).getEvent().getUei());
+                m_dropped.incrementAndGet();
+            }
+            executor.execute(task);
+            break;
+        case COALESCE:
+            if (coalesce(task)) {
+                executor.execute(task);
+            } else {
+                block(task);
+            }
+            break;
+        case SPILL:
+            // only reached if the queue filled up between the check in addEvent() and execute()
+            synchronized (m_spill) {
+                spill(task.getEvent());
+            }
+            break;
+        default:
+            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+            m_dropped.incrementAndGet();
+            break;
+        }
+    }
+
+    private void block(final ListenerTask task) {
+        m_blocked.incrementAndGet();
+        LOG.debug("Listener {}'s event queue is full, waiting for room", m_listener.getName());
+        try {
+            m_queue.put(task);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for room in listener {}'s event queue, discarding event {}", m_listener.getName(), task.getEvent().getUei());
+            m_dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes a queued event with the same reduction key as the task's event.
+     *
+     * @return true if an event was removed
+     */
+    private boolean coalesce(final ListenerTask task) {
+        final String reductionKey = getReductionKey(task.getEvent());
+        if (reductionKey == null) {
+            return false;
+        }
+
+        for (final Runnable queued : m_queue) {
+            if (reductionKey.equals(getReductionKey(((ListenerTask)queued).getEvent())) && m_queue.remove(queued)) {
+                LOG.debug("Listener {}'s event queue is full, replacing queued event with reduction key {}", m_listener.getName(), reductionKey);
+                m_coalesced.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getReductionKey(final Event event) {
+        return event.getAlarmData() == null ? null : event.getAlarmData().getReductionKey();
+    }
+
+    /**
+     * Must be called while synchronized on m_spill.
+     */
+    private void spill(final Event event) {
+        try {
+            m_spill.append(event);
+            m_spilled.incrementAndGet();
+        } catch (final IOException e) {
+            LOG.warn("Unable to spill event {} for listener {} to {}, discarding it", event.getUei(), m_listener.getName(), m_spill.getFile(), e);
+            m_dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Moves spilled events back into the queue while it has room.
+     */
+    private void refill() {
+        synchronized (m_spill) {
+            while (!m_spill.isEmpty() && m_queue.remainingCapacity() > 0 && !m_delegateThread.isShutdown()) {
+                try {
+                    m_delegateThread.execute(new ListenerTask(m_spill.take()));
+                } catch (final IOException e) {
+                    LOG.warn("Unable to read spilled events for listener {} from {}, discarding {} events", m_listener.getName(), m_spill.getFile(), m_spill.size(), e);
+                    m_dropped.addAndGet(m_spill.size());
+                    try {
+                        m_spill.clear();
+                    } catch (final IOException e2) {
+                        LOG.warn("Unable to clear spill file {}", m_spill.getFile(), e2);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the execution of this listener.
+     */
+    public void stop() {
+        m_delegateThread.shutdown();
+        if (m_spill != null) {
+            synchronized (m_spill) {
+                if (!m_spill.isEmpty()) {
+                    LOG.warn("Listener {} stopped with {} spilled events, discarding them", m_listener.getName(), m_spill.size());
+                    m_dropped.addAndGet(m_spill.size());
+                }
+                try {
+                    m_spill.close();
+                } catch (final IOException e) {
+                    LOG.warn("Unable to remove spill file {}", m_spill.getFile(), e);
+                }
+            }
+        }
+    }
+
+    private class ListenerTask implements Runnable {
+        private final Event m_event;
+
+        ListenerTask(final Event event) {
+            m_event = event;
+        }
+
+        public Event getEvent() {
+            return m_event;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.currentTimeMillis();
+            try {
+                LOG.debug("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), m_event.getUei(), m_event.getDbid(), m_event.getTime());
+
+                // Make sure we restore our log4j logging prefix after onEvent is called
+                Map<String,String> mdc = Logging.getCopyOfContextMap();
+                try {
+                    m_listener.onEvent(m_event);
+                } finally {
+                    Logging.setContextMap(mdc);
+                }
+            } catch (Throwable t) {
+                LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+            } finally {
+                m_handlerTime.record(System.currentTimeMillis() - start);
+                m_delivered.incrementAndGet();
+            }
+
+            if (m_spill != null) {
+                refill();
+            }
+        }
+    }
+
+    @Override
+    public String getListenerName() {
+        return m_listener.getName();
+    }
+
+    @Override
+    public String getQueuePolicy() {
+        return m_policy.name();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return m_queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return m_queue.size() + m_queue.remainingCapacity();
+    }
+
+    @Override
+    public long getEventsQueued() {
+        return m_queued.get();
+    }
+
+    @Override
+    public long getEventsDelivered() {
+        return m_delivered.get();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return m_dropped.get();
+    }
+
+    @Override
+    public long getEventsCoalesced() {
+        return m_coalesced.get();
+    }
+
+    @Override
+    public long getEventsSpilled() {
+        return m_spilled.get();
+    }
+
+    @Override
+    public int getSpilledEventsWaiting() {
+        if (m_spill == null) {
+            return 0;
+        }
+        synchronized (m_spill) {
+            return m_spill.size();
+        }
+    }
+
+    @Override
+    public long getEventsBlocked() {
+        return m_blocked.get();
+    }
+
+    @Override
+    public double getHandlerTimeMean() {
+        return m_handlerTime.getMean();
+    }
+
+    @Override
+    public long getHandlerTimeMax() {
+        return m_handlerTime.getMax();
+    }
+
+    @Override
+    public long getHandlerTime50thPercentile() {
+        return m_handlerTime.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getHandlerTime95thPercentile() {
+        return m_handlerTime.getValueAtPercentile(95);
+    }
+
+    @Override
+    public long getHandlerTime99thPercentile() {
+        return m_handlerTime.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long[] getHandlerTimeHistogram() {
+        final long[] counts = new long[HANDLER_TIME_BOUNDS.length + 1];
+        long below = 0;
+        for (int i = 0; i < HANDLER_TIME_BOUNDS.length; i++) {
+            final long atOrBelow = m_handlerTime.getCountAtOrBelow(HANDLER_TIME_BOUNDS[i]);
+            counts[i] = atOrBelow - below;
+            below = atOrBelow;
+        }
+        counts[HANDLER_TIME_BOUNDS.length] = m_handlerTime.getCountAtOrBelow(Long.MAX_VALUE) - below;
+        return counts;
+    }
+
+    @Override
+    public long[] getHandlerTimeHistogramBounds() {
+        return HANDLER_TIME_BOUNDS.clone();
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+/**
+ * The queue of events waiting to be handled by one event listener,
+ * registered with JMX as <code>OpenNMS:Name=Eventd,Listener=&lt;listener name&gt;</code>.
+ *
+ * The event counts are counters since the listener was added; collect them
+ * as counters to get enqueue, dequeue and drop rates.
+ */
+public interface EventListenerQueueMBean {
+    /**
+     * @return the name of the listener
+     */
+    String getListenerName();
+
+    /**
+     * @return what happens to events when the queue is full, see {@link EventListenerQueuePolicy}
+     */
+    String getQueuePolicy();
+
+    /**
+     * @return the number of events waiting in memory
+     */
+    int getQueueSize();
+
+    /**
+     * @return the maximum number of events waiting in memory
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return the number of events broadcast to the listener
+     */
+    long getEventsQueued();
+
+    /**
+     * @return the number of events handed to the listener
+     */
+    long getEventsDelivered();
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    long getEventsDropped();
+
+    /**
+     * @return the number of queued events replaced by a newer event with the same reduction key
+     */
+    long getEventsCoalesced();
+
+    /**
+     * @return the number of events written to the spill file
+     */
+    long getEventsSpilled();
+
+    /**
+     * @return the number of events currently waiting in the spill file
+     */
+    int getSpilledEventsWaiting();
+
+    /**
+     * @return the number of times the broadcasting thread had to wait for room in the queue
+     */
+    long getEventsBlocked();
+
+    /**
+     * @return the mean time the listener took to handle an event, in milliseconds
+     */
+    double getHandlerTimeMean();
+
+    /**
+     * @return the longest time the listener took to handle an event, in milliseconds
+     */
+    long getHandlerTimeMax();
+
+    /**
+     * @return the median handler time, in milliseconds, within 1/16 of its value
+     */
+    long getHandlerTime50thPercentile();
+
+    /**
+     * @return the 95th percentile handler time, in milliseconds, within 1/16 of its value
+     */
+    long getHandlerTime95thPercentile();
+
+    /**
+     * @return the 99th percentile handler time, in milliseconds, within 1/16 of its value
+     */
+    long getHandlerTime99thPercentile();
+
+    /**
+     * @return the number of events per handler time bucket, see {@link #getHandlerTimeHistogramBounds()};
+     *         counts above 31ms are within 1/16 of the bounds
+     */
+    long[] getHandlerTimeHistogram();
+
+    /**
+     * @return the inclusive upper bound of each histogram bucket in milliseconds; the last bucket has no upper bound
+     */
+    long[] getHandlerTimeHistogramBounds();
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+/**
+ * What {@link EventIpcManagerDefaultImpl} does with an event for a listener
+ * whose event queue is full.
+ */
+public enum EventListenerQueuePolicy {
+    /**
+     * Discard the new event. This is what eventd has always done.
+     */
+    DROP,
+
+    /**
+     * Make the eventd handler thread that broadcasts the event wait until the
+     * listener has room for it, which slows down event processing for all
+     * listeners instead of losing events.
+     */
+    BLOCK,
+
+    /**
+     * Discard the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard a queued event with the same alarm reduction key as the new
+     * event, which is superseded by it, and queue the new event at the end.
+     * If no queued event has the same reduction key the broadcasting thread
+     * waits as with {@link #BLOCK}.
+     */
+    COALESCE,
+
+    /**
+     * Write the new event, and all events after it until the listener has
+     * caught up, to a file and feed them back to the listener in order as
+     * its queue drains. The file only absorbs overflow and is removed when
+     * the listener is stopped.
+     */
+    SPILL
+}
@@ -0,0 +1,496 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only spool of event logs on disk, made of memory-mapped segment
+ * files and a read cursor.
+ *
+ * Each record is the length of the serialized {@link Log}, a CRC32 of it and
+ * the serialized log. Positions are offsets in one long address space where
+ * each segment file starts at a multiple of the segment size; the segment
+ * file is named after its first position. A length of -1 means the rest of
+ * the segment is unused and the next record is in the next segment, a length
+ * of 0 (never written) marks the end of the spool.
+ *
+ * The cursor file holds the position of the oldest record that has been
+ * taken but not completed, or of the next record to take if there is none.
+ * When the spool is opened again everything from the cursor on is handed
+ * out again, so a log that was being processed when eventd stopped may be
+ * processed twice. Segments are deleted once the cursor has moved past them.
+ *
+ * Records are written to the page cache when they are appended, so they
+ * survive eventd being killed; they only survive an operating system crash
+ * once the kernel has written them out.
+ */
+public final class EventLogSpool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventLogSpool.class);
+
+    /** Constant <code>DEFAULT_SEGMENT_SIZE=64 MB</code> */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** Constant <code>DEFAULT_MAX_SEGMENTS=16</code> */
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final String CURSOR_FILE = "cursor";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int NEXT_SEGMENT = -1;
+
+    private final File m_directory;
+
+    private final int m_segmentSize;
+
+    private final int m_maxSegments;
+
+    private final TreeMap<Long, Segment> m_segments = new TreeMap<Long, Segment>();
+
+    private final RandomAccessFile m_cursorFile;
+
+    private final MappedByteBuffer m_cursor;
+
+    /**
+     * Positions of the records that have been taken but not completed
+     */
+    private final TreeSet<Long> m_outstanding = new TreeSet<Long>();
+
+    private long m_readPosition;
+
+    private long m_writePosition;
+
+    private int m_waiting = 0;
+
+    private boolean m_closed = false;
+
+    /**
+     * A record taken from the spool.
+     */
+    public static final class Entry {
+        private final long m_position;
+        private final Log m_log;
+
+        private Entry(final long position, final Log log) {
+            m_position = position;
+            m_log = log;
+        }
+
+        public long getPosition() {
+            return m_position;
+        }
+
+        public Log getLog() {
+            return m_log;
+        }
+    }
+
+    private static final class Segment {
+        private final long m_base;
+        private final File m_file;
+        private final RandomAccessFile m_raf;
+        private final MappedByteBuffer m_buffer;
+
+        private Segment(final long base, final File file, final int size) throws IOException {
+            m_base = base;
+            m_file = file;
+            m_raf = new RandomAccessFile(file, "rw");
+            m_buffer = m_raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        private void close() throws IOException {
+            m_buffer.force();
+            m_raf.close();
+        }
+    }
+
+    /**
+     * Opens the spool in the directory, recovering the records that were not
+     * completed the last time it was open.
+     *
+     * @param directory where the segment and cursor files are kept
+     * @param segmentSize the size of each segment file in bytes
+     * @param maxSegments the number of segment files after which appending fails
+     * @throws IOException if the spool cannot be opened
+     */
+    public EventLogSpool(final File directory, final int segmentSize, final int maxSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be greater than " + HEADER_SIZE);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be at least 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + directory);
+        }
+        m_directory = directory;
+        m_segmentSize = segmentSize;
+        m_maxSegments = maxSegments;
+
+        m_cursorFile = new RandomAccessFile(new File(directory, CURSOR_FILE), "rw");
+        m_cursor = m_cursorFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8);
+
+        final File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        for (final File file : files) {
+            final String name = file.getName();
+            final long base;
+            try {
+                base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (final NumberFormatException e) {
+                LOG.warn("Ignoring unexpected file {} in the event spool", file);
+                continue;
+            }
+            if (file.length() != segmentSize || base % segmentSize != 0) {
+                throw new IOException("Segment " + file + " does not match the segment size " + segmentSize + "; remove the spool directory to change it");
+            }
+            m_segments.put(base, new Segment(base, file, segmentSize));
+        }
+
+        m_readPosition = m_cursor.getLong(0);
+        if (m_segments.isEmpty()) {
+            m_readPosition = 0;
+        } else if (m_readPosition < m_segments.firstKey() || m_readPosition >= m_segments.lastKey() + segmentSize) {
+            LOG.warn("Event spool cursor {} is outside of the spool segments, starting at the oldest segment", m_readPosition);
+            m_readPosition = m_segments.firstKey();
+        }
+        m_writePosition = recover();
+        deleteSegmentsBefore(m_readPosition);
+        writeCursor(m_readPosition);
+
+        if (m_waiting > 0) {
+            LOG.info("Recovered {} unprocessed event logs from the event spool in {}", m_waiting, directory);
+        }
+    }
+
+    /**
+     * Counts the valid records from the read position on and returns the
+     * position after the last one.
+     */
+    private long recover() {
+        long position = m_readPosition;
+        while (true) {
+            final Segment segment = m_segments.get(base(position));
+            if (segment == null) {
+                return position;
+            }
+            final int offset = (int)(position - segment.m_base);
+            if (m_segmentSize - offset < HEADER_SIZE) {
+                if (!m_segments.containsKey(segment.m_base + m_segmentSize)) {
+                    return position;
+                }
+                position = segment.m_base + m_segmentSize;
+                continue;
+            }
+
+            final int length = segment.m_buffer.getInt(offset);
+            if (length == NEXT_SEGMENT && m_segments.containsKey(segment.m_base + m_segmentSize)) {
+                position = segment.m_base + m_segmentSize;
+                continue;
+            }
+            if (length <= 0 || length > m_segmentSize - offset - HEADER_SIZE || crc(segment.m_buffer, offset + HEADER_SIZE, length) != segment.m_buffer.getInt(offset + 4)) {
+                if (length != 0) {
+                    LOG.warn("Event spool record at {} is incomplete, discarding it and anything after it", position);
+                }
+                // clear the partial record so that appends after it are not mistaken for one
+                segment.m_buffer.putInt(offset, 0);
+                return position;
+            }
+            m_waiting++;
+            position += HEADER_SIZE + length;
+        }
+    }
+
+    private long base(final long position) {
+        return position - (position % m_segmentSize);
+    }
+
+    private static int crc(final ByteBuffer buffer, final int offset, final int length) {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer data = buffer.duplicate();
+        data.position(offset);
+        data.limit(offset + length);
+        final byte[] bytes = new byte[length];
+        data.get(bytes);
+        crc.update(bytes);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Appends the log to the spool.
+     *
+     * @param log the event log
+     * @return the position of the record
+     * @throws IOException if the log is too big for a segment, the spool is
+     *             full or closed, or it could not be written
+     */
+    public long append(final Log log) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(log);
+        out.close();
+        final byte[] data = bytes.toByteArray();
+
+        if (data.length > m_segmentSize - HEADER_SIZE) {
+            throw new IOException("Event log of " + data.length + " bytes does not fit in an event spool segment of " + m_segmentSize + " bytes");
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+
+        synchronized (this) {
+            return write(data, (int)crc.getValue());
+        }
+    }
+
+    private long write(final byte[] data, final int crc) throws IOException {
+        if (m_closed) {
+            throw new IOException("Event spool " + m_directory + " is closed");
+        }
+
+        Segment segment = getSegmentForWrite();
+        int offset = (int)(m_writePosition - segment.m_base);
+        if (m_segmentSize - offset < HEADER_SIZE + data.length) {
+            final long next = segment.m_base + m_segmentSize;
+            if (m_segments.size() >= m_maxSegments) {
+                throw new IOException("Event spool " + m_directory + " is full (" + m_maxSegments + " segments)");
+            }
+            // map the next segment before marking the jump to it
+            final Segment nextSegment = createSegment(next);
+            if (m_segmentSize - offset >= HEADER_SIZE) {
+                segment.m_buffer.putInt(offset, NEXT_SEGMENT);
+            }
+            segment = nextSegment;
+            offset = 0;
+            m_writePosition = next;
+        }
+
+        final long position = m_writePosition;
+        final ByteBuffer buffer = segment.m_buffer.duplicate();
+        buffer.position(offset + 4);
+        buffer.putInt(crc);
+        buffer.put(data);
+        // the length goes last, a record is only visible once it is complete
+        segment.m_buffer.putInt(offset, data.length);
+
+        m_writePosition = position + HEADER_SIZE + data.length;
+        m_waiting++;
+        notifyAll();
+        return position;
+    }
+
+    private Segment getSegmentForWrite() throws IOException {
+        final long base = base(m_writePosition);
+        final Segment segment = m_segments.get(base);
+        if (segment != null) {
+            return segment;
+        }
+        if (m_segments.size() >= m_maxSegments) {
+            throw new IOException("Event spool " + m_directory + " is full (" + m_maxSegments + " segments)");
+        }
+        return createSegment(base);
+    }
+
+    private Segment createSegment(final long base) throws IOException {
+        final File file = new File(m_directory, String.format("%020d%s", base, SEGMENT_SUFFIX));
+        final Segment segment = new Segment(base, file, m_segmentSize);
+        m_segments.put(base, segment);
+        return segment;
+    }
+
+    /**
+     * Waits for the next record and returns it. It stays in the spool until
+     * it is passed to {@link #complete(long)}.
+     *
+     * @return the next record, or null if the spool has been closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Entry take() throws InterruptedException {
+        while (true) {
+            final long position;
+            final byte[] data;
+            synchronized (this) {
+                while (!m_closed && m_readPosition == m_writePosition) {
+                    wait();
+                }
+                if (m_closed) {
+                    return null;
+                }
+
+                final Segment segment = m_segments.get(base(m_readPosition));
+                final int offset = (int)(m_readPosition - segment.m_base);
+                final int length = m_segmentSize - offset < HEADER_SIZE ? NEXT_SEGMENT : segment.m_buffer.getInt(offset);
+                if (length == NEXT_SEGMENT) {
+                    m_readPosition = segment.m_base + m_segmentSize;
+                    if (m_outstanding.isEmpty()) {
+                        advanceCursor();
+                    }
+                    continue;
+                }
+
+                position = m_readPosition;
+                data = new byte[length];
+                final ByteBuffer buffer = segment.m_buffer.duplicate();
+                buffer.position(offset + HEADER_SIZE);
+                buffer.get(data);
+                m_readPosition = position + HEADER_SIZE + length;
+                m_waiting--;
+                m_outstanding.add(position);
+            }
+
+            // deserialize outside of the lock so that appends are not held up
+            try {
+                final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+                try {
+                    return new Entry(position, (Log)in.readObject());
+                } finally {
+                    in.close();
+                }
+            } catch (final Exception e) {
+                LOG.warn("Unable to read the event log at position {} of the event spool, skipping it", position, e);
+                complete(position);
+            }
+        }
+    }
+
+    /**
+     * Marks a record returned by {@link #take()} as processed.
+     *
+     * @param position the position of the record
+     */
+    public synchronized void complete(final long position) {
+        if (!m_outstanding.remove(position)) {
+            return;
+        }
+        advanceCursor();
+    }
+
+    private void advanceCursor() {
+        if (m_closed) {
+            return;
+        }
+        final long cursor = m_outstanding.isEmpty() ? m_readPosition : m_outstanding.first();
+        writeCursor(cursor);
+        deleteSegmentsBefore(cursor);
+    }
+
+    private void writeCursor(final long cursor) {
+        m_cursor.putLong(0, cursor);
+    }
+
+    /**
+     * Deletes the segments that end at or before the given position, except
+     * the one being written.
+     */
+    private void deleteSegmentsBefore(final long position) {
+        final long keep = Math.min(base(position), base(m_writePosition));
+        while (!m_segments.isEmpty() && m_segments.firstKey() < keep) {
+            final Map.Entry<Long, Segment> first = m_segments.pollFirstEntry();
+            final Segment segment = first.getValue();
+            try {
+                segment.close();
+            } catch (final IOException e) {
+                LOG.warn("Unable to close event spool segment {}", segment.m_file, e);
+            }
+            if (!segment.m_file.delete()) {
+                LOG.warn("Unable to delete event spool segment {}", segment.m_file);
+            }
+        }
+    }
+
+    /**
+     * @return the number of records that have not been taken yet
+     */
+    public synchronized int getWaiting() {
+        return m_waiting;
+    }
+
+    /**
+     * @return the number of records that have been taken but not completed
+     */
+    public synchronized int getOutstanding() {
+        return m_outstanding.size();
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public synchronized int getSegmentCount() {
+        return m_segments.size();
+    }
+
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    /**
+     * Writes everything out and closes the files. Records that were not
+     * completed are handed out again when the spool is opened next.
+     */
+    public synchronized void close() throws IOException {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+        notifyAll();
+
+        for (final Segment segment : m_segments.values()) {
+            segment.close();
+        }
+        m_segments.clear();
+        m_cursor.force();
+        m_cursorFile.close();
+    }
+}
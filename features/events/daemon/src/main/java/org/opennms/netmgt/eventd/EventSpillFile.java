@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * A first-in first-out file of serialized events. Records are appended as a
+ * length followed by the serialized event and read back from a separate
+ * read position; the file is truncated whenever it has been read to the end.
+ *
+ * Not thread safe, callers synchronize on the instance.
+ */
+final class EventSpillFile {
+
+    private final File m_file;
+
+    private RandomAccessFile m_raf;
+
+    private long m_readPosition = 0;
+
+    private long m_writePosition = 0;
+
+    private int m_size = 0;
+
+    /**
+     * Opens the file, discarding anything left in it.
+     *
+     * @param file the file to spill to
+     * @throws IOException if the file cannot be created
+     */
+    EventSpillFile(final File file) throws IOException {
+        m_file = file;
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spill directory " + directory);
+        }
+        m_raf = new RandomAccessFile(file, "rw");
+        m_raf.setLength(0);
+    }
+
+    public File getFile() {
+        return m_file;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public void append(final Event event) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(event);
+        out.close();
+
+        m_raf.seek(m_writePosition);
+        m_raf.writeInt(bytes.size());
+        m_raf.write(bytes.toByteArray());
+        m_writePosition = m_raf.getFilePointer();
+        m_size++;
+    }
+
+    /**
+     * @return the oldest event in the file, or null if it is empty
+     */
+    public Event take() throws IOException {
+        if (m_size == 0) {
+            return null;
+        }
+
+        m_raf.seek(m_readPosition);
+        final byte[] bytes = new byte[m_raf.readInt()];
+        m_raf.readFully(bytes);
+        m_readPosition = m_raf.getFilePointer();
+        m_size--;
+
+        if (m_size == 0) {
+            clear();
+        }
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (Event)in.readObject();
+        } catch (final ClassNotFoundException e) {
+            throw new IOException("Unable to read event from " + m_file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Discards all events in the file.
+     */
+    public void clear() throws IOException {
+        m_raf.setLength(0);
+        m_readPosition = 0;
+        m_writePosition = 0;
+        m_size = 0;
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    public void close() throws IOException {
+        try {
+            m_raf.close();
+        } finally {
+            if (!m_file.delete() && m_file.exists()) {
+                throw new IOException("Unable to delete spill file " + m_file);
+            }
+        }
+    }
+}
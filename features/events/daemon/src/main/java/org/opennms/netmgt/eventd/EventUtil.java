@@ -50,6 +50,8 @@ public interface EventUtil {
 	
 	String expandParms(String inp, Event event, Map<String, Map<String, String>> decode);
 
+	String expandParms(ExpansionTemplate template, Event event, Map<String, Map<String, String>> decode);
+
 	String getNamedParmValue(String string, Event event);
 
 	void expandMapValues(Map<String, String> parmMap, Event event);
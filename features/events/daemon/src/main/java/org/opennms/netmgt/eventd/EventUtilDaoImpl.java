@@ -205,6 +205,12 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
         return super.expandParms(inp, event, decode);
     }
 
+    @Override
+    @Transactional(readOnly=true)
+    public String expandParms(ExpansionTemplate template, Event event, Map<String, Map<String, String>> decode) {
+        return super.expandParms(template, event, decode);
+    }
+
     /**
      * Retrieves the property with the given name on the bean.
      *
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * A string with %token% parameters, split once into literal and token
+ * segments so that it can be expanded for many events without parsing it
+ * again.
+ *
+ * The split follows the rules {@link AbstractEventUtil#expandParms(String, Event, Map)}
+ * has always used: a pair of percent signs with whitespace between them is
+ * not a token, and an unmatched percent sign is copied as-is.
+ *
+ * The templates of the eventconf strings are compiled once for each event
+ * tree, see {@link EventConfTemplates}. Any other string is compiled every
+ * time it is expanded.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+public final class ExpansionTemplate {
+
+    /**
+     * The buffer is only kept per thread if it did not grow beyond this.
+     */
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private static final Pattern WHITESPACE = Pattern.compile(".*\\s.*");
+
+    private static final char PERCENT = '%';
+
+    private static final ThreadLocal<StringBuilder> s_buffer = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private final String m_source;
+
+    /**
+     * Literal segments; m_literals[i] comes before m_tokens[i] and the last
+     * literal comes after the last token.
+     */
+    private final String[] m_literals;
+
+    private final String[] m_tokens;
+
+    /**
+     * Index of the first occurrence of the same token, so that a token used
+     * more than once (e.g. %nodelabel% in a logmsg) is only resolved once.
+     */
+    private final int[] m_firstOccurrence;
+
+    private ExpansionTemplate(final String source, final List<String> literals, final List<String> tokens) {
+        m_source = source;
+        m_literals = literals.toArray(new String[literals.size()]);
+        m_tokens = tokens.toArray(new String[tokens.size()]);
+        m_firstOccurrence = new int[m_tokens.length];
+        for (int i = 0; i < m_tokens.length; i++) {
+            m_firstOccurrence[i] = tokens.indexOf(m_tokens[i]);
+        }
+    }
+
+    /**
+     * Splits the string into literal and token segments.
+     *
+     * @param source a {@link java.lang.String} object, must not be null.
+     * @return the compiled template
+     */
+    public static ExpansionTemplate compile(final String source) {
+        final List<String> literals = new ArrayList<String>();
+        final List<String> tokens = new ArrayList<String>();
+        final StringBuilder literal = new StringBuilder();
+
+        final int length = source.length();
+        int pos = 0;
+        while (true) {
+            final int start = source.indexOf(PERCENT, pos);
+            if (start == -1) {
+                literal.append(source, pos, length);
+                break;
+            }
+            literal.append(source, pos, start);
+
+            final int end = source.indexOf(PERCENT, start + 1);
+            if (end == -1) {
+                literal.append(source, start, length);
+                break;
+            }
+
+            final String token = source.substring(start + 1, end);
+            // If there's any whitespace in between the % signs, then do not try to
+            // expand it with a parameter value, the closing % may open the next token
+            if (WHITESPACE.matcher(token).matches()) {
+                literal.append(PERCENT);
+                pos = start + 1;
+                continue;
+            }
+
+            literals.add(literal.toString());
+            literal.setLength(0);
+            tokens.add(token);
+            pos = end + 1;
+        }
+        literals.add(literal.toString());
+
+        return new ExpansionTemplate(source, literals, tokens);
+    }
+
+    public String getSource() {
+        return m_source;
+    }
+
+    public boolean hasTokens() {
+        return m_tokens.length > 0;
+    }
+
+    /**
+     * Expands the template for the given event.
+     *
+     * @param eventUtil resolves the value of each token, see {@link EventUtil#getValueOfParm(String, Event)}
+     * @param event the event
+     * @param decode the varbind decode for this event, may be null
+     * @return the expanded string, or null if it is identical to the source
+     */
+    public String expand(final EventUtil eventUtil, final Event event, final Map<String, Map<String, String>> decode) {
+        if (m_tokens.length == 0) {
+            return null;
+        }
+
+        final StringBuilder buf = s_buffer.get();
+        buf.setLength(0);
+
+        final String[] values = new String[m_tokens.length];
+        for (int i = 0; i < m_tokens.length; i++) {
+            buf.append(m_literals[i]);
+
+            final String value;
+            if (m_firstOccurrence[i] < i) {
+                value = values[m_firstOccurrence[i]];
+            } else {
+                // only resolved here, so DB backed tokens are fetched only if the string uses them
+                value = eventUtil.getValueOfParm(m_tokens[i], event);
+                values[i] = value;
+            }
+
+            if (value != null) {
+                final Map<String, String> decodeMap = decode == null ? null : decode.get(m_tokens[i]);
+                if (decodeMap != null && decodeMap.containsKey(value)) {
+                    buf.append(decodeMap.get(value)).append('(').append(value).append(')');
+                } else {
+                    buf.append(value);
+                }
+            }
+        }
+        buf.append(m_literals[m_tokens.length]);
+
+        final String result = m_source.contentEquals(buf) ? null : buf.toString();
+        if (buf.capacity() > MAX_RETAINED_BUFFER) {
+            s_buffer.remove();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpansionTemplate[" + m_source + "]";
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable character trie of UEI subscriptions.
+ *
+ * A subscription matches a UEI if it is the UEI itself, or if it is a
+ * "directory" of the UEI: a prefix of the UEI that ends with a '/' which is
+ * neither the first nor the last character of the UEI. So
+ * <code>uei.opennms.org/nodes/</code> matches
+ * <code>uei.opennms.org/nodes/nodeDown</code>, while
+ * <code>uei.opennms.org</code> and <code>uei.opennms.org/*</code> do not.
+ *
+ * @param <T> the subscriber type
+ */
+final class UeiPrefixTrie<T> {
+
+    private static final char SEPARATOR = '/';
+
+    private final Node m_root;
+
+    private final int m_size;
+
+    /**
+     * @param subscriptions the subscribers for each UEI or UEI directory
+     */
+    UeiPrefixTrie(final Map<String, ? extends Collection<T>> subscriptions) {
+        final Builder root = new Builder();
+        int size = 0;
+        for (final Entry<String, ? extends Collection<T>> entry : subscriptions.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            Builder node = root;
+            final String uei = entry.getKey();
+            for (int i = 0; i < uei.length(); i++) {
+                node = node.child(uei.charAt(i));
+            }
+            node.m_subscribers.addAll(entry.getValue());
+            size++;
+        }
+        m_root = root.build();
+        m_size = size;
+    }
+
+    /**
+     * @return the number of UEIs and UEI directories with subscribers
+     */
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * Returns the subscribers for the UEI, those for the UEI itself first and
+     * then those of each directory from the longest to the shortest, without
+     * duplicates.
+     *
+     * @param uei the UEI of an event
+     * @return a new list, empty if nobody is interested in the UEI
+     */
+    List<T> resolve(final String uei) {
+        final List<Node> matches = new ArrayList<Node>();
+        final int length = uei.length();
+        Node node = m_root;
+        for (int i = 0; i < length && node != null; i++) {
+            final char c = uei.charAt(i);
+            node = node.child(c);
+            if (node != null && c == SEPARATOR && i > 0 && i < length - 1 && node.m_subscribers.length > 0) {
+                matches.add(node);
+            }
+        }
+        if (node != null && node.m_subscribers.length > 0) {
+            matches.add(node);
+        }
+
+        final Set<T> subscribers = new LinkedHashSet<T>();
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            for (final Object subscriber : matches.get(i).m_subscribers) {
+                @SuppressWarnings("unchecked")
+                final T t = (T)subscriber;
+                subscribers.add(t);
+            }
+        }
+        return new ArrayList<T>(subscribers);
+    }
+
+    private static final class Node {
+        private final char[] m_keys;
+        private final Node[] m_children;
+        private final Object[] m_subscribers;
+
+        private Node(final char[] keys, final Node[] children, final Object[] subscribers) {
+            m_keys = keys;
+            m_children = children;
+            m_subscribers = subscribers;
+        }
+
+        private Node child(final char c) {
+            final int i = Arrays.binarySearch(m_keys, c);
+            return i < 0 ? null : m_children[i];
+        }
+    }
+
+    private static final class Builder {
+        private final TreeMap<Character, Builder> m_children = new TreeMap<Character, Builder>();
+        private final Set<Object> m_subscribers = new LinkedHashSet<Object>();
+
+        private Builder child(final char c) {
+            Builder child = m_children.get(c);
+            if (child == null) {
+                child = new Builder();
+                m_children.put(c, child);
+            }
+            return child;
+        }
+
+        private Node build() {
+            final char[] keys = new char[m_children.size()];
+            final Node[] children = new Node[m_children.size()];
+            int i = 0;
+            for (final Entry<Character, Builder> entry : m_children.entrySet()) {
+                keys[i] = entry.getKey();
+                children[i] = entry.getValue().build();
+                i++;
+            }
+            return new Node(keys, children, m_subscribers.toArray());
+        }
+    }
+}
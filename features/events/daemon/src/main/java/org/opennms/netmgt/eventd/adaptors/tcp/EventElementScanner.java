@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a stream of event XML documents into the bytes of each
+ * <code>&lt;event&gt;</code> element, as the bytes come in.
+ *
+ * Only the element being received is kept in memory, so a
+ * <code>&lt;log&gt;</code> document of any size can be received with a
+ * buffer of the size of its largest event. Comments, CDATA sections and
+ * processing instructions are skipped over, so a <code>&lt;/event&gt;</code>
+ * inside of them does not end an event. The encoding must be a superset of
+ * ASCII (UTF-8, the default, or one of the ISO-8859 encodings).
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+final class EventElementScanner {
+
+    /**
+     * Receives the elements found by {@link EventElementScanner#scan(ByteBuffer, Listener)}.
+     */
+    interface Listener {
+        /**
+         * Called for each complete <code>&lt;event&gt;</code> element of a
+         * <code>&lt;log&gt;/&lt;events&gt;</code> element.
+         *
+         * @param data the element, only valid during the call
+         * @param length the number of bytes of data that are the element
+         */
+        void onEvent(byte[] data, int length);
+
+        /**
+         * Called when the root element of a document is closed.
+         */
+        void onLogEnd();
+    }
+
+    private static final Pattern NAMESPACE_DECLARATION = Pattern.compile("\\s(xmlns(?::[^\\s=]+)?)\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+
+    private static final Pattern ENCODING = Pattern.compile("\\sencoding\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private static final int TEXT = 0;
+    private static final int MARKUP = 1;
+    private static final int START_TAG = 2;
+    private static final int END_TAG = 3;
+    private static final int BANG = 4;
+    private static final int COMMENT = 5;
+    private static final int CDATA = 6;
+    private static final int DECLARATION = 7;
+    private static final int PROCESSING_INSTRUCTION = 8;
+
+    private static final int EVENT_DEPTH = 3;
+
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private final int m_maxEventSize;
+
+    private int m_state = TEXT;
+
+    /**
+     * The markup being read, while it is not known yet whether it is part of
+     * an event
+     */
+    private byte[] m_markup = new byte[256];
+
+    private int m_markupLength = 0;
+
+    /**
+     * The event being read, or null
+     */
+    private byte[] m_event = null;
+
+    private int m_eventLength = 0;
+
+    private char m_quote = 0;
+
+    private byte m_previous = 0;
+
+    /**
+     * Consecutive '-', ']' or '?' characters, for finding the end of a
+     * comment, CDATA section or processing instruction
+     */
+    private int m_run = 0;
+
+    private int m_declarationBrackets = 0;
+
+    private int m_depth = 0;
+
+    /**
+     * Local names and start tags of the elements above the events
+     */
+    private final String[] m_names = new String[EVENT_DEPTH];
+
+    private final String[] m_startTags = new String[EVENT_DEPTH];
+
+    private String m_encoding = "UTF-8";
+
+    /**
+     * @param maxEventSize the largest event element, in bytes, that will be accepted
+     */
+    EventElementScanner(final int maxEventSize) {
+        m_maxEventSize = maxEventSize;
+    }
+
+    /**
+     * @return the encoding from the XML declaration of the current document
+     */
+    String getEncoding() {
+        return m_encoding;
+    }
+
+    /**
+     * @return the namespace declarations of the <code>&lt;log&gt;</code> and
+     *         <code>&lt;events&gt;</code> elements the current event is in,
+     *         as attributes to add to an enclosing element
+     */
+    String getNamespaceDeclarations() {
+        if (m_startTags[1] == null && m_startTags[2] == null) {
+            return "";
+        }
+        final Map<String, String> declarations = new LinkedHashMap<String, String>();
+        for (int depth = 1; depth < EVENT_DEPTH; depth++) {
+            if (m_startTags[depth] != null) {
+                final Matcher m = NAMESPACE_DECLARATION.matcher(m_startTags[depth]);
+                while (m.find()) {
+                    declarations.put(m.group(1), m.group(2));
+                }
+            }
+        }
+        final StringBuilder buf = new StringBuilder();
+        for (final Map.Entry<String, String> declaration : declarations.entrySet()) {
+            buf.append(' ').append(declaration.getKey()).append('=').append(declaration.getValue());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Scans all remaining bytes of the buffer.
+     *
+     * @param buffer the bytes that were received
+     * @param listener gets the events and the ends of documents
+     * @throws IOException if an event is larger than the maximum event size
+     */
+    void scan(final ByteBuffer buffer, final Listener listener) throws IOException {
+        while (buffer.hasRemaining()) {
+            final byte b = buffer.get();
+            if (m_event != null) {
+                appendEvent(b);
+            }
+
+            switch (m_state) {
+            case TEXT:
+                if (b == '<') {
+                    m_markupLength = 0;
+                    appendMarkup(b);
+                    m_state = MARKUP;
+                }
+                break;
+
+            case MARKUP:
+                appendMarkup(b);
+                if (b == '/') {
+                    m_state = END_TAG;
+                } else if (b == '!') {
+                    m_state = BANG;
+                } else if (b == '?') {
+                    m_run = 0;
+                    m_state = PROCESSING_INSTRUCTION;
+                } else {
+                    m_quote = 0;
+                    m_previous = b;
+                    m_state = START_TAG;
+                }
+                break;
+
+            case START_TAG:
+                appendMarkup(b);
+                if (m_quote != 0) {
+                    if (b == m_quote) {
+                        m_quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    m_quote = (char)b;
+                } else if (b == '>') {
+                    m_state = TEXT;
+                    startTag(m_previous == '/', listener);
+                }
+                m_previous = b;
+                break;
+
+            case END_TAG:
+                appendMarkup(b);
+                if (b == '>') {
+                    m_state = TEXT;
+                    endElement(listener);
+                }
+                break;
+
+            case BANG:
+                appendMarkup(b);
+                if (m_markupLength == 3) {
+                    if (b == '-') {
+                        break;
+                    } else if (b == '[') {
+                        m_run = 0;
+                        m_state = CDATA;
+                    } else {
+                        m_declarationBrackets = 0;
+                        m_state = DECLARATION;
+                    }
+                } else {
+                    // "<!-" then '-'
+                    m_run = 0;
+                    m_state = COMMENT;
+                }
+                break;
+
+            case COMMENT:
+                if (b == '>' && m_run >= 2) {
+                    m_state = TEXT;
+                }
+                m_run = b == '-' ? m_run + 1 : 0;
+                break;
+
+            case CDATA:
+                if (b == '>' && m_run >= 2) {
+                    m_state = TEXT;
+                }
+                m_run = b == ']' ? m_run + 1 : 0;
+                break;
+
+            case DECLARATION:
+                if (b == '[') {
+                    m_declarationBrackets++;
+                } else if (b == ']') {
+                    m_declarationBrackets--;
+                } else if (b == '>' && m_declarationBrackets <= 0) {
+                    m_state = TEXT;
+                }
+                break;
+
+            case PROCESSING_INSTRUCTION:
+                if (m_depth == 0) {
+                    appendMarkup(b);
+                }
+                if (b == '>' && m_run > 0) {
+                    m_state = TEXT;
+                    if (m_depth == 0) {
+                        xmlDeclaration();
+                    }
+                }
+                m_run = b == '?' ? 1 : 0;
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown state " + m_state);
+            }
+        }
+    }
+
+    private void appendMarkup(final byte b) throws IOException {
+        if (m_event != null) {
+            // already in the event, only the name is needed
+            if (m_markupLength >= m_markup.length) {
+                return;
+            }
+        } else if (m_markupLength == m_markup.length) {
+            if (m_markupLength >= m_maxEventSize) {
+                throw new IOException("Markup larger than " + m_maxEventSize + " bytes");
+            }
+            m_markup = Arrays.copyOf(m_markup, Math.min(m_maxEventSize, m_markup.length * 2));
+        }
+        m_markup[m_markupLength++] = b;
+    }
+
+    private void appendEvent(final byte b) throws IOException {
+        if (m_eventLength == m_event.length) {
+            if (m_eventLength >= m_maxEventSize) {
+                throw new IOException("Event larger than " + m_maxEventSize + " bytes");
+            }
+            m_event = Arrays.copyOf(m_event, Math.min(m_maxEventSize, m_event.length * 2));
+        }
+        m_event[m_eventLength++] = b;
+    }
+
+    /**
+     * @param offset where the name starts in the markup
+     */
+    private String localName(final int offset) {
+        int start = offset;
+        int end = offset;
+        while (end < m_markupLength) {
+            final byte b = m_markup[end];
+            if (b == '>' || b == '/' || Character.isWhitespace(b)) {
+                break;
+            } else if (b == ':') {
+                start = end + 1;
+            }
+            end++;
+        }
+        return new String(m_markup, start, end - start, LATIN1);
+    }
+
+    private void startTag(final boolean empty, final Listener listener) {
+        m_depth++;
+
+        if (m_event != null) {
+            // an element inside of the event
+        } else if (m_depth < EVENT_DEPTH) {
+            m_names[m_depth] = localName(1);
+            m_startTags[m_depth] = new String(m_markup, 0, m_markupLength, LATIN1);
+        } else if (m_depth == EVENT_DEPTH && "events".equals(m_names[EVENT_DEPTH - 1]) && "event".equals(localName(1))) {
+            m_event = new byte[Math.max(1024, m_markupLength)];
+            System.arraycopy(m_markup, 0, m_event, 0, m_markupLength);
+            m_eventLength = m_markupLength;
+        }
+
+        if (empty) {
+            endElement(listener);
+        }
+    }
+
+    private void endElement(final Listener listener) {
+        if (m_event != null && m_depth == EVENT_DEPTH) {
+            final byte[] event = m_event;
+            final int length = m_eventLength;
+            m_event = null;
+            m_eventLength = 0;
+            listener.onEvent(event, length);
+        }
+
+        if (m_depth < EVENT_DEPTH && m_depth > 0) {
+            m_names[m_depth] = null;
+            m_startTags[m_depth] = null;
+        }
+        m_depth--;
+
+        if (m_depth == 0) {
+            listener.onLogEnd();
+            m_encoding = "UTF-8";
+        } else if (m_depth < 0) {
+            // a stray end tag, start over
+            m_depth = 0;
+        }
+    }
+
+    private void xmlDeclaration() {
+        final String declaration = new String(m_markup, 0, m_markupLength, LATIN1);
+        if (declaration.startsWith("<?xml")) {
+            final Matcher m = ENCODING.matcher(declaration);
+            if (m.find()) {
+                m_encoding = m.group(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,654 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.opennms.core.fiber.Fiber;
+import org.opennms.core.logging.Logging;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.events.api.support.EventCodec;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A non-blocking alternative to {@link TcpServer}. A fixed number of I/O
+ * threads serve all of the connections; the bytes read from each connection
+ * are split into <code>&lt;event&gt;</code> elements by an
+ * {@link EventElementScanner} and unmarshalled one by one by
+ * {@link StaxEventDecoder}, so only the event being read is kept in memory
+ * instead of the whole <code>&lt;log&gt;</code> document.
+ *
+ * Events are passed to the handlers as soon as a read has produced them, in
+ * the order they were sent, and an event receipt for the ones with a UUID is
+ * sent back for each batch instead of once per <code>&lt;log&gt;</code>.
+ *
+ * In binary mode the connections send {@link EventCodec} log frames instead
+ * of XML. A frame is buffered until it is complete, its events are delivered
+ * together and the receipt is sent back as a frame too.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+final class NioTcpServer implements TcpEventServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioTcpServer.class);
+
+    /**
+     * The default number of threads reading from the connections.
+     */
+    static final int DEFAULT_IO_THREADS = 2;
+
+    /**
+     * The default size, in bytes, of the largest event that is accepted.
+     * Connections sending a larger event are closed.
+     */
+    static final int DEFAULT_MAX_EVENT_SIZE = 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A connection is not read from while this many receipts are waiting to
+     * be written to it, so that a client that does not read its receipts
+     * cannot make the server buffer them without bound.
+     */
+    private static final int MAX_PENDING_RECEIPTS = 64;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Fiber m_parent;
+
+    private final List<EventHandler> m_handlers;
+
+    private final int m_tcpPort;
+
+    private final InetAddress m_ipAddress;
+
+    private final ServerSocketChannel m_serverChannel;
+
+    private final Selector m_acceptSelector;
+
+    private final Worker[] m_workers;
+
+    private final Thread[] m_workerThreads;
+
+    private volatile boolean m_stop = false;
+
+    /**
+     * The thread which is executing the server context
+     */
+    private volatile Thread m_context;
+
+    private String m_logPrefix;
+
+    private int m_recsPerConn;
+
+    private int m_maxEventSize = DEFAULT_MAX_EVENT_SIZE;
+
+    private boolean m_binary = false;
+
+    /**
+     * Constructs a new server and binds its socket.
+     *
+     * @param parent
+     *            The parent fiber
+     * @param handlers
+     *            The event handlers
+     * @param port
+     *            The port to listen on.
+     * @param address
+     *            The address to listen on, null for all addresses
+     * @param ioThreads
+     *            The number of threads serving the connections
+     * @throws java.io.IOException if the socket cannot be bound
+     */
+    NioTcpServer(final Fiber parent, final List<EventHandler> handlers, final int port, final InetAddress address, final int ioThreads) throws IOException {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("ioThreads must be at least 1");
+        }
+        m_parent = parent;
+        m_handlers = handlers;
+        m_tcpPort = port;
+        m_ipAddress = address;
+        m_logPrefix = org.opennms.netmgt.eventd.Eventd.LOG4J_CATEGORY;
+        m_recsPerConn = TcpEventReceiver.UNLIMITED_EVENTS;
+
+        m_workers = new Worker[ioThreads];
+        m_workerThreads = new Thread[ioThreads];
+
+        ServerSocketChannel serverChannel = null;
+        Selector acceptSelector = null;
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                m_workers[i] = new Worker();
+            }
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(m_ipAddress, m_tcpPort));
+            acceptSelector = Selector.open();
+            serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        } catch (final IOException e) {
+            closeQuietly(serverChannel);
+            closeQuietly(acceptSelector);
+            for (final Worker worker : m_workers) {
+                if (worker != null) {
+                    closeQuietly(worker.m_selector);
+                }
+            }
+            final IOException n = new IOException("Could not create listening TCP socket on " + m_ipAddress + ":" + m_tcpPort + ": " + e);
+            n.initCause(e);
+            throw n;
+        }
+        m_serverChannel = serverChannel;
+        m_acceptSelector = acceptSelector;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Closes all connections, whether or not they have sent a complete
+     * document.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        LOG.debug("stop method invoked");
+        m_stop = true;
+        m_acceptSelector.wakeup();
+
+        final Thread context = m_context;
+        if (context != null) {
+            LOG.debug("Joining context thread {}", context.getName());
+            context.join();
+            LOG.debug("Thread context stopped and joined {}", context.getName());
+            m_context = null;
+        }
+
+        // in case the server thread has not started yet
+        closeQuietly(m_serverChannel);
+        closeQuietly(m_acceptSelector);
+    }
+
+    /**
+     * Accepts the incoming connections and hands them to the I/O threads,
+     * round-robin.
+     */
+    @Override
+    public void run() {
+        m_context = Thread.currentThread();
+        Logging.putPrefix(m_logPrefix);
+
+        try {
+            if (m_stop) {
+                LOG.debug("Stop flag set on thread startup");
+                return;
+            }
+
+            for (int i = 0; i < m_workers.length; i++) {
+                m_workerThreads[i] = new Thread(m_workers[i], m_parent.getName() + "[io-" + i + "]");
+                m_workerThreads[i].start();
+            }
+
+            LOG.debug("Non-blocking server started on {}:{} with {} I/O threads", m_ipAddress, m_tcpPort, m_workers.length);
+
+            int next = 0;
+            while (m_parent.getStatus() != Fiber.STOPPED && m_parent.getStatus() != Fiber.STOP_PENDING && !m_stop) {
+                if (m_acceptSelector.select(500) == 0) {
+                    continue;
+                }
+                m_acceptSelector.selectedKeys().clear();
+
+                SocketChannel channel;
+                while ((channel = m_serverChannel.accept()) != null) {
+                    LOG.debug("New connection accepted from {}", channel.socket().getRemoteSocketAddress());
+                    try {
+                        channel.configureBlocking(false);
+                    } catch (final IOException e) {
+                        LOG.warn("Unable to make the connection from {} non-blocking", channel.socket().getRemoteSocketAddress(), e);
+                        closeQuietly(channel);
+                        continue;
+                    }
+                    m_workers[next].add(channel);
+                    next = (next + 1) % m_workers.length;
+                }
+            }
+        } catch (final IOException e) {
+            LOG.error("Server Socket I/O Error", e);
+        } finally {
+            m_stop = true;
+
+            LOG.debug("closing the server socket connection");
+            closeQuietly(m_serverChannel);
+            closeQuietly(m_acceptSelector);
+
+            for (int i = 0; i < m_workers.length; i++) {
+                if (m_workerThreads[i] != null) {
+                    m_workers[i].wakeup();
+                    try {
+                        m_workerThreads[i].join();
+                    } catch (final InterruptedException e) {
+                        LOG.warn("Interrupted while waiting for I/O thread {}", m_workerThreads[i].getName(), e);
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            LOG.debug("TCP Server Shutdown");
+        }
+    }
+
+    /**
+     * <p>setLogPrefix</p>
+     *
+     * @param prefix a {@link java.lang.String} object.
+     */
+    @Override
+    public void setLogPrefix(final String prefix) {
+        m_logPrefix = prefix;
+    }
+
+    /**
+     * <p>setEventsPerConnection</p>
+     *
+     * @param number a int.
+     */
+    @Override
+    public void setEventsPerConnection(final int number) {
+        m_recsPerConn = number;
+    }
+
+    /**
+     * <p>setMaxEventSize</p>
+     *
+     * @param maxEventSize the size, in bytes, of the largest event element
+     *            accepted, {@link #DEFAULT_MAX_EVENT_SIZE} by default
+     */
+    void setMaxEventSize(final int maxEventSize) {
+        m_maxEventSize = maxEventSize;
+    }
+
+    /**
+     * <p>setBinary</p>
+     *
+     * @param binary whether the connections send {@link EventCodec} frames
+     *            instead of XML, they may be up to
+     *            {@link EventCodec#MAX_MESSAGE_LENGTH} bytes long
+     */
+    void setBinary(final boolean binary) {
+        m_binary = binary;
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                LOG.debug("An I/O exception occured while closing {}", closeable, e);
+            }
+        }
+    }
+
+    /**
+     * Serves a share of the connections with its own selector.
+     */
+    private final class Worker implements Runnable {
+        private final Selector m_selector;
+
+        private final Queue<SocketChannel> m_newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+
+        private final ByteBuffer m_readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private Worker() throws IOException {
+            m_selector = Selector.open();
+        }
+
+        private void add(final SocketChannel channel) {
+            m_newChannels.add(channel);
+            m_selector.wakeup();
+        }
+
+        private void wakeup() {
+            m_selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            Logging.putPrefix(m_logPrefix);
+            try {
+                while (!m_stop) {
+                    m_selector.select(500);
+
+                    SocketChannel channel;
+                    while ((channel = m_newChannels.poll()) != null) {
+                        try {
+                            final SelectionKey key = channel.register(m_selector, SelectionKey.OP_READ);
+                            key.attach(new Connection(channel, key));
+                        } catch (final IOException e) {
+                            LOG.warn("Unable to register the connection from {}", channel.socket().getRemoteSocketAddress(), e);
+                            closeQuietly(channel);
+                        }
+                    }
+
+                    final Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+
+                        final Connection connection = (Connection)key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read(m_readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        } catch (final CancelledKeyException e) {
+                            connection.close();
+                        } catch (final IOException e) {
+                            LOG.warn("An I/O error occured on the connection from {}, closing it.", connection, e);
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.error("Selector I/O Error", e);
+            } finally {
+                for (final SelectionKey key : m_selector.keys()) {
+                    final Connection connection = (Connection)key.attachment();
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+                SocketChannel channel;
+                while ((channel = m_newChannels.poll()) != null) {
+                    closeQuietly(channel);
+                }
+                closeQuietly(m_selector);
+            }
+        }
+    }
+
+    /**
+     * The state of one connection, only used by the I/O thread that serves it.
+     */
+    private final class Connection implements EventElementScanner.Listener {
+        private final SocketChannel m_channel;
+
+        private final SelectionKey m_key;
+
+        private final String m_name;
+
+        private final EventElementScanner m_scanner = m_binary ? null : new EventElementScanner(m_maxEventSize);
+
+        /**
+         * The binary frame being read, null while its header is read into m_header
+         */
+        private byte[] m_frame;
+
+        private final byte[] m_header = new byte[EventCodec.HEADER_LENGTH];
+
+        private int m_frameRead = 0;
+
+        private final List<Event> m_events = new ArrayList<Event>();
+
+        private final LinkedList<ByteBuffer> m_output = new LinkedList<ByteBuffer>();
+
+        private int m_logsLeft = m_recsPerConn;
+
+        private boolean m_closing = false;
+
+        private Connection(final SocketChannel channel, final SelectionKey key) {
+            m_channel = channel;
+            m_key = key;
+            m_name = String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+
+        private void read(final ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            final int count = m_channel.read(buffer);
+            if (count < 0) {
+                LOG.debug("{} closed the connection", m_name);
+                deliver();
+                closeWhenWritten();
+                return;
+            }
+
+            buffer.flip();
+            try {
+                if (m_binary) {
+                    readFrames(buffer);
+                } else {
+                    m_scanner.scan(buffer, this);
+                }
+            } finally {
+                deliver();
+            }
+            if (m_closing) {
+                write();
+            }
+        }
+
+        private void readFrames(final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining() && !isDone()) {
+                if (m_frame == null) {
+                    final int count = Math.min(buffer.remaining(), m_header.length - m_frameRead);
+                    buffer.get(m_header, m_frameRead, count);
+                    m_frameRead += count;
+                    if (m_frameRead < m_header.length) {
+                        return;
+                    }
+                    m_frame = Arrays.copyOf(m_header, m_header.length + EventCodec.getMessageLength(m_header, 0));
+                }
+
+                final int count = Math.min(buffer.remaining(), m_frame.length - m_frameRead);
+                buffer.get(m_frame, m_frameRead, count);
+                m_frameRead += count;
+                if (m_frameRead == m_frame.length) {
+                    final Log log = EventCodec.decodeLog(m_frame, 0, m_frame.length);
+                    m_frame = null;
+                    m_frameRead = 0;
+                    LOG.debug("Event log frame decoded");
+                    if (log.getEvents() != null) {
+                        m_events.addAll(log.getEvents().getEventCollection());
+                    }
+                    onLogEnd();
+                }
+            }
+        }
+
+        /**
+         * @return true if nothing more should be read from this connection
+         */
+        private boolean isDone() {
+            return m_closing || !m_channel.isOpen();
+        }
+
+        @Override
+        public void onEvent(final byte[] data, final int length) {
+            if (isDone()) {
+                return;
+            }
+            try {
+                m_events.add(StaxEventDecoder.decode(data, length, m_scanner.getNamespaceDeclarations(), m_scanner.getEncoding()));
+                LOG.debug("Event record converted");
+            } catch (final Exception e) {
+                LOG.error("Could not unmarshall an event from {}", m_name, e);
+            }
+        }
+
+        @Override
+        public void onLogEnd() {
+            if (isDone()) {
+                return;
+            }
+            deliver();
+            if (m_logsLeft > 0 && --m_logsLeft == 0) {
+                LOG.debug("{} has sent {} event logs, closing the connection", m_name, m_recsPerConn);
+                m_closing = true;
+            }
+        }
+
+        /**
+         * Passes the events read so far to the handlers and sends a receipt.
+         */
+        private void deliver() {
+            if (m_events.isEmpty()) {
+                return;
+            }
+
+            final boolean[] ok = new boolean[m_events.size()];
+            synchronized (m_handlers) {
+                for (final EventHandler hdl : m_handlers) {
+                    for (int i = 0; i < ok.length; i++) {
+                        final Event event = m_events.get(i);
+                        try {
+                            LOG.debug("handling event: {}", event);
+                            // BOTH parts MUST execute!
+                            if (hdl.processEvent(event)) {
+                                ok[i] = true;
+                            }
+                        } catch (final Throwable t) {
+                            LOG.warn("An exception occured while processing an event.", t);
+                        }
+                    }
+                }
+            }
+
+            boolean hasReceipt = false;
+            final EventReceipt receipt = new EventReceipt();
+            for (int i = 0; i < ok.length; i++) {
+                if (ok[i] && m_events.get(i).getUuid() != null) {
+                    receipt.addUuid(m_events.get(i).getUuid());
+                    hasReceipt = true;
+                }
+            }
+            m_events.clear();
+
+            if (hasReceipt && m_channel.isOpen()) {
+                send(receipt);
+            }
+        }
+
+        private void send(final EventReceipt receipt) {
+            if (m_binary) {
+                m_output.add(ByteBuffer.wrap(EventCodec.encode(receipt)));
+            } else {
+                final StringWriter writer = new StringWriter();
+                JaxbUtils.marshal(receipt, writer);
+                m_output.add(ByteBuffer.wrap(writer.toString().getBytes(UTF8)));
+            }
+            try {
+                write();
+            } catch (final IOException e) {
+                LOG.warn("Failed to send event-receipt XML document.", e);
+                close();
+                return;
+            }
+
+            synchronized (m_handlers) {
+                for (final EventHandler hdl : m_handlers) {
+                    try {
+                        hdl.receiptSent(receipt);
+                    } catch (final Throwable t) {
+                        LOG.warn("An exception occured while processing an event receipt.", t);
+                    }
+                }
+            }
+
+            LOG.debug("Sent Event Receipt for {}", receipt.getUuidCollection());
+        }
+
+        /**
+         * Writes as much of the pending output as the socket takes, and
+         * only reads again once the backlog of receipts is small.
+         */
+        private void write() throws IOException {
+            while (!m_output.isEmpty()) {
+                final ByteBuffer buffer = m_output.getFirst();
+                m_channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                m_output.removeFirst();
+            }
+
+            if (!m_key.isValid()) {
+                return;
+            }
+            if (m_output.isEmpty()) {
+                if (m_closing) {
+                    close();
+                } else {
+                    m_key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (m_closing || m_output.size() >= MAX_PENDING_RECEIPTS) {
+                m_key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                m_key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void closeWhenWritten() throws IOException {
+            m_closing = true;
+            write();
+        }
+
+        private void close() {
+            LOG.debug("closing connnection from {}", m_name);
+            m_key.cancel();
+            closeQuietly(m_channel);
+        }
+
+        @Override
+        public String toString() {
+            return m_name;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Turns the <code>&lt;event&gt;</code> elements found by
+ * {@link EventElementScanner} into {@link Event} objects with a StAX reader.
+ *
+ * Like {@link JaxbUtils#unmarshal(Class, org.xml.sax.InputSource)}, every
+ * element is read as if it were in the event namespace, so documents without
+ * a namespace are accepted.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+final class StaxEventDecoder {
+
+    private static final String EVENT_NAMESPACE = "http://xmlns.opennms.org/xsd/event";
+
+    private static final XMLInputFactory s_inputFactory;
+
+    static {
+        s_inputFactory = XMLInputFactory.newInstance();
+        s_inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        s_inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private StaxEventDecoder() {
+    }
+
+    /**
+     * @param data the bytes of the event element
+     * @param length the number of bytes in data
+     * @param namespaceDeclarations declarations of prefixes used by the
+     *            element that were made by the elements around it, may be
+     *            empty
+     * @param encoding the encoding of the document the element comes from
+     * @return the event
+     * @throws XMLStreamException if the element is not well formed
+     * @throws JAXBException if the element is not an event
+     */
+    static Event decode(final byte[] data, final int length, final String namespaceDeclarations, final String encoding) throws XMLStreamException, JAXBException {
+        InputStream in = new ByteArrayInputStream(data, 0, length);
+        final boolean wrapped = namespaceDeclarations.length() > 0;
+        if (wrapped) {
+            try {
+                in = new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(("<wrapper" + namespaceDeclarations + ">").getBytes(encoding)), in), new ByteArrayInputStream("</wrapper>".getBytes(encoding)));
+            } catch (final UnsupportedEncodingException e) {
+                throw new XMLStreamException("Unsupported encoding " + encoding, e);
+            }
+        }
+
+        final XMLStreamReader reader = new EventNamespaceReader(s_inputFactory.createXMLStreamReader(in, encoding));
+        try {
+            reader.nextTag();
+            if (wrapped) {
+                reader.nextTag();
+            }
+            final Unmarshaller unmarshaller = JaxbUtils.getUnmarshallerFor(Event.class, null, false);
+            return unmarshaller.unmarshal(reader, Event.class).getValue();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Puts all elements in the event namespace, the StAX counterpart of
+     * the namespace filter JaxbUtils uses.
+     */
+    private static final class EventNamespaceReader extends StreamReaderDelegate {
+        private EventNamespaceReader(final XMLStreamReader reader) {
+            super(reader);
+        }
+
+        private boolean isElement() {
+            final int eventType = getEventType();
+            return eventType == START_ELEMENT || eventType == END_ELEMENT;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return isElement() ? EVENT_NAMESPACE : super.getNamespaceURI();
+        }
+
+        @Override
+        public QName getName() {
+            return new QName(EVENT_NAMESPACE, getLocalName());
+        }
+
+        @Override
+        public String getPrefix() {
+            return isElement() ? "" : super.getPrefix();
+        }
+    }
+}
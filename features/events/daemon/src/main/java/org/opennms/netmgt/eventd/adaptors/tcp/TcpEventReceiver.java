@@ -43,6 +43,7 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.eventd.adaptors.EventHandler;
 import org.opennms.netmgt.eventd.adaptors.EventHandlerMBeanProxy;
 import org.opennms.netmgt.eventd.adaptors.EventReceiver;
+import org.opennms.netmgt.events.api.support.EventCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -78,7 +79,7 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
     /**
      * The server socket
      */
-    private TcpServer m_server;
+    private TcpEventServer m_server;
 
     /**
      * The registered list of event handlers. Each incoming event will be
@@ -113,6 +114,21 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
      */
     private String m_ipAddress;
 
+    /**
+     * Whether to use the {@link NioTcpServer} instead of the {@link TcpServer}
+     */
+    private boolean m_nonBlocking;
+
+    /**
+     * The number of I/O threads of the {@link NioTcpServer}
+     */
+    private int m_ioThreads;
+
+    /**
+     * Whether connections send {@link EventCodec} frames instead of XML
+     */
+    private boolean m_binary;
+
     /**
      * Constructs a new TCP/IP event receiver on the default TCP/IP port. The
      * server socket allocation is delayed until the fiber is actually started.
@@ -141,6 +157,9 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_worker = null;
         m_logPrefix = null;
         m_recsPerConn = UNLIMITED_EVENTS;
+        m_nonBlocking = false;
+        m_ioThreads = NioTcpServer.DEFAULT_IO_THREADS;
+        m_binary = false;
     }
 
     /**
@@ -162,7 +181,15 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_status = STARTING;
         try {
             InetAddress address = "*".equals(m_ipAddress) ? null : InetAddressUtils.addr(m_ipAddress);
-            m_server = new TcpServer(this, m_eventHandlers, m_tcpPort, address);
+            if (m_binary) {
+                final NioTcpServer server = new NioTcpServer(this, m_eventHandlers, m_tcpPort, address, m_ioThreads);
+                server.setBinary(true);
+                m_server = server;
+            } else if (m_nonBlocking) {
+                m_server = new NioTcpServer(this, m_eventHandlers, m_tcpPort, address, m_ioThreads);
+            } else {
+                m_server = new TcpServer(this, m_eventHandlers, m_tcpPort, address);
+            }
             if (m_logPrefix != null) {
                 m_server.setLogPrefix(m_logPrefix);
             }
@@ -387,6 +414,76 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_recsPerConn = number.intValue();
     }
 
+    /**
+     * <p>isNonBlocking</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isNonBlocking() {
+        return m_nonBlocking;
+    }
+
+    /**
+     * <p>setNonBlocking</p>
+     *
+     * When set, connections are served by a few I/O threads that stream each
+     * event through a StAX parser as it arrives, instead of by a thread per
+     * connection that unmarshals whole event logs. Events are then
+     * acknowledged with an event receipt for each batch read rather than for
+     * each log, and are not sorted by time within a log.
+     *
+     * @param nonBlocking a boolean.
+     */
+    public void setNonBlocking(final boolean nonBlocking) {
+        assertNotRunning();
+        m_nonBlocking = nonBlocking;
+    }
+
+    /**
+     * <p>getIoThreads</p>
+     *
+     * @return a int.
+     */
+    public int getIoThreads() {
+        return m_ioThreads;
+    }
+
+    /**
+     * <p>setIoThreads</p>
+     *
+     * @param ioThreads the number of threads serving the connections when
+     *            {@link #setNonBlocking(boolean) nonBlocking} is set
+     */
+    public void setIoThreads(final int ioThreads) {
+        assertNotRunning();
+        m_ioThreads = ioThreads;
+    }
+
+    /**
+     * <p>isBinary</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isBinary() {
+        return m_binary;
+    }
+
+    /**
+     * <p>setBinary</p>
+     *
+     * When set, clients send {@link EventCodec} frames instead of XML
+     * documents and get the event receipts back as frames as well. A binary
+     * receiver is always {@link #setNonBlocking(boolean) non-blocking}, and
+     * needs a port of its own, by convention
+     * {@link org.opennms.netmgt.events.api.support.TcpEventProxy#DEFAULT_BINARY_PORT}.
+     *
+     * @param binary a boolean.
+     */
+    public void setBinary(final boolean binary) {
+        assertNotRunning();
+        m_binary = binary;
+    }
+
     private void assertNotRunning() {
         Assert.state(m_status == START_PENDING || m_status == STOPPED, "The fiber is already running and cannot be modified or started");
     }
@@ -53,7 +53,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
  * 
  */
-final class TcpServer implements Runnable {
+final class TcpServer implements TcpEventServer {
     
     private static final Logger LOG = LoggerFactory.getLogger(TcpServer.class);
     
@@ -178,6 +178,7 @@ final class TcpServer implements Runnable {
      *
      * @throws java.lang.InterruptedException if any.
      */
+    @Override
     public void stop() throws InterruptedException {
         LOG.debug("stop method invoked");
 
@@ -376,6 +377,7 @@ final class TcpServer implements Runnable {
      *
      * @param prefix a {@link java.lang.String} object.
      */
+    @Override
     public void setLogPrefix(String prefix) {
         m_logPrefix = prefix;
     }
@@ -385,6 +387,7 @@ final class TcpServer implements Runnable {
      *
      * @param number a int.
      */
+    @Override
     public void setEventsPerConnection(int number) {
         m_recsPerConn = number;
     }
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.eventd.adaptors.udp;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
@@ -40,6 +41,7 @@ import java.util.List;
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.events.api.support.EventCodec;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Log;
 import org.xml.sax.InputSource;
@@ -56,6 +58,11 @@ final class UdpReceivedEvent {
      */
     private String m_eventXML;
 
+    /**
+     * The received {@link EventCodec} frame, null if the datagram is XML.
+     */
+    private byte[] m_eventFrame;
+
     /**
      * The decoded event document. The classes are defined in an XSD and
      * generated by castor.
@@ -111,7 +118,7 @@ final class UdpReceivedEvent {
      * @param port
      *            The remote agent's port
      * @param data
-     *            The XML data in US-ASCII encoding.
+     *            The XML data in US-ASCII encoding, or an {@link EventCodec} frame.
      * @param len
      *            The length of the XML data in the buffer.
      * 
@@ -123,7 +130,11 @@ final class UdpReceivedEvent {
         UdpReceivedEvent e = new UdpReceivedEvent();
         e.m_sender = addr;
         e.m_port = port;
-        e.m_eventXML = new String(Arrays.copyOf(data, data.length), 0, len, "US-ASCII");
+        if (EventCodec.isFrame(data, 0, len)) {
+            e.m_eventFrame = Arrays.copyOf(data, len);
+        } else {
+            e.m_eventXML = new String(Arrays.copyOf(data, data.length), 0, len, "US-ASCII");
+        }
         e.m_ackEvents = new ArrayList<Event>(16);
         e.m_log = null;
         return e;
@@ -142,7 +153,13 @@ final class UdpReceivedEvent {
      *             Thrown if the XML is malformed and cannot be converted.
      */
     Log unmarshal() throws ValidationException, MarshalException {
-        if (m_log == null) {
+        if (m_log == null && m_eventFrame != null) {
+            try {
+                m_log = EventCodec.decodeLog(m_eventFrame, 0, m_eventFrame.length);
+            } catch (final IOException e) {
+                throw new MarshalException("Invalid event frame: " + e.getMessage(), e);
+            }
+        } else if (m_log == null) {
         	final InputStream is = new ByteArrayInputStream(m_eventXML.getBytes());
             m_log = JaxbUtils.unmarshal(Log.class, new InputSource(is));
         }
@@ -166,7 +183,7 @@ final class UdpReceivedEvent {
      * Returns the raw XML data as a string.
      */
     String getXmlData() {
-        return m_eventXML;
+        return m_eventFrame == null ? m_eventXML : "<" + m_eventFrame.length + " byte event frame>";
     }
 
     /**
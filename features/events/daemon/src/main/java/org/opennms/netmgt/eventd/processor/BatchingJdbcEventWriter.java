@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.DBUtils;
+import org.opennms.netmgt.eventd.EventdConstants;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link EventWriter} that stores the events of all eventd handler threads
+ * through a single writer thread, so that events arriving at the same time
+ * share one transaction and one JDBC batch instead of paying for a
+ * transaction and a sequence round trip each.
+ *
+ * {@link #process(Header, Event)} still returns only once the event has been
+ * committed (or has failed), and the event has its dbid by then, so the
+ * processors that follow in the chain (e.g. the
+ * {@link EventIpcBroadcastProcessor}) see the same event they would see
+ * after the {@link JdbcEventWriter}.
+ *
+ * A batch holds at most <code>maxBatchSize</code> events. With the default
+ * <code>maxBatchDelay</code> of 0 the writer takes whatever is queued when it
+ * starts a batch, so batches only grow while the previous one is being
+ * written and a lone event is never held back. A positive delay makes the
+ * writer wait up to that many milliseconds for a batch to fill.
+ *
+ * Event IDs are fetched <code>idBlockSize</code> at a time with
+ * <code>getNextIdBlockString</code>; IDs left in the block when eventd stops
+ * are not used, which leaves a gap in the eventid sequence.
+ *
+ * If a batch fails, each of its events is written again in its own
+ * transaction so that only the events that really cannot be stored fail.
+ */
+public final class BatchingJdbcEventWriter extends AbstractJdbcPersister implements DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingJdbcEventWriter.class);
+
+    /**
+     * Constant <code>DEFAULT_GET_NEXT_ID_BLOCK_STRING="SELECT nextval('eventsNxtId') FROM generate_series(1, ?)"</code>
+     */
+    public static final String DEFAULT_GET_NEXT_ID_BLOCK_STRING = "SELECT nextval('eventsNxtId') FROM generate_series(1, ?)";
+
+    private static final long POLL_INTERVAL = 500;
+
+    private final BlockingQueue<PendingEvent> m_queue = new LinkedBlockingQueue<PendingEvent>();
+
+    private int m_maxBatchSize = 100;
+
+    private long m_maxBatchDelay = 0;
+
+    private int m_idBlockSize = 100;
+
+    private String m_getNextIdBlockString = DEFAULT_GET_NEXT_ID_BLOCK_STRING;
+
+    /**
+     * Only used by the writer thread.
+     */
+    private final List<Integer> m_idBlock = new ArrayList<Integer>();
+
+    private Thread m_writer;
+
+    private volatile boolean m_stopped = false;
+
+    /**
+     * {@inheritDoc}
+     *
+     * Queues the event for the writer thread and waits until it is stored.
+     */
+    @Override
+    public void process(final Header eventHeader, final Event event) throws EventProcessorException {
+        if (!checkEventSanityAndDoWeProcess(event, "BatchingJdbcEventWriter")) {
+            return;
+        }
+
+        LOG.debug("BatchingJdbcEventWriter: processing {} nodeid: {} ipaddr: {} serviceid: {} time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
+
+        if (m_stopped) {
+            throw new EventProcessorException("BatchingJdbcEventWriter has been stopped; not storing event " + event.getUei());
+        }
+
+        final PendingEvent pending = new PendingEvent(eventHeader, event);
+        try {
+            m_queue.put(pending);
+            if (m_stopped && m_queue.remove(pending)) {
+                // the writer may already have exited without seeing this event
+                pending.complete(new EventProcessorException("BatchingJdbcEventWriter has been stopped; not storing event " + event.getUei()));
+            }
+            pending.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for event " + event.getUei() + " to be stored", e);
+        }
+
+        if (pending.getFailure() != null) {
+            throw new EventProcessorException(pending.getFailure());
+        }
+
+        LOG.debug("EventWriter finished for : {}", event.getUei());
+    }
+
+    private void runWriter() {
+        final List<PendingEvent> batch = new ArrayList<PendingEvent>(m_maxBatchSize);
+        while (!m_stopped || !m_queue.isEmpty()) {
+            try {
+                final PendingEvent first = m_queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+            } catch (final InterruptedException e) {
+                LOG.debug("Event writer thread interrupted; writing the remaining events.");
+                m_stopped = true;
+                m_queue.drainTo(batch, m_maxBatchSize - batch.size());
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    writeBatch(batch);
+                } catch (final Throwable t) {
+                    LOG.warn("Unexpected error storing a batch of {} events.", batch.size(), t);
+                    for (final PendingEvent pending : batch) {
+                        pending.complete(t);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(final List<PendingEvent> batch) throws InterruptedException {
+        m_queue.drainTo(batch, m_maxBatchSize - batch.size());
+        if (m_maxBatchDelay <= 0) {
+            return;
+        }
+
+        final long deadline = System.currentTimeMillis() + m_maxBatchDelay;
+        while (batch.size() < m_maxBatchSize) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            final PendingEvent next = m_queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            m_queue.drainTo(batch, m_maxBatchSize - batch.size());
+        }
+    }
+
+    private void writeBatch(final List<PendingEvent> batch) {
+        try {
+            for (final PendingEvent pending : batch) {
+                if (pending.getEventId() < 0) {
+                    pending.setEventId(nextEventId());
+                }
+            }
+            insertEvents(batch);
+            for (final PendingEvent pending : batch) {
+                pending.complete(null);
+            }
+            LOG.debug("Stored a batch of {} events.", batch.size());
+        } catch (final Throwable t) {
+            if (batch.size() == 1) {
+                LOG.warn("Error inserting event into the datastore.", t);
+                batch.get(0).complete(t);
+                return;
+            }
+
+            LOG.warn("Error inserting a batch of {} events into the datastore; storing them one at a time.", batch.size(), t);
+            for (final PendingEvent pending : batch) {
+                writeBatch(Collections.singletonList(pending));
+            }
+        }
+    }
+
+    private void insertEvents(final List<PendingEvent> batch) throws SQLException {
+        final Connection connection = getDataSource().getConnection();
+        final DBUtils d = new DBUtils(getClass());
+        d.watch(connection);
+
+        try {
+            connection.setAutoCommit(false);
+
+            try {
+                final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+                d.watch(insStmt);
+
+                for (final PendingEvent pending : batch) {
+                    setEventParameters(insStmt, pending.getHeader(), pending.getEvent(), pending.getEventId());
+                    insStmt.addBatch();
+                }
+                insStmt.executeBatch();
+
+                connection.commit();
+            } catch (final SQLException e) {
+                rollback(connection);
+                throw e;
+            } catch (final RuntimeException e) {
+                rollback(connection);
+                throw e;
+            }
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private static void rollback(final Connection connection) {
+        try {
+            connection.rollback();
+        } catch (final Throwable e) {
+            LOG.warn("Rollback of transaction failed.", e);
+        }
+    }
+
+    /**
+     * Returns the next event ID, fetching a new block of IDs from the
+     * database when the current one is used up.
+     */
+    private int nextEventId() throws SQLException {
+        if (m_getNextIdBlockString == null) {
+            return getNextId();
+        }
+
+        if (m_idBlock.isEmpty()) {
+            final List<Integer> ids = new JdbcTemplate(getDataSource()).queryForList(m_getNextIdBlockString, Integer.class, m_idBlockSize);
+            if (ids.isEmpty()) {
+                throw new SQLException("Query for a block of event IDs returned no rows: " + m_getNextIdBlockString);
+            }
+            // handed out from the end of the list
+            Collections.reverse(ids);
+            m_idBlock.addAll(ids);
+            LOG.debug("Fetched a block of {} event IDs.", ids.size());
+        }
+        return m_idBlock.remove(m_idBlock.size() - 1);
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * Starts the writer thread.
+     *
+     * @throws java.sql.SQLException if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+        Assert.state(m_maxBatchSize > 0, "property maxBatchSize must be greater than 0");
+        Assert.state(m_maxBatchDelay >= 0, "property maxBatchDelay must not be negative");
+        Assert.state(m_idBlockSize > 0, "property idBlockSize must be greater than 0");
+
+        m_stopped = false;
+        m_writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "Event Batch Writer");
+        m_writer.setDaemon(true);
+        m_writer.start();
+    }
+
+    /**
+     * <p>destroy</p>
+     *
+     * Stops the writer thread once the events already queued are stored.
+     * Events queued after the writer thread has exited are failed.
+     *
+     * @throws java.lang.InterruptedException if any.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        m_stopped = true;
+        if (m_writer != null) {
+            m_writer.join();
+            m_writer = null;
+        }
+
+        final List<PendingEvent> leftovers = new ArrayList<PendingEvent>();
+        m_queue.drainTo(leftovers);
+        for (final PendingEvent pending : leftovers) {
+            pending.complete(new EventProcessorException("BatchingJdbcEventWriter has been stopped; not storing event " + pending.getEvent().getUei()));
+        }
+    }
+
+    public int getMaxBatchSize() {
+        return m_maxBatchSize;
+    }
+
+    public void setMaxBatchSize(final int maxBatchSize) {
+        m_maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBatchDelay() {
+        return m_maxBatchDelay;
+    }
+
+    /**
+     * <p>setMaxBatchDelay</p>
+     *
+     * @param maxBatchDelay the time in milliseconds the writer waits for a batch to fill
+     */
+    public void setMaxBatchDelay(final long maxBatchDelay) {
+        m_maxBatchDelay = maxBatchDelay;
+    }
+
+    public int getIdBlockSize() {
+        return m_idBlockSize;
+    }
+
+    public void setIdBlockSize(final int idBlockSize) {
+        m_idBlockSize = idBlockSize;
+    }
+
+    public String getGetNextIdBlockString() {
+        return m_getNextIdBlockString;
+    }
+
+    /**
+     * <p>setGetNextIdBlockString</p>
+     *
+     * @param getNextIdBlockString a query returning one new event ID per row
+     * for a single row count parameter, or null to fetch every ID with
+     * <code>getNextIdString</code>
+     */
+    public void setGetNextIdBlockString(final String getNextIdBlockString) {
+        m_getNextIdBlockString = getNextIdBlockString;
+    }
+
+    private static final class PendingEvent {
+        private final Header m_header;
+        private final Event m_event;
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private int m_eventId = -1;
+        private volatile Throwable m_failure;
+
+        public PendingEvent(final Header header, final Event event) {
+            m_header = header;
+            m_event = event;
+        }
+
+        public Header getHeader() {
+            return m_header;
+        }
+
+        public Event getEvent() {
+            return m_event;
+        }
+
+        public int getEventId() {
+            return m_eventId;
+        }
+
+        public void setEventId(final int eventId) {
+            m_eventId = eventId;
+            LOG.debug("DBID: {}", eventId);
+            synchronized (m_event) {
+                m_event.setDbid(eventId);
+            }
+        }
+
+        public Throwable getFailure() {
+            return m_failure;
+        }
+
+        /**
+         * Completes the event; only the first completion counts.
+         */
+        public synchronized void complete(final Throwable failure) {
+            if (m_done.getCount() == 0) {
+                return;
+            }
+            m_failure = failure;
+            m_done.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            m_done.await();
+        }
+    }
+}
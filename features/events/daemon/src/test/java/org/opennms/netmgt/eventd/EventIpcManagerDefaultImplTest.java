@@ -30,9 +30,13 @@ package org.opennms.netmgt.eventd;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.TestCase;
 
@@ -41,6 +45,7 @@ import org.opennms.netmgt.events.api.EventHandler;
 import org.opennms.netmgt.events.api.EventListener;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
 import org.opennms.test.ThrowableAnticipator;
 import org.opennms.test.mock.EasyMockUtils;
@@ -426,6 +431,43 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
     }
     
 
+    public void testRemoveEventListenerWithUeiAfterBroadcast() throws Exception {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testRemoveEventListenerWithUeiAfterBroadcast");
+        Event e = bldr.getEvent();
+        Event e2 = bldr.getEvent();
+
+        m_mocks.replayAll();
+
+        m_manager.addEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e);
+        Thread.sleep(100);
+
+        assertTrue("could not remove broadcasted event--did it make it?", m_listener.getEvents().remove(e));
+
+        // the listeners resolved for this UEI by the first broadcast must not be reused
+        m_manager.removeEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e2);
+        Thread.sleep(100);
+
+        m_mocks.verifyAll();
+    }
+
+    public void testAddEventListenerWithUeiAfterBroadcast() throws Exception {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testAddEventListenerWithUeiAfterBroadcast");
+        Event e = bldr.getEvent();
+
+        m_mocks.replayAll();
+
+        m_manager.broadcastNow(e);
+        m_manager.addEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e);
+        Thread.sleep(100);
+
+        m_mocks.verifyAll();
+
+        assertTrue("could not remove broadcasted event--did it make it?", m_listener.getEvents().remove(e));
+    }
+
     /**
      * This is the type of exception we want to catch.
      * 
@@ -455,6 +497,127 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         m_mocks.verifyAll();
     }
     
+    public void testSendNowWithSpoolDoesNotReject() throws Exception {
+        final File spoolDirectory = createSpoolDirectory();
+        final RecordingEventHandler handler = new RecordingEventHandler(null);
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(handler);
+        manager.setHandlerPoolSize(1);
+        manager.setHandlerQueueLength(1);
+        manager.setSpoolDirectory(spoolDirectory);
+        manager.afterPropertiesSet();
+        try {
+            for (int i = 0; i < 50; i++) {
+                manager.sendNow(createLog(i));
+            }
+            handler.waitFor(50);
+        } finally {
+            manager.destroy();
+            deleteSpoolDirectory(spoolDirectory);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("uei.opennms.org/test/spool/" + i, handler.getUeis().get(i));
+        }
+    }
+
+    public void testSpooledLogsAreReplayedAfterRestart() throws Exception {
+        final File spoolDirectory = createSpoolDirectory();
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(new RecordingEventHandler(blocked));
+        manager.setHandlerPoolSize(1);
+        manager.setHandlerQueueLength(1);
+        manager.setSpoolDirectory(spoolDirectory);
+        manager.afterPropertiesSet();
+        for (int i = 0; i < 5; i++) {
+            manager.sendNow(createLog(i));
+        }
+        manager.destroy();
+
+        final RecordingEventHandler handler = new RecordingEventHandler(null);
+        manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(handler);
+        manager.setHandlerPoolSize(1);
+        manager.setSpoolDirectory(spoolDirectory);
+        manager.afterPropertiesSet();
+        try {
+            handler.waitFor(5);
+        } finally {
+            manager.destroy();
+            blocked.countDown();
+            deleteSpoolDirectory(spoolDirectory);
+        }
+        assertEquals(5, handler.getUeis().size());
+    }
+
+    private static File createSpoolDirectory() throws IOException {
+        final File directory = File.createTempFile("eventd-spool", "");
+        assertTrue(directory.delete());
+        return directory;
+    }
+
+    private static void deleteSpoolDirectory(final File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static Log createLog(final int i) {
+        final Log log = new Log();
+        log.setEvents(new Events());
+        log.getEvents().addEvent(new EventBuilder("uei.opennms.org/test/spool/" + i, "testSpool").getEvent());
+        return log;
+    }
+
+    /**
+     * Records the UEI of each event log it handles, optionally waiting on a
+     * latch before handling anything.
+     */
+    private static class RecordingEventHandler implements EventHandler {
+        private final List<String> m_ueis = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch m_latch;
+
+        public RecordingEventHandler(final CountDownLatch latch) {
+            m_latch = latch;
+        }
+
+        @Override
+        public Runnable createRunnable(final Log eventLog) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (m_latch != null) {
+                            m_latch.await();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    m_ueis.add(eventLog.getEvents().getEvent(0).getUei());
+                }
+            };
+        }
+
+        public List<String> getUeis() {
+            return m_ueis;
+        }
+
+        public void waitFor(final int count) throws InterruptedException {
+            for (int i = 0; i < 100 && m_ueis.size() < count; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(count, m_ueis.size());
+        }
+    }
+
     public class MockEventListener implements EventListener {
         private List<Event> m_events = new ArrayList<Event>();
         
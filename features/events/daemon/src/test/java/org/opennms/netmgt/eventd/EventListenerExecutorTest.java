@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.events.api.EventHandler;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+public class EventListenerExecutorTest {
+
+    private static final int QUEUE_LENGTH = 3;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private GatedListener m_listener;
+
+    private EventListenerExecutor m_executor;
+
+    @Before
+    public void setUp() {
+        m_listener = new GatedListener();
+    }
+
+    @After
+    public void tearDown() {
+        m_listener.open();
+        if (m_executor != null) {
+            m_executor.stop();
+        }
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        m_executor = fill(EventListenerQueuePolicy.DROP);
+
+        m_executor.addEvent(event("late", null));
+
+        assertEquals(1, m_executor.getEventsDropped());
+        assertEquals(QUEUE_LENGTH + 2, m_executor.getEventsQueued());
+        assertEquals(expectedAfterFill(), deliverAll(QUEUE_LENGTH + 1));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        m_executor = fill(EventListenerQueuePolicy.DROP_OLDEST);
+
+        m_executor.addEvent(event("late", null));
+
+        assertEquals(1, m_executor.getEventsDropped());
+        final List<String> expected = expectedAfterFill();
+        expected.remove(1);
+        expected.add("late");
+        assertEquals(expected, deliverAll(QUEUE_LENGTH + 1));
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        m_executor = fill(EventListenerQueuePolicy.COALESCE);
+
+        m_executor.addEvent(event("queued1again", "key1"));
+
+        assertEquals(0, m_executor.getEventsDropped());
+        assertEquals(1, m_executor.getEventsCoalesced());
+        assertEquals(QUEUE_LENGTH, m_executor.getQueueSize());
+        final List<String> expected = expectedAfterFill();
+        expected.remove("queued1");
+        expected.add("queued1again");
+        assertEquals(expected, deliverAll(QUEUE_LENGTH + 1));
+    }
+
+    @Test
+    public void testCoalesceWithoutMatchBlocks() throws Exception {
+        m_executor = fill(EventListenerQueuePolicy.COALESCE);
+
+        final Thread sender = new Thread() {
+            @Override
+            public void run() {
+                m_executor.addEvent(event("late", "otherKey"));
+            }
+        };
+        sender.start();
+        sender.join(200);
+        assertTrue("sender should wait for room in the queue", sender.isAlive());
+
+        m_listener.open();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertEquals(1, m_executor.getEventsBlocked());
+
+        final List<String> expected = expectedAfterFill();
+        expected.add("late");
+        assertEquals(expected, deliverAll(QUEUE_LENGTH + 2));
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        m_executor = fill(EventListenerQueuePolicy.BLOCK);
+
+        final Thread sender = new Thread() {
+            @Override
+            public void run() {
+                m_executor.addEvent(event("late", null));
+            }
+        };
+        sender.start();
+        sender.join(200);
+        assertTrue("sender should wait for room in the queue", sender.isAlive());
+
+        m_listener.open();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertEquals(0, m_executor.getEventsDropped());
+
+        final List<String> expected = expectedAfterFill();
+        expected.add("late");
+        assertEquals(expected, deliverAll(QUEUE_LENGTH + 2));
+    }
+
+    @Test
+    public void testSpillKeepsOrder() throws Exception {
+        m_executor = fill(EventListenerQueuePolicy.SPILL);
+
+        final List<String> expected = expectedAfterFill();
+        for (int i = 0; i < 20; i++) {
+            m_executor.addEvent(event("spilled" + i, null));
+            expected.add("spilled" + i);
+        }
+        assertEquals(20, m_executor.getEventsSpilled());
+        assertEquals(20, m_executor.getSpilledEventsWaiting());
+        assertEquals(1, m_folder.getRoot().listFiles().length);
+
+        assertEquals(expected, deliverAll(expected.size()));
+        assertEquals(0, m_executor.getSpilledEventsWaiting());
+        assertEquals(0, m_executor.getEventsDropped());
+
+        m_executor.stop();
+        assertEquals(0, m_folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testHandlerTimeHistogram() throws Exception {
+        m_executor = new EventListenerExecutor(m_listener, null, EventListenerQueuePolicy.DROP, m_folder.getRoot());
+        m_listener.open();
+        for (int i = 0; i < 10; i++) {
+            m_executor.addEvent(event("event" + i, null));
+        }
+        // the time is recorded after onEvent() returns
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (m_executor.getEventsDelivered() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long total = 0;
+        for (final long count : m_executor.getHandlerTimeHistogram()) {
+            total += count;
+        }
+        assertEquals(10, total);
+        assertEquals(m_executor.getHandlerTimeHistogramBounds().length + 1, m_executor.getHandlerTimeHistogram().length);
+        assertTrue(m_executor.getHandlerTime99thPercentile() >= m_executor.getHandlerTime50thPercentile());
+        assertEquals(10, m_executor.getEventsDelivered());
+    }
+
+    @Test
+    public void testListenerRegisteredWithJmx() throws Exception {
+        final EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(new EventHandler() {
+            @Override
+            public Runnable createRunnable(final Log eventLog) {
+                return null;
+            }
+        });
+        manager.setHandlerPoolSize(1);
+        manager.setHandlerQueueLength(QUEUE_LENGTH);
+        manager.setQueuePolicies(Collections.singletonMap(m_listener.getName(), EventListenerQueuePolicy.DROP_OLDEST));
+        manager.afterPropertiesSet();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("OpenNMS:Name=Eventd,Listener=" + ObjectName.quote(m_listener.getName()));
+
+        manager.addEventListener(m_listener);
+        assertTrue(server.isRegistered(name));
+        assertEquals("DROP_OLDEST", server.getAttribute(name, "QueuePolicy"));
+        assertEquals(QUEUE_LENGTH, server.getAttribute(name, "QueueCapacity"));
+
+        m_listener.open();
+        manager.broadcastNow(event("event", null));
+        m_listener.awaitEvents(1);
+        assertEquals(1L, server.getAttribute(name, "EventsQueued"));
+
+        manager.removeEventListener(m_listener);
+        assertFalse(server.isRegistered(name));
+    }
+
+    /**
+     * Creates an executor with the listener busy on the first event and the
+     * queue full behind it.
+     */
+    private EventListenerExecutor fill(final EventListenerQueuePolicy policy) throws Exception {
+        final EventListenerExecutor executor = new EventListenerExecutor(m_listener, QUEUE_LENGTH, policy, m_folder.getRoot());
+        executor.addEvent(event("busy", null));
+        assertTrue(m_listener.awaitBusy());
+        for (int i = 0; i < QUEUE_LENGTH; i++) {
+            executor.addEvent(event("queued" + i, "key" + i));
+        }
+        assertEquals(QUEUE_LENGTH, executor.getQueueSize());
+        return executor;
+    }
+
+    private static List<String> expectedAfterFill() {
+        final List<String> expected = new ArrayList<String>();
+        expected.add("busy");
+        for (int i = 0; i < QUEUE_LENGTH; i++) {
+            expected.add("queued" + i);
+        }
+        return expected;
+    }
+
+    private List<String> deliverAll(final int count) throws InterruptedException {
+        m_listener.open();
+        m_listener.awaitEvents(count);
+        // give the listener thread a chance to deliver anything unexpected
+        Thread.sleep(50);
+        return m_listener.getReceived();
+    }
+
+    private static Event event(final String name, final String reductionKey) {
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/test/" + name, "EventListenerExecutorTest");
+        if (reductionKey != null) {
+            final AlarmData alarmData = new AlarmData();
+            alarmData.setReductionKey(reductionKey);
+            bldr.setAlarmData(alarmData);
+        }
+        return bldr.getEvent();
+    }
+
+    /**
+     * Holds on to the first event until it is opened.
+     */
+    private static class GatedListener implements EventListener {
+        private final CountDownLatch m_busy = new CountDownLatch(1);
+        private final CountDownLatch m_gate = new CountDownLatch(1);
+        private final List<String> m_received = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public String getName() {
+            return "EventListenerExecutorTest";
+        }
+
+        @Override
+        public void onEvent(final Event e) {
+            m_busy.countDown();
+            try {
+                m_gate.await();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            final String uei = e.getUei();
+            m_received.add(uei.substring(uei.lastIndexOf('/') + 1));
+        }
+
+        public boolean awaitBusy() throws InterruptedException {
+            return m_busy.await(5, TimeUnit.SECONDS);
+        }
+
+        public void open() {
+            m_gate.countDown();
+        }
+
+        public void awaitEvents(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (m_received.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        public List<String> getReceived() {
+            synchronized (m_received) {
+                return new ArrayList<String>(m_received);
+            }
+        }
+    }
+}
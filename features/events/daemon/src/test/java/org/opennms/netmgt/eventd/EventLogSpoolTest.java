@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
+
+public class EventLogSpoolTest {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private File m_directory;
+
+    private EventLogSpool m_spool;
+
+    @Before
+    public void setUp() throws Exception {
+        m_directory = new File(m_folder.getRoot(), "spool");
+        m_spool = new EventLogSpool(m_directory, SEGMENT_SIZE, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_spool.close();
+    }
+
+    @Test
+    public void testTakeInOrder() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            m_spool.append(createLog(i));
+        }
+        assertEquals(10, m_spool.getWaiting());
+
+        for (int i = 0; i < 10; i++) {
+            final EventLogSpool.Entry entry = m_spool.take();
+            assertEquals(uei(i), entry.getLog().getEvents().getEvent(0).getUei());
+            m_spool.complete(entry.getPosition());
+        }
+        assertEquals(0, m_spool.getWaiting());
+        assertEquals(0, m_spool.getOutstanding());
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            m_spool.append(createLog(i));
+        }
+        // 0 and 2 are complete, 1 is still being handled, 3 and 4 were not taken
+        final List<EventLogSpool.Entry> entries = new ArrayList<EventLogSpool.Entry>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(m_spool.take());
+        }
+        m_spool.complete(entries.get(0).getPosition());
+        m_spool.complete(entries.get(2).getPosition());
+        m_spool.close();
+
+        m_spool = new EventLogSpool(m_directory, SEGMENT_SIZE, 4);
+        assertEquals(4, m_spool.getWaiting());
+        for (final int i : new int[] { 1, 2, 3, 4 }) {
+            final EventLogSpool.Entry entry = m_spool.take();
+            assertEquals(uei(i), entry.getLog().getEvents().getEvent(0).getUei());
+            m_spool.complete(entry.getPosition());
+        }
+        m_spool.close();
+
+        m_spool = new EventLogSpool(m_directory, SEGMENT_SIZE, 4);
+        assertEquals(0, m_spool.getWaiting());
+    }
+
+    @Test
+    public void testIncompleteRecordIsDiscarded() throws Exception {
+        m_spool.append(createLog(0));
+        final long position = m_spool.append(createLog(1));
+        m_spool.close();
+
+        // clobber the data of the second record as if eventd died while writing it
+        final RandomAccessFile segment = new RandomAccessFile(new File(m_directory, String.format("%020d.segment", 0)), "rw");
+        try {
+            segment.seek(position + 20);
+            segment.writeLong(0xdeadbeefL);
+        } finally {
+            segment.close();
+        }
+
+        m_spool = new EventLogSpool(m_directory, SEGMENT_SIZE, 4);
+        assertEquals(1, m_spool.getWaiting());
+        m_spool.append(createLog(2));
+        assertEquals(uei(0), m_spool.take().getLog().getEvents().getEvent(0).getUei());
+        assertEquals(uei(2), m_spool.take().getLog().getEvents().getEvent(0).getUei());
+    }
+
+    @Test
+    public void testSegmentsAreRolledAndDeleted() throws Exception {
+        int appended = 0;
+        while (m_spool.getSegmentCount() < 3) {
+            m_spool.append(createLog(appended++));
+        }
+        assertEquals(3, m_directory.list().length - 1);
+
+        for (int i = 0; i < appended; i++) {
+            final EventLogSpool.Entry entry = m_spool.take();
+            assertEquals(uei(i), entry.getLog().getEvents().getEvent(0).getUei());
+            m_spool.complete(entry.getPosition());
+        }
+        assertEquals(1, m_spool.getSegmentCount());
+        assertEquals(2, m_directory.list().length);
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        try {
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                m_spool.append(createLog(i));
+            }
+            fail("expected the spool to fill up");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("full"));
+        }
+        assertEquals(4, m_spool.getSegmentCount());
+
+        // taking records does not make room until they are complete
+        final EventLogSpool.Entry entry = m_spool.take();
+        final long position = entry.getPosition();
+        final int waiting = m_spool.getWaiting();
+        for (int i = 0; i < waiting; i++) {
+            m_spool.complete(m_spool.take().getPosition());
+        }
+        assertEquals(4, m_spool.getSegmentCount());
+        m_spool.complete(position);
+        assertEquals(1, m_spool.getSegmentCount());
+        m_spool.append(createLog(0));
+    }
+
+    @Test
+    public void testTakeReturnsNullWhenClosed() throws Exception {
+        final Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    m_spool.close();
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        closer.start();
+        assertNull(m_spool.take());
+        closer.join();
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        m_spool.close();
+        m_spool = new EventLogSpool(m_directory, EventLogSpool.DEFAULT_SEGMENT_SIZE, 4);
+
+        final int count = 20000;
+        final Log log = createLog(0);
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            m_spool.append(log);
+        }
+        for (int i = 0; i < count; i++) {
+            m_spool.complete(m_spool.take().getPosition());
+        }
+        final long elapsed = Math.max(1, System.nanoTime() - start);
+        System.err.printf("Spooled and took %d event logs in %d ms: event logs per second %f.%n", count, elapsed / 1000000, count * 1000000000.0 / elapsed);
+    }
+
+    private static String uei(final int i) {
+        return "uei.opennms.org/test/spool/" + i;
+    }
+
+    private static Log createLog(final int i) {
+        final EventBuilder bldr = new EventBuilder(uei(i), "EventLogSpoolTest");
+        bldr.setInterface(addr("192.168.1.1"));
+        bldr.addParam("count", i);
+        final Log log = new Log();
+        log.setEvents(new Events());
+        log.getEvents().addEvent(bldr.getEvent());
+        return log;
+    }
+}
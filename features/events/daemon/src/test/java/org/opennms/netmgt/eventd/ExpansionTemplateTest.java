@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Logmsg;
+
+public class ExpansionTemplateTest {
+
+    private static final List<String> TEMPLATES = Arrays.asList(
+        "no tokens at all",
+        "%uei%",
+        "Node %nodelabel% (%nodeid%) is down, %nodelabel% really is",
+        "%parm[#1]% and %parm[#2]% and %parm[#99]%",
+        "value %parm[ifIndex]% decoded %parm[ifOperStatus]%",
+        "100% sure, %  not a token % and a trailing %",
+        "%%empty token%%",
+        "unmatched %parm[#1]",
+        "%parm[##]% parms: %parm[names-all]% = %parm[values-all]%",
+        "line\nbreak %foo\nbar% %interface%",
+        "%snmp% %id% %generic% %specific%",
+        "ends with token %host%",
+        "%pctsign%%pctsign%"
+    );
+
+    private final EventUtil m_eventUtil = new NoDatabaseEventUtil();
+
+    @Test
+    public void testSameResultAsLegacyExpansion() {
+        final Event event = createTrap(25);
+        final Map<String, Map<String, String>> decode = createDecode();
+
+        for (final String template : TEMPLATES) {
+            assertEquals(template, legacyExpandParms(m_eventUtil, template, event, decode), m_eventUtil.expandParms(template, event, decode));
+            assertEquals(template, legacyExpandParms(m_eventUtil, template, event, null), m_eventUtil.expandParms(template, event));
+        }
+    }
+
+    @Test
+    public void testCompile() {
+        assertFalse(ExpansionTemplate.compile("100% sure").hasTokens());
+        assertFalse(ExpansionTemplate.compile("% a %").hasTokens());
+        assertTrue(ExpansionTemplate.compile("% a %uei%").hasTokens());
+        assertNull(ExpansionTemplate.compile("no tokens").expand(m_eventUtil, createTrap(1), null));
+        assertEquals("uei.opennms.org/test/heavyTrap", ExpansionTemplate.compile("%uei%").expand(m_eventUtil, createTrap(1), null));
+    }
+
+    @Test
+    public void testNodeLabelResolvedOncePerString() {
+        final CountingEventUtil eventUtil = new CountingEventUtil();
+        eventUtil.expandParms("%nodelabel% %nodelabel% %nodelabel%", createTrap(1));
+        assertEquals(1, eventUtil.m_nodeLabelLookups);
+
+        eventUtil.expandParms("%uei%", createTrap(1));
+        assertEquals(1, eventUtil.m_nodeLabelLookups);
+    }
+
+    /**
+     * Expands logmsg/descr style strings of a trap definition with 25
+     * varbinds with the legacy string parser and the compiled templates.
+     */
+    @Test
+    public void testHeavyTrapSpeed() {
+        final int ATTEMPTS = 20000;
+        final Event event = createTrap(25);
+        final Map<String, Map<String, String>> decode = createDecode();
+
+        final StringBuilder logmsg = new StringBuilder("&lt;p&gt;Trap from %nodelabel% (%interface%):");
+        final StringBuilder descr = new StringBuilder("&lt;p&gt;heavyTrap ");
+        for (int i = 1; i <= 25; i++) {
+            logmsg.append(" v").append(i).append("=%parm[#").append(i).append("]%");
+            descr.append("&lt;br&gt;").append(".1.3.6.1.4.1.5813.20.").append(i).append(": %parm[.1.3.6.1.4.1.5813.20.").append(i).append("]%");
+        }
+        final String[] strings = new String[] { logmsg.toString(), descr.toString(), "%uei%:%dpname%:%nodeid%:%parm[#1]%" };
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ATTEMPTS; i++) {
+            for (final String s : strings) {
+                legacyExpandParms(m_eventUtil, s, event, decode);
+            }
+        }
+        final long legacyElapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        final ExpansionTemplate[] templates = new ExpansionTemplate[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            templates[i] = ExpansionTemplate.compile(strings[i]);
+        }
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < ATTEMPTS; i++) {
+            for (final ExpansionTemplate template : templates) {
+                m_eventUtil.expandParms(template, event, decode);
+            }
+        }
+        final long templateElapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        System.err.printf("%d events: legacy expansion %d ms (%f events per second), templates %d ms (%f events per second).%n",
+                          ATTEMPTS, legacyElapsed, ATTEMPTS*1000.0/legacyElapsed, templateElapsed, ATTEMPTS*1000.0/templateElapsed);
+
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals(legacyExpandParms(m_eventUtil, strings[i], event, decode), m_eventUtil.expandParms(templates[i], event, decode));
+        }
+    }
+
+    @Test
+    public void testEventConfTemplates() {
+        final org.opennms.netmgt.xml.eventconf.Event econf = new org.opennms.netmgt.xml.eventconf.Event();
+        econf.setUei("uei.opennms.org/test/heavyTrap");
+        econf.setDescr("descr of %uei%");
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setContent("logmsg %parm[#1]%");
+        econf.setLogmsg(logmsg);
+        econf.setOperinstruct("no tokens");
+        final Events root = new Events();
+        root.addEvent(econf);
+
+        final EventConfTemplates templates = new EventConfTemplates(root);
+        assertTrue(templates.isFor(root));
+        assertFalse(templates.isFor(new Events()));
+        assertEquals(2, templates.size());
+        assertEquals("descr of %uei%", templates.get("descr of %uei%").getSource());
+        assertEquals("logmsg 3", m_eventUtil.expandParms(templates.get("logmsg %parm[#1]%"), createTrap(1), null));
+
+        // strings without tokens or from the event itself are not kept
+        assertNull(templates.get("no tokens"));
+        assertNull(templates.get("sent with the event %uei%"));
+        assertNull(templates.get(null));
+
+        assertEquals(0, new EventConfTemplates(null).size());
+    }
+
+    private static Event createTrap(final int varbinds) {
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/test/heavyTrap", "trapd");
+        bldr.setNodeid(17);
+        bldr.setHost("192.168.1.1");
+        bldr.setDistPoller("localhost");
+        bldr.setEnterpriseId(".1.3.6.1.4.1.5813");
+        bldr.setGeneric(6);
+        bldr.setSpecific(20);
+        bldr.setCommunity("public");
+        bldr.setSnmpVersion("v2c");
+        bldr.addParam("ifIndex", "3");
+        bldr.addParam("ifOperStatus", "2");
+        for (int i = 3; i <= varbinds; i++) {
+            bldr.addParam(".1.3.6.1.4.1.5813.20." + i, "value " + i);
+        }
+        return bldr.getEvent();
+    }
+
+    private static Map<String, Map<String, String>> createDecode() {
+        final Map<String, String> operStatus = new HashMap<String, String>();
+        operStatus.put("1", "up");
+        operStatus.put("2", "down");
+        final Map<String, Map<String, String>> decode = new HashMap<String, Map<String, String>>();
+        decode.put("parm[ifOperStatus]", operStatus);
+        return decode;
+    }
+
+    /**
+     * The string based expansion as it was before templates were introduced,
+     * kept as the reference for the tests.
+     */
+    private static String legacyExpandParms(EventUtil util, String inp, Event event, Map<String, Map<String, String>> decode) {
+        int index1 = -1;
+        int index2 = -1;
+
+        if (inp == null) {
+            return null;
+        }
+
+        StringBuffer ret = new StringBuffer();
+
+        String tempInp = inp;
+        int inpLen = inp.length();
+
+        // check input string to see if it has any %xxx% substring
+        while ((tempInp != null) && ((index1 = tempInp.indexOf('%')) != -1)) {
+            // copy till first %
+            ret.append(tempInp.substring(0, index1));
+            tempInp = tempInp.substring(index1);
+
+            index2 = tempInp.indexOf('%', 1);
+            if (index2 != -1) {
+                // Get the value between the %s
+                String parm = tempInp.substring(1, index2);
+                // m_logger.debug("parm: " + parm + " found in value");
+
+                // If there's any whitespace in between the % signs, then do not try to 
+                // expand it with a parameter value
+                if (parm.matches(".*\\s.*")) {
+                    ret.append('%');
+                    tempInp = tempInp.substring(1);
+                    continue;
+                }
+
+                String parmVal = util.getValueOfParm(parm, event);
+                // m_logger.debug("value of parm: " + parmVal);
+
+                if (parmVal != null) {
+                    if (decode != null && decode.containsKey(parm) && decode.get(parm).containsKey(parmVal)) {
+                    ret.append(decode.get(parm).get(parmVal));
+                    ret.append("(");
+                    ret.append(parmVal);
+                    ret.append(")");
+                    } else {
+                    ret.append(parmVal);
+                    }
+                }
+
+                if (index2 < (inpLen - 1)) {
+                    tempInp = tempInp.substring(index2 + 1);
+                } else {
+                    tempInp = null;
+                }
+            }
+            else {
+                break;
+            }
+        }
+
+        if ((index1 == -1 || index2 == -1) && (tempInp != null)) {
+            ret.append(tempInp);
+        }
+
+        String retStr = ret.toString();
+        if (retStr != null && !retStr.equals(inp)) {
+            return retStr;
+        } else {
+            return null;
+        }
+    }
+
+    private static class NoDatabaseEventUtil extends AbstractEventUtil {
+        @Override
+        public String getHardwareFieldValue(final String parm, final long nodeId) {
+            return null;
+        }
+
+        @Override
+        public String getHostName(final int nodeId, final String hostip) {
+            return hostip;
+        }
+
+        @Override
+        protected String getNodeLabel(final long nodeId) {
+            return "node" + nodeId;
+        }
+
+        @Override
+        protected String getIfAlias(final long nodeId, final String ipaddr) {
+            return null;
+        }
+
+        @Override
+        protected String getAssetFieldValue(final String parm, final long nodeId) {
+            return null;
+        }
+    }
+
+    private static class CountingEventUtil extends NoDatabaseEventUtil {
+        private int m_nodeLabelLookups = 0;
+
+        @Override
+        protected String getNodeLabel(final long nodeId) {
+            m_nodeLabelLookups++;
+            return super.getNodeLabel(nodeId);
+        }
+    }
+}
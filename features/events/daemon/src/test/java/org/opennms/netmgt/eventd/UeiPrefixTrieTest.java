@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class UeiPrefixTrieTest {
+
+    private Map<String, List<String>> m_subscriptions;
+
+    @Before
+    public void setUp() {
+        m_subscriptions = new HashMap<String, List<String>>();
+        subscribe("uei.opennms.org/nodes/nodeDown", "exact", "both");
+        subscribe("uei.opennms.org/nodes/", "nodes", "both");
+        subscribe("uei.opennms.org/", "all");
+        subscribe("uei.opennms.org", "noSlash");
+        subscribe("uei.opennms.org/*", "star");
+        subscribe("uei.opennms.org/nodes/nodeDown/", "tooLong");
+        subscribe("uei.opennms.org/empty/");
+    }
+
+    @Test
+    public void testMostSpecificFirstWithoutDuplicates() {
+        assertResolves("uei.opennms.org/nodes/nodeDown", "exact", "both", "nodes", "all");
+    }
+
+    @Test
+    public void testDirectoryOnly() {
+        assertResolves("uei.opennms.org/nodes/nodeUp", "nodes", "both", "all");
+        assertResolves("uei.opennms.org/foo", "all");
+    }
+
+    @Test
+    public void testPrefixMustEndWithSlash() {
+        assertResolves("uei.opennms.orgfoo");
+        assertResolves("uei.opennms.org", "noSlash");
+    }
+
+    @Test
+    public void testTrailingSlashIsNotADirectoryOfItself() {
+        // the same rules as the lastIndexOf("/", length - 2) loop that came before the trie
+        assertResolves("uei.opennms.org/nodes/", "nodes", "both", "all");
+        assertResolves("uei.opennms.org/", "all");
+        assertResolves("/");
+        assertResolves("/foo");
+    }
+
+    @Test
+    public void testEmpty() {
+        final UeiPrefixTrie<String> trie = new UeiPrefixTrie<String>(Collections.<String, List<String>>emptyMap());
+        assertEquals(0, trie.size());
+        assertEquals(Collections.emptyList(), trie.resolve("uei.opennms.org/foo"));
+        assertEquals(Collections.emptyList(), trie.resolve(""));
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        final UeiPrefixTrie<String> trie = new UeiPrefixTrie<String>(m_subscriptions);
+        assertEquals(6, trie.size());
+        for (final String uei : new String[] { "uei.opennms.org/nodes/nodeDown/x", "uei.opennms.org//nodes/", "uei.opennms.org/nodes//", "x/uei.opennms.org/", "" }) {
+            assertEquals(uei, linearScan(uei), trie.resolve(uei));
+        }
+    }
+
+    private void subscribe(final String uei, final String... subscribers) {
+        m_subscriptions.put(uei, new ArrayList<String>(Arrays.asList(subscribers)));
+    }
+
+    private void assertResolves(final String uei, final String... expected) {
+        assertEquals(uei, Arrays.asList(expected), new UeiPrefixTrie<String>(m_subscriptions).resolve(uei));
+        assertEquals(uei, linearScan(uei), new UeiPrefixTrie<String>(m_subscriptions).resolve(uei));
+    }
+
+    private List<String> linearScan(final String event) {
+        final List<String> subscribers = new ArrayList<String>();
+        for (String uei = event; uei.length() > 0; ) {
+            if (m_subscriptions.containsKey(uei)) {
+                for (final String subscriber : m_subscriptions.get(uei)) {
+                    if (!subscribers.contains(subscriber)) {
+                        subscribers.add(subscriber);
+                    }
+                }
+            }
+            final int i = uei.lastIndexOf("/", uei.length() - 2);
+            if (i > 0) {
+                uei = uei.substring(0, i + 1);
+            } else {
+                break;
+            }
+        }
+        return subscribers;
+    }
+}
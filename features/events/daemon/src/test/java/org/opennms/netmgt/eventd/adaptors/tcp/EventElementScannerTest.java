@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Event;
+
+public class EventElementScannerTest {
+
+    private final List<Event> m_events = new ArrayList<Event>();
+
+    private final List<Integer> m_logEnds = new ArrayList<Integer>();
+
+    @Test
+    public void testSimpleLog() throws Exception {
+        scan(new EventElementScanner(4096), 8192, "<log><events>" + event("a") + event("b") + "</events></log>");
+        assertUeis("a", "b");
+        assertEquals(1, m_logEnds.size());
+        assertEquals(Integer.valueOf(2), m_logEnds.get(0));
+    }
+
+    @Test
+    public void testEveryChunkSize() throws Exception {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<log xmlns=\"http://xmlns.opennms.org/xsd/event\">\n"
+                + "  <!-- </event> in a comment -->\n"
+                + "  <header><ver>1.0</ver></header>\n"
+                + "  <events>\n"
+                + "    " + event("a") + "\n"
+                + "    <event><uei>b</uei><descr><![CDATA[</event> in <CDATA> ]]]]></descr><logmsg dest='logndisplay'>a > b</logmsg></event>\n"
+                + "  </events>\n"
+                + "</log>\n"
+                + "<log><events>" + event("c") + "</events></log>";
+        for (int chunk = 1; chunk < 40; chunk++) {
+            m_events.clear();
+            m_logEnds.clear();
+            scan(new EventElementScanner(4096), chunk, xml);
+            assertUeis("a", "b", "c");
+            assertEquals("</event> in <CDATA> ]]", m_events.get(1).getDescr());
+            assertEquals("a > b", m_events.get(1).getLogmsg().getContent());
+            assertEquals(2, m_logEnds.size());
+        }
+    }
+
+    @Test
+    public void testPrefixedNamespace() throws Exception {
+        scan(new EventElementScanner(4096), 8192, "<e:log xmlns:e=\"http://xmlns.opennms.org/xsd/event\"><e:events><e:event><e:uei>a</e:uei></e:event></e:events></e:log>");
+        assertUeis("a");
+    }
+
+    @Test
+    public void testOnlyEventsInEventsAreReturned() throws Exception {
+        scan(new EventElementScanner(4096), 8192, "<log><header><event>x</event></header><events><event><uei>a</uei><event/></event><event/></events></log>");
+        assertEquals(2, m_events.size());
+        assertEquals("a", m_events.get(0).getUei());
+    }
+
+    @Test
+    public void testEventTooLarge() throws Exception {
+        final StringBuilder descr = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            descr.append("0123456789");
+        }
+        try {
+            scan(new EventElementScanner(1024), 100, "<log><events><event><descr>" + descr + "</descr></event></events></log>");
+            fail("expected an IOException");
+        } catch (final IOException e) {
+            assertEquals("Event larger than 1024 bytes", e.getMessage());
+        }
+    }
+
+    private static String event(final String uei) {
+        return "<event uuid=\"" + uei + "\"><uei>" + uei + "</uei><source>EventElementScannerTest</source></event>";
+    }
+
+    private void scan(final EventElementScanner scanner, final int chunk, final String xml) throws Exception {
+        final byte[] bytes = xml.getBytes("UTF-8");
+        final EventElementScanner.Listener listener = new EventElementScanner.Listener() {
+            @Override
+            public void onEvent(final byte[] data, final int length) {
+                try {
+                    m_events.add(StaxEventDecoder.decode(data, length, scanner.getNamespaceDeclarations(), scanner.getEncoding()));
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void onLogEnd() {
+                m_logEnds.add(m_events.size());
+            }
+        };
+        for (int i = 0; i < bytes.length; i += chunk) {
+            scanner.scan(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)), listener);
+        }
+    }
+
+    private void assertUeis(final String... ueis) {
+        assertEquals(ueis.length, m_events.size());
+        for (int i = 0; i < ueis.length; i++) {
+            assertEquals(ueis[i], m_events.get(i).getUei());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.events.api.support.EventCodec;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+import org.opennms.netmgt.xml.event.Log;
+
+/**
+ * Sends the same event logs to the thread per connection, the non-blocking
+ * and the binary receiver and compares their throughput.
+ */
+public class TcpEventReceiverTest {
+
+    private static final int PORT = 15817;
+
+    private static final int CONNECTIONS = 4;
+
+    private static final int LOGS_PER_CONNECTION = 5;
+
+    private static final int EVENTS_PER_LOG = 500;
+
+    private static final Pattern UUID = Pattern.compile("</(?:\\w+:)?uuid>");
+
+    private final AtomicInteger m_received = new AtomicInteger();
+
+    private TcpEventReceiver m_receiver;
+
+    @After
+    public void tearDown() {
+        if (m_receiver != null) {
+            m_receiver.stop();
+        }
+    }
+
+    @Test
+    public void testThreadPerConnection() throws Exception {
+        run(false, false);
+    }
+
+    @Test
+    public void testNonBlocking() throws Exception {
+        run(true, false);
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        run(true, true);
+    }
+
+    @Test
+    public void testNonBlockingEventsPerConnection() throws Exception {
+        m_receiver = new TcpEventReceiver(PORT, "127.0.0.1");
+        m_receiver.setNonBlocking(true);
+        m_receiver.setEventsPerConnection(1);
+        m_receiver.addEventHandler(new CountingEventHandler());
+        m_receiver.start();
+
+        // the second log is not read, the connection is closed after the first
+        assertEquals(2, send(encode(false, log(0, 2), log(1, 2)), false, false));
+        assertEquals(2, m_received.get());
+    }
+
+    private void run(final boolean nonBlocking, final boolean binary) throws Exception {
+        start(nonBlocking, binary);
+
+        // warm up
+        assertEquals(EVENTS_PER_LOG, send(encode(binary, log(0, EVENTS_PER_LOG)), true, binary));
+        m_received.set(0);
+
+        final String[] logs = new String[LOGS_PER_CONNECTION];
+        for (int i = 0; i < LOGS_PER_CONNECTION; i++) {
+            logs[i] = log(i, EVENTS_PER_LOG);
+        }
+        final byte[] data = encode(binary, logs);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(CONNECTIONS);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            final long start = System.nanoTime();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                futures.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return send(data, true, binary);
+                    }
+                }));
+            }
+            int acknowledged = 0;
+            for (final Future<Integer> future : futures) {
+                acknowledged += future.get();
+            }
+            final long elapsed = Math.max(1, System.nanoTime() - start);
+
+            final int total = CONNECTIONS * LOGS_PER_CONNECTION * EVENTS_PER_LOG;
+            assertEquals(total, acknowledged);
+            assertEquals(total, m_received.get());
+            System.err.printf("%s: %d events (%d bytes) over %d connections in %d ms: events per second %f.%n", binary ? "binary" : nonBlocking ? "non-blocking" : "thread per connection", total, CONNECTIONS * data.length, CONNECTIONS, elapsed / 1000000, total * 1000000000.0 / elapsed);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void start(final boolean nonBlocking, final boolean binary) throws Exception {
+        m_receiver = new TcpEventReceiver(PORT, "127.0.0.1");
+        m_receiver.setNonBlocking(nonBlocking);
+        m_receiver.setBinary(binary);
+        m_receiver.addEventHandler(new CountingEventHandler());
+        m_receiver.start();
+    }
+
+    /**
+     * Sends the logs and reads the receipts until the server closes the
+     * connection.
+     *
+     * @return the number of UUIDs in the receipts
+     */
+    private static int send(final byte[] data, final boolean shutdownOutput, final boolean binary) throws Exception {
+        final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), PORT);
+        try {
+            final Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        final OutputStream out = socket.getOutputStream();
+                        out.write(data);
+                        out.flush();
+                        if (shutdownOutput) {
+                            socket.shutdownOutput();
+                        }
+                    } catch (final Exception e) {
+                        // the server closed the connection
+                    }
+                }
+            };
+            writer.start();
+
+            final ByteArrayOutputStream receipts = new ByteArrayOutputStream();
+            final InputStream in = socket.getInputStream();
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                receipts.write(buffer, 0, count);
+            }
+            writer.join();
+
+            int uuids = 0;
+            if (binary) {
+                final InputStream frames = new ByteArrayInputStream(receipts.toByteArray());
+                EventReceipt receipt;
+                while ((receipt = EventCodec.readReceipt(frames)) != null) {
+                    uuids += receipt.getUuidCount();
+                }
+            } else {
+                final Matcher m = UUID.matcher(receipts.toString("UTF-8"));
+                while (m.find()) {
+                    uuids++;
+                }
+            }
+            return uuids;
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static byte[] encode(final boolean binary, final String... logs) throws Exception {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (final String log : logs) {
+            if (binary) {
+                EventCodec.write(JaxbUtils.unmarshal(Log.class, log), data);
+            } else {
+                data.write(log.getBytes("UTF-8"));
+            }
+        }
+        return data.toByteArray();
+    }
+
+    private static String log(final int log, final int events) {
+        final StringBuilder xml = new StringBuilder("<log><events>");
+        for (int i = 0; i < events; i++) {
+            xml.append("<event uuid=\"").append(log).append('-').append(i).append("\">")
+                .append("<uei>uei.opennms.org/test/tcp</uei>")
+                .append("<source>TcpEventReceiverTest</source>")
+                .append("<time>Thursday, 1 January 2015 00:00:00 o'clock GMT</time>")
+                .append("<interface>192.168.1.").append(i % 250).append("</interface>")
+                .append("<parms><parm><parmName><![CDATA[count]]></parmName><value type=\"int\" encoding=\"text\"><![CDATA[").append(i).append("]]></value></parm></parms>")
+                .append("</event>");
+        }
+        return xml.append("</events></log>").toString();
+    }
+
+    private class CountingEventHandler implements EventHandler {
+        @Override
+        public boolean processEvent(final Event event) {
+            m_received.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void receiptSent(final EventReceipt receipt) {
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.api.EventdServiceManager;
+import org.opennms.netmgt.eventd.EventUtil;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath*:/META-INF/opennms/component-service.xml",
+        "classpath:/META-INF/opennms/applicationContext-daemon.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+
+        "classpath:/META-INF/opennms/applicationContext-eventDaemon.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(reuseDatabase=false)
+public class BatchingJdbcEventWriterTest {
+
+    private static final int THREADS = 8;
+
+    private static final int EVENTS_PER_THREAD = 250;
+
+    @Autowired
+    private DataSource m_dataSource;
+
+    @Autowired
+    private EventdServiceManager m_eventdServiceManager;
+
+    @Autowired
+    private EventUtil m_eventUtil;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private BatchingJdbcEventWriter m_writer;
+
+    @Before
+    public void setUp() throws Exception {
+        m_writer = new BatchingJdbcEventWriter();
+        m_writer.setDataSource(m_dataSource);
+        m_writer.setEventdServiceManager(m_eventdServiceManager);
+        m_writer.setEventUtil(m_eventUtil);
+        m_writer.setGetNextIdString("SELECT nextval('eventsNxtId')");
+        m_writer.setIdBlockSize(50);
+        m_writer.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_writer.destroy();
+    }
+
+    @Test
+    public void testDbidIsSetWhenProcessReturns() throws Exception {
+        final Event event = createEvent("testDbidIsSetWhenProcessReturns", 0);
+        assertEquals(new Integer(0), event.getDbid());
+
+        m_writer.process(null, event);
+
+        assertTrue(event.getDbid() > 0);
+        assertEquals("testDbidIsSetWhenProcessReturns", jdbcTemplate.queryForObject("SELECT eventUei FROM events WHERE eventId = ?", String.class, event.getDbid()));
+    }
+
+    @Test
+    public void testConcurrentHandlersGetDistinctIds() throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final List<Future<List<Integer>>> futures = new ArrayList<Future<List<Integer>>>();
+
+        final long start = System.nanoTime();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                futures.add(pool.submit(new Callable<List<Integer>>() {
+                    @Override
+                    public List<Integer> call() throws Exception {
+                        final List<Integer> dbids = new ArrayList<Integer>(EVENTS_PER_THREAD);
+                        for (int j = 0; j < EVENTS_PER_THREAD; j++) {
+                            final Event event = createEvent("uei.opennms.org/test/batch/" + thread, j);
+                            m_writer.process(null, event);
+                            dbids.add(event.getDbid());
+                        }
+                        return dbids;
+                    }
+                }));
+            }
+
+            final TreeSet<Integer> dbids = new TreeSet<Integer>();
+            for (final Future<List<Integer>> future : futures) {
+                dbids.addAll(future.get());
+            }
+            final long elapsed = Math.max(1, System.nanoTime() - start);
+
+            final int total = THREADS * EVENTS_PER_THREAD;
+            assertEquals(total, dbids.size());
+            assertEquals(Integer.valueOf(total), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class));
+            assertEquals(Integer.valueOf(total), jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT eventId) FROM events WHERE eventId BETWEEN ? AND ?", Integer.class, dbids.first(), dbids.last()));
+            System.err.printf("%d handler threads: %d events in %d ms: events per second %f.%n", THREADS, total, elapsed / 1000000, total * 1000000000.0 / elapsed);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBadEventDoesNotFailBatch() throws Exception {
+        final Event good = createEvent("uei.opennms.org/test/good", 0);
+        final Event bad = createEvent("uei.opennms.org/test/bad", 1);
+        // eventSource is not null in the events table
+        bad.setSource(null);
+
+        // give both events time to end up in the same batch
+        m_writer.destroy();
+        m_writer.setMaxBatchDelay(200);
+        m_writer.afterPropertiesSet();
+
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Boolean> goodResult = pool.submit(processor(good));
+            final Future<Boolean> badResult = pool.submit(processor(bad));
+
+            assertTrue(goodResult.get());
+            assertEquals(Boolean.FALSE, badResult.get());
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class));
+        assertEquals("uei.opennms.org/test/good", jdbcTemplate.queryForObject("SELECT eventUei FROM events WHERE eventId = ?", String.class, good.getDbid()));
+    }
+
+    @Test(timeout=10000, expected=EventProcessorException.class)
+    public void testProcessAfterDestroyFails() throws Exception {
+        m_writer.destroy();
+        m_writer.process(null, createEvent("uei.opennms.org/test/stopped", 0));
+    }
+
+    private Callable<Boolean> processor(final Event event) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                try {
+                    m_writer.process(null, event);
+                    return true;
+                } catch (final Exception e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    private static Event createEvent(final String uei, final int i) {
+        final EventBuilder bldr = new EventBuilder(uei, "BatchingJdbcEventWriterTest");
+        bldr.setLogDest("logndisplay");
+        bldr.setLogMessage("event " + i);
+        bldr.addParam("count", i);
+        return bldr.getEvent();
+    }
+}
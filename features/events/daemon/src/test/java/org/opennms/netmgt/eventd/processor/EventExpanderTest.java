@@ -94,6 +94,7 @@ public class EventExpanderTest extends TestCase {
 
         EasyMock.expect(m_eventConfDao.findByEvent(event)).andReturn(null);
         EasyMock.expect(m_eventConfDao.findByUei("uei.opennms.org/default/event")).andReturn(null);
+        EasyMock.expect(m_eventConfDao.getRootEvents()).andReturn(null);
         m_mocks.replayAll();
 
         expander.expandEvent(event);
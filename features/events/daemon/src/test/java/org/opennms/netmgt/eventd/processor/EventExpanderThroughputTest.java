@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.eventd.AbstractEventUtil;
+import org.opennms.netmgt.eventd.EventExpander;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Expands events from a growing number of threads, the way the eventd
+ * handler pool does, and reports the events per second for each pool size.
+ */
+public class EventExpanderThroughputTest {
+
+    private static final int EVENTS_PER_THREAD = 5000;
+
+    private EventExpander m_expander;
+
+    @Before
+    public void setUp() throws Exception {
+        DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+
+        m_expander = new EventExpander();
+        m_expander.setEventConfDao(eventConfDao);
+        m_expander.setEventUtil(new NoDatabaseEventUtil());
+        m_expander.afterPropertiesSet();
+    }
+
+    /**
+     * Too slow for the unit tests, run with -DrunThroughputTests=true.
+     */
+    @Test
+    public void testThroughputByHandlerPoolSize() throws Exception {
+        if (!Boolean.getBoolean("runThroughputTests")) return;
+
+        final int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        // warm up the JIT before measuring
+        expandEvents(1, EVENTS_PER_THREAD);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            final long start = System.nanoTime();
+            final int expanded = expandEvents(threads, EVENTS_PER_THREAD);
+            final long elapsed = Math.max(1, System.nanoTime() - start);
+
+            assertEquals(threads * EVENTS_PER_THREAD, expanded);
+            System.err.printf("%d handler threads: %d events in %d ms: events per second %f.%n", threads, expanded, elapsed / 1000000, expanded * 1000000000.0 / elapsed);
+        }
+    }
+
+    private int expandEvents(final int threads, final int eventsPerThread) throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final AtomicInteger expanded = new AtomicInteger();
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int j = 0; j < eventsPerThread; j++) {
+                            final Event e = createEvent(j);
+                            m_expander.expandEvent(e);
+                            if (e.getLogmsg() != null && e.getDescr() != null) {
+                                expanded.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return expanded.get();
+    }
+
+    private static Event createEvent(final int i) {
+        final EventBuilder bldr = new EventBuilder(i % 2 == 0 ? EventConstants.NODE_DOWN_EVENT_UEI : EventConstants.INTERFACE_DOWN_EVENT_UEI, "EventExpanderThroughputTest");
+        bldr.setNodeid(1 + (i % 100));
+        bldr.setHost("localhost");
+        bldr.addParam(EventConstants.PARM_NODE_LABEL, "node" + (i % 100));
+        return bldr.getEvent();
+    }
+
+    /**
+     * Answers the database backed tokens with constants so that the test
+     * measures the expander itself.
+     */
+    private static class NoDatabaseEventUtil extends AbstractEventUtil {
+        @Override
+        public String getHardwareFieldValue(final String parm, final long nodeId) {
+            return null;
+        }
+
+        @Override
+        public String getHostName(final int nodeId, final String hostip) {
+            return hostip;
+        }
+
+        @Override
+        protected String getNodeLabel(final long nodeId) {
+            return "node" + nodeId;
+        }
+
+        @Override
+        protected String getIfAlias(final long nodeId, final String ipaddr) {
+            return null;
+        }
+
+        @Override
+        protected String getAssetFieldValue(final String parm, final long nodeId) {
+            return null;
+        }
+    }
+}
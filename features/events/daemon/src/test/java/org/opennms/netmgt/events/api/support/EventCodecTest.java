@@ -0,0 +1,377 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.events.api.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Autoacknowledge;
+import org.opennms.netmgt.xml.event.Autoaction;
+import org.opennms.netmgt.xml.event.Correlation;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+import org.opennms.netmgt.xml.event.Forward;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.opennms.netmgt.xml.event.Logmsg;
+import org.opennms.netmgt.xml.event.Mask;
+import org.opennms.netmgt.xml.event.Maskelement;
+import org.opennms.netmgt.xml.event.Operaction;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Script;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Tticket;
+import org.opennms.netmgt.xml.event.UpdateField;
+import org.opennms.netmgt.xml.event.Value;
+
+public class EventCodecTest {
+
+    private static final int BENCHMARK_LOGS = 2000;
+
+    private static final int EVENTS_PER_LOG = 10;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Log log = new Log();
+        final Header header = new Header();
+        header.setVer("1.0");
+        header.setDpName("localhost");
+        header.setCreated("Thursday, 1 January 2015 00:00:00 o'clock GMT");
+        header.setMstation("127.0.0.1");
+        log.setHeader(header);
+        log.addEvent(createFullEvent());
+        log.addEvent(createEvent(1));
+
+        final byte[] frame = EventCodec.encode(log);
+        assertTrue(EventCodec.isFrame(frame, 0, frame.length));
+        assertEquals(frame.length - EventCodec.HEADER_LENGTH, EventCodec.getMessageLength(frame, 0));
+
+        final Log decoded = EventCodec.decodeLog(frame, 0, frame.length);
+        assertEquals(marshal(log), marshal(decoded));
+        assertEquals(InetAddressUtils.addr("fe80::1"), decoded.getEvents().getEvent(0).getInterfaceAddress());
+        assertEquals("\u00e9v\u00e9nement \u20ac \ud83d\ude00", decoded.getEvents().getEvent(0).getDescr());
+    }
+
+    @Test
+    public void testNullFieldsKeepDefaults() throws Exception {
+        final Event event = new Event();
+        event.setUei("uei.opennms.org/test");
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setContent("only content");
+        event.setLogmsg(logmsg);
+        final Log log = new Log();
+        log.addEvent(event);
+
+        final byte[] frame = EventCodec.encode(log);
+        final Event decoded = EventCodec.decodeLog(frame, 0, frame.length).getEvents().getEvent(0);
+        assertEquals("uei.opennms.org/test", decoded.getUei());
+        assertNull(decoded.getUuid());
+        assertFalse(decoded.hasNodeid());
+        assertFalse(decoded.hasDbid());
+        assertNull(decoded.getInterfaceAddress());
+        assertNull(decoded.getSnmp());
+        assertEquals("only content", decoded.getLogmsg().getContent());
+        assertEquals("logndisplay", decoded.getLogmsg().getDest());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            final Log log = new Log();
+            log.addEvent(createEvent(i));
+            EventCodec.write(log, out);
+        }
+        final EventReceipt receipt = new EventReceipt();
+        receipt.addUuid("a");
+        receipt.addUuid("b");
+        EventCodec.write(receipt, out);
+
+        final ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Long.valueOf(i), EventCodec.readLog(in).getEvents().getEvent(0).getNodeid());
+        }
+        assertEquals(Arrays.asList("a", "b"), EventCodec.readReceipt(in).getUuidCollection());
+        assertNull(EventCodec.readLog(in));
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() throws Exception {
+        final Log log = new Log();
+        log.addEvent(createEvent(7));
+        final byte[] frame = EventCodec.encode(log);
+
+        // append field 14 of the log (a varint) and field 15 (a string) as a newer sender might
+        final byte[] extra = new byte[] { 14 << 3, 42, 15 << 3 | 2, 1, 'x' };
+        final byte[] longer = Arrays.copyOf(frame, frame.length + extra.length);
+        System.arraycopy(extra, 0, longer, frame.length, extra.length);
+        final int length = longer.length - EventCodec.HEADER_LENGTH;
+        longer[5] = (byte)(length >>> 8);
+        longer[6] = (byte)length;
+
+        assertEquals(marshal(log), marshal(EventCodec.decodeLog(longer, 0, longer.length)));
+    }
+
+    @Test
+    public void testInvalidFrames() throws Exception {
+        final Log log = new Log();
+        log.addEvent(createEvent(7));
+        final byte[] frame = EventCodec.encode(log);
+
+        assertInvalid(frame, frame.length - 1);
+        assertInvalid(frame, EventCodec.HEADER_LENGTH - 1);
+
+        final byte[] version = frame.clone();
+        version[2] = 2;
+        assertInvalid(version, version.length);
+
+        // a nested message claiming to be longer than the frame
+        final byte[] nested = frame.clone();
+        nested[EventCodec.HEADER_LENGTH + 5] = 0x7f;
+        assertInvalid(nested, nested.length);
+
+        final byte[] xml = "<log/>".getBytes("UTF-8");
+        assertFalse(EventCodec.isFrame(xml, 0, xml.length));
+        assertInvalid(xml, xml.length);
+    }
+
+    @Test
+    public void testCompareWithXml() throws Exception {
+        final Log[] logs = new Log[BENCHMARK_LOGS];
+        for (int i = 0; i < logs.length; i++) {
+            logs[i] = new Log();
+            for (int j = 0; j < EVENTS_PER_LOG; j++) {
+                logs[i].addEvent(createEvent(i * EVENTS_PER_LOG + j));
+            }
+        }
+
+        // warm up both
+        benchmark(logs, false);
+        benchmark(logs, true);
+
+        benchmark(logs, false);
+        benchmark(logs, true);
+    }
+
+    private static void benchmark(final Log[] logs, final boolean binary) throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported() ? (com.sun.management.ThreadMXBean)threads : null;
+        final long threadId = Thread.currentThread().getId();
+
+        final Object[] encoded = new Object[logs.length];
+        long bytes = 0;
+        long allocated = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < logs.length; i++) {
+            if (binary) {
+                final byte[] frame = EventCodec.encode(logs[i]);
+                bytes += frame.length;
+                encoded[i] = frame;
+            } else {
+                final String xml = marshal(logs[i]);
+                bytes += xml.getBytes("UTF-8").length;
+                encoded[i] = xml;
+            }
+        }
+        final long encodeTime = System.nanoTime() - start;
+        final long encodeAllocated = allocations == null ? -1 : allocations.getThreadAllocatedBytes(threadId) - allocated;
+
+        int events = 0;
+        allocated = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        for (int i = 0; i < logs.length; i++) {
+            final Log log;
+            if (binary) {
+                final byte[] frame = (byte[])encoded[i];
+                log = EventCodec.decodeLog(frame, 0, frame.length);
+            } else {
+                log = JaxbUtils.unmarshal(Log.class, (String)encoded[i]);
+            }
+            events += log.getEvents().getEventCount();
+        }
+        final long decodeTime = System.nanoTime() - start;
+        final long decodeAllocated = allocations == null ? -1 : allocations.getThreadAllocatedBytes(threadId) - allocated;
+
+        assertEquals(logs.length * EVENTS_PER_LOG, events);
+        System.err.printf("%s: %d events, %d bytes per event; encode %d ns and %d bytes allocated per event; decode %d ns and %d bytes allocated per event.%n",
+                          binary ? "binary" : "XML", events, bytes / events, encodeTime / events, encodeAllocated / events, decodeTime / events, decodeAllocated / events);
+    }
+
+    private static void assertInvalid(final byte[] frame, final int length) {
+        try {
+            EventCodec.decodeLog(frame, 0, length);
+            fail("expected an IOException for a frame of " + length + " bytes");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private static String marshal(final Log log) {
+        final StringWriter writer = new StringWriter();
+        JaxbUtils.marshal(log, writer);
+        return writer.toString();
+    }
+
+    private static Event createEvent(final int i) {
+        final Event event = new Event();
+        event.setUuid("uuid-" + i);
+        event.setUei("uei.opennms.org/test/codec");
+        event.setSource("EventCodecTest");
+        event.setTime(new Date(1420070400000L + i));
+        event.setNodeid(Long.valueOf(i));
+        event.setInterface("192.168.1." + (i % 250));
+        event.setService("ICMP");
+        final Parm parm = new Parm();
+        parm.setParmName("count");
+        final Value value = new Value();
+        value.setType("int");
+        value.setContent(String.valueOf(i));
+        parm.setValue(value);
+        event.addParm(parm);
+        return event;
+    }
+
+    private static Event createFullEvent() {
+        final Event event = createEvent(0);
+        event.setDbid(-42);
+        event.setDistPoller("localhost");
+        event.setCreationTime(new Date(1420070400123L));
+        event.setMasterStation("127.0.0.1");
+        event.setHost("poller1");
+        event.setInterface("fe80::1");
+        event.setSnmphost("192.168.1.1");
+
+        final Mask mask = new Mask();
+        final Maskelement element = new Maskelement();
+        element.setMename("id");
+        element.addMevalue(".1.3.6.1.4.1.5813");
+        element.addMevalue(".1.3.6.1.4.1.5813.1");
+        mask.addMaskelement(element);
+        event.setMask(mask);
+
+        final Snmp snmp = new Snmp();
+        snmp.setId(".1.3.6.1.4.1.5813");
+        snmp.setIdtext("OpenNMS");
+        snmp.setVersion("v2c");
+        snmp.setSpecific(1);
+        snmp.setGeneric(6);
+        snmp.setCommunity("public");
+        snmp.setTimeStamp(Long.MAX_VALUE);
+        event.setSnmp(snmp);
+
+        final Parm parm = new Parm();
+        parm.setParmName("binary");
+        final Value value = new Value();
+        value.setType("OctetString");
+        value.setEncoding("base64");
+        value.setContent("AAEC");
+        parm.setValue(value);
+        event.addParm(parm);
+
+        event.setDescr("\u00e9v\u00e9nement \u20ac \ud83d\ude00");
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setContent("log message");
+        logmsg.setNotify(false);
+        logmsg.setDest("logonly");
+        event.setLogmsg(logmsg);
+        event.setSeverity("Major");
+        event.setPathoutage("path");
+
+        final Correlation correlation = new Correlation();
+        correlation.addCuei("uei.opennms.org/a");
+        correlation.addCuei("uei.opennms.org/b");
+        correlation.setCmin("1");
+        correlation.setCmax("2");
+        correlation.setCtime("3");
+        correlation.setState("on");
+        correlation.setPath("cancellingEvent");
+        event.setCorrelation(correlation);
+        event.setOperinstruct("call someone");
+
+        final Autoaction autoaction = new Autoaction();
+        autoaction.setContent("/bin/true");
+        autoaction.setState("off");
+        event.addAutoaction(autoaction);
+        final Operaction operaction = new Operaction();
+        operaction.setContent("/bin/false");
+        operaction.setMenutext("menu");
+        event.addOperaction(operaction);
+        final Autoacknowledge autoacknowledge = new Autoacknowledge();
+        autoacknowledge.setContent("ack");
+        autoacknowledge.setState("off");
+        event.setAutoacknowledge(autoacknowledge);
+        event.addLoggroup("group1");
+        event.addLoggroup("group2");
+        final Tticket tticket = new Tticket();
+        tticket.setContent("ticket");
+        event.setTticket(tticket);
+        final Forward forward = new Forward();
+        forward.setContent("forward");
+        forward.setMechanism("xmltcp");
+        event.addForward(forward);
+        final Script script = new Script();
+        script.setContent("script");
+        script.setLanguage("beanshell");
+        event.addScript(script);
+
+        event.setIfIndex(3);
+        event.setIfAlias("uplink");
+        event.setMouseovertext("mouse over");
+
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setReductionKey("%uei%:%nodeid%");
+        alarmData.setAlarmType(2);
+        alarmData.setClearKey("clear");
+        alarmData.setAutoClean(true);
+        alarmData.setX733AlarmType("CommunicationsAlarm");
+        alarmData.setX733ProbableCause(0);
+        final UpdateField field = new UpdateField();
+        field.setFieldName("severity");
+        field.setUpdateOnReduction(false);
+        alarmData.getUpdateFieldList().add(field);
+        event.setAlarmData(alarmData);
+        return event;
+    }
+}
@@ -102,7 +102,7 @@ public class EventCreator implements TrapProcessor {
     /** {@inheritDoc} */
     @Override
     public void processVarBind(SnmpObjId name, SnmpValue value) {
-        m_eventBuilder.addParam(SyntaxToEvent.processSyntax(name.toString(), value));
+        SyntaxToEvent.processSyntax(m_eventBuilder, name.toString(), value);
         if (EventConstants.OID_SNMP_IFINDEX.isPrefixOf(name)) {
             m_eventBuilder.setIfIndex(value.toInt());
         }
@@ -113,7 +113,7 @@ public class EventCreator implements TrapProcessor {
     public void setTrapAddress(InetAddress trapAddress) {
         m_eventBuilder.setSnmpHost(str(trapAddress));
         m_eventBuilder.setInterface(trapAddress);
-        long nodeId = m_trapdIpMgr.getNodeId(str(trapAddress));
+        long nodeId = m_trapdIpMgr.getNodeId(trapAddress);
         if (nodeId != -1) {
             m_eventBuilder.setNodeid(nodeId);
         }
@@ -29,10 +29,8 @@
 package org.opennms.netmgt.trapd;
 
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
 
-import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.InetAddressNodeIdMap;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.slf4j.Logger;
@@ -58,9 +56,10 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private IpInterfaceDao m_ipInterfaceDao;
     
     /**
-     * A Map of IP addresses and node IDs
+     * A Map of IP addresses and node IDs. Lookups do not lock the manager,
+     * and a sync loads a new map which then replaces this one.
      */
-    private Map<InetAddress, Integer> m_knownips = new HashMap<InetAddress, Integer>();
+    private volatile InetAddressNodeIdMap m_knownips = new InetAddressNodeIdMap();
 
     /**
      * Default construct for the instance.
@@ -77,7 +76,9 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     @Transactional(readOnly = true)
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips = m_ipInterfaceDao.getInterfacesForNodes();
+        final InetAddressNodeIdMap knownips = new InetAddressNodeIdMap();
+        knownips.putAll(m_ipInterfaceDao.getInterfacesForNodes());
+        m_knownips = knownips;
     }
 
     /* (non-Javadoc)
@@ -85,11 +86,14 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(InetAddressUtils.getInetAddress(addr)));
+    public long getNodeId(String addr) {
+        return m_knownips.get(addr);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNodeId(InetAddress addr) {
+        return m_knownips.get(addr);
     }
 
     /* (non-Javadoc)
@@ -103,12 +107,12 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         }
         // Only add the address if it doesn't exist on the map. If it exists, only replace the current one if the new address is primary.
         boolean add = true;
-        if (m_knownips.containsKey(InetAddressUtils.getInetAddress(addr))) {
+        if (m_knownips.get(addr) != -1) {
             OnmsIpInterface intf = m_ipInterfaceDao.findByNodeIdAndIpAddress(Integer.valueOf((int) nodeid), addr);
             add = intf != null && intf.isPrimary();
             LOG.info("setNodeId: address found {}. Should be added? {}", intf, add);
         }
-        return add ? longValue(m_knownips.put(InetAddressUtils.getInetAddress(addr), Integer.valueOf((int) nodeid))) : -1;
+        return add ? m_knownips.put(addr, (int) nodeid) : -1;
     }
 
     /* (non-Javadoc)
@@ -120,11 +124,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(InetAddressUtils.getInetAddress(addr)));
-    }
-
-    private static long longValue(Integer result) {
-        return (result == null ? -1 : result.longValue());
+        return m_knownips.remove(addr);
     }
 
     /**
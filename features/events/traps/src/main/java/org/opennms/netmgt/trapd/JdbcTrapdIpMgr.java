@@ -28,13 +28,13 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.opennms.core.utils.InetAddressNodeIdMap;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
@@ -57,9 +57,10 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
 
     /**
-     * A Map of IP addresses and node IDs
+     * A Map of IP addresses and node IDs. Lookups do not lock the manager,
+     * and a sync loads a new map which then replaces this one.
      */
-    protected final Map<String, Long> m_knownips = new HashMap<String, Long>();
+    protected volatile InetAddressNodeIdMap m_knownips = new InetAddressNodeIdMap();
 
     /**
      * Default construct for the instance.
@@ -75,14 +76,16 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips.clear();
+        final InetAddressNodeIdMap knownips = new InetAddressNodeIdMap();
 
         new JdbcTemplate(m_dataSource).query(IP_LOAD_SQL, new RowCallbackHandler() {
             @Override
             public void processRow(ResultSet rs) throws SQLException {
-                m_knownips.put(rs.getString(1), rs.getLong(2));
+                knownips.put(rs.getString(1), rs.getInt(2));
             }
         });
+
+        m_knownips = knownips;
     }
 
     /* (non-Javadoc)
@@ -90,11 +93,14 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    public long getNodeId(String addr) {
+        return m_knownips.get(addr);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNodeId(InetAddress addr) {
+        return m_knownips.get(addr);
     }
 
     /* (non-Javadoc)
@@ -107,7 +113,7 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
             return -1;
         }
         
-        return longValue(m_knownips.put(addr, Long.valueOf(nodeid)));
+        return m_knownips.put(addr, (int) nodeid);
     }
 
     /* (non-Javadoc)
@@ -119,11 +125,7 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(addr));
-    }
-
-    private static long longValue(Long result) {
-        return (result == null ? -1 : result.longValue());
+        return m_knownips.remove(addr);
     }
 
     /**
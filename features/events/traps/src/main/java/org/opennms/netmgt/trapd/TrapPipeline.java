@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.netmgt.events.api.EventIpcManager;
+import org.opennms.netmgt.snmp.TrapNotification;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Converts received traps into events on several lanes, each with its own
+ * thread and queue. A trap is put on a lane chosen by the address of the
+ * agent that sent it, so the traps of one agent are converted and sent to
+ * eventd in the order they arrived while different agents are handled in
+ * parallel. A lane takes all traps that queued up while it was busy, up to
+ * the batch size, and sends the events made from them to eventd as one log.
+ */
+public class TrapPipeline implements InitializingBean {
+    private static final Logger LOG = LoggerFactory.getLogger(TrapPipeline.class);
+
+    private TrapQueueProcessorFactory m_processorFactory;
+
+    private EventIpcManager m_eventManager;
+
+    private int m_threads = 0;
+
+    private int m_queueSize = 10000;
+
+    private int m_batchSize = 100;
+
+    private volatile Lane[] m_lanes = new Lane[0];
+
+    private final AtomicLong m_trapsDropped = new AtomicLong();
+
+    private final AtomicLong m_batchesSent = new AtomicLong();
+
+    private final class Lane implements Runnable {
+        private final BlockingQueue<TrapNotification> m_queue = new ArrayBlockingQueue<TrapNotification>(m_queueSize);
+
+        private final Thread m_thread;
+
+        private volatile boolean m_running = true;
+
+        private Lane(final ThreadFactory threadFactory) {
+            m_thread = threadFactory.newThread(this);
+        }
+
+        @Override
+        public void run() {
+            final List<TrapNotification> batch = new ArrayList<TrapNotification>(m_batchSize);
+            while (m_running || !m_queue.isEmpty()) {
+                try {
+                    final TrapNotification first = m_queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    m_queue.drainTo(batch, m_batchSize - 1);
+                    process(batch);
+                } catch (final InterruptedException e) {
+                    LOG.warn("Interrupted with {} traps waiting", m_queue.size());
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (final Throwable e) {
+                    LOG.error("Unexpected error sending {} traps to eventd", batch.size(), e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start one lane per thread, or one per processor if no number of
+     * threads is set.
+     */
+    public synchronized void start() {
+        if (m_lanes.length > 0) {
+            return;
+        }
+        final int threads = m_threads > 0 ? m_threads : Runtime.getRuntime().availableProcessors();
+        final ThreadFactory threadFactory = new LogPreservingThreadFactory(getClass().getSimpleName(), threads);
+        final Lane[] lanes = new Lane[threads];
+        for (int i = 0; i < threads; i++) {
+            lanes[i] = new Lane(threadFactory);
+        }
+        for (final Lane lane : lanes) {
+            lane.m_thread.start();
+        }
+        m_lanes = lanes;
+        LOG.debug("Converting traps on {} threads", threads);
+    }
+
+    /**
+     * Stop taking traps, and wait for the lanes to send the traps that they
+     * have queued.
+     */
+    public synchronized void stop() {
+        final Lane[] lanes = m_lanes;
+        m_lanes = new Lane[0];
+        for (final Lane lane : lanes) {
+            lane.m_running = false;
+        }
+        for (final Lane lane : lanes) {
+            try {
+                lane.m_thread.join();
+            } catch (final InterruptedException e) {
+                LOG.warn("Interrupted while waiting for queued traps to be sent");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queue a trap on the lane of its agent. If that queue is full, or the
+     * pipeline is not running, the trap is discarded.
+     *
+     * @param trapNotification the received trap
+     * @return whether the trap was queued
+     */
+    public boolean submit(final TrapNotification trapNotification) {
+        final Lane[] lanes = m_lanes;
+        if (lanes.length == 0 || !lanes[laneOf(trapNotification.getAgentAddress(), lanes.length)].m_queue.offer(trapNotification)) {
+            final long dropped = m_trapsDropped.incrementAndGet();
+            if (dropped % 1000 == 1) {
+                LOG.warn("Discarding traps because eventd is not keeping up, {} discarded so far", dropped);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    static int laneOf(final InetAddress agent, final int lanes) {
+        if (agent == null) {
+            return 0;
+        }
+        final int hash = Arrays.hashCode(agent.getAddress()) * 0x9E3779B9;
+        return (hash >>> 1) % lanes;
+    }
+
+    private void process(final List<TrapNotification> batch) {
+        final Log log = new Log();
+        for (final TrapNotification trapNotification : batch) {
+            m_processorFactory.getInstance(trapNotification).process(log);
+        }
+        if (log.getEvents() != null && log.getEvents().getEventCount() > 0) {
+            m_eventManager.sendNow(log);
+            m_batchesSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of traps waiting to be converted on all lanes
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (final Lane lane : m_lanes) {
+            queued += lane.m_queue.size();
+        }
+        return queued;
+    }
+
+    public long getTrapsDropped() {
+        return m_trapsDropped.get();
+    }
+
+    public long getBatchesSent() {
+        return m_batchesSent.get();
+    }
+
+    public TrapQueueProcessorFactory getProcessorFactory() {
+        return m_processorFactory;
+    }
+
+    public void setProcessorFactory(final TrapQueueProcessorFactory processorFactory) {
+        m_processorFactory = processorFactory;
+    }
+
+    public EventIpcManager getEventManager() {
+        return m_eventManager;
+    }
+
+    public void setEventManager(final EventIpcManager eventManager) {
+        m_eventManager = eventManager;
+    }
+
+    public int getThreads() {
+        return m_threads;
+    }
+
+    public void setThreads(final int threads) {
+        m_threads = threads;
+    }
+
+    public int getQueueSize() {
+        return m_queueSize;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        m_queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.state(m_processorFactory != null, "processorFactory must be set");
+        Assert.state(m_eventManager != null, "eventManager must be set");
+        Assert.state(m_queueSize > 0, "queueSize must be at least 1");
+        Assert.state(m_batchSize > 0, "batchSize must be at least 1");
+    }
+}
@@ -32,6 +32,7 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.net.InetAddress;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.api.EventConfDao;
@@ -39,6 +40,7 @@ import org.opennms.netmgt.events.api.EventIpcManager;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.TrapNotification;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
 import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.opennms.netmgt.xml.eventconf.Snmp;
 import org.slf4j.Logger;
@@ -83,17 +85,22 @@ class TrapQueueProcessor implements Callable<Callable<?>>, InitializingBean {
      */
     private EventConfDao m_eventConfDao;
 
+    /**
+     * Coalesces and rate limits trap storms before they reach eventd.
+     */
+    private TrapStormFilter m_stormFilter;
+
     private TrapNotification m_trapNotification;
     
-    private static long s_v1TrapsReceived = 0;
+    private static final AtomicLong s_v1TrapsReceived = new AtomicLong();
     
-    private static long s_v2cTrapsReceived = 0;
+    private static final AtomicLong s_v2cTrapsReceived = new AtomicLong();
     
-    private static long s_v3TrapsReceived = 0;
+    private static final AtomicLong s_v3TrapsReceived = new AtomicLong();
     
-    private static long s_trapsDiscarded = 0;
+    private static final AtomicLong s_trapsDiscarded = new AtomicLong();
     
-    private static long s_trapsErrored = 0;
+    private static final AtomicLong s_trapsErrored = new AtomicLong();
 
     /**
      * Process a V2 trap and convert it to an event for transmission.
@@ -164,23 +171,39 @@ class TrapQueueProcessor implements Callable<Callable<?>>, InitializingBean {
      */
     @Override
     public Callable<Void> call() {
+        final Log log = new Log();
+        process(log);
+        if (log.getEvents() != null && log.getEvents().getEventCount() > 0) {
+            m_eventMgr.sendNow(log);
+        }
+        return null;
+    }
+
+    /**
+     * Convert the trap into an event and add it to the log, followed by a
+     * newSuspect event if the agent is unknown, so that the caller can send
+     * the events of several traps to eventd at once.
+     *
+     * @param log the log the events are added to
+     */
+    void process(final Log log) {
         try {
-            processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent());
+            processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent(), log);
         } catch (IllegalArgumentException e) {
             LOG.info(e.getMessage());
         } catch (Throwable e) {
             LOG.error("Unexpected error processing trap: {}", e, e);
-            s_trapsErrored++;
+            s_trapsErrored.incrementAndGet();
         }
-        return null;
     }
 
     /**
      * <p>processTrapEvent</p>
      *
      * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @param log the log the events to send are added to
      */
-    private void processTrapEvent(final Event event) {
+    private void processTrapEvent(final Event event, final Log log) {
     	final InetAddress trapInterface = event.getInterfaceAddress();
 
     	final org.opennms.netmgt.xml.eventconf.Event econf = m_eventConfDao.findByEvent(event);
@@ -194,11 +217,11 @@ class TrapQueueProcessor implements Callable<Callable<?>>, InitializingBean {
             final Snmp snmp = econf.getSnmp();
             if (snmp != null) {
                 if ("v1".equals(snmp.getVersion())) {
-                    s_v1TrapsReceived++;
+                    s_v1TrapsReceived.incrementAndGet();
                 } else if ("v2c".equals(snmp.getVersion())) {
-                    s_v2cTrapsReceived++;
+                    s_v2cTrapsReceived.incrementAndGet();
                 } else if ("v3".equals(snmp.getVersion())) {
-                    s_v3TrapsReceived++;
+                    s_v3TrapsReceived.incrementAndGet();
                 }
             }
             final Logmsg logmsg = econf.getLogmsg();
@@ -206,40 +229,44 @@ class TrapQueueProcessor implements Callable<Callable<?>>, InitializingBean {
                 final String dest = logmsg.getDest();
                 if ("discardtraps".equals(dest)) {
                     LOG.debug("Trap discarded due to matching event having logmsg dest == discardtraps");
-                    s_trapsDiscarded++;
+                    s_trapsDiscarded.incrementAndGet();
                     return;
                 }
             }
         }
 
-        // send the event to eventd
-        m_eventMgr.sendNow(event);
+        if (m_stormFilter != null && !m_stormFilter.accept(event)) {
+            LOG.debug("Trap held back or discarded by the trap storm filter");
+            return;
+        }
+
+        // queue the event for eventd
+        log.addEvent(event);
 
-        LOG.debug("Trap successfully converted and sent to eventd with UEI {}", event.getUei());
+        LOG.debug("Trap successfully converted with UEI {}", event.getUei());
 
         if (!event.hasNodeid() && m_newSuspect) {
-            sendNewSuspectEvent(InetAddressUtils.str(trapInterface));
+            log.addEvent(createNewSuspectEvent(InetAddressUtils.str(trapInterface)));
 
-            LOG.debug("Sent newSuspectEvent for interface: {}", trapInterface);
+            LOG.debug("Queued newSuspectEvent for interface: {}", trapInterface);
 
         }
     }
 
     /**
-     * Send a newSuspect event for the interface
+     * Create a newSuspect event for the interface
      * 
      * @param trapInterface
      *            The interface for which the newSuspect event is to be
      *            generated
      */
-    private void sendNewSuspectEvent(String trapInterface) {
+    private static Event createNewSuspectEvent(String trapInterface) {
         // construct event with 'trapd' as source
         EventBuilder bldr = new EventBuilder(org.opennms.netmgt.events.api.EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, "trapd");
         bldr.setInterface(addr(trapInterface));
         bldr.setHost(LOCALHOST_ADDRESS);
 
-        // send the event to eventd
-        m_eventMgr.sendNow(bldr.getEvent());
+        return bldr.getEvent();
     }
 
     /**
@@ -302,6 +329,14 @@ class TrapQueueProcessor implements Callable<Callable<?>>, InitializingBean {
         m_newSuspect = newSuspect;
     }
 
+    public TrapStormFilter getStormFilter() {
+        return m_stormFilter;
+    }
+
+    public void setStormFilter(TrapStormFilter stormFilter) {
+        m_stormFilter = stormFilter;
+    }
+
     public TrapNotification getTrapNotification() {
         return m_trapNotification;
     }
@@ -319,22 +354,22 @@ class TrapQueueProcessor implements Callable<Callable<?>>, InitializingBean {
     }
     
     public static long getV1TrapsReceived() {
-        return s_v1TrapsReceived;
+        return s_v1TrapsReceived.get();
     }
     
     public static long getV2cTrapsReceived() {
-        return s_v2cTrapsReceived;
+        return s_v2cTrapsReceived.get();
     }
     
     public static long getV3TrapsReceived() {
-        return s_v3TrapsReceived;
+        return s_v3TrapsReceived.get();
     }
     
     public static long getTrapsDiscarded() {
-        return s_trapsDiscarded;
+        return s_trapsDiscarded.get();
     }
     
     public static long getTrapsErrored() {
-        return s_trapsErrored;
+        return s_trapsErrored.get();
     }
 }
@@ -89,6 +89,40 @@ public class TrapQueueProcessorFactory implements InitializingBean {
     @Autowired
     private EventConfDao m_eventConfDao;
 
+    /**
+     * Coalesces and rate limits trap storms before they reach eventd.
+     */
+    @Autowired
+    private TrapStormFilter m_stormFilter;
+
+    /**
+     * @return the stormFilter
+     */
+    public TrapStormFilter getStormFilter() {
+        return m_stormFilter;
+    }
+
+    /**
+     * @param stormFilter the stormFilter to set
+     */
+    public void setStormFilter(TrapStormFilter stormFilter) {
+        m_stormFilter = stormFilter;
+    }
+
+    /**
+     * @return the eventConfDao
+     */
+    public EventConfDao getEventConfDao() {
+        return m_eventConfDao;
+    }
+
+    /**
+     * @param eventConfDao the eventConfDao to set
+     */
+    public void setEventConfDao(EventConfDao eventConfDao) {
+        m_eventConfDao = eventConfDao;
+    }
+
     /**
      * The constructor
      */
@@ -100,6 +134,7 @@ public class TrapQueueProcessorFactory implements InitializingBean {
         retval.setEventConfDao(m_eventConfDao);
         retval.setEventManager(m_eventManager);
         retval.setNewSuspect(m_newSuspectOnTrap);
+        retval.setStormFilter(m_stormFilter);
         retval.setTrapNotification(info);
         retval.afterPropertiesSet();
         return retval;
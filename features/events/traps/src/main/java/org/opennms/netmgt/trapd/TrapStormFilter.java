@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.netmgt.events.api.EventIpcManager;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Protects eventd from trap storms, such as the linkDown and linkUp traps
+ * of a flapping link, before the events made from the traps are sent.
+ *
+ * <p>
+ * Traps are duplicates when they come from the same agent with the same
+ * trap OID and the same values of the key varbinds (all varbinds if no
+ * key varbinds are configured). The first trap is sent right away. The
+ * duplicates that arrive within the coalesce window after it are held back,
+ * and when the window closes the last of them is sent with a
+ * {@link #COALESCED_TRAPS_PARM} parm giving their number.
+ * </p>
+ *
+ * <p>
+ * What is left is then limited per agent address by a token bucket that
+ * holds <code>rateLimitBurst</code> tokens and refills at
+ * <code>rateLimit</code> tokens per second. Traps that find the bucket
+ * empty are discarded.
+ * </p>
+ */
+public class TrapStormFilter implements InitializingBean {
+    private static final Logger LOG = LoggerFactory.getLogger(TrapStormFilter.class);
+
+    /**
+     * The name of the parm that holds the number of traps an event stands for.
+     */
+    public static final String COALESCED_TRAPS_PARM = "coalescedTraps";
+
+    /**
+     * The most coalesce windows that are open at once. Traps that would
+     * open another one are sent without being coalesced.
+     */
+    private static final int MAX_WINDOWS = 10000;
+
+    private EventIpcManager m_eventManager;
+
+    private long m_coalesceWindow = 0;
+
+    private List<String> m_coalesceVarbinds = Collections.emptyList();
+
+    private double m_rateLimit = 0;
+
+    private int m_rateLimitBurst = 100;
+
+    private final Map<String, CoalesceWindow> m_windows = new HashMap<String, CoalesceWindow>();
+
+    private final Map<String, TokenBucket> m_buckets = new HashMap<String, TokenBucket>();
+
+    private ScheduledExecutorService m_flusher;
+
+    private long m_trapsCoalesced = 0;
+
+    private long m_coalescedEventsSent = 0;
+
+    private long m_trapsRateLimited = 0;
+
+    /**
+     * The duplicates of one trap held back since the first one was sent.
+     */
+    private static final class CoalesceWindow {
+        private final long m_start;
+        private int m_duplicates = 0;
+        private Event m_last;
+
+        private CoalesceWindow(final long start) {
+            m_start = start;
+        }
+    }
+
+    /**
+     * The traps one agent may still send, refilled as time passes.
+     */
+    private static final class TokenBucket {
+        private double m_tokens;
+        private long m_lastRefill;
+
+        private TokenBucket(final double tokens, final long now) {
+            m_tokens = tokens;
+            m_lastRefill = now;
+        }
+    }
+
+    public void setEventManager(final EventIpcManager eventManager) {
+        m_eventManager = eventManager;
+    }
+
+    /**
+     * @param coalesceWindow the time in milliseconds during which duplicates are held back, 0 to send them all
+     */
+    public void setCoalesceWindow(final long coalesceWindow) {
+        m_coalesceWindow = coalesceWindow;
+    }
+
+    /**
+     * @param coalesceVarbinds the OID prefixes of the varbinds that tell duplicates apart
+     */
+    public void setCoalesceVarbinds(final List<String> coalesceVarbinds) {
+        m_coalesceVarbinds = coalesceVarbinds == null ? Collections.<String>emptyList() : new ArrayList<String>(coalesceVarbinds);
+    }
+
+    /**
+     * @param rateLimit the number of traps per second sent for each agent, 0 for no limit
+     */
+    public void setRateLimit(final double rateLimit) {
+        m_rateLimit = rateLimit;
+    }
+
+    /**
+     * @param rateLimitBurst the number of traps an agent may send at once
+     */
+    public void setRateLimitBurst(final int rateLimitBurst) {
+        m_rateLimitBurst = rateLimitBurst;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_eventManager != null, "eventManager must be set");
+        Assert.state(m_coalesceWindow >= 0, "coalesceWindow must not be negative");
+        Assert.state(m_rateLimit >= 0, "rateLimit must not be negative");
+        Assert.state(m_rateLimitBurst >= 1, "rateLimitBurst must be at least 1");
+    }
+
+    private boolean isCoalescing() {
+        return m_coalesceWindow > 0;
+    }
+
+    private boolean isRateLimiting() {
+        return m_rateLimit > 0;
+    }
+
+    /**
+     * Start sending the events of coalesce windows as they close.
+     */
+    public synchronized void start() {
+        if (!isCoalescing() && !isRateLimiting()) {
+            return;
+        }
+        LOG.info("Coalescing duplicate traps for {}ms, limiting traps to {}/s per agent", m_coalesceWindow, m_rateLimit);
+        if (m_flusher == null) {
+            m_flusher = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory(getClass().getSimpleName(), 1));
+            final long period = Math.max(isCoalescing() ? m_coalesceWindow : 0, 1000L);
+            m_flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush(System.currentTimeMillis());
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the flushing thread and send the events of all open windows.
+     */
+    public void stop() {
+        final ScheduledExecutorService flusher;
+        synchronized (this) {
+            flusher = m_flusher;
+            m_flusher = null;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush(Long.MAX_VALUE);
+    }
+
+    /**
+     * Decide whether the event made from a trap is to be sent to eventd now.
+     *
+     * @param event the event made from a trap
+     * @return true to send the event, false if it was held back or discarded
+     */
+    public boolean accept(final Event event) {
+        return accept(event, System.currentTimeMillis());
+    }
+
+    boolean accept(final Event event, final long now) {
+        Event coalesced = null;
+        try {
+            synchronized (this) {
+                if (isCoalescing()) {
+                    final String key = getCoalesceKey(event);
+                    final CoalesceWindow window = m_windows.get(key);
+                    if (window != null && now - window.m_start < m_coalesceWindow) {
+                        window.m_duplicates++;
+                        window.m_last = event;
+                        m_trapsCoalesced++;
+                        return false;
+                    }
+                    if (window != null) {
+                        m_windows.remove(key);
+                        coalesced = closeWindow(window);
+                    }
+                    if (m_windows.size() < MAX_WINDOWS) {
+                        m_windows.put(key, new CoalesceWindow(now));
+                    }
+                }
+
+                if (isRateLimiting() && !takeToken(getSource(event), now)) {
+                    m_trapsRateLimited++;
+                    LOG.debug("Trap from {} discarded, over the rate limit of {}/s", getSource(event), m_rateLimit);
+                    return false;
+                }
+                return true;
+            }
+        } finally {
+            // sendNow can block, so the trap threads must not wait for it
+            if (coalesced != null) {
+                sendCoalesced(coalesced);
+            }
+        }
+    }
+
+    /**
+     * Send the events of the coalesce windows that closed by <code>now</code>
+     * and forget agents whose token buckets are full again.
+     */
+    void flush(final long now) {
+        final List<Event> coalesced = new ArrayList<Event>();
+        synchronized (this) {
+            for (final Iterator<CoalesceWindow> it = m_windows.values().iterator(); it.hasNext(); ) {
+                final CoalesceWindow window = it.next();
+                if (now == Long.MAX_VALUE || now - window.m_start >= m_coalesceWindow) {
+                    it.remove();
+                    final Event event = closeWindow(window);
+                    if (event != null) {
+                        coalesced.add(event);
+                    }
+                }
+            }
+
+            if (isRateLimiting()) {
+                final double refillTime = m_rateLimitBurst / m_rateLimit * 1000;
+                for (final Iterator<TokenBucket> it = m_buckets.values().iterator(); it.hasNext(); ) {
+                    if (now - it.next().m_lastRefill >= refillTime) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        for (final Event event : coalesced) {
+            sendCoalesced(event);
+        }
+    }
+
+    /**
+     * Returns the event to send for a closed coalesce window, or null if no
+     * duplicates were held back. Called with the filter's lock held.
+     */
+    private Event closeWindow(final CoalesceWindow window) {
+        if (window.m_duplicates == 0) {
+            return null;
+        }
+        final Event event = window.m_last;
+        event.addParm(COALESCED_TRAPS_PARM, Integer.toString(window.m_duplicates), null, null);
+        m_coalescedEventsSent++;
+        return event;
+    }
+
+    private void sendCoalesced(final Event event) {
+        m_eventManager.sendNow(event);
+        LOG.debug("Sent coalesced traps from {} as one event with UEI {}", getSource(event), event.getUei());
+    }
+
+    private boolean takeToken(final String source, final long now) {
+        TokenBucket bucket = m_buckets.get(source);
+        if (bucket == null) {
+            bucket = new TokenBucket(m_rateLimitBurst, now);
+            m_buckets.put(source, bucket);
+        } else if (now > bucket.m_lastRefill) {
+            bucket.m_tokens = Math.min(m_rateLimitBurst, bucket.m_tokens + (now - bucket.m_lastRefill) * m_rateLimit / 1000);
+            bucket.m_lastRefill = now;
+        }
+        if (bucket.m_tokens < 1) {
+            return false;
+        }
+        bucket.m_tokens--;
+        return true;
+    }
+
+    private static String getSource(final Event event) {
+        if (event.getInterface() != null) {
+            return event.getInterface();
+        } else if (event.getSnmphost() != null) {
+            return event.getSnmphost();
+        }
+        return event.getSource() == null ? "" : event.getSource();
+    }
+
+    private String getCoalesceKey(final Event event) {
+        final StringBuilder key = new StringBuilder(getSource(event));
+        final Snmp snmp = event.getSnmp();
+        if (snmp != null) {
+            key.append('|').append(snmp.getId()).append('|').append(snmp.getGeneric()).append('|').append(snmp.getSpecific());
+        }
+        for (final Parm parm : event.getParmCollection()) {
+            if (isCoalesceVarbind(parm.getParmName())) {
+                key.append('|').append(parm.getParmName()).append('=').append(parm.getValue() == null ? null : parm.getValue().getContent());
+            }
+        }
+        return key.toString();
+    }
+
+    private boolean isCoalesceVarbind(final String name) {
+        if (m_coalesceVarbinds.isEmpty()) {
+            return true;
+        }
+        if (name == null) {
+            return false;
+        }
+        for (final String prefix : m_coalesceVarbinds) {
+            if (name.startsWith(prefix) && (name.length() == prefix.length() || name.charAt(prefix.length()) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of traps held back as duplicates
+     */
+    public synchronized long getTrapsCoalesced() {
+        return m_trapsCoalesced;
+    }
+
+    /**
+     * @return the number of events sent for coalesced duplicates
+     */
+    public synchronized long getCoalescedEventsSent() {
+        return m_coalescedEventsSent;
+    }
+
+    /**
+     * @return the number of traps discarded because their agent was over the rate limit
+     */
+    public synchronized long getTrapsRateLimited() {
+        return m_trapsRateLimited;
+    }
+}
@@ -33,7 +33,6 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Resource;
 
@@ -88,9 +87,9 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     private int m_status = START_PENDING;
 
     /**
-     * The thread pool that processes traps
+     * The lanes that convert traps into events
      */
-    private ExecutorService m_backlogQ;
+    private TrapPipeline m_pipeline;
 
     /**
      * The queue processing thread
@@ -148,7 +147,7 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     /** {@inheritDoc} */
     @Override
     public void trapReceived(TrapNotification trapNotification) {
-        m_backlogQ.submit(m_processorFactory.getInstance(trapNotification));
+        m_pipeline.submit(trapNotification);
     }
 
     /**
@@ -158,7 +157,7 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     public synchronized void onInit() {
         BeanUtils.assertAutowiring(this);
 
-        Assert.state(m_backlogQ != null, "backlogQ must be set");
+        Assert.state(m_pipeline != null, "pipeline must be set");
 
         try {
             m_trapdIpMgr.dataSourceSync();
@@ -189,6 +188,10 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
             throw new UndeclaredThrowableException(e);
         }
 
+        m_processorFactory.getStormFilter().start();
+
+        m_pipeline.start();
+
         try {
             m_eventReader.open();
         } catch (final Throwable e) {
@@ -288,7 +291,11 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
 
         LOG.debug("stop: Stopping queue processor.");
 
-        m_backlogQ.shutdown();
+        m_pipeline.stop();
+
+        LOG.debug("stop: Sending coalesced traps.");
+
+        m_processorFactory.getStormFilter().stop();
 
         m_eventReader.close();
 
@@ -332,21 +339,21 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     }
 
     /**
-     * <p>getBacklogQ</p>
+     * <p>getPipeline</p>
      *
-     * @return a {@link java.util.concurrent.ExecutorService} object.
+     * @return a {@link org.opennms.netmgt.trapd.TrapPipeline} object.
      */
-    public ExecutorService getBacklogQ() {
-        return m_backlogQ;
+    public TrapPipeline getPipeline() {
+        return m_pipeline;
     }
 
     /**
-     * <p>setBacklogQ</p>
+     * <p>setPipeline</p>
      *
-     * @param backlogQ a {@link java.util.concurrent.ExecutorService} object.
+     * @param pipeline a {@link org.opennms.netmgt.trapd.TrapPipeline} object.
      */
-    public void setBacklogQ(ExecutorService backlogQ) {
-        m_backlogQ = backlogQ;
+    public void setPipeline(TrapPipeline pipeline) {
+        m_pipeline = pipeline;
     }
 
     public static String getLoggingCategory() {
@@ -372,4 +379,24 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     public long getTrapsErrored() {
         return TrapQueueProcessor.getTrapsErrored();
     }
+
+    public long getTrapsCoalesced() {
+        return m_processorFactory.getStormFilter().getTrapsCoalesced();
+    }
+
+    public long getCoalescedEventsSent() {
+        return m_processorFactory.getStormFilter().getCoalescedEventsSent();
+    }
+
+    public long getTrapsRateLimited() {
+        return m_processorFactory.getStormFilter().getTrapsRateLimited();
+    }
+
+    public long getTrapsDropped() {
+        return m_pipeline.getTrapsDropped();
+    }
+
+    public int getTrapsQueued() {
+        return m_pipeline.getQueued();
+    }
 }
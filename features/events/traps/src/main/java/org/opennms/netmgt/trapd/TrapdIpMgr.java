@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
 import java.sql.SQLException;
 
 /**
@@ -59,6 +60,16 @@ public interface TrapdIpMgr {
      */
     long getNodeId(String addr);
 
+    /**
+     * Returns the nodeid for the IP Address without converting it to a
+     * string first.
+     *
+     * @param addr
+     *            The IP Address to query.
+     * @return The node ID of the IP Address if known, -1 otherwise.
+     */
+    long getNodeId(InetAddress addr);
+
     /**
      * Sets the IP Address and Node ID in the Map.
      *
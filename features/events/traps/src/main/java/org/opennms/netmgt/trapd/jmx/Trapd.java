@@ -78,4 +78,34 @@ public class Trapd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
     public long getTrapsErrored() {
         return getDaemon().getTrapsErrored();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsCoalesced() {
+        return getDaemon().getTrapsCoalesced();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCoalescedEventsSent() {
+        return getDaemon().getCoalescedEventsSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsRateLimited() {
+        return getDaemon().getTrapsRateLimited();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDropped() {
+        return getDaemon().getTrapsDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getTrapsQueued() {
+        return getDaemon().getTrapsQueued();
+    }
 }
@@ -51,4 +51,19 @@ public interface TrapdMBean extends BaseOnmsMBean {
     
     /** @return The number of traps not processed due to errors since Trapd was last started */
     public long getTrapsErrored();
+
+    /** @return The number of duplicate traps held back since Trapd was last started */
+    public long getTrapsCoalesced();
+
+    /** @return The number of events sent for held back duplicate traps since Trapd was last started */
+    public long getCoalescedEventsSent();
+
+    /** @return The number of traps discarded for exceeding the per-agent rate limit since Trapd was last started */
+    public long getTrapsRateLimited();
+
+    /** @return The number of traps discarded because their queue was full since Trapd was last started */
+    public long getTrapsDropped();
+
+    /** @return The number of traps waiting to be converted into events */
+    public int getTrapsQueued();
 }
@@ -99,6 +99,7 @@ public class HibernateTrapdIpMgrTest implements InitializingBean {
 
         long nodeId = m_trapdIpMgr.getNodeId(ipAddr);
         Assert.assertEquals(expectedNodeId, nodeId);
+        Assert.assertEquals(expectedNodeId, m_trapdIpMgr.getNodeId(m_databasePopulator.getNode2().getPrimaryInterface().getIpAddress()));
 
         // Address already exists on database and it is not primary.
         Assert.assertEquals(-1, m_trapdIpMgr.setNodeId("192.168.1.3", 1));
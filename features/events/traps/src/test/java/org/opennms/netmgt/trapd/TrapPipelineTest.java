@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValueFactory;
+import org.opennms.netmgt.snmp.TrapIdentity;
+import org.opennms.netmgt.snmp.TrapNotification;
+import org.opennms.netmgt.snmp.TrapProcessor;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Replays v1, v2c and v3 traps from many agents into a {@link TrapPipeline}
+ * at a fixed rate, and checks that none are lost and that the traps of each
+ * agent reach eventd in order.
+ */
+public class TrapPipelineTest {
+    private static final Logger LOG = LoggerFactory.getLogger(TrapPipelineTest.class);
+
+    private static final SnmpObjId SEQUENCE_OID = SnmpObjId.get(".1.3.6.1.4.1.5813.20.1.0");
+
+    private static final int AGENTS = 50;
+
+    private static final int TRAPS = 10000;
+
+    private static final int TRAPS_PER_SECOND = 5000;
+
+    private RecordingEventIpcManager m_eventMgr;
+
+    private TrapPipeline m_pipeline;
+
+    private long[] m_submitted;
+
+    /**
+     * Records when the events of each trap reach eventd, and the sequence
+     * number of the last trap of each agent.
+     */
+    private final class RecordingEventIpcManager extends MockEventIpcManager {
+        private final long[] m_received = new long[TRAPS];
+        private final int[] m_lastSequence = new int[AGENTS];
+        private final CountDownLatch m_done = new CountDownLatch(TRAPS);
+        private int m_outOfOrder = 0;
+        private int m_batches = 0;
+
+        private RecordingEventIpcManager() {
+            Arrays.fill(m_lastSequence, -1);
+        }
+
+        @Override
+        public synchronized void sendNow(final Log eventLog) {
+            final long now = System.nanoTime();
+            m_batches++;
+            for (final Event event : eventLog.getEvents().getEventCollection()) {
+                final int sequence = Integer.parseInt(event.getParm(SEQUENCE_OID.toString()).getValue().getContent());
+                final int agent = sequence % AGENTS;
+                if (sequence < m_lastSequence[agent]) {
+                    m_outOfOrder++;
+                }
+                m_lastSequence[agent] = sequence;
+                m_received[sequence] = now;
+                m_done.countDown();
+            }
+        }
+    }
+
+    /**
+     * A trap the way the SNMP strategies hand it over, with the decoding of
+     * the PDU left until the processor is asked for.
+     */
+    private static final class ReplayedTrap implements TrapNotification {
+        private final InetAddress m_agent;
+        private final String m_version;
+        private final int m_sequence;
+        private final TrapProcessor m_processor;
+
+        private ReplayedTrap(final InetAddress agent, final String version, final int sequence, final TrapProcessor processor) {
+            m_agent = agent;
+            m_version = version;
+            m_sequence = sequence;
+            m_processor = processor;
+        }
+
+        @Override
+        public InetAddress getAgentAddress() {
+            return m_agent;
+        }
+
+        @Override
+        public TrapProcessor getTrapProcessor() {
+            final SnmpValueFactory values = SnmpUtils.getValueFactory();
+            m_processor.setVersion(m_version);
+            m_processor.setCommunity("public");
+            m_processor.setAgentAddress(m_agent);
+            m_processor.setTrapAddress(m_agent);
+            m_processor.setTimeStamp(m_sequence);
+            if ("v1".equals(m_version)) {
+                // linkDown
+                final int ifIndex = m_sequence % 48 + 1;
+                m_processor.setTrapIdentity(new TrapIdentity(SnmpObjId.get(".1.3.6.1.6.3.1.1.5"), 2, 0));
+                m_processor.processVarBind(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.1." + ifIndex), values.getInt32(ifIndex));
+                m_processor.processVarBind(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.7." + ifIndex), values.getInt32(1));
+                m_processor.processVarBind(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.8." + ifIndex), values.getInt32(2));
+            } else {
+                // bgpEstablished
+                m_processor.setTrapIdentity(new TrapIdentity(SnmpObjId.get(".1.3.6.1.2.1.15.7.1"), SnmpObjId.get(".1.3.6.1.2.1.15.3.1.14"), values.getOctetString(new byte[] { 0, 0 })));
+                m_processor.processVarBind(SnmpObjId.get(".1.3.6.1.2.1.15.3.1.14"), values.getOctetString(new byte[] { 0, 0 }));
+                m_processor.processVarBind(SnmpObjId.get(".1.3.6.1.2.1.15.3.1.2"), values.getInt32(6));
+            }
+            m_processor.processVarBind(SEQUENCE_OID, values.getInt32(m_sequence));
+            return m_processor;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new ClassPathResource("/org/opennms/netmgt/trapd/eventconf.xml"));
+        eventConfDao.afterPropertiesSet();
+
+        m_eventMgr = new RecordingEventIpcManager();
+
+        final TrapQueueProcessorFactory processorFactory = new TrapQueueProcessorFactory();
+        processorFactory.setEventConfDao(eventConfDao);
+        processorFactory.setEventManager(m_eventMgr);
+        processorFactory.setNewSuspect(false);
+
+        m_pipeline = new TrapPipeline();
+        m_pipeline.setProcessorFactory(processorFactory);
+        m_pipeline.setEventManager(m_eventMgr);
+        m_pipeline.setThreads(4);
+        m_pipeline.setQueueSize(TRAPS);
+        m_pipeline.afterPropertiesSet();
+        m_pipeline.start();
+
+        m_submitted = new long[TRAPS];
+    }
+
+    @After
+    public void tearDown() {
+        m_pipeline.stop();
+    }
+
+    @Test
+    public void testLaneOf() {
+        final Set<Integer> lanes = new HashSet<Integer>();
+        for (int i = 1; i <= 64; i++) {
+            final InetAddress agent = InetAddressUtils.addr("10.0.0." + i);
+            final int lane = TrapPipeline.laneOf(agent, 4);
+            assertTrue(lane >= 0 && lane < 4);
+            assertEquals(lane, TrapPipeline.laneOf(InetAddressUtils.addr("10.0.0." + i), 4));
+            lanes.add(lane);
+        }
+        assertEquals(4, lanes.size());
+        assertEquals(0, TrapPipeline.laneOf(null, 4));
+    }
+
+    @Test
+    public void testReplayAtFixedRate() throws Exception {
+        final InetAddress[] agents = new InetAddress[AGENTS];
+        for (int i = 0; i < AGENTS; i++) {
+            agents[i] = InetAddressUtils.addr("10.1." + (i / 250) + "." + (i % 250 + 1));
+        }
+        final String[] versions = { "v1", "v2c", "v3" };
+        final MockTrapdIpMgr trapdIpMgr = new MockTrapdIpMgr();
+
+        final long interval = TimeUnit.SECONDS.toNanos(1) / TRAPS_PER_SECOND;
+        final long start = System.nanoTime();
+        for (int sequence = 0; sequence < TRAPS; sequence++) {
+            final long due = start + sequence * interval;
+            long now;
+            while ((now = System.nanoTime()) < due) {
+                LockSupport.parkNanos(due - now);
+            }
+            final int agent = sequence % AGENTS;
+            m_submitted[sequence] = now;
+            assertTrue(m_pipeline.submit(new ReplayedTrap(agents[agent], versions[sequence / AGENTS % versions.length], sequence, new EventCreator(trapdIpMgr))));
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        assertTrue("Not all traps reached eventd, " + m_eventMgr.m_done.getCount() + " missing", m_eventMgr.m_done.await(30, TimeUnit.SECONDS));
+
+        final long[] latencies = new long[TRAPS];
+        for (int i = 0; i < TRAPS; i++) {
+            latencies[i] = m_eventMgr.m_received[i] - m_submitted[i];
+        }
+        Arrays.sort(latencies);
+        LOG.info("Replayed {} traps at {}/s in {} ms, sent to eventd in {} batches; latency p50 {} us, p99 {} us, max {} us",
+                 TRAPS, TRAPS_PER_SECOND, TimeUnit.NANOSECONDS.toMillis(elapsed), m_eventMgr.m_batches,
+                 TimeUnit.NANOSECONDS.toMicros(latencies[TRAPS / 2]),
+                 TimeUnit.NANOSECONDS.toMicros(latencies[TRAPS * 99 / 100]),
+                 TimeUnit.NANOSECONDS.toMicros(latencies[TRAPS - 1]));
+
+        assertEquals(0, m_pipeline.getTrapsDropped());
+        assertEquals(0, m_eventMgr.m_outOfOrder);
+        assertTrue(latencies[TRAPS * 99 / 100] < TimeUnit.SECONDS.toNanos(5));
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+
+public class TrapStormFilterTest {
+    private static final String LINK_DOWN = "uei.opennms.org/generic/traps/SNMP_Link_Down";
+
+    private static final String IF_INDEX = ".1.3.6.1.2.1.2.2.1.1";
+
+    private MockEventIpcManager m_eventMgr;
+
+    private TrapStormFilter m_filter;
+
+    @Before
+    public void setUp() {
+        m_eventMgr = new MockEventIpcManager();
+        m_filter = new TrapStormFilter();
+        m_filter.setEventManager(m_eventMgr);
+    }
+
+    private static Event linkDown(final String agent, final int ifIndex) {
+        final EventBuilder builder = new EventBuilder(LINK_DOWN, "trapd");
+        builder.setInterface(InetAddressUtils.addr(agent));
+        builder.setSnmpHost(agent);
+        builder.setEnterpriseId(".1.3.6.1.6.3.1.1.5");
+        builder.setGeneric(2);
+        builder.setSpecific(0);
+        builder.addParam(IF_INDEX + "." + ifIndex, ifIndex);
+        builder.addParam(".1.3.6.1.2.1.2.2.1.7." + ifIndex, 1);
+        builder.addParam(".1.3.6.1.2.1.2.2.1.8." + ifIndex, 2);
+        return builder.getEvent();
+    }
+
+    private List<Event> sentEvents() {
+        return new ArrayList<Event>(m_eventMgr.getEventAnticipator().unanticipatedEvents());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        m_filter.afterPropertiesSet();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(m_filter.accept(linkDown("192.168.1.1", 1), 0));
+        }
+        m_filter.flush(Long.MAX_VALUE);
+        assertEquals(0, m_filter.getTrapsCoalesced());
+        assertEquals(0, m_filter.getTrapsRateLimited());
+        assertEquals(0, sentEvents().size());
+    }
+
+    @Test
+    public void testCoalesceDuplicates() {
+        m_filter.setCoalesceWindow(10000);
+        m_filter.afterPropertiesSet();
+
+        assertTrue(m_filter.accept(linkDown("192.168.1.1", 1), 0));
+        for (int i = 1; i <= 500; i++) {
+            assertFalse(m_filter.accept(linkDown("192.168.1.1", 1), i));
+        }
+        // another interface and another agent are not duplicates
+        assertTrue(m_filter.accept(linkDown("192.168.1.1", 2), 600));
+        assertTrue(m_filter.accept(linkDown("192.168.1.2", 1), 700));
+        assertEquals(500, m_filter.getTrapsCoalesced());
+
+        // nothing is sent before the window closes
+        m_filter.flush(9999);
+        assertEquals(0, sentEvents().size());
+
+        m_filter.flush(10000);
+        final List<Event> sent = sentEvents();
+        assertEquals(1, sent.size());
+        assertEquals(LINK_DOWN, sent.get(0).getUei());
+        assertEquals("500", sent.get(0).getParm(TrapStormFilter.COALESCED_TRAPS_PARM).getValue().getContent());
+        assertEquals(1, m_filter.getCoalescedEventsSent());
+
+        // the window is closed, so the next trap is sent right away
+        assertTrue(m_filter.accept(linkDown("192.168.1.1", 1), 10001));
+    }
+
+    @Test
+    public void testCoalesceOnSelectedVarbinds() {
+        m_filter.setCoalesceWindow(10000);
+        m_filter.setCoalesceVarbinds(Collections.singletonList(".1.3.6.1.2.1.2.2.1.7"));
+        m_filter.afterPropertiesSet();
+
+        // both traps have admin status 1, they differ by the ifIndex instance in the varbind name
+        assertTrue(m_filter.accept(linkDown("192.168.1.1", 1), 0));
+        assertTrue(m_filter.accept(linkDown("192.168.1.1", 2), 1));
+        assertFalse(m_filter.accept(linkDown("192.168.1.1", 1), 2));
+        assertEquals(1, m_filter.getTrapsCoalesced());
+    }
+
+    @Test
+    public void testEventWithoutAgentAddress() {
+        m_filter.setCoalesceWindow(10000);
+        m_filter.setRateLimit(10);
+        m_filter.afterPropertiesSet();
+
+        final Event event = new EventBuilder(LINK_DOWN, "trapd").getEvent();
+        assertTrue(m_filter.accept(event, 0));
+        assertFalse(m_filter.accept(new EventBuilder(LINK_DOWN, "trapd").getEvent(), 1));
+    }
+
+    @Test
+    public void testRateLimitPerAgent() {
+        m_filter.setRateLimit(10);
+        m_filter.setRateLimitBurst(5);
+        m_filter.afterPropertiesSet();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(m_filter.accept(linkDown("192.168.1.1", i), 0));
+        }
+        assertFalse(m_filter.accept(linkDown("192.168.1.1", 5), 0));
+        // other agents have their own bucket
+        assertTrue(m_filter.accept(linkDown("192.168.1.2", 0), 0));
+
+        // 10 traps per second is one every 100ms
+        assertFalse(m_filter.accept(linkDown("192.168.1.1", 6), 50));
+        assertTrue(m_filter.accept(linkDown("192.168.1.1", 7), 150));
+        assertFalse(m_filter.accept(linkDown("192.168.1.1", 8), 160));
+
+        assertEquals(3, m_filter.getTrapsRateLimited());
+    }
+}
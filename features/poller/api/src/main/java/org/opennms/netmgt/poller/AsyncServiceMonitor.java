@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that can poll without holding on to the calling
+ * thread for the duration of the poll. The I/O of the poll is driven by the
+ * monitor itself, typically from a selector thread that is shared by all of
+ * the polls in flight, and the result is handed to a {@link PollCallback}.
+ * </p>
+ *
+ * <p>
+ * The synchronous {@link #poll(MonitoredService, Map)} must still be
+ * implemented for callers that want to wait for the result, such as the
+ * remote poller and the tests.
+ * </p>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Start polling the service. This method returns as soon as the poll has
+     * been started and {@link PollCallback#complete(PollStatus)} is called
+     * once the poll has finished. Any error that happens after the poll
+     * has been started is reported to the callback as an unavailable status.
+     *
+     * @param svc the service to poll
+     * @param parameters the package parameters (timeout, retry, etc...) to be
+     *            used for this poll
+     * @param callback called exactly once with the result of the poll
+     * @exception java.lang.RuntimeException
+     *                Thrown if the poll could not be started at all, in which
+     *                case the callback is not called.
+     */
+    public void poll(MonitoredService svc, Map<String, Object> parameters, PollCallback callback);
+
+}
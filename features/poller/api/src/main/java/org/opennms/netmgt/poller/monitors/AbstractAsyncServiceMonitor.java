@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
+
+/**
+ * Base class for {@link AsyncServiceMonitor}s that implements the synchronous
+ * <code>poll</code> by waiting for the asynchronous one to complete.
+ */
+public abstract class AbstractAsyncServiceMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+
+    /**
+     * {@inheritDoc}
+     *
+     * Start an asynchronous poll and wait for its result.
+     */
+    @Override
+    public PollStatus poll(final MonitoredService svc, final Map<String, Object> parameters) {
+        return pollAndWait(this, svc, parameters);
+    }
+
+    /**
+     * Run an asynchronous poll on the calling thread. This is for monitors
+     * that can not extend this class.
+     *
+     * @param monitor the monitor to poll with
+     * @param svc the service to poll
+     * @param parameters the package parameters
+     * @return the result of the poll
+     */
+    public static PollStatus pollAndWait(final AsyncServiceMonitor monitor, final MonitoredService svc, final Map<String, Object> parameters) {
+        final WaitingPollCallback callback = new WaitingPollCallback();
+        monitor.poll(svc, parameters, callback);
+        return callback.waitFor();
+    }
+
+    private static final class WaitingPollCallback implements PollCallback {
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private volatile PollStatus m_status;
+
+        @Override
+        public void complete(final PollStatus status) {
+            m_status = status;
+            m_done.countDown();
+        }
+
+        public PollStatus waitFor() {
+            try {
+                m_done.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return PollStatus.unknown("Interrupted while waiting for the poll to complete");
+            }
+            return m_status;
+        }
+    }
+
+}
@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_EID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.opennms.netmgt.xml.event.Snmp;
+
+/**
+ * A precompiled lookup structure over a fully initialized {@link Events}
+ * tree.
+ *
+ * Every event configuration is given a rank equal to its position in the
+ * order used by {@link Events#findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}
+ * and is filed under exactly one necessary condition of its mask: the UEI,
+ * the enterprise id (exact or '%' prefix, kept in a character trie), the
+ * specific trap number or the generic trap number. Event configurations
+ * that have none of those (regular expressions, varbind-only masks, ...)
+ * end up in an unindexed list that is always scanned.
+ *
+ * A lookup merges the candidate lists that apply to the incoming event in
+ * rank order and runs the full {@link EventMatcher} of each candidate, so
+ * the result is always identical to the ordered scan.
+ *
+ * Instances are immutable, so they can be shared between threads without
+ * locking, and must be rebuilt whenever the {@link Events} tree is
+ * re-initialized.
+ */
+public class EventMatchIndex {
+
+    private static final int[] EMPTY_RANKS = new int[0];
+
+    private final Event[] m_events;
+    private final Map<String, Event> m_firstByUei;
+    private final Map<String, int[]> m_ueiBuckets;
+    private final Map<Integer, int[]> m_specificBuckets;
+    private final Map<Integer, int[]> m_genericBuckets;
+    private final TrieNode m_enterpriseIds;
+    private final int[] m_unindexed;
+
+    public EventMatchIndex(final Events events) {
+        final List<Event> ordered = events.forEachEvent(new ArrayList<Event>(), new Events.EventCallback<List<Event>>() {
+            @Override
+            public List<Event> process(final List<Event> accum, final Event event) {
+                accum.add(event);
+                return accum;
+            }
+        });
+
+        m_events = ordered.toArray(new Event[ordered.size()]);
+
+        m_firstByUei = new HashMap<String, Event>(m_events.length * 2);
+        for (final Event event : m_events) {
+            if (event.getUei() != null && !m_firstByUei.containsKey(event.getUei())) {
+                m_firstByUei.put(event.getUei(), event);
+            }
+        }
+
+        final Map<String, RankList> ueiBuckets = new HashMap<String, RankList>();
+        final Map<Integer, RankList> specificBuckets = new HashMap<Integer, RankList>();
+        final Map<Integer, RankList> genericBuckets = new HashMap<Integer, RankList>();
+        final TrieBuilder enterpriseIds = new TrieBuilder();
+        final RankList unindexed = new RankList();
+
+        for (int rank = 0; rank < m_events.length; rank++) {
+            final Event event = m_events[rank];
+            final Mask mask = event.getMask();
+
+            if (mask == null || mask.getMaskelementCount() <= 0) {
+                // a null uei means the event conf uses the false matcher and can never match
+                if (event.getUei() != null) {
+                    bucket(ueiBuckets, event.getUei()).add(rank);
+                }
+                continue;
+            }
+
+            final List<String> ueis = exactValues(mask.getMaskElement(TAG_UEI));
+            if (ueis != null) {
+                for (final String uei : ueis) {
+                    bucket(ueiBuckets, uei).add(rank);
+                }
+                continue;
+            }
+
+            if (enterpriseIds.addAll(mask.getMaskElement(TAG_SNMP_EID), rank)) {
+                continue;
+            }
+
+            final List<Integer> specifics = intValues(mask.getMaskElement(TAG_SNMP_SPECIFIC));
+            if (specifics != null) {
+                for (final Integer specific : specifics) {
+                    bucket(specificBuckets, specific).add(rank);
+                }
+                continue;
+            }
+
+            final List<Integer> generics = intValues(mask.getMaskElement(TAG_SNMP_GENERIC));
+            if (generics != null) {
+                for (final Integer generic : generics) {
+                    bucket(genericBuckets, generic).add(rank);
+                }
+                continue;
+            }
+
+            unindexed.add(rank);
+        }
+
+        m_ueiBuckets = freeze(ueiBuckets);
+        m_specificBuckets = freeze(specificBuckets);
+        m_genericBuckets = freeze(genericBuckets);
+        m_enterpriseIds = enterpriseIds.build();
+        m_unindexed = unindexed.toArray();
+    }
+
+    /**
+     * Returns the first event configuration, in {@link EventOrdering} order,
+     * that matches the given event, or null if none does.
+     */
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final Candidates candidates = new Candidates();
+        candidates.add(m_unindexed);
+
+        final String uei = matchingEvent.getUei();
+        if (uei != null) {
+            candidates.add(m_ueiBuckets.get(uei));
+        }
+
+        final Snmp snmp = matchingEvent.getSnmp();
+        if (snmp != null) {
+            final String id = snmp.getId();
+            if (id != null) {
+                collectEnterpriseIdCandidates(id, candidates);
+            }
+            if (snmp.hasSpecific()) {
+                candidates.add(m_specificBuckets.get(snmp.getSpecific()));
+            }
+            if (snmp.hasGeneric()) {
+                candidates.add(m_genericBuckets.get(snmp.getGeneric()));
+            }
+        }
+
+        return candidates.findFirstMatch(m_events, matchingEvent);
+    }
+
+    /**
+     * Returns the first event configuration, in {@link EventOrdering} order,
+     * with the given UEI, or null if there is none.
+     */
+    public Event findByUei(final String uei) {
+        return uei == null ? null : m_firstByUei.get(uei);
+    }
+
+    public int getEventCount() {
+        return m_events.length;
+    }
+
+    public int getUnindexedCount() {
+        return m_unindexed.length;
+    }
+
+    private void collectEnterpriseIdCandidates(final String id, final Candidates candidates) {
+        TrieNode node = m_enterpriseIds;
+        int pos = 0;
+        while (node != null) {
+            // every '%' value whose prefix is a prefix of the id is a candidate
+            candidates.add(node.m_prefixRanks);
+            if (pos == id.length()) {
+                candidates.add(node.m_exactRanks);
+                return;
+            }
+            node = node.child(id.charAt(pos++));
+        }
+    }
+
+    /**
+     * Returns the values of the mask element if all of them are matched by
+     * plain string equality, null otherwise.
+     */
+    private static List<String> exactValues(final Maskelement element) {
+        if (element == null) return null;
+        final List<String> values = new ArrayList<String>(element.getMevalueCount());
+        for (final String value : element.getMevalueCollection()) {
+            if (value == null) continue;
+            if (value.startsWith("~") || value.endsWith("%")) return null;
+            values.add(value);
+        }
+        return values.isEmpty() ? null : values;
+    }
+
+    /**
+     * Like {@link #exactValues(Maskelement)} but only for values that are in
+     * the canonical form produced by {@link Integer#toString(int)}, which is
+     * what the generic and specific fields are compared against.
+     */
+    private static List<Integer> intValues(final Maskelement element) {
+        final List<String> values = exactValues(element);
+        if (values == null) return null;
+        final List<Integer> ints = new ArrayList<Integer>(values.size());
+        for (final String value : values) {
+            try {
+                final int i = Integer.parseInt(value);
+                if (!Integer.toString(i).equals(value)) return null;
+                ints.add(i);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+        return ints;
+    }
+
+    private static <K> RankList bucket(final Map<K, RankList> buckets, final K key) {
+        RankList ranks = buckets.get(key);
+        if (ranks == null) {
+            ranks = new RankList();
+            buckets.put(key, ranks);
+        }
+        return ranks;
+    }
+
+    private static <K> Map<K, int[]> freeze(final Map<K, RankList> buckets) {
+        final Map<K, int[]> frozen = new HashMap<K, int[]>(buckets.size() * 2);
+        for (final Entry<K, RankList> entry : buckets.entrySet()) {
+            frozen.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return frozen;
+    }
+
+    /**
+     * Ascending list of ranks. Ranks are always added in increasing order so
+     * duplicates (a value listed twice in a mask element) are always adjacent.
+     */
+    private static final class RankList {
+        private int[] m_ranks = new int[4];
+        private int m_size = 0;
+
+        public void add(final int rank) {
+            if (m_size > 0 && m_ranks[m_size - 1] == rank) return;
+            if (m_size == m_ranks.length) {
+                m_ranks = Arrays.copyOf(m_ranks, m_size * 2);
+            }
+            m_ranks[m_size++] = rank;
+        }
+
+        public int[] toArray() {
+            return m_size == 0 ? EMPTY_RANKS : Arrays.copyOf(m_ranks, m_size);
+        }
+    }
+
+    private static final class TrieNode {
+        private final char[] m_keys;
+        private final TrieNode[] m_children;
+        private final int[] m_prefixRanks;
+        private final int[] m_exactRanks;
+
+        private TrieNode(final char[] keys, final TrieNode[] children, final int[] prefixRanks, final int[] exactRanks) {
+            m_keys = keys;
+            m_children = children;
+            m_prefixRanks = prefixRanks;
+            m_exactRanks = exactRanks;
+        }
+
+        public TrieNode child(final char c) {
+            final int index = Arrays.binarySearch(m_keys, c);
+            return index < 0 ? null : m_children[index];
+        }
+    }
+
+    private static final class TrieBuilder {
+        private final Map<Character, TrieBuilder> m_children = new HashMap<Character, TrieBuilder>();
+        private final RankList m_prefixRanks = new RankList();
+        private final RankList m_exactRanks = new RankList();
+
+        /**
+         * Files the rank under every value of the enterprise id mask element.
+         * Returns false, without touching the trie, if any of the values is a
+         * regular expression.
+         */
+        public boolean addAll(final Maskelement element, final int rank) {
+            if (element == null) return false;
+            boolean indexed = false;
+            for (final String value : element.getMevalueCollection()) {
+                if (value == null) continue;
+                if (value.startsWith("~")) return false;
+                indexed = true;
+            }
+            if (!indexed) return false;
+
+            for (final String value : element.getMevalueCollection()) {
+                if (value == null) continue;
+                if (value.endsWith("%")) {
+                    // the matcher also accepts the literal value, but that starts with the prefix anyway
+                    descend(value.substring(0, value.length() - 1)).m_prefixRanks.add(rank);
+                } else {
+                    descend(value).m_exactRanks.add(rank);
+                }
+            }
+            return true;
+        }
+
+        private TrieBuilder descend(final String key) {
+            TrieBuilder node = this;
+            for (int i = 0; i < key.length(); i++) {
+                final Character c = key.charAt(i);
+                TrieBuilder child = node.m_children.get(c);
+                if (child == null) {
+                    child = new TrieBuilder();
+                    node.m_children.put(c, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        public TrieNode build() {
+            final char[] keys = new char[m_children.size()];
+            int i = 0;
+            for (final Character c : m_children.keySet()) {
+                keys[i++] = c;
+            }
+            Arrays.sort(keys);
+
+            final TrieNode[] children = new TrieNode[keys.length];
+            for (i = 0; i < keys.length; i++) {
+                children[i] = m_children.get(keys[i]).build();
+            }
+            return new TrieNode(keys, children, m_prefixRanks.toArray(), m_exactRanks.toArray());
+        }
+    }
+
+    /**
+     * K-way merge over the sorted candidate lists for one lookup.
+     */
+    private static final class Candidates {
+        private int[][] m_lists = new int[8][];
+        private int m_count = 0;
+
+        public void add(final int[] ranks) {
+            if (ranks == null || ranks.length == 0) return;
+            if (m_count == m_lists.length) {
+                m_lists = Arrays.copyOf(m_lists, m_count * 2);
+            }
+            m_lists[m_count++] = ranks;
+        }
+
+        public Event findFirstMatch(final Event[] events, final org.opennms.netmgt.xml.event.Event matchingEvent) {
+            if (m_count == 0) return null;
+            if (m_count == 1) {
+                for (final int rank : m_lists[0]) {
+                    if (events[rank].matches(matchingEvent)) return events[rank];
+                }
+                return null;
+            }
+
+            final int[] cursors = new int[m_count];
+            while (true) {
+                int next = Integer.MAX_VALUE;
+                for (int i = 0; i < m_count; i++) {
+                    if (cursors[i] < m_lists[i].length && m_lists[i][cursors[i]] < next) {
+                        next = m_lists[i][cursors[i]];
+                    }
+                }
+                if (next == Integer.MAX_VALUE) return null;
+
+                // the same event conf can show up in more than one list, skip it everywhere
+                for (int i = 0; i < m_count; i++) {
+                    if (cursors[i] < m_lists[i].length && m_lists[i][cursors[i]] == next) {
+                        cursors[i]++;
+                    }
+                }
+
+                if (events[next].matches(matchingEvent)) return events[next];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventMatchIndex[events=" + m_events.length
+                + ", ueis=" + m_ueiBuckets.size()
+                + ", specifics=" + m_specificBuckets.size()
+                + ", generics=" + m_genericBuckets.size()
+                + ", unindexed=" + m_unindexed.length + "]";
+    }
+}
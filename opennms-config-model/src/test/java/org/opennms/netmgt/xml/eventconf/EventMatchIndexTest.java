@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Value;
+
+public class EventMatchIndexTest {
+
+    private Events m_root;
+    private Events m_file;
+
+    @Before
+    public void setUp() {
+        m_root = new Events();
+        m_file = new Events();
+
+        m_root.addEvent(trap("uei.opennms.org/test/regexFirst", "~^\\.1\\.3\\.6\\.1\\.4\\.1\\.99\\..*$", null, "17"));
+        m_root.addEvent(trap("uei.opennms.org/test/prefix", ".1.3.6.1.4.1.9.%", "6", "1"));
+        m_root.addEvent(trap("uei.opennms.org/test/exact", ".1.3.6.1.4.1.9.9.41.2", "6", "1"));
+        m_root.addEvent(trap("uei.opennms.org/test/exactOtherSpecific", ".1.3.6.1.4.1.9.9.41.2", "6", "2"));
+        m_root.addEvent(genericOnly("uei.opennms.org/test/coldStart", "0"));
+        m_root.addEvent(plain("uei.opennms.org/test/plain"));
+
+        final Event varbindOnly = plain("uei.opennms.org/test/varbindOnly");
+        final Mask mask = new Mask();
+        final Maskelement source = new Maskelement();
+        source.setMename("source");
+        source.addMevalue("trapd");
+        mask.addMaskelement(source);
+        final Varbind varbind = new Varbind();
+        varbind.setVbnumber(1);
+        varbind.addVbvalue("magic");
+        mask.addVarbind(varbind);
+        varbindOnly.setMask(mask);
+        m_file.addEvent(varbindOnly);
+
+        m_file.addEvent(trap("uei.opennms.org/test/fileExact", ".1.3.6.1.4.1.5813.1", "6", "1"));
+        m_file.addEvent(plain("uei.opennms.org/test/plain"));
+        m_file.addEvent(trap("uei.opennms.org/test/catchAll", ".1.3.6.1.4.1.5813.%", null, null));
+
+        m_root.addLoadedEventFile("events/test.events.xml", m_file);
+        // no partitioning at all, so findFirstMatchingEvent is a plain ordered scan
+        m_root.initialize(new Partition() {
+            @Override
+            public List<String> group(final Event eventConf) {
+                return null;
+            }
+
+            @Override
+            public String group(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return null;
+            }
+        }, new EventOrdering());
+    }
+
+    @Test
+    public void testPrefixBeatsLaterExact() {
+        assertMatch("uei.opennms.org/test/prefix", event(".1.3.6.1.4.1.9.9.41.2", 6, 1));
+    }
+
+    @Test
+    public void testPrefixDoesNotRequireArcBoundary() {
+        // '%' is a plain string prefix, not an OID subtree
+        assertMatch(null, event(".1.3.6.1.4.1.9", 6, 1));
+        assertMatch("uei.opennms.org/test/prefix", event(".1.3.6.1.4.1.9.", 6, 1));
+    }
+
+    @Test
+    public void testRegexIdFallsBackToSpecific() {
+        assertMatch("uei.opennms.org/test/regexFirst", event(".1.3.6.1.4.1.99.1", 6, 17));
+        assertMatch(null, event(".1.3.6.1.4.1.99.1", 6, 18));
+    }
+
+    @Test
+    public void testSpecificAndGenericBuckets() {
+        assertMatch("uei.opennms.org/test/coldStart", event(".1.3.6.1.4.1.1", 0, 0));
+        assertMatch("uei.opennms.org/test/fileExact", event(".1.3.6.1.4.1.5813.1", 6, 1));
+        assertMatch("uei.opennms.org/test/catchAll", event(".1.3.6.1.4.1.5813.1", 6, 2));
+    }
+
+    @Test
+    public void testUeiMatchesFirstInOrder() {
+        final org.opennms.netmgt.xml.event.Event e = new org.opennms.netmgt.xml.event.Event();
+        e.setUei("uei.opennms.org/test/plain");
+        assertMatch("uei.opennms.org/test/plain", e);
+
+        final EventMatchIndex index = new EventMatchIndex(m_root);
+        assertSame(m_root.getEvent(5), index.findFirstMatchingEvent(e));
+    }
+
+    @Test
+    public void testVarbindOnlyMask() {
+        final org.opennms.netmgt.xml.event.Event e = new org.opennms.netmgt.xml.event.Event();
+        e.setSource("trapd");
+        final Parm parm = new Parm();
+        parm.setParmName(".1.3.6.1.2.1.1.1.0");
+        final Value value = new Value();
+        value.setContent("magic");
+        parm.setValue(value);
+        e.addParm(parm);
+        assertMatch("uei.opennms.org/test/varbindOnly", e);
+    }
+
+    @Test
+    public void testNoMatch() {
+        final org.opennms.netmgt.xml.event.Event e = new org.opennms.netmgt.xml.event.Event();
+        e.setUei("uei.opennms.org/test/unknown");
+        assertMatch(null, e);
+    }
+
+    private void assertMatch(final String expectedUei, final org.opennms.netmgt.xml.event.Event e) {
+        final Event expected = m_root.findFirstMatchingEvent(e);
+        final Event actual = new EventMatchIndex(m_root).findFirstMatchingEvent(e);
+        assertSame("index and ordered scan must agree", expected, actual);
+        if (expectedUei == null) {
+            assertNull(actual);
+        } else {
+            assertEquals(expectedUei, actual.getUei());
+        }
+    }
+
+    private static org.opennms.netmgt.xml.event.Event event(final String id, final int generic, final int specific) {
+        final org.opennms.netmgt.xml.event.Snmp snmp = new org.opennms.netmgt.xml.event.Snmp();
+        snmp.setId(id);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+        final org.opennms.netmgt.xml.event.Event e = new org.opennms.netmgt.xml.event.Event();
+        e.setSnmp(snmp);
+        return e;
+    }
+
+    private static Event plain(final String uei) {
+        final Event event = new Event();
+        event.setUei(uei);
+        return event;
+    }
+
+    private static Event genericOnly(final String uei, final String generic) {
+        final Event event = plain(uei);
+        final Mask mask = new Mask();
+        mask.addMaskelement(element("generic", generic));
+        event.setMask(mask);
+        return event;
+    }
+
+    private static Event trap(final String uei, final String id, final String generic, final String specific) {
+        final Event event = plain(uei);
+        final Mask mask = new Mask();
+        mask.addMaskelement(element("id", id));
+        if (generic != null) mask.addMaskelement(element("generic", generic));
+        if (specific != null) mask.addMaskelement(element("specific", specific));
+        event.setMask(mask);
+        return event;
+    }
+
+    private static Maskelement element(final String name, final String value) {
+        final Maskelement element = new Maskelement();
+        element.setMename(name);
+        element.addMevalue(value);
+        return element;
+    }
+}
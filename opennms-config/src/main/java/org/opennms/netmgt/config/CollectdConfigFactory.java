@@ -29,7 +29,6 @@
 package org.opennms.netmgt.config;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
-import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -39,12 +38,17 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
+import org.opennms.core.network.IpListFromUrl;
 import org.opennms.core.utils.ConfigFileConstants;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.config.collectd.CollectdConfiguration;
+import org.opennms.netmgt.config.collectd.ExcludeRange;
+import org.opennms.netmgt.config.collectd.IncludeRange;
 import org.opennms.netmgt.config.collectd.Package;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.model.OnmsIpInterface;
@@ -72,6 +76,7 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
     public static final String SELECT_METHOD_MIN = "min";
 
     private CollectdConfiguration m_collectdConfig;
+    private Map<Package, PackageIpMatcher> m_packageIpMatchers = Collections.emptyMap();
     private final Object m_collectdConfigMutex = new Object();
 
     private final String m_fileName;
@@ -124,8 +129,13 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         try {
             isr = new InputStreamReader(stream);
             CollectdConfiguration config = JaxbUtils.unmarshal(CollectdConfiguration.class, isr);
+            Map<Package, PackageIpMatcher> matchers = new IdentityHashMap<Package, PackageIpMatcher>();
+            for (Package pkg : config.getPackages()) {
+                matchers.put(pkg, createPackageIpMatcher(pkg));
+            }
             synchronized (m_collectdConfigMutex) {
                 m_collectdConfig = config;
+                m_packageIpMatchers = matchers;
             }
         } finally {
             IOUtils.closeQuietly(isr);
@@ -308,6 +318,36 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         }
     }
 
+    /**
+     * Compile the ranges, specifics and include URLs of a package. The
+     * include URLs are read once here instead of on every lookup.
+     */
+    private static PackageIpMatcher createPackageIpMatcher(final Package pkg) {
+        final PackageIpMatcher.Builder builder = new PackageIpMatcher.Builder(pkg.getName());
+        for (final IncludeRange rng : pkg.getIncludeRanges()) {
+            builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (final String spec : pkg.getSpecifics()) {
+            builder.addSpecific(spec);
+        }
+        for (final String includeUrl : pkg.getIncludeUrls()) {
+            builder.addIncludeUrlAddresses(IpListFromUrl.fetch(includeUrl));
+        }
+        for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+            builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+        }
+        return builder.build();
+    }
+
+    private PackageIpMatcher getPackageIpMatcher(final Package pkg) {
+        final PackageIpMatcher matcher;
+        synchronized (m_collectdConfigMutex) {
+            matcher = m_packageIpMatchers.get(pkg);
+        }
+        // packages that are not part of the loaded configuration are compiled every time
+        return matcher == null ? createPackageIpMatcher(pkg) : matcher;
+    }
+
     private static String getFilterRule(String filter, String localServer, boolean verifyServer) {
         StringBuffer filterRules = new StringBuffer(filter);
     
@@ -380,15 +420,7 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         // that it is in the include range and is not excluded
         //
 
-        byte[] addr = toIpAddrBytes(iface);
-
-        boolean has_range_include = pkg.hasIncludeRange(iface);
-        boolean has_specific = pkg.hasSpecific(addr);
-
-        has_specific = pkg.hasSpecificUrl(iface, has_specific);
-        boolean has_range_exclude = pkg.hasExcludeRange(iface);
-
-        boolean packagePassed = has_specific || (has_range_include && !has_range_exclude);
+        boolean packagePassed = getPackageIpMatcher(pkg).isAddressIncluded(addr(iface));
         if(packagePassed) {
             LOG.info("interfaceInPackage: Interface {} passed filter and specific/range for package {}?: {}", iface, pkg.getName(), packagePassed);
         } else {
@@ -43,11 +43,11 @@ import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.config.api.EventConfDao;
 import org.opennms.netmgt.xml.eventconf.Event;
 import org.opennms.netmgt.xml.eventconf.EventLabelComparator;
+import org.opennms.netmgt.xml.eventconf.EventMatchIndex;
 import org.opennms.netmgt.xml.eventconf.EventMatchers;
 import org.opennms.netmgt.xml.eventconf.EventOrdering;
 import org.opennms.netmgt.xml.eventconf.Events;
 import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
-import org.opennms.netmgt.xml.eventconf.Events.EventCriteria;
 import org.opennms.netmgt.xml.eventconf.Field;
 import org.opennms.netmgt.xml.eventconf.Partition;
 import org.springframework.beans.factory.InitializingBean;
@@ -64,12 +64,19 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
      */
     private String m_programmaticStoreRelativePath = DEFAULT_PROGRAMMATIC_STORE_RELATIVE_PATH;
 
-	private Events m_events;
+	private volatile Events m_events;
 
 	private Resource m_configResource;
 
 	private Partition m_partition;
 
+	/**
+	 * Immutable, precompiled index used by findByEvent() and findByUei(). It
+	 * is rebuilt every time the events are re-initialized and then swapped in
+	 * atomically, so lookups never need a lock.
+	 */
+	private volatile EventMatchIndex m_matchIndex;
+
     /**
      * Used to keep track of the last modified time for the loaded event files.
      * See the reloadConfig() for details.
@@ -174,35 +181,37 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	}
 
 	@Override
-	public void addEvent(Event event) {
-		m_events.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+	public synchronized void addEvent(Event event) {
+		final Events events = copyOf(m_events);
+		events.addEvent(event);
+		publish(events);
 	}
 
 	@Override
-	public void addEventToProgrammaticStore(Event event) {
-		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
+	public synchronized void addEventToProgrammaticStore(Event event) {
+		final Events events = copyOf(m_events);
+		Events programmaticEvents = events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		if (programmaticEvents == null) {
 			programmaticEvents = new Events();
-			m_events.addLoadedEventFile(m_programmaticStoreRelativePath, programmaticEvents);
+			events.addLoadedEventFile(m_programmaticStoreRelativePath, programmaticEvents);
 		}
 
 		programmaticEvents.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
-
+		publish(events);
 	}
 
 	@Override
-	public boolean removeEventFromProgrammaticStore(Event event) {
-		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
-		if (programmaticEvents == null) return false;
+	public synchronized boolean removeEventFromProgrammaticStore(Event event) {
+		if (m_events.getLoadEventsByFile(m_programmaticStoreRelativePath) == null) return false;
 
+		final Events events = copyOf(m_events);
+		final Events programmaticEvents = events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		programmaticEvents.removeEvent(event);
 		if (programmaticEvents.getEventCount() <= 0) {
-			m_events.removeLoadedEventFile(m_programmaticStoreRelativePath);
-		} 
+			events.removeLoadedEventFile(m_programmaticStoreRelativePath);
+		}
 
-		m_events.initialize(m_partition, new EventOrdering());
+		publish(events);
 
 		return true;
 
@@ -215,19 +224,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	@Override
 	public Event findByUei(final String uei) {
-	    if (uei == null) {
-	        return null;
-	    }
-	    return m_events.findFirstMatchingEvent(new EventCriteria() {
-	        @Override public boolean matches(final Event e) {
-	            return uei.equals(e.getUei());
-	        }
-	    });
+	    return m_matchIndex.findByUei(uei);
 	}
 
 	@Override
 	public Event findByEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
-		return m_events.findFirstMatchingEvent(matchingEvent);
+		return m_matchIndex.findFirstMatchingEvent(matchingEvent);
 	}
 
 	@Override
@@ -244,6 +246,43 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		loadConfig();
 	}
 
+	/**
+	 * Orders and partitions the events and compiles the match index for them.
+	 */
+	private EventMatchIndex initialize(Events events) {
+		events.initialize(m_partition, new EventOrdering());
+		return new EventMatchIndex(events);
+	}
+
+	/**
+	 * Initializes a new events tree and swaps it in for the current one.
+	 */
+	private void publish(Events events) {
+		final EventMatchIndex matchIndex = initialize(events);
+
+		m_events = events;
+		m_matchIndex = matchIndex;
+	}
+
+	/**
+	 * Copies the events tree, down to the loaded event files, so that it can
+	 * be changed without touching the tree the readers are using. The event
+	 * definitions themselves are shared.
+	 */
+	private static Events copyOf(Events events) {
+		final Events copy = new Events();
+		copy.setGlobal(events.getGlobal());
+		copy.setEventCollection(events.getEventCollection());
+		copy.setEventFileCollection(events.getEventFileCollection());
+		for (String eventFile : events.getEventFile()) {
+			final Events loadedEvents = events.getLoadEventsByFile(eventFile);
+			if (loadedEvents != null) {
+				copy.addLoadedEventFile(eventFile, copyOf(loadedEvents));
+			}
+		}
+		return copy;
+	}
+
 	private static class EnterpriseIdPartition implements Partition {
 
 		private Field m_field = EventMatchers.field("id");
@@ -285,16 +324,14 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
                     m_lastModifiedEventFiles.remove(eventFile);
                     continue;
                 }
-                events.addLoadedEventFile(eventFile, m_events.getLoadEventsByFile(eventFile));
+                events.addLoadedEventFile(eventFile, copyOf(m_events.getLoadEventsByFile(eventFile)));
             }
 
             // Load/reload the event files as necessary
             events.loadEventFilesIfModified(m_configResource, m_lastModifiedEventFiles);
 
             // Order the events for efficient searching
-            events.initialize(m_partition, new EventOrdering());
-
-            m_events = events;
+            publish(events);
         } catch (Exception e) {
             throw new DataRetrievalFailureException("Unabled to load " + m_configResource, e);
         }
@@ -306,9 +343,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			m_lastModifiedEventFiles = events.loadEventFiles(m_configResource);
 
 			m_partition = new EnterpriseIdPartition();
-			events.initialize(m_partition, new EventOrdering());
-
-			m_events = events;
+			publish(events);
 		} catch (Exception e) {
 			throw new DataRetrievalFailureException("Unabled to load " + m_configResource, e);
 		}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.opennms.core.utils.InetAddressUtils.getInetAddress;
+import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.opennms.core.utils.ByteArrayComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * The interfaces selected by a package definition, compiled so that an
+ * interface can be checked against the package without walking its ranges
+ * and specifics or parsing any of their addresses again.
+ * </p>
+ *
+ * <p>
+ * The addresses passed by the package filter, the specifics and the
+ * addresses of the include URLs are kept in hash sets. The include and
+ * exclude ranges are sorted and merged into disjoint intervals, which are
+ * searched with a binary search. An interface is in the package if it
+ * passed the filter and it is either a specific, or it is in an include
+ * range and not in an exclude range. A package without include ranges and
+ * specifics includes every address.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and are created with a {@link Builder}.
+ * </p>
+ */
+public class PackageIpMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(PackageIpMatcher.class);
+
+    private static final ByteArrayComparator COMPARATOR = new ByteArrayComparator();
+
+    private final String m_name;
+    private final Set<InetAddress> m_filterAddresses;
+    private final Set<InetAddress> m_specifics;
+    private final boolean m_includeAll;
+    private final AddressRanges m_includeRanges;
+    private final AddressRanges m_excludeRanges;
+
+    private PackageIpMatcher(final Builder builder) {
+        m_name = builder.m_name;
+        m_filterAddresses = builder.m_filterAddresses;
+        m_specifics = builder.m_specifics;
+        m_includeAll = !builder.m_hasIncludeRanges && !builder.m_hasSpecifics;
+        m_includeRanges = new AddressRanges(builder.m_includeRanges);
+        m_excludeRanges = new AddressRanges(builder.m_excludeRanges);
+    }
+
+    /**
+     * <p>getName</p>
+     *
+     * @return the name of the package
+     */
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns true if the address was selected by the package filter. If no
+     * filter addresses were given to the builder, every address passes.
+     *
+     * @param addr a {@link java.net.InetAddress} object.
+     * @return a boolean.
+     */
+    public boolean isFilterPassed(final InetAddress addr) {
+        return m_filterAddresses == null || m_filterAddresses.contains(addr);
+    }
+
+    /**
+     * Returns true if the address is a specific or is in an include URL of
+     * the package, or if it is in an include range and not in an exclude
+     * range. The package filter is not checked.
+     *
+     * @param addr a {@link java.net.InetAddress} object.
+     * @return a boolean.
+     */
+    public boolean isAddressIncluded(final InetAddress addr) {
+        if (m_specifics.contains(addr)) {
+            return true;
+        }
+        final byte[] octets = addr.getAddress();
+        return (m_includeAll || m_includeRanges.contains(octets)) && !m_excludeRanges.contains(octets);
+    }
+
+    /**
+     * Returns true if the address passed the package filter and is included
+     * by the ranges, specifics and include URLs of the package.
+     *
+     * @param addr a {@link java.net.InetAddress} object.
+     * @return a boolean.
+     */
+    public boolean isInterfaceInPackage(final InetAddress addr) {
+        return isFilterPassed(addr) && isAddressIncluded(addr);
+    }
+
+    /**
+     * <p>getFilterAddressCount</p>
+     *
+     * @return the number of addresses passed by the package filter, or -1 if
+     *         the filter is not checked by this matcher
+     */
+    public int getFilterAddressCount() {
+        return m_filterAddresses == null ? -1 : m_filterAddresses.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PackageIpMatcher[name=" + m_name
+                + ", filterAddresses=" + getFilterAddressCount()
+                + ", specifics=" + m_specifics.size()
+                + ", includeRanges=" + m_includeRanges.size()
+                + ", excludeRanges=" + m_excludeRanges.size() + "]";
+    }
+
+    /**
+     * Collects the address rules of one package.
+     */
+    public static class Builder {
+        private final String m_name;
+        private Set<InetAddress> m_filterAddresses = null;
+        private final Set<InetAddress> m_specifics = new HashSet<InetAddress>();
+        private final List<byte[][]> m_includeRanges = new ArrayList<byte[][]>();
+        private final List<byte[][]> m_excludeRanges = new ArrayList<byte[][]>();
+        private boolean m_hasIncludeRanges = false;
+        private boolean m_hasSpecifics = false;
+
+        /**
+         * @param name the name of the package, used for logging
+         */
+        public Builder(final String name) {
+            m_name = name;
+        }
+
+        /**
+         * Set the addresses that were selected by the package filter. If
+         * this is never called, the filter is left to the caller.
+         */
+        public Builder setFilterAddresses(final Collection<InetAddress> addresses) {
+            m_filterAddresses = new HashSet<InetAddress>(addresses);
+            return this;
+        }
+
+        public Builder addIncludeRange(final String begin, final String end) {
+            m_hasIncludeRanges = true;
+            addRange(m_includeRanges, "include", begin, end);
+            return this;
+        }
+
+        public Builder addExcludeRange(final String begin, final String end) {
+            addRange(m_excludeRanges, "exclude", begin, end);
+            return this;
+        }
+
+        public Builder addSpecific(final String specific) {
+            m_hasSpecifics = true;
+            addAddress("specific", specific);
+            return this;
+        }
+
+        /**
+         * Add the addresses listed in an include URL. Unlike specifics,
+         * these do not turn off the implicit include-everything range of a
+         * package without include ranges.
+         */
+        public Builder addIncludeUrlAddresses(final Collection<String> addresses) {
+            for (final String address : addresses) {
+                addAddress("include-url", address);
+            }
+            return this;
+        }
+
+        public PackageIpMatcher build() {
+            return new PackageIpMatcher(this);
+        }
+
+        private void addAddress(final String type, final String address) {
+            try {
+                m_specifics.add(getInetAddress(toIpAddrBytes(address)));
+            } catch (final IllegalArgumentException e) {
+                LOG.warn("Ignoring invalid {} address {} in package {}", type, address, m_name, e);
+            }
+        }
+
+        private void addRange(final List<byte[][]> ranges, final String type, final String begin, final String end) {
+            try {
+                final byte[] beginBytes = toIpAddrBytes(begin);
+                byte[] endBytes = toIpAddrBytes(end);
+                if (COMPARATOR.compare(beginBytes, endBytes) > 0) {
+                    // a reversed range has always matched just its first address
+                    endBytes = beginBytes;
+                }
+                ranges.add(new byte[][] { beginBytes, endBytes });
+            } catch (final IllegalArgumentException e) {
+                LOG.warn("Ignoring invalid {} range {} - {} in package {}", type, begin, end, m_name, e);
+            }
+        }
+    }
+
+    /**
+     * Sorted, disjoint address intervals. Overlapping ranges are merged when
+     * the intervals are built, so a lookup only has to find the last interval
+     * that begins at or before the address.
+     */
+    private static final class AddressRanges {
+        private final byte[][] m_begins;
+        private final byte[][] m_ends;
+
+        public AddressRanges(final List<byte[][]> ranges) {
+            final List<byte[][]> sorted = new ArrayList<byte[][]>(ranges);
+            Collections.sort(sorted, new Comparator<byte[][]>() {
+                @Override
+                public int compare(final byte[][] a, final byte[][] b) {
+                    return COMPARATOR.compare(a[0], b[0]);
+                }
+            });
+
+            final List<byte[]> begins = new ArrayList<byte[]>(sorted.size());
+            final List<byte[]> ends = new ArrayList<byte[]>(sorted.size());
+            for (final byte[][] range : sorted) {
+                final int last = ends.size() - 1;
+                if (last >= 0 && COMPARATOR.compare(range[0], ends.get(last)) <= 0) {
+                    if (COMPARATOR.compare(range[1], ends.get(last)) > 0) {
+                        ends.set(last, range[1]);
+                    }
+                } else {
+                    begins.add(range[0]);
+                    ends.add(range[1]);
+                }
+            }
+            m_begins = begins.toArray(new byte[begins.size()][]);
+            m_ends = ends.toArray(new byte[ends.size()][]);
+        }
+
+        public int size() {
+            return m_begins.length;
+        }
+
+        public boolean contains(final byte[] addr) {
+            if (m_begins.length == 0) {
+                return false;
+            }
+            int index = Arrays.binarySearch(m_begins, addr, COMPARATOR);
+            if (index >= 0) {
+                return true;
+            }
+            // the interval before the insertion point is the last one that begins before the address
+            index = -index - 2;
+            return index >= 0 && COMPARATOR.compare(addr, m_ends[index]) <= 0;
+        }
+    }
+}
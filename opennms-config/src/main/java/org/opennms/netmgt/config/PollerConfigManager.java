@@ -29,7 +29,6 @@
 package org.opennms.netmgt.config;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
-import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,6 +40,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -53,7 +53,6 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.io.IOUtils;
 import org.opennms.core.network.IpListFromUrl;
-import org.opennms.core.utils.ByteArrayComparator;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.core.xml.MarshallingResourceFailureException;
 import org.opennms.netmgt.config.poller.CriticalService;
@@ -150,10 +149,12 @@ abstract public class PollerConfigManager implements PollerConfig {
      */
     private Map<String, List<String>> m_urlIPMap;
     /**
-     * A mapping of the configured package to a list of IPs selected via filter
-     * rules, so as to avoid repetitive database access.
+     * A mapping of the configured package to the IPs selected via filter
+     * rules and its compiled ranges and specifics, so as to avoid repetitive
+     * database access and address parsing. Packages are looked up by
+     * identity first since hashing a package walks its whole definition.
      */
-    private AtomicReference<Map<Package, List<InetAddress>>> m_pkgIpMap = new AtomicReference<Map<Package, List<InetAddress>>>();;
+    private AtomicReference<Map<Package, PackageIpMatcher>> m_pkgIpMap = new AtomicReference<Map<Package, PackageIpMatcher>>(Collections.<Package, PackageIpMatcher>emptyMap());
     /**
      * A mapp of service names to service monitors. Constructed based on data in
      * the configuration file.
@@ -280,46 +281,6 @@ abstract public class PollerConfigManager implements PollerConfig {
         }
     }
 
-    /**
-     * This method is used to determine if the named interface is included in
-     * the passed package's url includes. If the interface is found in any of
-     * the URL files, then a value of true is returned, else a false value is
-     * returned.
-     * 
-     * <pre>
-     * 
-     *  The file URL is read and each entry in this file checked. Each line
-     *   in the URL file can be one of -
-     *   &lt;IP&gt;&lt;space&gt;#&lt;comments&gt;
-     *   or
-     *   &lt;IP&gt;
-     *   or
-     *   #&lt;comments&gt;
-     *  
-     *   Lines starting with a '#' are ignored and so are characters after
-     *   a '&lt;space&gt;#' in a line.
-     *  
-     * </pre>
-     * 
-     * @param addr
-     *            The interface to test against the package's URL
-     * @param url
-     *            The url file to read
-     * 
-     * @return True if the interface is included in the url, false otherwise.
-     */
-    private boolean interfaceInUrl(final String addr, final String url) {
-        boolean bRet = false;
-    
-        // get list of IPs in this URL
-        final List<String> iplist = m_urlIPMap.get(url);
-        if (iplist != null && iplist.size() > 0) {
-            bRet = iplist.contains(addr);
-        }
-    
-        return bRet;
-    }
-
     /**
      * This method returns the boolean flag xmlrpc to indicate if notification
      * to external xmlrpc server is needed.
@@ -436,7 +397,7 @@ abstract public class PollerConfigManager implements PollerConfig {
         getReadLock().lock();
         
         try {
-            Map<Package, List<InetAddress>> pkgIpMap = new HashMap<Package, List<InetAddress>>();
+            Map<Package, PackageIpMatcher> pkgIpMap = new IdentityHashMap<Package, PackageIpMatcher>();
             
             for(final Package pkg : packages()) {
         
@@ -447,9 +408,7 @@ abstract public class PollerConfigManager implements PollerConfig {
                     List<InetAddress> ipList = getIpList(pkg);
                     LOG.debug("createPackageIpMap: package {}: ipList size = {}", pkg.getName(), ipList.size());
         
-                    if (ipList.size() > 0) {
-                        pkgIpMap.put(pkg, ipList);
-                    }
+                    pkgIpMap.put(pkg, createPackageIpMatcher(pkg, ipList));
                     
                 } catch (final Throwable t) {
                     LOG.error("createPackageIpMap: failed to map package: {} to an IP List with filter \"{}\"", pkg.getName(), pkg.getFilter().getContent(), t);
@@ -464,6 +423,41 @@ abstract public class PollerConfigManager implements PollerConfig {
         }
     }
 
+    private PackageIpMatcher createPackageIpMatcher(final Package pkg, final List<InetAddress> ipList) {
+        final PackageIpMatcher.Builder builder = new PackageIpMatcher.Builder(pkg.getName()).setFilterAddresses(ipList);
+        for (final IncludeRange rng : pkg.getIncludeRanges()) {
+            builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (final String spec : pkg.getSpecifics()) {
+            builder.addSpecific(spec);
+        }
+        for (final String includeUrl : pkg.getIncludeUrls()) {
+            final List<String> urlIpList = m_urlIPMap.get(includeUrl);
+            if (urlIpList != null) {
+                builder.addIncludeUrlAddresses(urlIpList);
+            }
+        }
+        for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+            builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+        }
+        return builder.build();
+    }
+
+    private PackageIpMatcher getPackageIpMatcher(final Package pkg) {
+        final Map<Package, PackageIpMatcher> pkgIpMap = m_pkgIpMap.get();
+        final PackageIpMatcher matcher = pkgIpMap.get(pkg);
+        if (matcher != null) {
+            return matcher;
+        }
+        // a copy of a configured package
+        for (final Map.Entry<Package, PackageIpMatcher> entry : pkgIpMap.entrySet()) {
+            if (entry.getKey().equals(pkg)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
     /** {@inheritDoc} */
     @Override
     public List<InetAddress> getIpList(final Package pkg) {
@@ -510,14 +504,11 @@ abstract public class PollerConfigManager implements PollerConfig {
      */
     @Override
     public boolean isInterfaceInPackage(final String iface, final Package pkg) {
-        boolean filterPassed = false;
         final InetAddress ifaceAddr = addr(iface);
     
-        // get list of IPs in this package
-        final List<InetAddress> ipList = m_pkgIpMap.get().get(pkg);
-        if (ipList != null && ipList.size() > 0) {
-			filterPassed = ipList.contains(ifaceAddr);
-        }
+        // get the compiled IP list and ranges of this package
+        final PackageIpMatcher matcher = getPackageIpMatcher(pkg);
+        final boolean filterPassed = matcher != null && matcher.isFilterPassed(ifaceAddr);
 
         LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", iface, pkg.getName(), Boolean.valueOf(filterPassed));
     
@@ -527,61 +518,7 @@ abstract public class PollerConfigManager implements PollerConfig {
         // Ensure that the interface is in the specific list or
         // that it is in the include range and is not excluded
         //
-        boolean has_specific = false;
-        boolean has_range_include = false;
-        boolean has_range_exclude = false;
- 
-        // if there are NO include ranges then treat act as if the user include
-        // the range of all valid addresses (0.0.0.0 - 255.255.255.255, ::1 - ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff)
-        has_range_include = pkg.getIncludeRanges().size() == 0 && pkg.getSpecifics().size() == 0;
-        
-        final byte[] addr = toIpAddrBytes(iface);
-
-        for (final IncludeRange rng : pkg.getIncludeRanges()) {
-            int comparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getBegin()));
-            if (comparison > 0) {
-                int endComparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getEnd()));
-                if (endComparison <= 0) {
-                    has_range_include = true;
-                    break;
-                }
-            } else if (comparison == 0) {
-                has_range_include = true;
-                break;
-            }
-        }
-
-        for (final String spec : pkg.getSpecifics()) {
-            if (new ByteArrayComparator().compare(addr, toIpAddrBytes(spec)) == 0) {
-                has_specific = true;
-                break;
-            }
-        }
-    
-        for (final String includeUrl : pkg.getIncludeUrls()) {
-            if (interfaceInUrl(iface, includeUrl)) {
-                has_specific = true;
-                break;
-            }
-        }
-
-        if (!has_specific) {
-            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
-                int comparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getBegin()));
-                if (comparison > 0) {
-                    int endComparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getEnd()));
-                    if (endComparison <= 0) {
-                        has_range_exclude = true;
-                        break;
-                    }
-                } else if (comparison == 0) {
-                    has_range_exclude = true;
-                    break;
-                }
-            }
-        }
-
-        return has_specific || (has_range_include && !has_range_exclude);
+        return matcher.isAddressIncluded(ifaceAddr);
     }
 
     /**
@@ -29,8 +29,6 @@
 package org.opennms.netmgt.config;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
-import static org.opennms.core.utils.InetAddressUtils.isInetAddressInRange;
-import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -48,7 +46,6 @@ import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.Marshaller;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.network.IpListFromUrl;
-import org.opennms.core.utils.ByteArrayComparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.xml.CastorUtils;
@@ -117,10 +114,11 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
      */
     private Map<String, List<String>> m_urlIPMap;
     /**
-     * A mapping of the configured package to a list of IPs selected via filter
-     * rules, so as to avoid repetitive database access.
+     * A mapping of the configured package to the IPs selected via filter
+     * rules and its compiled ranges and specifics, so as to avoid repetitive
+     * database access and address parsing.
      */
-    private Map<Package, List<InetAddress>> m_pkgIpMap;
+    private Map<Package, PackageIpMatcher> m_pkgIpMap;
 
 
     private Map<String,Map<String,Interface>> m_pkgIntMap;
@@ -225,46 +223,6 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
         m_config.addPackage(pkg);
     }
     
-    /**
-     * This method is used to determine if the named interface is included in
-     * the passed package's URL includes. If the interface is found in any of
-     * the URL files, then a value of true is returned, else a false value is
-     * returned.
-     * 
-     * <pre>
-     * 
-     *  The file URL is read and each entry in this file checked. Each line
-     *   in the URL file can be one of -
-     *   &lt;IP&gt;&lt;space&gt;#&lt;comments&gt;
-     *   or
-     *   &lt;IP&gt;
-     *   or
-     *   #&lt;comments&gt;
-     *  
-     *   Lines starting with a '#' are ignored and so are characters after
-     *   a '&lt;space&gt;#' in a line.
-     *  
-     * </pre>
-     * 
-     * @param addr
-     *            The interface to test against the package's URL
-     * @param url
-     *            The URL file to read
-     * 
-     * @return True if the interface is included in the URL, false otherwise.
-     */
-    private boolean interfaceInUrl(String addr, String url) {
-        boolean bRet = false;
-    
-        // get list of IPs in this URL
-        List<String> iplist = m_urlIPMap.get(url);
-        if (iplist != null && iplist.size() > 0) {
-            bRet = iplist.contains(addr);
-        }
-    
-        return bRet;
-    }
-
     /**
      * This method returns the configured critical service name.
      *
@@ -287,7 +245,7 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
      * from the database.
      */
     private void createPackageIpListMap() {
-        m_pkgIpMap = new HashMap<Package, List<InetAddress>>();
+        m_pkgIpMap = new HashMap<Package, PackageIpMatcher>();
         m_pkgIntMap = new HashMap<String, Map<String, Interface>>();
         
         for(Package pkg : packages()) {
@@ -306,7 +264,7 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
     
                 if (ipList.size() > 0) {
                     LOG.debug("createPackageIpMap: package {}. IpList size is {}", ipList.size(), pkg.getName());
-                    m_pkgIpMap.put(pkg, ipList);
+                    m_pkgIpMap.put(pkg, createPackageIpMatcher(pkg, ipList));
                 }
             } catch (Throwable t) {
                 LOG.error("createPackageIpMap: failed to map package: {} to an IP List", pkg.getName(), t);
@@ -315,6 +273,26 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
         }
     }
 
+    private PackageIpMatcher createPackageIpMatcher(Package pkg, List<InetAddress> ipList) {
+        PackageIpMatcher.Builder builder = new PackageIpMatcher.Builder(pkg.getName()).setFilterAddresses(ipList);
+        for (IncludeRange rng : pkg.getIncludeRangeCollection()) {
+            builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (String spec : pkg.getSpecificCollection()) {
+            builder.addSpecific(spec);
+        }
+        for (String url : pkg.getIncludeUrlCollection()) {
+            List<String> urlIpList = m_urlIPMap.get(url);
+            if (urlIpList != null) {
+                builder.addIncludeUrlAddresses(urlIpList);
+            }
+        }
+        for (ExcludeRange rng : pkg.getExcludeRangeCollection()) {
+            builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+        }
+        return builder.build();
+    }
+
     /**
      * <p>getIpList</p>
      *
@@ -366,16 +344,12 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
     public synchronized boolean interfaceInPackage(String iface, Package pkg) {
         final InetAddress ifaceAddr = addr(iface);
     
-        boolean filterPassed = false;
-    
-        // get list of IPs in this package
-        List<InetAddress> ipList = m_pkgIpMap.get(pkg);
-        if (ipList != null && ipList.size() > 0) {
-			filterPassed = ipList.contains(ifaceAddr);
-        }
+        // get the compiled IP list and ranges of this package
+        PackageIpMatcher matcher = m_pkgIpMap.get(pkg);
+        boolean filterPassed = matcher != null && matcher.isFilterPassed(ifaceAddr);
     
 
-        LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", filterPassed, iface, pkg.getName());
+        LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", iface, pkg.getName(), filterPassed);
     
         if (!filterPassed)
             return false;
@@ -384,44 +358,7 @@ abstract public class SnmpInterfacePollerConfigManager implements SnmpInterfaceP
         // Ensure that the interface is in the specific list or
         // that it is in the include range and is not excluded
         //
-        boolean has_specific = false;
-        boolean has_range_include = false;
-        boolean has_range_exclude = false;
- 
-        // if there are NO include ranges then treat act as if the user include
-        // the range 0.0.0.0 - 255.255.255.255
-        has_range_include = pkg.getIncludeRangeCount() == 0 && pkg.getSpecificCount() == 0;
-        
-        for (IncludeRange rng : pkg.getIncludeRangeCollection()) {
-            if (isInetAddressInRange(iface, rng.getBegin(), rng.getEnd())) {
-                has_range_include = true;
-                break;
-            }
-        }
-
-        byte[] addr = toIpAddrBytes(iface);
-
-        for (String spec : pkg.getSpecificCollection()) {
-            byte[] speca = toIpAddrBytes(spec);
-            if (new ByteArrayComparator().compare(speca, addr) == 0) {
-                has_specific = true;
-                break;
-            }
-        }
-
-        Enumeration<String> eurl = pkg.enumerateIncludeUrl();
-        while (!has_specific && eurl.hasMoreElements()) {
-            has_specific = interfaceInUrl(iface, eurl.nextElement());
-        }
-    
-        for (ExcludeRange rng : pkg.getExcludeRangeCollection()) {
-            if (isInetAddressInRange(iface, rng.getBegin(), rng.getEnd())) {
-                has_range_exclude = true;
-                break;
-            }
-        }
-    
-        return has_specific || (has_range_include && !has_range_exclude);
+        return matcher.isAddressIncluded(ifaceAddr);
     }
 
     /**
@@ -88,6 +88,13 @@ public interface SyslogdConfig {
      */
     public abstract String getParser();
 
+    /**
+     * <p>getReceivers</p>
+     *
+     * @return the number of threads reading from the syslog port.
+     */
+    public abstract int getReceivers();
+
     /**
      * <p>getUeiList</p>
      *
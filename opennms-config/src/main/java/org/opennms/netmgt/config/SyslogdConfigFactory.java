@@ -241,6 +241,16 @@ public final class SyslogdConfigFactory implements SyslogdConfig {
         return m_config.getConfiguration().getParser();
     }
 
+    /**
+     * <p>getReceivers</p>
+     *
+     * @return the number of threads reading from the syslog port.
+     */
+    @Override
+    public synchronized int getReceivers() {
+        return m_config.getConfiguration().getReceivers();
+    }
+
     /**
      * <p>getUeiList</p>
      *
@@ -61,4 +61,46 @@ public interface TrapdConfig {
      * @return a java.util.List.
      */
     public abstract List<SnmpV3User> getSnmpV3Users();
+
+    /**
+     * <p>getCoalesceWindow</p>
+     *
+     * @return the time in milliseconds during which duplicate traps are coalesced.
+     */
+    public abstract long getCoalesceWindow();
+
+    /**
+     * <p>getCoalesceVarbinds</p>
+     *
+     * @return the OID prefixes of the varbinds that tell duplicate traps apart.
+     */
+    public abstract List<String> getCoalesceVarbinds();
+
+    /**
+     * <p>getRateLimit</p>
+     *
+     * @return the number of traps per second sent to eventd for each agent, 0 for no limit.
+     */
+    public abstract double getRateLimit();
+
+    /**
+     * <p>getRateLimitBurst</p>
+     *
+     * @return the number of traps an agent may send at once before the rate limit applies.
+     */
+    public abstract int getRateLimitBurst();
+
+    /**
+     * <p>getThreads</p>
+     *
+     * @return the number of threads that convert traps into events, 0 for one per processor.
+     */
+    public abstract int getThreads();
+
+    /**
+     * <p>getQueueSize</p>
+     *
+     * @return the number of received traps each of those threads may have waiting.
+     */
+    public abstract int getQueueSize();
 }
@@ -208,4 +208,52 @@ public final class TrapdConfigFactory implements TrapdConfig {
         return snmpUsers;
     }
 
+    /**
+     * Return the time in milliseconds during which duplicate traps are
+     * coalesced into one event, 0 if they are not.
+     *
+     * @return the coalesce window in milliseconds
+     */
+    @Override
+    public synchronized long getCoalesceWindow() {
+        return m_config.getCoalesceWindow();
+    }
+
+    @Override
+    public synchronized List<String> getCoalesceVarbinds() {
+        return new ArrayList<String>(m_config.getCoalesceVarbindCollection());
+    }
+
+    /**
+     * Return the number of traps per second sent to eventd for each agent,
+     * 0 if there is no limit.
+     *
+     * @return the rate limit in traps per second
+     */
+    @Override
+    public synchronized double getRateLimit() {
+        return m_config.getRateLimit();
+    }
+
+    @Override
+    public synchronized int getRateLimitBurst() {
+        return m_config.getRateLimitBurst();
+    }
+
+    /**
+     * Return the number of threads that convert traps into events, 0 for
+     * one thread per processor.
+     *
+     * @return the number of threads
+     */
+    @Override
+    public synchronized int getThreads() {
+        return m_config.getThreads();
+    }
+
+    @Override
+    public synchronized int getQueueSize() {
+        return m_config.getQueueSize();
+    }
+
 }
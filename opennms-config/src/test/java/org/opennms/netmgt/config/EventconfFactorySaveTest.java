@@ -34,7 +34,9 @@ import java.util.List;
 import junit.framework.TestCase;
 
 import org.apache.commons.io.FileUtils;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
 import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.opennms.test.FileAnticipator;
 import org.springframework.core.io.FileSystemResource;
@@ -268,4 +270,25 @@ public class EventconfFactorySaveTest extends TestCase {
         }
 
     }   
+
+    /**
+     * Readers that hold on to the root events must not see the changes,
+     * these go into a new tree that replaces it.
+     */
+    public void testAddEventLeavesPreviousTreeUntouched() {
+        final Events root = m_eventConfDao.getRootEvents();
+        final int eventCount = root.getEventCount();
+        final int eventFileCount = root.getEventFileCount();
+
+        m_eventConfDao.addEvent(getAddableEvent());
+        m_eventConfDao.addEventToProgrammaticStore(getAddableEvent());
+
+        assertNotSame(root, m_eventConfDao.getRootEvents());
+        assertEquals(eventCount, root.getEventCount());
+        assertEquals(eventFileCount, root.getEventFileCount());
+        assertNull(root.getLoadEventsByFile(m_eventConfDao.getProgrammaticStoreRelativeUrl()));
+        assertNull(root.findFirstMatchingEvent(new EventBuilder(newUEI, "test").getEvent()));
+
+        assertEquals(2, m_eventConfDao.getEvents(newUEI).size());
+    }
 }
@@ -35,6 +35,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.opennms.core.utils.InetAddressUtils.str;
@@ -71,6 +72,8 @@ import org.opennms.netmgt.snmp.TrapIdentity;
 import org.opennms.netmgt.xml.eventconf.AlarmData;
 import org.opennms.netmgt.xml.eventconf.Event;
 import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Varbind;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.InputStreamResource;
@@ -157,6 +160,89 @@ public class EventconfFactoryTest {
         assertEquals("UEI", bldr.getEvent().getUei(), eventConf.getUei());
     }
 
+    /**
+     * Builds one event per shipped event configuration and checks that the
+     * compiled match index used by findByEvent() returns exactly what the
+     * ordered scan over the event tree returns, then compares the speed of both.
+     */
+    @Test
+    public void testFindByEventMatchesOrderedScan() throws Exception {
+        final int ROUNDS = 5;
+
+        final Events root = m_eventConfDao.getRootEvents();
+        final List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<org.opennms.netmgt.xml.event.Event>();
+        for (Event eventConf : m_eventConfDao.getAllEvents()) {
+            events.add(createMatchingEvent(eventConf));
+        }
+
+        for (org.opennms.netmgt.xml.event.Event event : events) {
+            assertSame("match for " + event, root.findFirstMatchingEvent(event), m_eventConfDao.findByEvent(event));
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (org.opennms.netmgt.xml.event.Event event : events) {
+                root.findFirstMatchingEvent(event);
+            }
+        }
+        long scanElapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (org.opennms.netmgt.xml.event.Event event : events) {
+                m_eventConfDao.findByEvent(event);
+            }
+        }
+        long indexElapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        int lookups = ROUNDS * events.size();
+        System.err.printf("%d lookups: ordered scan %d ms (%f events per second), match index %d ms (%f events per second).%n",
+                          lookups, scanElapsed, lookups*1000.0/scanElapsed, indexElapsed, lookups*1000.0/indexElapsed);
+    }
+
+    private static org.opennms.netmgt.xml.event.Event createMatchingEvent(Event eventConf) {
+        EventBuilder bldr = new EventBuilder(null, "trapd");
+        Mask mask = eventConf.getMask();
+        if (mask == null || mask.getMaskelementCount() == 0) {
+            bldr.setUei(eventConf.getUei());
+            return bldr.getEvent();
+        }
+
+        String uei = sampleValue(mask.getMaskElementValues("uei"));
+        if (uei != null) bldr.setUei(uei);
+        String id = sampleValue(mask.getMaskElementValues("id"));
+        if (id != null) bldr.setEnterpriseId(id);
+        String generic = sampleValue(mask.getMaskElementValues("generic"));
+        if (generic != null) bldr.setGeneric(Integer.parseInt(generic));
+        String specific = sampleValue(mask.getMaskElementValues("specific"));
+        if (specific != null) bldr.setSpecific(Integer.parseInt(specific));
+
+        for (Varbind varbind : mask.getVarbindCollection()) {
+            if (varbind.getVbnumber() == null) continue;
+            while (bldr.getEvent().getParmCollection().size() < varbind.getVbnumber()) {
+                bldr.addParam(".1.3.6.1.4.1.5813.20." + (bldr.getEvent().getParmCollection().size() + 1), "");
+            }
+            String value = sampleValue(varbind.getVbvalueCollection());
+            if (value != null) {
+                bldr.getEvent().getParmCollection().get(varbind.getVbnumber() - 1).getValue().setContent(value);
+            }
+        }
+        return bldr.getEvent();
+    }
+
+    /**
+     * Picks the first value of a mask element that can be turned into a
+     * concrete value without evaluating a regular expression.
+     */
+    private static String sampleValue(List<String> values) {
+        if (values == null) return null;
+        for (String value : values) {
+            if (value == null || value.startsWith("~")) continue;
+            return value.endsWith("%") ? value.substring(0, value.length() - 1) : value;
+        }
+        return null;
+    }
+
     public class EventCreator  {
         
         private EventBuilder m_eventBuilder;
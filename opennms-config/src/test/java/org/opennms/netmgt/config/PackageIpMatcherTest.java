@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+import static org.opennms.core.utils.InetAddressUtils.isInetAddressInRange;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PackageIpMatcherTest {
+
+    @Test
+    public void testIncludeAllWithoutRangesOrSpecifics() {
+        final PackageIpMatcher matcher = new PackageIpMatcher.Builder("all")
+            .addExcludeRange("10.0.0.0", "10.0.0.255")
+            .build();
+
+        assertTrue(matcher.isInterfaceInPackage(addr("192.168.1.1")));
+        assertTrue(matcher.isInterfaceInPackage(addr("fe80::1")));
+        assertFalse(matcher.isInterfaceInPackage(addr("10.0.0.1")));
+        assertEquals(-1, matcher.getFilterAddressCount());
+    }
+
+    @Test
+    public void testFilterAddresses() {
+        final PackageIpMatcher matcher = new PackageIpMatcher.Builder("filter")
+            .setFilterAddresses(Arrays.asList(addr("192.168.1.1"), addr("192.168.1.2")))
+            .addIncludeRange("192.168.1.0", "192.168.1.255")
+            .build();
+
+        assertTrue(matcher.isInterfaceInPackage(addr("192.168.1.1")));
+        assertFalse(matcher.isInterfaceInPackage(addr("192.168.1.3")));
+        assertTrue(matcher.isAddressIncluded(addr("192.168.1.3")));
+
+        final PackageIpMatcher empty = new PackageIpMatcher.Builder("empty")
+            .setFilterAddresses(Collections.<InetAddress>emptyList())
+            .build();
+        assertFalse(empty.isInterfaceInPackage(addr("192.168.1.1")));
+    }
+
+    @Test
+    public void testSpecificsAndUrlsOverrideExcludes() {
+        final PackageIpMatcher matcher = new PackageIpMatcher.Builder("specifics")
+            .addIncludeRange("10.1.0.0", "10.1.255.255")
+            .addExcludeRange("10.1.1.0", "10.1.1.255")
+            .addSpecific("10.1.1.5")
+            .addIncludeUrlAddresses(Arrays.asList("10.1.1.6", "172.16.0.1"))
+            .build();
+
+        assertTrue(matcher.isInterfaceInPackage(addr("10.1.0.1")));
+        assertFalse(matcher.isInterfaceInPackage(addr("10.1.1.4")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.1.1.5")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.1.1.6")));
+        assertTrue(matcher.isInterfaceInPackage(addr("172.16.0.1")));
+        assertFalse(matcher.isInterfaceInPackage(addr("172.16.0.2")));
+    }
+
+    @Test
+    public void testUrlAddressesKeepIncludeAll() {
+        final PackageIpMatcher matcher = new PackageIpMatcher.Builder("url")
+            .addIncludeUrlAddresses(Collections.singletonList("10.1.1.6"))
+            .build();
+
+        assertTrue(matcher.isInterfaceInPackage(addr("10.1.1.6")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.1.1.7")));
+
+        final PackageIpMatcher specific = new PackageIpMatcher.Builder("specific")
+            .addSpecific("10.1.1.6")
+            .build();
+
+        assertTrue(specific.isInterfaceInPackage(addr("10.1.1.6")));
+        assertFalse(specific.isInterfaceInPackage(addr("10.1.1.7")));
+    }
+
+    @Test
+    public void testOverlappingAndReversedRanges() {
+        final PackageIpMatcher matcher = new PackageIpMatcher.Builder("ranges")
+            .addIncludeRange("10.0.0.50", "10.0.0.100")
+            .addIncludeRange("10.0.0.1", "10.0.0.60")
+            .addIncludeRange("10.0.0.70", "10.0.0.80")
+            .addIncludeRange("10.0.2.10", "10.0.2.1")
+            .addIncludeRange("::1", "::ffff")
+            .build();
+
+        assertFalse(matcher.isInterfaceInPackage(addr("10.0.0.0")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.0.0.1")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.0.0.55")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.0.0.100")));
+        assertFalse(matcher.isInterfaceInPackage(addr("10.0.0.101")));
+        assertTrue(matcher.isInterfaceInPackage(addr("10.0.2.10")));
+        assertFalse(matcher.isInterfaceInPackage(addr("10.0.2.5")));
+        assertTrue(matcher.isInterfaceInPackage(addr("::1234")));
+        assertFalse(matcher.isInterfaceInPackage(addr("::1:0")));
+    }
+
+    /**
+     * Compare the matcher against the linear range checks it replaces.
+     */
+    @Test
+    public void testRandomRangesMatchLinearScan() {
+        final Random random = new Random(42);
+        final List<String[]> includes = new ArrayList<String[]>();
+        final List<String[]> excludes = new ArrayList<String[]>();
+        final PackageIpMatcher.Builder builder = new PackageIpMatcher.Builder("random");
+        for (int i = 0; i < 200; i++) {
+            final int begin = random.nextInt(1 << 16);
+            final String[] range = new String[] { ip(begin), ip(begin + random.nextInt(512)) };
+            if (random.nextInt(4) == 0) {
+                excludes.add(range);
+                builder.addExcludeRange(range[0], range[1]);
+            } else {
+                includes.add(range);
+                builder.addIncludeRange(range[0], range[1]);
+            }
+        }
+        final PackageIpMatcher matcher = builder.build();
+
+        for (int i = 0; i < (1 << 16) + 1024; i++) {
+            final String ip = ip(i);
+            assertEquals(ip, linearScan(ip, includes, excludes), matcher.isInterfaceInPackage(addr(ip)));
+        }
+    }
+
+    private static boolean linearScan(final String ip, final List<String[]> includes, final List<String[]> excludes) {
+        boolean included = false;
+        for (final String[] range : includes) {
+            if (isInetAddressInRange(ip, range[0], range[1])) {
+                included = true;
+                break;
+            }
+        }
+        for (final String[] range : excludes) {
+            if (isInetAddressInRange(ip, range[0], range[1])) {
+                return false;
+            }
+        }
+        return included;
+    }
+
+    private static String ip(final int i) {
+        return "10.0." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+    }
+}
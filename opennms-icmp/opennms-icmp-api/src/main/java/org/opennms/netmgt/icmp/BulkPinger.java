@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp;
+
+import java.net.InetAddress;
+import java.util.Collection;
+
+/**
+ * A {@link Pinger} that can take many hosts at once. The echo requests are
+ * queued and sent at a steady rate, so a whole range of addresses can be
+ * handed over without waiting between them.
+ */
+public interface BulkPinger extends Pinger {
+
+    /**
+     * Ping each of the hosts once, retrying as needed, and call the callback
+     * for each of them upon success, timeout or error. This returns as soon as
+     * the requests have been queued.
+     *
+     * @param hosts The {@link java.net.InetAddress} addresses to poll.
+     * @param timeout The time to wait between each retry.
+     * @param retries The number of times to retry.
+     * @param packetsize The size in byte of the ICMP packet.
+     * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call for each host
+     */
+    public void ping(Collection<? extends InetAddress> hosts, long timeout, int retries, int packetsize, PingResponseCallback cb) throws Exception;
+
+}
@@ -0,0 +1,582 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.InetAddressComparator;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.IcmpMessengerIOException;
+import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Sends the echo requests of a {@link JnaPinger} and matches up the replies.
+ * One IPv4 and one IPv6 socket are shared by all of the requests.
+ * </p>
+ *
+ * <p>
+ * Requests are queued and sent by a single thread at no more than
+ * <code>packetsPerSecond</code>. Each request gets a key of its own, which
+ * is carried in the thread ID field of the packet and echoed back in the
+ * reply, so the pending requests are kept in a table keyed by a primitive
+ * long. A request keeps its key for all of its attempts, so a late reply to
+ * an earlier attempt still completes it once the retry has been sent. Timeouts are kept in a hashed timing wheel that the sender
+ * thread advances, so neither sending nor expiring a request costs more than
+ * a constant amount of work, however many requests are outstanding.
+ * </p>
+ *
+ * <p>
+ * The callbacks are called on a thread of their own, so that a slow callback
+ * does not hold up reading the sockets.
+ * </p>
+ */
+public class JnaPingEngine implements PingReplyListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JnaPingEngine.class);
+
+    /**
+     * The resolution of the timeouts, in milliseconds.
+     */
+    private static final long TICK_MILLIS = 10;
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+
+    /**
+     * How many ticks worth of packets may be sent at once.
+     */
+    private static final int BURST_TICKS = 4;
+
+    /**
+     * The number of slots in the timing wheel. Timeouts longer than one turn
+     * of the wheel stay in their slot for more than one turn.
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    private final int m_pingerId;
+
+    private final int m_packetsPerSecond;
+
+    private final int m_maxOutstanding;
+
+    private V4Pinger m_v4;
+
+    private V6Pinger m_v6;
+
+    private final Queue<PendingPing> m_queue = new ConcurrentLinkedQueue<PendingPing>();
+
+    private final PendingPingTable m_pending = new PendingPingTable();
+
+    private final ExecutorService m_callbacks;
+
+    private Thread m_sender;
+
+    private volatile boolean m_running = false;
+
+    // only used by the sender thread
+    private final ArrayDeque<PendingPing> m_retries = new ArrayDeque<PendingPing>();
+    private final ArrayDeque<PendingPing>[] m_wheel;
+    private final long m_startNanos = System.nanoTime();
+    private long m_currentTick = 0;
+    private long m_nextKey = 1;
+    private double m_tokens = 0;
+    private long m_lastRefill = m_startNanos;
+
+    /**
+     * Open the sockets. At least one of IPv4 and IPv6 must be available.
+     *
+     * @param pingerId the ICMP identifier of the echo requests
+     * @param packetsPerSecond how many echo requests to send per second at most
+     * @param maxOutstanding how many echo requests may wait for a reply at once
+     */
+    @SuppressWarnings("unchecked")
+    public JnaPingEngine(final int pingerId, final int packetsPerSecond, final int maxOutstanding) throws Exception {
+        m_pingerId = pingerId;
+        m_packetsPerSecond = Math.max(1, packetsPerSecond);
+        m_maxOutstanding = Math.max(1, maxOutstanding);
+        m_wheel = new ArrayDeque[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            m_wheel[i] = new ArrayDeque<PendingPing>();
+        }
+
+        Throwable error = null;
+        try {
+            m_v4 = new V4Pinger(pingerId);
+            m_v4.addPingReplyListener(this);
+        } catch (final Throwable t) {
+            LOG.debug("Unable to initialize IPv4 Pinger.", t);
+            error = t;
+            m_v4 = null;
+        }
+
+        try {
+            m_v6 = new V6Pinger(pingerId);
+            m_v6.addPingReplyListener(this);
+        } catch (final Throwable t) {
+            LOG.debug("Unable to initialize IPv6 Pinger.", t);
+            if (error == null) error = t;
+            m_v6 = null;
+        }
+
+        if (m_v4 == null && m_v6 == null) {
+            final IcmpMessengerIOException exception = new IcmpMessengerIOException("IPv4 and IPv6 are not available.", error);
+            LOG.warn("Unable to initialize JNA ICMP engine", exception);
+            throw exception;
+        }
+
+        m_callbacks = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "JNA-ICMP-" + m_pingerId + "-Callbacks");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public boolean isV4Available() {
+        return m_v4 != null;
+    }
+
+    public boolean isV6Available() {
+        return m_v6 != null;
+    }
+
+    /**
+     * Start reading the sockets and sending the queued requests.
+     */
+    public synchronized void start() {
+        if (m_running) return;
+        m_running = true;
+        if (m_v4 != null) m_v4.start();
+        if (m_v6 != null) m_v6.start();
+        m_sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Logging.putPrefix("icmp");
+                runSender();
+            }
+        }, "JNA-ICMP-" + m_pingerId + "-Sender");
+        m_sender.setDaemon(true);
+        m_sender.start();
+    }
+
+    /**
+     * Stop sending and close the sockets. Requests that have not been
+     * answered yet are not called back.
+     */
+    public synchronized void stop() throws InterruptedException {
+        m_running = false;
+        if (m_sender != null) {
+            LockSupport.unpark(m_sender);
+            m_sender.join();
+            m_sender = null;
+        }
+        if (m_v4 != null) {
+            m_v4.stop();
+            m_v4.closeSocket();
+        }
+        if (m_v6 != null) {
+            m_v6.stop();
+            m_v6.closeSocket();
+        }
+        m_callbacks.shutdown();
+    }
+
+    /**
+     * Queue an echo request. The callback is called once, upon a reply, once
+     * all of the retries have timed out, or upon an error.
+     */
+    public void ping(final InetAddress host, final int sequenceId, final long timeout, final int retries, final int packetsize, final PingResponseCallback cb) {
+        final PendingPing ping = new PendingPing(host, m_pingerId, sequenceId, timeout, retries, packetsize, new LogPrefixPreservingPingResponseCallback(cb));
+        if (!m_running) {
+            error(ping, new IllegalStateException("The JNA ICMP engine is not running"));
+            return;
+        }
+        m_queue.add(ping);
+        LockSupport.unpark(m_sender);
+    }
+
+    /**
+     * The number of echo requests that are waiting for a reply.
+     */
+    public int getOutstanding() {
+        return m_pending.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onPingReply(final InetAddress address, final EchoPacket packet) {
+        final PendingPing ping = m_pending.removeMatching(packet.getThreadId(), address, packet.getSequenceNumber());
+        if (ping == null) {
+            LOG.trace("Ignoring reply from {} without a pending request: {}", address, packet);
+            return;
+        }
+        m_callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                LOG.debug("Ping Response Received for request: {}", ping);
+                ping.getCallback().handleResponse(address, packet);
+            }
+        });
+    }
+
+    private void runSender() {
+        try {
+            while (m_running) {
+                final long now = System.nanoTime();
+                expire(now);
+                send(now);
+                LockSupport.parkNanos(this, TICK_NANOS);
+            }
+        } catch (final Throwable t) {
+            LOG.error("Unexpected error in the ICMP sender thread, no more pings will be sent", t);
+            m_running = false;
+        }
+    }
+
+    /**
+     * Advance the timing wheel to the current tick and retry or time out the
+     * requests that are due.
+     */
+    private void expire(final long now) {
+        final long nowTick = (now - m_startNanos) / TICK_NANOS;
+        while (m_currentTick < nowTick) {
+            m_currentTick++;
+            final ArrayDeque<PendingPing> slot = m_wheel[(int)(m_currentTick % WHEEL_SIZE)];
+            for (int i = slot.size(); i > 0; i--) {
+                final PendingPing ping = slot.poll();
+                if (ping.m_deadlineTick > m_currentTick) {
+                    // due on a later turn of the wheel
+                    slot.add(ping);
+                } else if (m_pending.remove(ping.m_key) == ping) {
+                    if (ping.m_retries > 0) {
+                        ping.m_retries--;
+                        LOG.debug("Retrying Ping Request {}", ping);
+                        m_retries.add(ping);
+                    } else {
+                        timeout(ping);
+                    }
+                }
+                // otherwise the reply has already been handled
+            }
+        }
+    }
+
+    /**
+     * Send as many of the waiting requests as the rate allows, retries first.
+     */
+    private void send(final long now) {
+        // a few ticks worth, so that a late wakeup does not lower the rate
+        final double burst = Math.max(1.0, m_packetsPerSecond * BURST_TICKS * TICK_MILLIS / 1000.0);
+        m_tokens = Math.min(burst, m_tokens + (now - m_lastRefill) * m_packetsPerSecond / 1000000000.0);
+        m_lastRefill = now;
+
+        while (m_tokens >= 1.0 && m_pending.size() < m_maxOutstanding) {
+            PendingPing ping = m_retries.poll();
+            if (ping == null) {
+                ping = m_queue.poll();
+            }
+            if (ping == null) {
+                return;
+            }
+            m_tokens -= 1.0;
+            send(ping);
+        }
+    }
+
+    private void send(final PendingPing ping) {
+        if (ping.m_key == 0) {
+            // retries are sent under the key of the first attempt
+            ping.m_key = m_nextKey++;
+        }
+        m_pending.put(ping.m_key, ping);
+        try {
+            LOG.debug("Sending Ping Request: {}", ping);
+            final InetAddress addr = ping.getAddress();
+            if (addr instanceof Inet4Address) {
+                if (m_v4 == null) throw new IllegalStateException("IPv4 is not available");
+                m_v4.ping((Inet4Address)addr, m_pingerId, ping.getSequenceNumber(), ping.m_key, 1, 0, ping.m_packetSize);
+            } else if (addr instanceof Inet6Address) {
+                if (m_v6 == null) throw new IllegalStateException("IPv6 is not available");
+                m_v6.ping((Inet6Address)addr, m_pingerId, ping.getSequenceNumber(), ping.m_key, 1, 0, ping.m_packetSize);
+            } else {
+                throw new IllegalArgumentException("Unsupported address " + addr);
+            }
+        } catch (final Throwable t) {
+            if (m_pending.remove(ping.m_key) == ping) {
+                error(ping, t);
+            }
+            return;
+        }
+        final long deadline = (System.nanoTime() - m_startNanos + TimeUnit.MILLISECONDS.toNanos(ping.m_timeout) + TICK_NANOS - 1) / TICK_NANOS;
+        ping.m_deadlineTick = Math.max(deadline, m_currentTick + 1);
+        m_wheel[(int)(ping.m_deadlineTick % WHEEL_SIZE)].add(ping);
+    }
+
+    private void timeout(final PendingPing ping) {
+        m_callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                LOG.debug("Ping Request Timed out {}", ping);
+                ping.getCallback().handleTimeout(ping.getAddress(), ping);
+            }
+        });
+    }
+
+    private void error(final PendingPing ping, final Throwable t) {
+        final Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                ping.getCallback().handleError(ping.getAddress(), ping, t);
+            }
+        };
+        if (m_callbacks.isShutdown()) {
+            r.run();
+        } else {
+            m_callbacks.execute(r);
+        }
+    }
+
+    /**
+     * An echo request that has been queued or sent.
+     */
+    private static final class PendingPing implements EchoPacket {
+        private final InetAddress m_address;
+        private final int m_identifier;
+        private final int m_sequenceId;
+        private final long m_timeout;
+        private final int m_packetSize;
+        private final PingResponseCallback m_callback;
+
+        // only used by the sender thread, except m_key which is published
+        // to the reader threads through the pending table
+        private int m_retries;
+        private long m_key;
+        private long m_deadlineTick;
+
+        public PendingPing(final InetAddress address, final int identifier, final int sequenceId, final long timeout, final int retries, final int packetSize, final PingResponseCallback callback) {
+            m_address = address;
+            m_identifier = identifier;
+            m_sequenceId = sequenceId;
+            m_timeout = timeout;
+            m_retries = retries;
+            m_packetSize = packetSize;
+            m_callback = callback;
+        }
+
+        public InetAddress getAddress() {
+            return m_address;
+        }
+
+        public PingResponseCallback getCallback() {
+            return m_callback;
+        }
+
+        @Override
+        public boolean isEchoReply() {
+            return false;
+        }
+
+        @Override
+        public int getIdentifier() {
+            return m_identifier;
+        }
+
+        @Override
+        public int getSequenceNumber() {
+            return m_sequenceId;
+        }
+
+        @Override
+        public long getThreadId() {
+            return m_key;
+        }
+
+        @Override
+        public long getReceivedTimeNanos() {
+            throw new UnsupportedOperationException("EchoPacket.getReceivedTimeNanos is not yet implemented");
+        }
+
+        @Override
+        public long getSentTimeNanos() {
+            throw new UnsupportedOperationException("EchoPacket.getSentTimeNanos is not yet implemented");
+        }
+
+        @Override
+        public double elapsedTime(final TimeUnit timeUnit) {
+            throw new UnsupportedOperationException("EchoPacket.elapsedTime is not yet implemented");
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append('[');
+            sb.append("Address=").append(m_address).append(',');
+            sb.append("Sequence-Id=").append(m_sequenceId).append(',');
+            sb.append("Key=").append(m_key).append(',');
+            sb.append("Retries=").append(m_retries).append(',');
+            sb.append("Timeout=").append(m_timeout).append(',');
+            sb.append("Packet-Size=").append(m_packetSize);
+            sb.append(']');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The requests that wait for a reply, in an open addressing hash table
+     * keyed by the key of the packet. Keys are never 0.
+     */
+    static final class PendingPingTable {
+        private static final int MIN_CAPACITY = 1024;
+
+        private long[] m_keys = new long[MIN_CAPACITY];
+        private PendingPing[] m_values = new PendingPing[MIN_CAPACITY];
+        private int m_size = 0;
+
+        public synchronized int size() {
+            return m_size;
+        }
+
+        public synchronized void put(final long key, final PendingPing value) {
+            if ((m_size + 1) * 2 > m_keys.length) {
+                resize(m_keys.length * 2);
+            }
+            int i = indexOf(key, m_keys.length);
+            while (m_keys[i] != 0 && m_keys[i] != key) {
+                i = (i + 1) & (m_keys.length - 1);
+            }
+            if (m_keys[i] == 0) {
+                m_size++;
+            }
+            m_keys[i] = key;
+            m_values[i] = value;
+        }
+
+        public synchronized PendingPing remove(final long key) {
+            final int i = find(key);
+            return i < 0 ? null : removeAt(i);
+        }
+
+        /**
+         * Remove the request only if the reply came from the address it was
+         * sent to, so that a forged or stray reply cannot complete it.
+         */
+        public synchronized PendingPing removeMatching(final long key, final InetAddress address, final int sequenceId) {
+            final int i = find(key);
+            if (i < 0) {
+                return null;
+            }
+            final PendingPing ping = m_values[i];
+            if (ping.getSequenceNumber() != sequenceId || new InetAddressComparator().compare(ping.getAddress(), address) != 0) {
+                return null;
+            }
+            return removeAt(i);
+        }
+
+        private int find(final long key) {
+            if (key == 0) {
+                return -1;
+            }
+            int i = indexOf(key, m_keys.length);
+            while (m_keys[i] != 0) {
+                if (m_keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & (m_keys.length - 1);
+            }
+            return -1;
+        }
+
+        private PendingPing removeAt(int i) {
+            final PendingPing removed = m_values[i];
+            final int mask = m_keys.length - 1;
+            m_keys[i] = 0;
+            m_values[i] = null;
+            m_size--;
+
+            // shift the entries after the removed one back, so lookups do not
+            // stop at the hole
+            int j = (i + 1) & mask;
+            while (m_keys[j] != 0) {
+                final int home = indexOf(m_keys[j], m_keys.length);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    m_keys[i] = m_keys[j];
+                    m_values[i] = m_values[j];
+                    m_keys[j] = 0;
+                    m_values[j] = null;
+                    i = j;
+                }
+                j = (j + 1) & mask;
+            }
+
+            if (m_keys.length > MIN_CAPACITY && m_size * 8 < m_keys.length) {
+                resize(m_keys.length / 2);
+            }
+            return removed;
+        }
+
+        private void resize(final int capacity) {
+            final long[] keys = m_keys;
+            final PendingPing[] values = m_values;
+            m_keys = new long[capacity];
+            m_values = new PendingPing[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    int j = indexOf(keys[i], capacity);
+                    while (m_keys[j] != 0) {
+                        j = (j + 1) & (capacity - 1);
+                    }
+                    m_keys[j] = keys[i];
+                    m_values[j] = values[i];
+                }
+            }
+        }
+
+        private static int indexOf(final long key, final int capacity) {
+            // keys are consecutive, so spread them before masking
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h >>> 32) & (capacity - 1);
+        }
+    }
+}
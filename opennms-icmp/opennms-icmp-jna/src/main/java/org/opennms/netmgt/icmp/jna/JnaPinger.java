@@ -35,16 +35,13 @@ import static org.opennms.netmgt.icmp.PingConstants.DEFAULT_TIMEOUT;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.SecureRandom;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Callable;
 
-import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.icmp.BulkPinger;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
-import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.icmp.SinglePingResponseCallback;
-import org.opennms.protocols.rt.IDBasedRequestLocator;
-import org.opennms.protocols.rt.RequestTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,27 +51,33 @@ import org.slf4j.LoggerFactory;
  *
  * @author brozow
  */
-public class JnaPinger implements Pinger {
+public class JnaPinger implements BulkPinger {
     private static final Logger LOG = LoggerFactory.getLogger(JnaPinger.class);
 
+    /**
+     * How many echo requests are sent per second at most.
+     */
+    private static final int PACKETS_PER_SECOND = Integer.getInteger("org.opennms.netmgt.icmp.jna.packetsPerSecond", 10000);
+
+    /**
+     * How many echo requests may wait for a reply at once. Further requests
+     * are held back until replies or timeouts make room.
+     */
+    private static final int MAX_OUTSTANDING = Integer.getInteger("org.opennms.netmgt.icmp.jna.maxOutstanding", 100000);
+
     private final int m_pingerId = new SecureRandom().nextInt(Short.MAX_VALUE);
 
-    private RequestTracker<JnaPingRequest, JnaPingReply> m_pingTracker;
-    private JnaIcmpMessenger m_messenger;
+    private JnaPingEngine m_engine;
 
     /**
      * Initializes this singleton
      * @throws Exception 
      */
     private synchronized void initialize() throws Exception {
-        if (m_pingTracker != null) return;
-        m_messenger = new JnaIcmpMessenger(m_pingerId);
-        m_pingTracker = Logging.withPrefix("icmp", new Callable<RequestTracker<JnaPingRequest,JnaPingReply>>() {
-            @Override public RequestTracker<JnaPingRequest, JnaPingReply> call() throws Exception {
-                return new RequestTracker<JnaPingRequest, JnaPingReply>("JNA-ICMP-"+m_pingerId, m_messenger, new IDBasedRequestLocator<JnaPingRequestId, JnaPingRequest, JnaPingReply>());
-            }
-        });
-        m_pingTracker.start();
+        if (m_engine != null) return;
+        final JnaPingEngine engine = new JnaPingEngine(m_pingerId, PACKETS_PER_SECOND, MAX_OUTSTANDING);
+        engine.start();
+        m_engine = engine;
     }
 
     @Override
@@ -94,8 +97,8 @@ public class JnaPinger implements Pinger {
         } catch (final Throwable t) {
             LOG.trace("Failed to initialize IPv4", t);
         }
-        if (m_messenger == null) return false;
-        return m_messenger.isV4Available();
+        if (m_engine == null) return false;
+        return m_engine.isV4Available();
     }
 
     @Override
@@ -105,8 +108,8 @@ public class JnaPinger implements Pinger {
         } catch (final Throwable t) {
             LOG.trace("Failed to initialize IPv6", t);
         }
-        if (m_messenger == null) return false;
-        return m_messenger.isV6Available();
+        if (m_engine == null) return false;
+        return m_engine.isV6Available();
     }
 
     /**
@@ -123,7 +126,7 @@ public class JnaPinger implements Pinger {
     @Override
     public void ping(final InetAddress host, final long timeout, final int retries, final int packetsize, final int sequenceId, final PingResponseCallback cb) throws Exception {
         initialize();
-        m_pingTracker.sendRequest(new JnaPingRequest(host, m_pingerId, sequenceId, timeout, retries, packetsize, cb));
+        m_engine.ping(host, sequenceId, timeout, retries, packetsize, cb);
     }
 
     /**
@@ -139,7 +142,7 @@ public class JnaPinger implements Pinger {
     @Override
     public void ping(final InetAddress host, final long timeout, final int retries, final int sequenceId, final PingResponseCallback cb) throws Exception {
         initialize();
-        m_pingTracker.sendRequest(new JnaPingRequest(host, m_pingerId, sequenceId, timeout, retries, DEFAULT_PACKET_SIZE, cb));
+        m_engine.ping(host, sequenceId, timeout, retries, DEFAULT_PACKET_SIZE, cb);
     }
 
 
@@ -218,10 +221,8 @@ public class JnaPinger implements Pinger {
         initialize();
         final ParallelPingResponseCallback cb = new ParallelPingResponseCallback(count);
 
-        final long threadId = JnaPingRequest.getNextTID();
         for (int seqNum = 0; seqNum < count; seqNum++) {
-            final JnaPingRequest request = new JnaPingRequest(host, m_pingerId, seqNum, threadId, timeout == 0? DEFAULT_TIMEOUT : timeout,0 , DEFAULT_PACKET_SIZE, cb);
-            m_pingTracker.sendRequest(request);
+            m_engine.ping(host, seqNum, timeout == 0? DEFAULT_TIMEOUT : timeout, 0, DEFAULT_PACKET_SIZE, cb);
             Thread.sleep(pingInterval);
         }
 
@@ -229,4 +230,22 @@ public class JnaPinger implements Pinger {
         return cb.getResponseTimes();
     }
 
+    /**
+     * <p>ping</p>
+     *
+     * @param hosts a {@link java.util.Collection} of {@link java.net.InetAddress} objects.
+     * @param timeout a long.
+     * @param retries a int.
+     * @param packetsize The size in byte of the ICMP packet.
+     * @param cb a {@link org.opennms.netmgt.icmp.PingResponseCallback} object.
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void ping(final Collection<? extends InetAddress> hosts, final long timeout, final int retries, final int packetsize, final PingResponseCallback cb) throws Exception {
+        initialize();
+        for (final InetAddress host : hosts) {
+            m_engine.ping(host, 1, timeout, retries, packetsize, cb);
+        }
+    }
+
 }
@@ -30,8 +30,11 @@ package org.opennms.netmgt.icmp.jna;
 
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -245,6 +248,78 @@ public class JnaPingTest extends TestCase {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
 
+    private static class BulkPingResponseCallback implements PingResponseCallback {
+        private final CountDownLatch m_latch;
+        private final AtomicInteger m_responses = new AtomicInteger();
+        private final AtomicInteger m_timeouts = new AtomicInteger();
+        private final AtomicInteger m_errors = new AtomicInteger();
+
+        public BulkPingResponseCallback(int count) {
+            m_latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+            m_responses.incrementAndGet();
+            m_latch.countDown();
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+            m_timeouts.incrementAndGet();
+            m_latch.countDown();
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+            m_errors.incrementAndGet();
+            m_latch.countDown();
+        }
+
+        public boolean await(long timeout) throws InterruptedException {
+            return m_latch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void testBulkPingIPv4() throws Exception {
+        final List<InetAddress> hosts = new ArrayList<InetAddress>();
+        for (int i = 0; i < 1000; i++) {
+            hosts.add(m_goodHost);
+        }
+        for (int i = 1; i <= 50; i++) {
+            hosts.add(InetAddress.getByName("192.0.2." + i));
+        }
+
+        final BulkPingResponseCallback cb = new BulkPingResponseCallback(hosts.size());
+        s_jnaPinger.ping(hosts, 500, 1, PingConstants.DEFAULT_PACKET_SIZE, cb);
+
+        assertTrue("Not every ping was answered or timed out", cb.await(10000));
+        assertTrue("Expected every ping of " + m_goodHost + " to be answered", cb.m_responses.get() >= 1000);
+        assertEquals(hosts.size(), cb.m_responses.get() + cb.m_timeouts.get() + cb.m_errors.get());
+    }
+
+    /**
+     * Sweep 127.1.0.0/16, which the loopback interface answers for on Linux.
+     */
+    public void testBulkPingLoopbackSweep() throws Exception {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) {
+            System.err.println("Skipping loopback sweep, only Linux answers for all of 127.0.0.0/8");
+            return;
+        }
+        final List<InetAddress> hosts = new ArrayList<InetAddress>(65536);
+        for (int i = 0; i < 65536; i++) {
+            hosts.add(InetAddress.getByAddress(new byte[] { 127, 1, (byte)(i >> 8), (byte)i }));
+        }
+
+        final BulkPingResponseCallback cb = new BulkPingResponseCallback(hosts.size());
+        final long start = System.currentTimeMillis();
+        s_jnaPinger.ping(hosts, PingConstants.DEFAULT_TIMEOUT, PingConstants.DEFAULT_RETRIES, PingConstants.DEFAULT_PACKET_SIZE, cb);
+
+        assertTrue("Not every ping was answered or timed out", cb.await(60000));
+        System.err.println("Swept " + hosts.size() + " addresses in " + (System.currentTimeMillis() - start) + "ms");
+        assertEquals(hosts.size(), cb.m_responses.get());
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
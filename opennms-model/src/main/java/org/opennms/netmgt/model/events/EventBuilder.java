@@ -233,22 +233,7 @@ public class EventBuilder {
     
     public EventBuilder addParam(final String parmName, final String val, final String type, final String encoding) {
         if (parmName != null) {
-            Value value = new Value();
-            value.setContent(val);
-            
-            if (type != null) {
-                value.setType(type);
-            }
-            
-            if (encoding != null) {
-                value.setEncoding(encoding);
-            }
-            
-            Parm parm = new Parm();
-            parm.setParmName(parmName);
-            parm.setValue(value);
-            
-            addParam(parm);
+            m_event.addParm(parmName, val, type, encoding);
         }
         
         return this;
@@ -269,18 +254,7 @@ public class EventBuilder {
      * @return a {@link org.opennms.netmgt.model.events.EventBuilder} object.
      */
     public EventBuilder addParam(final String parmName, final boolean val) {
-        if (parmName != null) {
-            final Value value = new Value();
-            value.setContent(val ? "true" : "false");
-
-            final Parm parm = new Parm();
-            parm.setParmName(parmName);
-            parm.setValue(value);
-
-            this.addParam(parm);
-        }
-
-        return this;
+        return addParam(parmName, val ? "true" : "false");
     }
     
     /**
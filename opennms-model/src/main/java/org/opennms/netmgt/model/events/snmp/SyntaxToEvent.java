@@ -29,6 +29,7 @@
 package org.opennms.netmgt.model.events.snmp;
 
 import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -104,35 +105,12 @@ public class SyntaxToEvent {
      * @return a {@link org.opennms.netmgt.xml.event.Parm} object.
      */
     public static Parm processSyntax(final String name, final SnmpValue value) {
-    	final Value val = new Value();
+        final String encoding = getEncoding(name, value);
 
-        boolean found = false;
-        for (int i = 0; i < m_syntaxToEvents.length; i++) {
-            if (m_syntaxToEvents[i].getTypeId() == -1 || m_syntaxToEvents[i].getTypeId() == value.getType()) {
-                val.setType(m_syntaxToEvents[i].getType());
-                String encoding = null;
-                if (value.isDisplayable()) {
-                    if (name.matches(".*[Mm][Aa][Cc].*")) {
-                        encoding = EventConstants.XML_ENCODING_MAC_ADDRESS;
-                    } else {
-                        encoding = EventConstants.XML_ENCODING_TEXT;
-                    }
-                } else {
-                    if (value.getBytes().length == 6) {
-                        encoding = EventConstants.XML_ENCODING_MAC_ADDRESS;
-                    } else {
-                        encoding = EventConstants.XML_ENCODING_BASE64;
-                    }
-                }
-                val.setEncoding(encoding);
-                val.setContent(EventConstants.toString(encoding, value));
-                found = true;
-                break;
-            }
-        }
-        if (!found) {
-            throw new IllegalStateException("Internal error: fell through the " + "bottom of the loop.  The syntax-to-events array might not have a " + "catch-all for Object");
-        }
+        final Value val = new Value();
+        val.setType(getSyntax(value).getType());
+        val.setEncoding(encoding);
+        val.setContent(EventConstants.toString(encoding, value));
 
         final Parm parm = new Parm();
         parm.setParmName(name);
@@ -140,4 +118,43 @@ public class SyntaxToEvent {
 
         return parm;
     }
+
+    /**
+     * Adds the varbind to the event being built the same way as
+     * {@link #processSyntax(String, SnmpValue)}, without creating the
+     * {@link Parm} and {@link Value} objects.
+     *
+     * @param builder the builder of the event
+     * @param name a {@link java.lang.String} object.
+     * @param value a {@link org.opennms.netmgt.snmp.SnmpValue} object.
+     */
+    public static void processSyntax(final EventBuilder builder, final String name, final SnmpValue value) {
+        final String encoding = getEncoding(name, value);
+        builder.addParam(name, EventConstants.toString(encoding, value), getSyntax(value).getType(), encoding);
+    }
+
+    private static SyntaxToEvent getSyntax(final SnmpValue value) {
+        for (int i = 0; i < m_syntaxToEvents.length; i++) {
+            if (m_syntaxToEvents[i].getTypeId() == -1 || m_syntaxToEvents[i].getTypeId() == value.getType()) {
+                return m_syntaxToEvents[i];
+            }
+        }
+        throw new IllegalStateException("Internal error: fell through the " + "bottom of the loop.  The syntax-to-events array might not have a " + "catch-all for Object");
+    }
+
+    private static String getEncoding(final String name, final SnmpValue value) {
+        if (value.isDisplayable()) {
+            if (name.matches(".*[Mm][Aa][Cc].*")) {
+                return EventConstants.XML_ENCODING_MAC_ADDRESS;
+            } else {
+                return EventConstants.XML_ENCODING_TEXT;
+            }
+        } else {
+            if (value.getBytes().length == 6) {
+                return EventConstants.XML_ENCODING_MAC_ADDRESS;
+            } else {
+                return EventConstants.XML_ENCODING_BASE64;
+            }
+        }
+    }
 }
@@ -29,11 +29,24 @@
 package org.opennms.netmgt.model.events;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Value;
 
 
 /**
@@ -63,4 +76,118 @@ public class EventBuilderTest {
         assertEquals(date, ifEvent.getTime());
     }
 
+    @Test
+    public final void testParmsMarshalLikeParmObjects() throws Exception {
+        final EventBuilder builder = new EventBuilder("uei.opennms.org/test", "test", new Date(12345));
+        final Event expected = new EventBuilder("uei.opennms.org/test", "test", new Date(12345)).getEvent();
+        final List<Parm> parms = new ArrayList<Parm>();
+        expected.setParmCollection(parms);
+        for (int i = 0; i < 20; i++) {
+            builder.addParam("name" + i, "value" + i, i % 2 == 0 ? null : "int", i % 3 == 0 ? null : "base64");
+
+            final Value value = new Value();
+            value.setContent("value" + i);
+            if (i % 2 != 0) {
+                value.setType("int");
+            }
+            if (i % 3 != 0) {
+                value.setEncoding("base64");
+            }
+            final Parm parm = new Parm();
+            parm.setParmName("name" + i);
+            parm.setValue(value);
+            parms.add(parm);
+        }
+        builder.addParam("flag", true);
+        parms.add(new Parm("flag", "true"));
+
+        assertEquals(marshal(expected), marshal(builder.getEvent()));
+        assertEquals(marshal(expected), marshal(serialize(builder.getEvent())));
+    }
+
+    @Test
+    public final void testParmLookups() throws Exception {
+        final EventBuilder builder = new EventBuilder("uei.opennms.org/test", "test");
+        for (int i = 0; i < 20; i++) {
+            builder.addParam(i == 5 ? " padded " : "name" + i, "value" + i);
+        }
+        builder.addParam("name3", "duplicate");
+        final Event event = builder.getEvent();
+
+        assertEquals("value3", event.getParm("name3").getValue().getContent());
+        assertEquals("value19", event.getParmTrimmed("name19").getValue().getContent());
+        assertEquals("value5", event.getParmTrimmed("padded").getValue().getContent());
+        assertEquals("value5", event.getParm(" padded ").getValue().getContent());
+        assertNull(event.getParm("padded"));
+        assertNull(event.getParm("missing"));
+
+        // the object found by name is the one in the list, and changes to it are kept
+        final Parm parm = event.getParm("name7");
+        assertSame(parm, event.getParmCollection().get(7));
+        parm.getValue().setContent("changed");
+        assertEquals("changed", event.getParmCollection().get(7).getValue().getContent());
+
+        parm.setParmName("renamed");
+        assertNull(event.getParm("name7"));
+        assertSame(parm, event.getParm("renamed"));
+
+        event.getParmCollection().remove(0);
+        assertNull(event.getParm("name0"));
+        assertEquals("value1", event.getParmCollection().get(0).getValue().getContent());
+        assertEquals("value3", event.getParm("name3").getValue().getContent());
+
+        event.getParmCollection().add(0, new Parm("name3", "first"));
+        assertEquals("first", event.getParm("name3").getValue().getContent());
+
+        final Iterator<Parm> it = event.getParmCollection().iterator();
+        while (it.hasNext()) {
+            if (it.next().getParmName().startsWith("name1")) {
+                it.remove();
+            }
+        }
+        assertEquals(10, event.getParmCollection().size());
+        assertNull(event.getParm("name19"));
+        assertEquals("value2", event.getParm("name2").getValue().getContent());
+    }
+
+    @Test
+    public final void testRenameSharedParm() throws Exception {
+        final Event first = new EventBuilder("uei.opennms.org/test", "test").getEvent();
+        final Event second = new EventBuilder("uei.opennms.org/test", "test").getEvent();
+        final Event other = new EventBuilder("uei.opennms.org/test", "test").getEvent();
+        for (int i = 0; i < 10; i++) {
+            first.addParm(new Parm("first" + i, "value" + i));
+            second.addParm(new Parm("second" + i, "value" + i));
+            other.addParm(new Parm("other" + i, "value" + i));
+        }
+        final Parm parm = new Parm("shared", "value");
+        first.addParm(parm);
+        second.addParm(parm);
+
+        // build the name indexes
+        assertSame(parm, first.getParm("shared"));
+        assertSame(parm, second.getParm("shared"));
+        assertEquals("value3", other.getParm("other3").getValue().getContent());
+
+        parm.setParmName("renamed");
+        assertNull(first.getParm("shared"));
+        assertNull(second.getParm("shared"));
+        assertSame(parm, first.getParm("renamed"));
+        assertSame(parm, second.getParmTrimmed("renamed"));
+        assertEquals("value3", other.getParm("other3").getValue().getContent());
+    }
+
+    private static String marshal(final Event event) {
+        final StringWriter writer = new StringWriter();
+        JaxbUtils.marshal(event, writer);
+        return writer.toString();
+    }
+
+    private static Event serialize(final Event event) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(event);
+        out.close();
+        return (Event)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
 }
@@ -55,6 +55,7 @@ public class AsyncSimpleServer {
     private int m_port = 9123;
     private int m_bufferSize = 2048;
     private int m_idleTime = 10;
+    private int m_backlog = 50;
     
     /**
      * <p>init</p>
@@ -88,6 +89,7 @@ public class AsyncSimpleServer {
         m_acceptor.getSessionConfig().setReadBufferSize(getBufferSize());
         m_acceptor.getSessionConfig().setIdleTime(IdleStatus.BOTH_IDLE, getIdleTime());
         ((NioSocketAcceptor) m_acceptor).setReuseAddress(true);
+        ((NioSocketAcceptor) m_acceptor).setBacklog(getBacklog());
         m_acceptor.bind(new InetSocketAddress(getPort()));
         
     }
@@ -194,6 +196,24 @@ public class AsyncSimpleServer {
         return m_bufferSize;
     }
 
+    /**
+     * <p>setBacklog</p>
+     *
+     * @param backlog the number of connections that may wait to be accepted
+     */
+    public void setBacklog(int backlog) {
+        m_backlog = backlog;
+    }
+
+    /**
+     * <p>getBacklog</p>
+     *
+     * @return a int.
+     */
+    public int getBacklog() {
+        return m_backlog;
+    }
+
     /**
      * <p>setIdleTime</p>
      *
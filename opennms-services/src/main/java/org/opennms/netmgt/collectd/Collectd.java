@@ -59,6 +59,7 @@ import org.opennms.netmgt.config.ThresholdingConfigFactory;
 import org.opennms.netmgt.config.collectd.CollectdConfiguration;
 import org.opennms.netmgt.config.collectd.Collector;
 import org.opennms.netmgt.config.collectd.Package;
+import org.opennms.netmgt.config.collectd.Service;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -75,6 +76,7 @@ import org.opennms.netmgt.model.events.EventUtils;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -122,6 +124,12 @@ public class Collectd extends AbstractServiceDaemon implements
      * Log4j category
      */
     static final String LOG4J_CATEGORY = "collectd";
+
+    /**
+     * Set this property to <code>true</code> to schedule collections with a
+     * {@link TimingWheelScheduler} instead of a {@link LegacyScheduler}.
+     */
+    private static final String TIMING_WHEEL_SCHEDULER_PROPERTY = "org.opennms.netmgt.collectd.useTimingWheelScheduler";
     
     /**
      * Instantiated service collectors specified in config file
@@ -308,7 +316,12 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                    final CollectdConfiguration config = m_collectdConfigFactory.getCollectdConfig();
+                    if (Boolean.getBoolean(TIMING_WHEEL_SCHEDULER_PROPERTY)) {
+                        setScheduler(new TimingWheelScheduler("Collectd", config.getThreads(), TimingWheelScheduler.DEFAULT_TICK, getShortestInterval(config)));
+                    } else {
+                        setScheduler(new LegacyScheduler("Collectd", config.getThreads()));
+                    }
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -317,6 +330,23 @@ public class Collectd extends AbstractServiceDaemon implements
         });
     }
 
+    /**
+     * Returns the shortest collection interval of the enabled services. The
+     * first collections are spread over this interval.
+     */
+    private static long getShortestInterval(final CollectdConfiguration config) {
+        long shortest = 0;
+        for (final Package pkg : config.getPackages()) {
+            for (final Service svc : pkg.getServices()) {
+                final long interval = svc.getInterval();
+                if ("on".equals(svc.getStatus()) && interval > 0 && (shortest == 0 || interval < shortest)) {
+                    shortest = interval;
+                }
+            }
+        }
+        return shortest;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void onStart() {
@@ -512,8 +542,9 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
 
-                // Schedule the collectable service for immediate collection
-                getScheduler().schedule(0, cSvc.getReadyRunnable());
+                // Schedule the collectable service for its first collection,
+                // spread over the jitter window of the scheduler
+                getScheduler().scheduleWithJitter(cSvc.getReadyRunnable());
 
                 LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
             } catch (CollectionInitializationException e) {
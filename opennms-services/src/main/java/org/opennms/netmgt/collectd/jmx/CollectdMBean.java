@@ -76,4 +76,15 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of collectable services currently seen by Collectd
      */
     public long getCollectableServiceCount();
+
+    /**
+     * @return The moving average of the time in milliseconds between the moment collection tasks
+     *         were due and the moment they were started, or 0 if the legacy scheduler is used
+     */
+    public long getSchedulingLag();
+
+    /**
+     * @return The largest delay in milliseconds in starting a collection task since collector startup
+     */
+    public long getMaxSchedulingLag();
 }
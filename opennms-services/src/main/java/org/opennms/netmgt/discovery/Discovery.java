@@ -34,6 +34,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -54,6 +55,8 @@ import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.events.api.EventIpcManagerFactory;
 import org.opennms.netmgt.events.api.annotations.EventHandler;
 import org.opennms.netmgt.events.api.annotations.EventListener;
+import org.opennms.netmgt.icmp.BulkPinger;
+import org.opennms.netmgt.icmp.PingConstants;
 import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.model.discovery.IPPollAddress;
 import org.opennms.netmgt.model.events.EventBuilder;
@@ -85,6 +88,11 @@ public class Discovery extends AbstractServiceDaemon {
     private static final String LOG4J_CATEGORY = "discover";
 
 
+    /**
+     * How many addresses are handed to a {@link BulkPinger} at once.
+     */
+    private static final int BULK_PING_SIZE = 1024;
+
     private static final int PING_IDLE = 0;
     private static final int PING_RUNNING = 1;
     private static final int PING_FINISHING = 2;
@@ -206,19 +214,15 @@ public class Discovery extends AbstractServiceDaemon {
 
         getDiscoveryFactory().getReadLock().lock();
         try {
-            for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
-                if (m_xstatus == PING_FINISHING || m_timer == null) {
-                    m_xstatus = PING_IDLE;
-                    return;
-                }
-                LOG.debug("Pinging: {} of foreign source {}", pollAddress.getAddress().toString(), m_discoveryFactory.getForeignSource(pollAddress.getAddress()));
-                ping(pollAddress);
-                try {
-                    Thread.sleep(getDiscoveryFactory().getIntraPacketDelay());
-                } catch (InterruptedException e) {
-                    LOG.info("interrupting discovery sweep");
-                    break;
-                }
+            final boolean completed;
+            if (m_pinger instanceof BulkPinger) {
+                completed = doBulkPings((BulkPinger)m_pinger);
+            } else {
+                completed = doSinglePings();
+            }
+            if (!completed) {
+                m_xstatus = PING_IDLE;
+                return;
             }
         } finally {
             getDiscoveryFactory().getReadLock().unlock();
@@ -228,6 +232,89 @@ public class Discovery extends AbstractServiceDaemon {
         m_xstatus = PING_IDLE;
     }
 
+    private boolean isStopping() {
+        return m_xstatus == PING_FINISHING || m_timer == null;
+    }
+
+    /**
+     * @return false if the sweep was stopped
+     */
+    private boolean doSinglePings() {
+        for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
+            if (isStopping()) {
+                return false;
+            }
+            LOG.debug("Pinging: {} of foreign source {}", pollAddress.getAddress().toString(), m_discoveryFactory.getForeignSource(pollAddress.getAddress()));
+            ping(pollAddress);
+            try {
+                Thread.sleep(getDiscoveryFactory().getIntraPacketDelay());
+            } catch (InterruptedException e) {
+                LOG.info("interrupting discovery sweep");
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hand the addresses to the pinger in batches of addresses that share a
+     * timeout and retry count. The pinger paces the packets itself, the sweep
+     * only waits the intra-packet delay of each batch so that the configured
+     * rate is kept.
+     *
+     * @return false if the sweep was stopped
+     */
+    private boolean doBulkPings(final BulkPinger pinger) {
+        final List<InetAddress> batch = new ArrayList<InetAddress>(BULK_PING_SIZE);
+        long batchTimeout = 0;
+        int batchRetries = 0;
+        for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
+            if (isStopping()) {
+                return false;
+            }
+            final InetAddress address = pollAddress.getAddress();
+            if (address == null) {
+                continue;
+            }
+            if (isAlreadyDiscovered(address)) {
+                LOG.debug("{} already discovered.", address.toString());
+                continue;
+            }
+            if (!batch.isEmpty() && (batch.size() >= BULK_PING_SIZE || pollAddress.getTimeout() != batchTimeout || pollAddress.getRetries() != batchRetries)) {
+                if (!bulkPing(pinger, batch, batchTimeout, batchRetries)) {
+                    return true;
+                }
+                batch.clear();
+            }
+            batch.add(address);
+            batchTimeout = pollAddress.getTimeout();
+            batchRetries = pollAddress.getRetries();
+        }
+        if (!batch.isEmpty()) {
+            bulkPing(pinger, batch, batchTimeout, batchRetries);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the sweep was interrupted
+     */
+    private boolean bulkPing(final BulkPinger pinger, final List<InetAddress> batch, final long timeout, final int retries) {
+        LOG.debug("Pinging {} addresses starting with {}", batch.size(), batch.get(0));
+        try {
+            pinger.ping(batch, timeout, retries, PingConstants.DEFAULT_PACKET_SIZE, cb);
+        } catch (Throwable e) {
+            LOG.debug("error pinging {} addresses starting with {}", batch.size(), batch.get(0), e);
+        }
+        try {
+            Thread.sleep((long)getDiscoveryFactory().getIntraPacketDelay() * batch.size());
+        } catch (InterruptedException e) {
+            LOG.info("interrupting discovery sweep");
+            return false;
+        }
+        return true;
+    }
+
     private void ping(IPPollAddress pollAddress) {
         InetAddress address = pollAddress.getAddress();
         if (address != null) {
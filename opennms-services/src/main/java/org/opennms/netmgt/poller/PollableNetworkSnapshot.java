@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.poller.pollables.PollEvent;
+import org.opennms.netmgt.poller.pollables.PollableInterface;
+import org.opennms.netmgt.poller.pollables.PollableNetwork;
+import org.opennms.netmgt.poller.pollables.PollableNode;
+import org.opennms.netmgt.poller.pollables.PollableService;
+import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
+import org.opennms.netmgt.poller.pollables.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A snapshot of the services in a {@link PollableNetwork} and of the outage
+ * each of them is in, if any. {@link Poller} writes it periodically so that on
+ * the next start it can schedule the services from the snapshot and start
+ * polling before it has read them all from the database.
+ * </p>
+ *
+ * <p>
+ * The snapshot is a gzipped stream of node, interface and service records,
+ * in the order the network is visited. A service is recorded as down with the
+ * id, UEI and time of the event that caused its outage, the same values the
+ * poller reads from the outages table on a cold start.
+ * </p>
+ */
+public class PollableNetworkSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(PollableNetworkSnapshot.class);
+
+    private static final int MAGIC = 0x504f4c4e;
+
+    private static final int VERSION = 1;
+
+    private static final byte NODE_RECORD = 1;
+
+    private static final byte INTERFACE_RECORD = 2;
+
+    private static final byte SERVICE_RECORD = 3;
+
+    private static final byte END_RECORD = 0;
+
+    private final File m_file;
+
+    /**
+     * A service read from a snapshot.
+     */
+    public static class SnapshotService {
+        private final int m_nodeId;
+        private final String m_nodeLabel;
+        private final String m_ipAddr;
+        private final String m_svcName;
+        private final Integer m_svcLostEventId;
+        private final String m_svcLostUei;
+        private final Date m_ifLostService;
+
+        SnapshotService(int nodeId, String nodeLabel, String ipAddr, String svcName, Integer svcLostEventId, String svcLostUei, Date ifLostService) {
+            m_nodeId = nodeId;
+            m_nodeLabel = nodeLabel;
+            m_ipAddr = ipAddr;
+            m_svcName = svcName;
+            m_svcLostEventId = svcLostEventId;
+            m_svcLostUei = svcLostUei;
+            m_ifLostService = ifLostService;
+        }
+
+        public int getNodeId() {
+            return m_nodeId;
+        }
+
+        public String getNodeLabel() {
+            return m_nodeLabel;
+        }
+
+        public String getIpAddr() {
+            return m_ipAddr;
+        }
+
+        public String getSvcName() {
+            return m_svcName;
+        }
+
+        /**
+         * @return the id of the event that caused the outage of the service,
+         *         or <code>null</code> if the service was up
+         */
+        public Integer getSvcLostEventId() {
+            return m_svcLostEventId;
+        }
+
+        public String getSvcLostUei() {
+            return m_svcLostUei;
+        }
+
+        public Date getIfLostService() {
+            return m_ifLostService;
+        }
+    }
+
+    /**
+     * <p>Constructor for PollableNetworkSnapshot.</p>
+     *
+     * @param file the file the snapshot is written to and read from
+     */
+    public PollableNetworkSnapshot(File file) {
+        m_file = file;
+    }
+
+    /**
+     * <p>getFile</p>
+     *
+     * @return a {@link java.io.File} object.
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    /**
+     * Write a snapshot of the network. Each node is recorded while holding its
+     * tree lock, so the statuses of a node's services are consistent with each
+     * other. The snapshot is written to a temporary file first and then renamed,
+     * so an interrupted write leaves the previous snapshot in place.
+     *
+     * @param network the network to write
+     * @return the number of services written
+     * @throws java.io.IOException if the snapshot could not be written
+     */
+    public int write(PollableNetwork network) throws IOException {
+        final File dir = m_file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+
+        final File tmpFile = new File(m_file.getPath() + ".tmp");
+        final int[] count = new int[1];
+        try (final DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            final IOException[] failure = new IOException[1];
+            final PollableVisitorAdaptor writer = new PollableVisitorAdaptor() {
+                @Override
+                public void visitNode(PollableNode node) {
+                    try {
+                        out.writeByte(NODE_RECORD);
+                        out.writeInt(node.getNodeId());
+                        writeString(out, node.getNodeLabel());
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+
+                @Override
+                public void visitInterface(PollableInterface iface) {
+                    try {
+                        out.writeByte(INTERFACE_RECORD);
+                        out.writeUTF(iface.getIpAddr());
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+
+                @Override
+                public void visitService(PollableService svc) {
+                    try {
+                        out.writeByte(SERVICE_RECORD);
+                        out.writeUTF(svc.getSvcName());
+                        writeCause(out, svc);
+                        count[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+
+            for (final Long nodeId : network.getNodeIds()) {
+                final PollableNode node = network.getNode(nodeId.intValue());
+                if (node == null) {
+                    continue;
+                }
+                node.withTreeLock(new Runnable() {
+                    @Override
+                    public void run() {
+                        node.visit(writer);
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+
+            out.writeByte(END_RECORD);
+        }
+
+        if (!tmpFile.renameTo(m_file)) {
+            // renameTo won't replace an existing file on every platform
+            if (!m_file.delete() || !tmpFile.renameTo(m_file)) {
+                throw new IOException("Unable to rename " + tmpFile + " to " + m_file);
+            }
+        }
+
+        LOG.debug("write: wrote {} services to {}", count[0], m_file);
+        return count[0];
+    }
+
+    /**
+     * Read the services of the snapshot.
+     *
+     * @return the services in the snapshot
+     * @throws java.io.IOException if the snapshot does not exist or can not be read
+     */
+    public List<SnapshotService> read() throws IOException {
+        final List<SnapshotService> services = new ArrayList<SnapshotService>();
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(m_file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(m_file + " is not a poller snapshot");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported poller snapshot version " + version + " in " + m_file);
+            }
+            final Date written = new Date(in.readLong());
+            LOG.debug("read: reading snapshot of {} written at {}", m_file, written);
+
+            int nodeId = -1;
+            String nodeLabel = null;
+            String ipAddr = null;
+            for (byte record = in.readByte(); record != END_RECORD; record = in.readByte()) {
+                switch (record) {
+                case NODE_RECORD:
+                    nodeId = in.readInt();
+                    nodeLabel = readString(in);
+                    ipAddr = null;
+                    break;
+                case INTERFACE_RECORD:
+                    ipAddr = in.readUTF();
+                    break;
+                case SERVICE_RECORD:
+                    final String svcName = in.readUTF();
+                    if (in.readBoolean()) {
+                        final int eventId = in.readInt();
+                        final String uei = in.readUTF();
+                        final Date date = new Date(in.readLong());
+                        services.add(new SnapshotService(nodeId, nodeLabel, ipAddr, svcName, eventId, uei, date));
+                    } else {
+                        services.add(new SnapshotService(nodeId, nodeLabel, ipAddr, svcName, null, null, null));
+                    }
+                    break;
+                default:
+                    throw new IOException("Unexpected record type " + record + " in " + m_file);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException(m_file + " is truncated", e);
+        }
+        return services;
+    }
+
+    /**
+     * A service is recorded as down only if its outage has been stored with
+     * an event id. A service whose lost service event is still pending is
+     * recorded as up and its outage is picked up when the snapshot is
+     * reconciled with the database.
+     */
+    private static void writeCause(DataOutputStream out, PollableService svc) throws IOException {
+        final PollEvent cause = svc.getCause();
+        final String uei = (cause == null ? null : getUei(cause.getScope()));
+        if (svc.getStatus().isDown() && uei != null && cause.getEventId() > 0) {
+            out.writeBoolean(true);
+            out.writeInt(cause.getEventId());
+            out.writeUTF(uei);
+            out.writeLong(cause.getDate() == null ? System.currentTimeMillis() : cause.getDate().getTime());
+        } else {
+            out.writeBoolean(false);
+        }
+    }
+
+    private static String getUei(Scope scope) {
+        if (scope == Scope.NODE) {
+            return EventConstants.NODE_DOWN_EVENT_UEI;
+        } else if (scope == Scope.INTERFACE) {
+            return EventConstants.INTERFACE_DOWN_EVENT_UEI;
+        } else if (scope == Scope.SERVICE) {
+            return EventConstants.NODE_LOST_SERVICE_EVENT_UEI;
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -28,23 +28,31 @@
 
 package org.opennms.netmgt.poller;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import javax.sql.DataSource;
 
 import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.restrictions.InRestriction;
+import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.OpennmsServerConfigFactory;
 import org.opennms.netmgt.config.PollOutagesConfig;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.config.poller.Service;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.dao.api.MonitoredServiceDao;
 import org.opennms.netmgt.dao.api.OutageDao;
@@ -53,6 +61,7 @@ import org.opennms.netmgt.model.OnmsEvent;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsOutage;
+import org.opennms.netmgt.poller.PollableNetworkSnapshot.SnapshotService;
 import org.opennms.netmgt.poller.pollables.DbPollEvent;
 import org.opennms.netmgt.poller.pollables.PollEvent;
 import org.opennms.netmgt.poller.pollables.PollableNetwork;
@@ -62,8 +71,10 @@ import org.opennms.netmgt.poller.pollables.PollableServiceConfig;
 import org.opennms.netmgt.poller.pollables.PollableVisitor;
 import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -86,7 +97,45 @@ public class Poller extends AbstractServiceDaemon {
 
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    /**
+     * Set this property to <code>true</code> to schedule polls with a
+     * {@link TimingWheelScheduler} instead of a {@link LegacyScheduler}.
+     */
+    private static final String TIMING_WHEEL_SCHEDULER_PROPERTY = "org.opennms.netmgt.poller.useTimingWheelScheduler";
+
+    /**
+     * Set this property to the interval, in milliseconds, at which to write a
+     * {@link PollableNetworkSnapshot}. When it is set, the poller schedules
+     * the services of the last snapshot on start and reconciles them with the
+     * database in the background.
+     */
+    private static final String SNAPSHOT_INTERVAL_PROPERTY = "org.opennms.netmgt.poller.snapshotInterval";
+
+    /**
+     * The file the {@link PollableNetworkSnapshot} is written to.
+     */
+    private static final String SNAPSHOT_FILE_PROPERTY = "org.opennms.netmgt.poller.snapshotFile";
+
+    private Scheduler m_scheduler = null;
+
+    private PollableNetworkSnapshot m_snapshot;
+
+    private long m_snapshotInterval = Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, 0);
+
+    /**
+     * The services scheduled from the snapshot that have not been found in
+     * the database yet, or <code>null</code> if there is nothing to reconcile.
+     */
+    private volatile Set<PollableService> m_snapshotServices;
+
+    /**
+     * The nodes, interfaces and services that events deleted while the
+     * snapshot is reconciled. Reconciling reads the services from the
+     * database before the events arrive, so it must not schedule these again.
+     */
+    private final Set<String> m_deletedWhileReconciling = new HashSet<String>();
+
+    private volatile Thread m_reconciler;
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -259,6 +308,17 @@ public class Poller extends AbstractServiceDaemon {
         m_pollOutagesConfig = pollOutagesConfig;
     }
 
+    /**
+     * <p>setSnapshot</p>
+     *
+     * @param snapshot the snapshot to start from and write to
+     * @param interval how often to write the snapshot, in milliseconds
+     */
+    public void setSnapshot(PollableNetworkSnapshot snapshot, long interval) {
+        m_snapshot = snapshot;
+        m_snapshotInterval = interval;
+    }
+
     /**
      * <p>getScheduler</p>
      *
@@ -271,12 +331,28 @@ public class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
+    /**
+     * The poller threads, which process the results of asynchronous polls
+     * once they have arrived.
+     *
+     * @return the executor of the scheduler, or <code>null</code> if services
+     *         have to be polled synchronously
+     */
+    private Executor getAsyncPollExecutor() {
+        if (m_scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) m_scheduler).getRunner();
+        } else if (m_scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) m_scheduler).getRunner();
+        }
+        return null;
+    }
+
     /**
      * <p>onInit</p>
      */
@@ -297,14 +373,22 @@ public class Poller extends AbstractServiceDaemon {
         }
 
 
-        // Schedule the interfaces currently in the database
+        if (m_snapshotInterval > 0 && m_snapshot == null) {
+            final String defaultFile = System.getProperty("opennms.home", ".") + File.separator + "data" + File.separator + "pollerd.snapshot";
+            m_snapshot = new PollableNetworkSnapshot(new File(System.getProperty(SNAPSHOT_FILE_PROPERTY, defaultFile)));
+        }
+
+        // Schedule the services of the last snapshot, or the interfaces
+        // currently in the database if there is none
         //
-        try {
-            LOG.debug("start: Scheduling existing interfaces");
+        if (m_snapshotInterval <= 0 || !scheduleSnapshotServices()) {
+            try {
+                LOG.debug("start: Scheduling existing interfaces");
 
-            scheduleExistingServices();
-        } catch (Throwable sqlE) {
-            LOG.error("start: Failed to schedule existing interfaces", sqlE);
+                scheduleExistingServices();
+            } catch (Throwable sqlE) {
+                LOG.error("start: Failed to schedule existing interfaces", sqlE);
+            }
         }
 
         // Create an event receiver. The receiver will
@@ -321,6 +405,10 @@ public class Poller extends AbstractServiceDaemon {
             throw new UndeclaredThrowableException(t);
         }
 
+        if (m_snapshotInterval > 0) {
+            scheduleSnapshots();
+        }
+
         m_initialized = true;
 
     }
@@ -332,13 +420,39 @@ public class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            if (Boolean.getBoolean(TIMING_WHEEL_SCHEDULER_PROPERTY)) {
+                setScheduler(new TimingWheelScheduler("Poller", getPollerConfig().getThreads(), TimingWheelScheduler.DEFAULT_TICK, getShortestInterval()));
+            } else {
+                setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            }
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
         }
     }
 
+    /**
+     * Returns the shortest polling interval of the local packages. The first
+     * polls are spread over this interval.
+     */
+    private long getShortestInterval() {
+        long shortest = 0;
+        final Enumeration<Package> en = getPollerConfig().enumeratePackage();
+        while (en.hasMoreElements()) {
+            final Package pkg = en.nextElement();
+            if (pkg.getRemote()) {
+                continue;
+            }
+            for (final Service svc : pkg.getServices()) {
+                final long interval = svc.getInterval();
+                if (interval > 0 && (shortest == 0 || interval < shortest)) {
+                    shortest = interval;
+                }
+            }
+        }
+        return shortest;
+    }
+
     /**
      * <p>onStart</p>
      */
@@ -356,6 +470,10 @@ public class Poller extends AbstractServiceDaemon {
             LOG.error("start: Failed to start scheduler", e);
             throw e;
         }
+
+        if (m_snapshotServices != null) {
+            startReconciler();
+        }
     }
 
     /**
@@ -363,12 +481,19 @@ public class Poller extends AbstractServiceDaemon {
      */
     @Override
     protected void onStop() {
+        final Thread reconciler = m_reconciler;
+        if (reconciler != null) {
+            reconciler.interrupt();
+        }
         if(getScheduler()!=null) {
             getScheduler().stop();
         }
         if(getEventProcessor()!=null) {
             getEventProcessor().close();
         }
+        if (m_snapshotInterval > 0 && m_initialized) {
+            writeSnapshot();
+        }
 
         releaseServiceMonitors();
         setScheduler(null);
@@ -514,6 +639,20 @@ public class Poller extends AbstractServiceDaemon {
     }
 
     private boolean scheduleService(int nodeId, String nodeLabel, String ipAddr, String serviceName, boolean active, Number svcLostEventId, Date ifLostService, String svcLostUei) {
+        final Package pkg = findPackageAndUpdateServiceStatus(nodeId, ipAddr, serviceName, active);
+        if (pkg == null) {
+            return false;
+        }
+        return schedulePollableService(pkg, nodeId, nodeLabel, ipAddr, serviceName, svcLostEventId, ifLostService, svcLostUei) != null;
+    }
+
+    /**
+     * Find the package that polls a service, and mark the service as polled
+     * or not polled in the database if that has changed.
+     *
+     * @return the package, or <code>null</code> if the service is not polled
+     */
+    private Package findPackageAndUpdateServiceStatus(int nodeId, String ipAddr, String serviceName, boolean active) {
         // We don't want to adjust the management state of the service if we're
         // on a machine that uses multiple servers with access to the same database
         // so check the value of OpennmsServerConfigFactory.getInstance().verifyServer()
@@ -525,27 +664,29 @@ public class Poller extends AbstractServiceDaemon {
                 LOG.warn("Active service {} on {} not configured for any package. Marking as Not Polled.", serviceName, ipAddr);
                 m_queryManager.updateServiceStatus(nodeId, ipAddr, serviceName, "N");
             }
-            return false;
         } else if (!active && !verifyServer) {
             LOG.info("Active service {} on {} is now configured for a package. Marking as active.", serviceName, ipAddr);
             m_queryManager.updateServiceStatus(nodeId, ipAddr, serviceName, "A");
         }
+        return pkg;
+    }
 
+    private PollableService schedulePollableService(Package pkg, int nodeId, String nodeLabel, String ipAddr, String serviceName, Number svcLostEventId, Date ifLostService, String svcLostUei) {
         ServiceMonitor monitor = m_pollerConfig.getServiceMonitor(serviceName);
         if (monitor == null) {
             LOG.info("Could not find service monitor associated with service {}", serviceName);
-            return false;
+            return null;
         }
 
         InetAddress addr;
         addr = InetAddressUtils.addr(ipAddr);
         if (addr == null) {
             LOG.error("Could not convert {} as an InetAddress {}", ipAddr, ipAddr);
-            return false;
+            return null;
         }
 
         PollableService svc = getNetwork().createService(nodeId, nodeLabel, addr, serviceName);
-        PollableServiceConfig pollConfig = new PollableServiceConfig(svc, m_pollerConfig, m_pollOutagesConfig, pkg, getScheduler());
+        PollableServiceConfig pollConfig = new PollableServiceConfig(svc, m_pollerConfig, m_pollOutagesConfig, pkg, getScheduler(), getAsyncPollExecutor());
         svc.setPollConfig(pollConfig);
         synchronized(svc) {
             if (svc.getSchedule() == null) {
@@ -571,8 +712,277 @@ public class Poller extends AbstractServiceDaemon {
 
         svc.schedule();
 
+        return svc;
+
+    }
+
+    /**
+     * Schedule the services of the last snapshot, so that polling can start
+     * before the services have been read from the database.
+     *
+     * @return <code>false</code> if there is no usable snapshot
+     */
+    private boolean scheduleSnapshotServices() {
+        if (!m_snapshot.getFile().exists()) {
+            LOG.info("init: No poller snapshot at {}, scheduling services from the database", m_snapshot.getFile());
+            return false;
+        }
+
+        final List<SnapshotService> services;
+        try {
+            services = m_snapshot.read();
+        } catch (IOException e) {
+            LOG.warn("init: Unable to read poller snapshot {}, scheduling services from the database", m_snapshot.getFile(), e);
+            return false;
+        }
+
+        final Set<PollableService> scheduled = Collections.newSetFromMap(new ConcurrentHashMap<PollableService, Boolean>());
+        for (final SnapshotService service : services) {
+            // a service that is no longer in a package is marked as not polled when reconciling
+            final Package pkg = findPackageForService(service.getIpAddr(), service.getSvcName());
+            if (pkg == null) {
+                continue;
+            }
+            try {
+                final PollableService svc = schedulePollableService(pkg, service.getNodeId(), service.getNodeLabel(), service.getIpAddr(), service.getSvcName(), service.getSvcLostEventId(), service.getIfLostService(), service.getSvcLostUei());
+                if (svc != null) {
+                    scheduled.add(svc);
+                }
+            } catch (RuntimeException e) {
+                // reconciling schedules it from the database
+                LOG.warn("init: Unable to schedule service {}/{}/{} from poller snapshot", service.getNodeId(), service.getIpAddr(), service.getSvcName(), e);
+            }
+        }
+
+        getNetwork().recalculateStatus();
+        getNetwork().propagateInitialCause();
+        getNetwork().resetStatusChanged();
+
+        setSnapshotServices(scheduled);
+        LOG.info("init: Scheduled {} of {} services from poller snapshot {}", scheduled.size(), services.size(), m_snapshot.getFile());
         return true;
+    }
 
+    private void startReconciler() {
+        m_reconciler = new Thread("Poller-Reconciler") {
+            @Override
+            public void run() {
+                Logging.withPrefix(LOG4J_CATEGORY, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            reconcileServices();
+                        } catch (Throwable t) {
+                            LOG.error("Failed to reconcile the poller snapshot with the database", t);
+                        } finally {
+                            m_reconciler = null;
+                        }
+                    }
+                });
+            }
+        };
+        m_reconciler.setDaemon(true);
+        m_reconciler.start();
+    }
+
+    /**
+     * Bring the services scheduled from the snapshot in line with the
+     * database: schedule the services that were added since the snapshot was
+     * written, delete the ones that were removed, and take the outages of the
+     * services from the outages table, as a cold start would.
+     */
+    private void reconcileServices() {
+        final long startTime = System.currentTimeMillis();
+        final Criteria criteria = new Criteria(OnmsMonitoredService.class);
+        criteria.addRestriction(new InRestriction("status", Arrays.asList("A", "N")));
+
+        final int count = m_transactionTemplate.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus arg0) {
+                final List<OnmsMonitoredService> services =  m_monitoredServiceDao.findMatching(criteria);
+                for (OnmsMonitoredService service : services) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        LOG.info("Reconciliation of the poller snapshot was interrupted");
+                        return 0;
+                    }
+                    final OnmsIpInterface iface = service.getIpInterface();
+                    final Set<OnmsOutage> outages = service.getCurrentOutages();
+                    final OnmsOutage outage = (outages == null || outages.size() < 1 ? null : outages.iterator().next());
+                    final OnmsEvent event = (outage == null ? null : outage.getServiceLostEvent());
+                    closeOutageIfSvcLostEventIsMissing(outage);
+
+                    reconcileService(
+                            service.getNodeId(),
+                            iface.getNode().getLabel(),
+                            InetAddressUtils.str(iface.getIpAddress()),
+                            service.getServiceName(),
+                            "A".equals(service.getStatus()),
+                            event == null ? null : event.getId(),
+                            outage == null ? null : outage.getIfLostService(),
+                            event == null ? null : event.getEventUei()
+                            );
+                }
+                return services.size();
+            }
+        });
+
+        if (Thread.currentThread().isInterrupted()) {
+            setSnapshotServices(null);
+            return;
+        }
+
+        // Whatever is left was deleted or unmanaged since the snapshot was written
+        for (final PollableService svc : m_snapshotServices) {
+            if (svc.isDeleted()) {
+                // deleted by an event while reconciling
+                continue;
+            }
+            LOG.info("Service {} from the poller snapshot is no longer polled, deleting it", svc);
+            svc.delete();
+        }
+        setSnapshotServices(null);
+
+        LOG.info("Reconciled the poller snapshot with {} services from the database in {}ms", count, System.currentTimeMillis() - startTime);
+    }
+
+    private void reconcileService(final int nodeId, final String nodeLabel, final String ipAddr, final String serviceName, final boolean active, final Number svcLostEventId, final Date ifLostService, final String svcLostUei) {
+        final PollableService svc = getNetwork().getService(nodeId, InetAddressUtils.addr(ipAddr), serviceName);
+        if (svc == null) {
+            // added since the snapshot was written, unless an event has
+            // deleted it since it was read
+            synchronized (m_deletedWhileReconciling) {
+                if (isDeletedWhileReconciling(nodeId, ipAddr, serviceName)) {
+                    LOG.info("Service {}/{}/{} was deleted while reconciling the poller snapshot, not scheduling it", nodeId, ipAddr, serviceName);
+                    return;
+                }
+                final PollableNode node = getNetwork().createNodeIfNecessary(nodeId, nodeLabel);
+                node.withTreeLock(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (scheduleService(nodeId, nodeLabel, ipAddr, serviceName, active, svcLostEventId, ifLostService, svcLostUei)) {
+                            node.recalculateStatus();
+                            node.extrapolateCause();
+                            node.inheritParentalCause();
+                            node.resetStatusChanged();
+                        }
+                    }
+                });
+            }
+            return;
+        }
+
+        if (!m_snapshotServices.remove(svc)) {
+            // scheduled by an event since the poller started
+            return;
+        }
+
+        if (findPackageAndUpdateServiceStatus(nodeId, ipAddr, serviceName, active) == null) {
+            svc.delete();
+            return;
+        }
+
+        final PollableNode node = svc.getNode();
+        node.withTreeLock(new Runnable() {
+            @Override
+            public void run() {
+                final PollEvent cause = svc.getCause();
+                if (svcLostEventId != null) {
+                    // the database has an outage the snapshot did not know of,
+                    // or knows it by a different event
+                    if (svc.getStatus().isUp() || cause instanceof DbPollEvent) {
+                        svc.updateStatus(PollStatus.down());
+                        svc.setCause(new DbPollEvent(svcLostEventId.intValue(), svcLostUei, ifLostService));
+                    }
+                } else if (svc.getStatus().isDown() && cause instanceof DbPollEvent) {
+                    // the outage of the snapshot has been closed since
+                    svc.updateStatus(PollStatus.up());
+                    svc.setCause(null);
+                }
+
+                if (svc.isStatusChanged()) {
+                    node.recalculateStatus();
+                    node.extrapolateCause();
+                    node.inheritParentalCause();
+                    node.resetStatusChanged();
+                }
+            }
+        });
+    }
+
+    /**
+     * Remember that an event deleted a node, interface or service, so that
+     * reconciling the snapshot does not schedule it again. This must be
+     * called before the element is removed from the pollable network.
+     *
+     * @param nodeId the node
+     * @param addr the interface, or <code>null</code> for the whole node
+     * @param svcName the service, or <code>null</code> for the whole interface
+     */
+    void recordDeleted(final int nodeId, final InetAddress addr, final String svcName) {
+        synchronized (m_deletedWhileReconciling) {
+            if (m_snapshotServices == null) {
+                return;
+            }
+            final StringBuilder key = new StringBuilder().append(nodeId);
+            if (addr != null) {
+                key.append('/').append(InetAddressUtils.str(addr));
+                if (svcName != null) {
+                    key.append('/').append(svcName);
+                }
+            }
+            m_deletedWhileReconciling.add(key.toString());
+        }
+    }
+
+    private void setSnapshotServices(final Set<PollableService> services) {
+        synchronized (m_deletedWhileReconciling) {
+            m_snapshotServices = services;
+            m_deletedWhileReconciling.clear();
+        }
+    }
+
+    private boolean isDeletedWhileReconciling(final int nodeId, final String ipAddr, final String svcName) {
+        final String nodeKey = String.valueOf(nodeId);
+        final String ifKey = nodeKey + '/' + ipAddr;
+        return m_deletedWhileReconciling.contains(nodeKey)
+            || m_deletedWhileReconciling.contains(ifKey)
+            || m_deletedWhileReconciling.contains(ifKey + '/' + svcName);
+    }
+
+    /**
+     * Whether the services scheduled from the snapshot are still being
+     * reconciled with the database.
+     */
+    boolean isReconciling() {
+        return m_snapshotServices != null;
+    }
+
+    private void scheduleSnapshots() {
+        getScheduler().schedule(m_snapshotInterval, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                writeSnapshot();
+                final Scheduler scheduler = getScheduler();
+                if (scheduler != null) {
+                    scheduler.schedule(m_snapshotInterval, this);
+                }
+            }
+        });
+    }
+
+    private void writeSnapshot() {
+        try {
+            final long startTime = System.currentTimeMillis();
+            final int count = m_snapshot.write(getNetwork());
+            LOG.debug("Wrote {} services to poller snapshot {} in {}ms", count, m_snapshot.getFile(), System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            LOG.warn("Unable to write poller snapshot {}", m_snapshot.getFile(), e);
+        }
     }
 
     /**
@@ -310,6 +310,7 @@ final class PollerEventProcessor implements EventListener {
             return;
         }
 
+        getPoller().recordDeleted(nodeId.intValue(), ipAddr, svcName);
         PollableService svc = getNetwork().getService(nodeId.intValue(), ipAddr, svcName);
         svc.delete();
 
@@ -354,6 +355,7 @@ final class PollerEventProcessor implements EventListener {
 
         getPoller().getQueryManager().closeOutagesForNode(closeDate, event.getDbid(), nodeId.intValue());
 
+        getPoller().recordDeleted(nodeId.intValue(), null, null);
 
         PollableNode node = getNetwork().getNode(nodeId.intValue());
         if (node == null) {
@@ -429,6 +431,7 @@ final class PollerEventProcessor implements EventListener {
 
         getPoller().getQueryManager().closeOutagesForInterface(closeDate, event.getDbid(), nodeId.intValue(), str(ipAddr));
 
+        getPoller().recordDeleted(nodeId.intValue(), ipAddr, null);
 
         PollableInterface iface = getNetwork().getInterface(nodeId.intValue(), ipAddr);
         if (iface == null) {
@@ -458,6 +461,7 @@ final class PollerEventProcessor implements EventListener {
 
         getPoller().getQueryManager().closeOutagesForService(closeDate, event.getDbid(), nodeId.intValue(), str(ipAddr), service);
 
+        getPoller().recordDeleted(nodeId.intValue(), ipAddr, service);
         PollableService svc = getNetwork().getService(nodeId.intValue(), ipAddr, service);
         if (svc == null) {
             LOG.error("Interface {}/{} does not exist in pollable node map, unable to delete node.", nodeId, event.getInterface());
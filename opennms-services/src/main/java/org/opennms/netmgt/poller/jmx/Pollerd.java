@@ -28,10 +28,18 @@
 
 package org.opennms.netmgt.poller.jmx;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import org.opennms.core.utils.IntervalLatencyHistogram;
+import org.opennms.core.utils.LatencyHistogram;
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.poller.pollables.PollStatistics;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 
 /**
  * <p>Pollerd class.</p>
@@ -122,11 +130,144 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
     }
 
     
+    /** {@inheritDoc} */
+    @Override
+    public long getSchedulingLag() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getSchedulingLag();
+        } else {
+            return 0L;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxSchedulingLag() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getMaxSchedulingLag();
+        } else {
+            return 0L;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSchedulingLagP95() {
+        final IntervalLatencyHistogram histogram = getSchedulingLagHistogram();
+        return histogram == null ? 0L : histogram.getIntervalHistogram().getValueAtPercentile(95);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSchedulingLagP99() {
+        final IntervalLatencyHistogram histogram = getSchedulingLagHistogram();
+        return histogram == null ? 0L : histogram.getIntervalHistogram().getValueAtPercentile(99);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getQueueWaitP95() {
+        final IntervalLatencyHistogram histogram = getQueueWaitHistogram();
+        return histogram == null ? 0L : histogram.getIntervalHistogram().getValueAtPercentile(95);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxQueueWait() {
+        final IntervalLatencyHistogram histogram = getQueueWaitHistogram();
+        return histogram == null ? 0L : histogram.getIntervalHistogram().getMax();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPollDurationP50() {
+        return getStatistics().getPollDurations().getValueAtPercentile(50);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPollDurationP95() {
+        return getStatistics().getPollDurations().getValueAtPercentile(95);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPollDurationP99() {
+        return getStatistics().getPollDurations().getValueAtPercentile(99);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxPollDuration() {
+        return getStatistics().getPollDurations().getMax();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLockUnavailableCount() {
+        return getStatistics().getLockUnavailableCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getPollDurationsByService() {
+        final List<String> summaries = new ArrayList<String>();
+        for (final Map.Entry<String, LatencyHistogram> entry : getStatistics().getPollDurationsByService().entrySet()) {
+            summaries.add(entry.getKey() + ": " + entry.getValue());
+        }
+        return summaries.toArray(new String[summaries.size()]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetPollStatistics() {
+        getStatistics().reset();
+        final IntervalLatencyHistogram lag = getSchedulingLagHistogram();
+        if (lag != null) {
+            lag.reset();
+        }
+        final IntervalLatencyHistogram queueWait = getQueueWaitHistogram();
+        if (queueWait != null) {
+            queueWait.reset();
+        }
+    }
+
+    private PollStatistics getStatistics() {
+        return getDaemon().getNetwork().getStatistics();
+    }
+
+    private IntervalLatencyHistogram getSchedulingLagHistogram() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getSchedulingLagHistogram();
+        } else if (scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) scheduler).getSchedulingLagHistogram();
+        }
+        return null;
+    }
+
+    private IntervalLatencyHistogram getQueueWaitHistogram() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getQueueWaitHistogram();
+        } else if (scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) scheduler).getQueueWaitHistogram();
+        }
+        return null;
+    }
+
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return (ThreadPoolExecutor) ((TimingWheelScheduler) scheduler).getRunner();
+        }
+        return (ThreadPoolExecutor) ((LegacyScheduler) scheduler).getRunner();
     }
     
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        final Scheduler scheduler = getDaemon().getScheduler();
+        return (scheduler instanceof LegacyScheduler || scheduler instanceof TimingWheelScheduler);
     }
 }
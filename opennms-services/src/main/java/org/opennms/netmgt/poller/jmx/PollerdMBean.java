@@ -74,4 +74,74 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return The maximum number of threads allowed in the poller's thread pool
      */
     public long getMaxPoolThreads();
+
+    /**
+     * @return The moving average of the time in milliseconds between the moment poll tasks
+     *         were due and the moment they were started, or 0 if the legacy scheduler is used
+     */
+    public long getSchedulingLag();
+
+    /**
+     * @return The largest delay in milliseconds in starting a poll task since poller startup
+     */
+    public long getMaxSchedulingLag();
+
+    /**
+     * @return The 95th percentile of the scheduling lag in milliseconds over the last 5 minute interval
+     */
+    public long getSchedulingLagP95();
+
+    /**
+     * @return The 99th percentile of the scheduling lag in milliseconds over the last 5 minute interval
+     */
+    public long getSchedulingLagP99();
+
+    /**
+     * @return The 95th percentile of the time in milliseconds poll tasks waited for a poller thread
+     *         over the last 5 minute interval
+     */
+    public long getQueueWaitP95();
+
+    /**
+     * @return The largest time in milliseconds a poll task waited for a poller thread
+     *         in the last 5 minute interval
+     */
+    public long getMaxQueueWait();
+
+    /**
+     * @return The median duration of a poll in milliseconds over the last 5 minute interval
+     */
+    public long getPollDurationP50();
+
+    /**
+     * @return The 95th percentile of the duration of a poll in milliseconds over the last 5 minute interval
+     */
+    public long getPollDurationP95();
+
+    /**
+     * @return The 99th percentile of the duration of a poll in milliseconds over the last 5 minute interval
+     */
+    public long getPollDurationP99();
+
+    /**
+     * @return The longest duration of a poll in milliseconds in the last 5 minute interval
+     */
+    public long getMaxPollDuration();
+
+    /**
+     * Returns the number of polls that were postponed because the node was locked (counter).
+     *
+     * @return the number of polls postponed because the node was locked
+     */
+    public long getLockUnavailableCount();
+
+    /**
+     * @return A summary of the poll durations of each service over the last 5 minute interval, one service per entry
+     */
+    public String[] getPollDurationsByService();
+
+    /**
+     * Forget the poll durations, scheduling lags and queue waits recorded so far.
+     */
+    public void resetPollStatistics();
 }
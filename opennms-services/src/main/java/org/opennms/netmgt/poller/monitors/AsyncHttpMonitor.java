@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.core.utils.IPLike;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An asynchronous {@link HttpMonitor}. The request is built from the same
+ * parameters (url, port, host-name, user-agent, credentials, headers) and the
+ * response is checked the same way against <code>response</code> and
+ * <code>response-text</code>, but the conversation runs on the selector
+ * thread of the {@link AsyncSocketClient}.
+ * </p>
+ *
+ * <p>
+ * Only plain HTTP is supported, so there is no asynchronous counterpart of
+ * the {@link HttpsMonitor}. The <code>verbose</code> and
+ * <code>strict-timeout</code> parameters are ignored.
+ * </p>
+ */
+@Distributable
+public class AsyncHttpMonitor extends AbstractAsyncServiceMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpMonitor.class);
+
+    /**
+     * The client that makes the connections.
+     */
+    protected AsyncSocketClient getSocketClient() {
+        return AsyncSocketClient.getInstance();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void poll(final MonitoredService svc, final Map<String, Object> parameters, final PollCallback callback) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final HttpPoll poll = new HttpPoll(getSocketClient(), iface.getAddress(),
+                                           ParameterMap.getKeyedIntegerArray(parameters, HttpMonitor.PARAMETER_PORT, HttpMonitor.DEFAULT_PORTS),
+                                           HttpMonitor.buildCommand(svc.getNodeLabel(), iface, parameters),
+                                           HttpMonitor.determineResponse(parameters),
+                                           HttpMonitor.determineResponseText(parameters),
+                                           ParameterMap.getKeyedInteger(parameters, "retry", HttpMonitor.DEFAULT_RETRY),
+                                           Math.max(10, ParameterMap.getKeyedInteger(parameters, "timeout", HttpMonitor.DEFAULT_TIMEOUT)),
+                                           callback);
+        poll.start();
+    }
+
+    private static final class HttpPoll extends AsyncSocketClient.LineHandler {
+        private final AsyncSocketClient m_client;
+        private final InetAddress m_address;
+        private final int[] m_ports;
+        private final byte[] m_request;
+        private final String m_response;
+        private final String m_responseText;
+        private final int m_retry;
+        private final int m_timeout;
+        private final PollCallback m_callback;
+
+        private int m_portIndex = 0;
+        private int m_attempt = 0;
+        private long m_startTime;
+        private int m_serviceStatus = PollStatus.SERVICE_UNAVAILABLE;
+        private String m_reason;
+        private double m_responseTime;
+        private boolean m_statusLine;
+        private boolean m_headerFinished;
+
+        public HttpPoll(final AsyncSocketClient client, final InetAddress address, final int[] ports, final String request, final String response, final String responseText, final int retry, final int timeout, final PollCallback callback) {
+            m_client = client;
+            m_address = address;
+            m_ports = ports;
+            m_request = request.getBytes(Charset.defaultCharset());
+            m_response = response;
+            m_responseText = StringUtils.isNotBlank(responseText) ? responseText : null;
+            m_retry = retry;
+            m_timeout = timeout;
+            m_callback = callback;
+        }
+
+        public void start() {
+            if (m_ports.length == 0) {
+                complete();
+                return;
+            }
+            resetLine();
+            m_statusLine = true;
+            m_headerFinished = false;
+            m_startTime = System.nanoTime();
+            LOG.debug("Port = {}, Address = {}, attempt = {}", m_ports[m_portIndex], m_address, m_attempt);
+            m_client.connect(new InetSocketAddress(m_address, m_ports[m_portIndex]), m_timeout, this);
+        }
+
+        private String getServiceInfo() {
+            return m_address + ":" + m_ports[m_portIndex];
+        }
+
+        @Override
+        public ByteBuffer connected() {
+            LOG.debug("AsyncHttpMonitor: connected to host: {} on port: {}", m_address, m_ports[m_portIndex]);
+            m_serviceStatus = PollStatus.SERVICE_UNRESPONSIVE;
+            return ByteBuffer.wrap(m_request);
+        }
+
+        @Override
+        protected boolean receivedLine(final String line) {
+            if (m_statusLine) {
+                m_statusLine = false;
+                m_responseTime = (System.nanoTime() - m_startTime) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+                LOG.debug("poll: response= {}", line);
+                LOG.debug("poll: responseTime= {}ms", m_responseTime);
+                determineServerInitialResponse(line);
+                if (m_serviceStatus != PollStatus.SERVICE_AVAILABLE || m_responseText == null) {
+                    nextAttempt();
+                    return true;
+                }
+                m_serviceStatus = PollStatus.SERVICE_UNAVAILABLE;
+                return false;
+            }
+
+            if (!m_headerFinished) {
+                // skip the headers, only the body is matched
+                m_headerFinished = StringUtils.isEmpty(line);
+                return false;
+            }
+
+            final boolean found;
+            if (m_responseText.charAt(0) == '~') {
+                found = line.matches(m_responseText.substring(1));
+            } else {
+                found = line.indexOf(m_responseText) != -1;
+            }
+            if (found) {
+                LOG.debug("response-text: {}: found.", m_responseText);
+                m_serviceStatus = PollStatus.SERVICE_AVAILABLE;
+                nextAttempt();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected boolean receivedEndOfStream() {
+            if (!m_statusLine) {
+                LOG.debug("Matching text: [{}] not found in body of HTTP response for {}", m_responseText, getServiceInfo());
+                m_reason = "Matching text: [" + m_responseText + "] not found in body of HTTP response";
+            }
+            nextAttempt();
+            return true;
+        }
+
+        private void determineServerInitialResponse(final String line) {
+            if (!line.startsWith("HTTP/")) {
+                return;
+            }
+
+            int serverResponse = -1;
+            final StringTokenizer t = new StringTokenizer(line);
+            if (t.hasMoreTokens()) {
+                t.nextToken();
+            }
+            if (t.hasMoreTokens()) {
+                try {
+                    serverResponse = Integer.parseInt(t.nextToken());
+                } catch (final NumberFormatException e) {
+                    LOG.info("Error converting response code from host = {}, response = {}", m_address, line);
+                }
+            }
+
+            if (IPLike.matchNumericListOrRange(String.valueOf(serverResponse), m_response)) {
+                LOG.debug("determineServerResponse: valid server response: {} found.", serverResponse);
+                m_serviceStatus = PollStatus.SERVICE_AVAILABLE;
+            } else {
+                m_serviceStatus = PollStatus.SERVICE_UNAVAILABLE;
+                m_reason = "HTTP response value: " + serverResponse + ". Expecting: " + m_response + ".";
+            }
+        }
+
+        @Override
+        public void failed(final IOException e) {
+            if (e instanceof NoRouteToHostException) {
+                LOG.warn("checkStatus: No route to host exception while polling {}", getServiceInfo(), e);
+                m_reason = "No route to host exception";
+                complete();
+                return;
+            } else if (e instanceof InterruptedIOException) {
+                LOG.info("checkStatus: HTTP socket connection for service {} timed out after {}ms", getServiceInfo(), m_timeout);
+                m_reason = "HTTP connection timeout";
+            } else if (e instanceof ConnectException) {
+                LOG.warn("Connection exception for {}", getServiceInfo(), e);
+                m_reason = "HTTP connection exception on port: " + m_ports[m_portIndex] + ": " + e.getMessage();
+            } else {
+                LOG.warn("{} while polling {}", e.getClass().getSimpleName(), getServiceInfo(), e);
+                m_reason = "IOException while polling address: " + m_address + ": " + e.getMessage();
+            }
+            nextAttempt();
+        }
+
+        private void nextAttempt() {
+            if (m_serviceStatus == PollStatus.SERVICE_AVAILABLE) {
+                complete();
+                return;
+            }
+            m_attempt++;
+            if (m_attempt > m_retry) {
+                m_attempt = 0;
+                m_portIndex++;
+            }
+            if (m_portIndex < m_ports.length) {
+                start();
+            } else {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (m_serviceStatus == PollStatus.SERVICE_UNAVAILABLE) {
+                final StringBuilder testedPorts = new StringBuilder();
+                for (int i = 0; i < m_ports.length; i++) {
+                    if (i > 0) {
+                        testedPorts.append(',');
+                    }
+                    testedPorts.append(m_ports[i]);
+                }
+                m_reason = m_reason + "/Ports: " + testedPorts;
+                LOG.debug("checkStatus: Reason: \"{}\"", m_reason);
+                m_callback.complete(PollStatus.unavailable(m_reason));
+            } else if (m_serviceStatus == PollStatus.SERVICE_AVAILABLE) {
+                m_callback.complete(PollStatus.available(m_responseTime));
+            } else {
+                m_callback.complete(PollStatus.get(m_serviceStatus, m_reason));
+            }
+        }
+    }
+
+}
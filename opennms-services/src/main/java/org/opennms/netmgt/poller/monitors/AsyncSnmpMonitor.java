@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.PropertiesUtils;
+import org.opennms.netmgt.config.SnmpPeerFactory;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.DistributionContext;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.snmp.CollectionTracker;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SingleInstanceTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalkCallback;
+import org.opennms.netmgt.snmp.SnmpWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An asynchronous {@link SnmpMonitor}. It takes the same parameters and
+ * applies the same criteria, but instead of blocking in a get or a walk it
+ * starts an {@link SnmpWalker} and evaluates the result from the walker's
+ * completion callback, on the thread of the SNMP library.
+ * </p>
+ *
+ * <p>
+ * A single value is fetched with a get-next on the preceding OID, the way
+ * the collector fetches scalar values.
+ * </p>
+ */
+@Distributable(DistributionContext.DAEMON)
+public class AsyncSnmpMonitor extends SnmpMonitorStrategy implements AsyncServiceMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSnmpMonitor.class);
+
+    private static final String DEFAULT_OBJECT_IDENTIFIER = ".1.3.6.1.2.1.1.2.0";
+
+    private static final String DEFAULT_REASON_TEMPLATE = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(final Map<String, Object> parameters) {
+        try {
+            SnmpPeerFactory.init();
+        } catch (final IOException ex) {
+            LOG.error("initialize: Failed to load SNMP configuration", ex);
+            throw new UndeclaredThrowableException(ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Start an asynchronous poll and wait for its result.
+     */
+    @Override
+    public PollStatus poll(final MonitoredService svc, final Map<String, Object> parameters) {
+        return AbstractAsyncServiceMonitor.pollAndWait(this, svc, parameters);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void poll(final MonitoredService svc, final Map<String, Object> parameters, final PollCallback callback) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        final InetAddress ipaddr = iface.getAddress();
+
+        final SnmpAgentConfig agentConfig = SnmpPeerFactory.getInstance().getAgentConfig(ipaddr);
+        if (agentConfig == null) throw new RuntimeException("SnmpAgentConfig object not available for interface " + ipaddr);
+        final String hostAddress = InetAddressUtils.str(ipaddr);
+
+        final String oid = ParameterMap.getKeyedString(parameters, "oid", DEFAULT_OBJECT_IDENTIFIER);
+        final String operator = ParameterMap.getKeyedString(parameters, "operator", null);
+        final String operand = ParameterMap.getKeyedString(parameters, "operand", null);
+        final String walkstr = ParameterMap.getKeyedString(parameters, "walk", "false");
+        final String matchstr = ParameterMap.getKeyedString(parameters, "match-all", "true");
+        final int countMin = ParameterMap.getKeyedInteger(parameters, "minimum", 0);
+        final int countMax = ParameterMap.getKeyedInteger(parameters, "maximum", 0);
+        final String reasonTemplate = ParameterMap.getKeyedString(parameters, "reason-template", DEFAULT_REASON_TEMPLATE);
+        final String hexstr = ParameterMap.getKeyedString(parameters, "hex", "false");
+
+        hex = "true".equalsIgnoreCase(hexstr);
+        agentConfig.setTimeout(ParameterMap.getKeyedInteger(parameters, "timeout", agentConfig.getTimeout()));
+        agentConfig.setRetries(ParameterMap.getKeyedInteger(parameters, "retry", ParameterMap.getKeyedInteger(parameters, "retries", agentConfig.getRetries())));
+        agentConfig.setPort(ParameterMap.getKeyedInteger(parameters, "port", agentConfig.getPort()));
+
+        // Squirrel the configuration parameters away in a Properties for later expansion if service is down
+        final Properties svcParams = new Properties();
+        svcParams.setProperty("oid", oid);
+        svcParams.setProperty("operator", String.valueOf(operator));
+        svcParams.setProperty("operand", String.valueOf(operand));
+        svcParams.setProperty("walk", walkstr);
+        svcParams.setProperty("matchAll", matchstr);
+        svcParams.setProperty("minimum", String.valueOf(countMin));
+        svcParams.setProperty("maximum", String.valueOf(countMax));
+        svcParams.setProperty("timeout", String.valueOf(agentConfig.getTimeout()));
+        svcParams.setProperty("retry", String.valueOf(agentConfig.getRetries()));
+        svcParams.setProperty("retries", svcParams.getProperty("retry"));
+        svcParams.setProperty("ipaddr", hostAddress);
+        svcParams.setProperty("port", String.valueOf(agentConfig.getPort()));
+        svcParams.setProperty("hex", hexstr);
+
+        LOG.debug("poll: service= SNMP address= {}", agentConfig);
+
+        final long startTime = System.nanoTime();
+        final SnmpObjId snmpObjectId;
+        try {
+            snmpObjectId = SnmpObjId.get(oid);
+        } catch (final IllegalArgumentException e) {
+            callback.complete(PollStatus.unavailable("Invalid SNMP Criteria: " + e.getMessage()));
+            return;
+        }
+
+        final boolean walk = "count".equals(matchstr) || "true".equals(walkstr);
+        final List<SnmpValue> results = Collections.synchronizedList(new ArrayList<SnmpValue>());
+        final CollectionTracker tracker;
+        if (walk) {
+            tracker = new ColumnTracker(snmpObjectId) {
+                @Override
+                protected void storeResult(final SnmpResult res) {
+                    results.add(res.getValue());
+                }
+            };
+        } else {
+            tracker = new SingleInstanceTracker(snmpObjectId.getPrefix(snmpObjectId.length() - 1), new SnmpInstId(snmpObjectId.getLastSubId())) {
+                @Override
+                protected void storeResult(final SnmpResult res) {
+                    results.add(res.getValue());
+                }
+            };
+        }
+
+        final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "snmpPoller", tracker);
+        walker.setCallback(new SnmpWalkCallback() {
+            @Override
+            public void complete(final SnmpWalker w, final Throwable t) {
+                final double responseTime = (System.nanoTime() - startTime) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+                PollStatus status;
+                try {
+                    if (walk) {
+                        status = evaluateWalk(results, matchstr, operator, operand, countMin, countMax, reasonTemplate, svcParams, responseTime);
+                    } else if (results.isEmpty()) {
+                        final String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
+                        LOG.debug(reason);
+                        status = PollStatus.unavailable(reason);
+                    } else {
+                        status = evaluateGet(results.get(0), operator, operand, reasonTemplate, svcParams, responseTime);
+                    }
+                } catch (final NumberFormatException e) {
+                    final String reason = "Number operator used on a non-number " + e.getMessage();
+                    LOG.debug(reason);
+                    status = PollStatus.unavailable(reason);
+                } catch (final IllegalArgumentException e) {
+                    final String reason = "Invalid SNMP Criteria: " + e.getMessage();
+                    LOG.debug(reason);
+                    status = PollStatus.unavailable(reason);
+                } catch (final Throwable e) {
+                    final String reason = "Unexpected exception during SNMP poll of interface " + hostAddress;
+                    LOG.debug(reason, e);
+                    status = PollStatus.unavailable(reason);
+                }
+                callback.complete(status);
+            }
+        });
+        walker.start();
+    }
+
+    private PollStatus evaluateWalk(final List<SnmpValue> results, final String matchstr, final String operator, final String operand, final int countMin, final int countMax, String reasonTemplate, final Properties svcParams, final double responseTime) {
+        final String hostAddress = svcParams.getProperty("ipaddr");
+        final String oid = svcParams.getProperty("oid");
+
+        // This if block will count the number of matches within a walk and mark the service
+        // as up if it is between the minimum and maximum number, down if otherwise. Setting
+        // the parameter "matchall" to "count" will act as if "walk" has been set to "true".
+        if ("count".equals(matchstr)) {
+            if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
+                reasonTemplate = "Value: ${matchCount} outside of range Min: ${minimum} to Max: ${maximum}";
+            }
+            int matchCount = 0;
+            for (final SnmpValue result : results) {
+                if (result != null) {
+                    LOG.debug("poll: SNMPwalk poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
+                    if (meetsCriteria(result, operator, operand)) {
+                        matchCount++;
+                    }
+                }
+            }
+            svcParams.setProperty("matchCount", String.valueOf(matchCount));
+            LOG.debug("poll: SNMPwalk count succeeded, total={} min={} max={}", matchCount, countMin, countMax);
+            if ((countMin <= matchCount) && (matchCount <= countMax)) {
+                return PollStatus.available(responseTime);
+            }
+            final String reason = PropertiesUtils.substitute(reasonTemplate, svcParams);
+            LOG.debug(reason);
+            return PollStatus.unavailable(reason);
+        }
+
+        if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
+            reasonTemplate = "SNMP poll failed, addr=${ipaddr} oid=${oid}";
+        }
+        PollStatus status = PollStatus.unavailable();
+        for (final SnmpValue result : results) {
+            if (result != null) {
+                svcParams.setProperty("observedValue", getStringValue(result));
+                LOG.debug("poll: SNMPwalk poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
+                if (meetsCriteria(result, operator, operand)) {
+                    status = PollStatus.available(responseTime);
+                    if ("false".equals(matchstr)) {
+                        return status;
+                    }
+                } else if ("true".equals(matchstr)) {
+                    final String reason = PropertiesUtils.substitute(reasonTemplate, svcParams);
+                    LOG.debug(reason);
+                    return PollStatus.unavailable(reason);
+                }
+            }
+        }
+        return status;
+    }
+
+    private PollStatus evaluateGet(final SnmpValue result, final String operator, final String operand, String reasonTemplate, final Properties svcParams, final double responseTime) {
+        if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
+            if (operator != null) {
+                reasonTemplate = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
+            } else {
+                reasonTemplate = "Observed value '${observedValue}' was null";
+            }
+        }
+
+        svcParams.setProperty("observedValue", getStringValue(result));
+        LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", svcParams.getProperty("ipaddr"), svcParams.getProperty("oid"), result);
+
+        if (meetsCriteria(result, operator, operand)) {
+            return PollStatus.available(responseTime);
+        }
+        return PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
+    }
+
+}
@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Runs short TCP conversations for the asynchronous monitors on non-blocking
+ * sockets. All of the connections are served by a single selector thread, so
+ * thousands of polls can be in flight without a thread each.
+ * </p>
+ *
+ * <p>
+ * Each connection is driven by a {@link Handler}. The handler methods are
+ * called on the selector thread and must not block. The timeout of a
+ * connection behaves like the connect and read timeouts of a blocking
+ * socket: it starts over whenever the connection makes progress.
+ * </p>
+ */
+public class AsyncSocketClient implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSocketClient.class);
+
+    /**
+     * How often the selector thread looks for connections that have timed
+     * out, in milliseconds.
+     */
+    private static final long TIMEOUT_RESOLUTION = 50;
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private static AsyncSocketClient s_instance;
+
+    /**
+     * The conversation on one connection.
+     */
+    public interface Handler {
+
+        /**
+         * Called once the connection has been established.
+         *
+         * @return the bytes to send, or <code>null</code> to close the
+         *         connection without reading anything
+         */
+        ByteBuffer connected();
+
+        /**
+         * Called each time data has been read from the connection. The
+         * buffer is only valid for the duration of the call.
+         *
+         * @param data the bytes that have been read
+         * @param endOfStream true if the peer has closed the connection, in
+         *            which case <code>data</code> is empty
+         * @return true if the conversation is done and the connection can be
+         *         closed
+         */
+        boolean received(ByteBuffer data, boolean endOfStream);
+
+        /**
+         * Called when the connection could not be made or failed before the
+         * conversation was done. A timeout is reported as a
+         * {@link SocketTimeoutException}.
+         */
+        void failed(IOException e);
+    }
+
+    /**
+     * A {@link Handler} for line based protocols. The received bytes are
+     * split into lines the way {@link java.io.BufferedReader#readLine()}
+     * does it for <code>\n</code> and <code>\r\n</code> line ends.
+     */
+    public abstract static class LineHandler implements Handler {
+        private final ByteArrayOutputStream m_line = new ByteArrayOutputStream();
+
+        /**
+         * Called for each line that has been read.
+         *
+         * @return true if the conversation is done
+         */
+        protected abstract boolean receivedLine(String line);
+
+        /**
+         * Called when the peer closed the connection before
+         * {@link #receivedLine(String)} returned true.
+         *
+         * @return true if the conversation is done, false to have the
+         *         connection reported as failed
+         */
+        protected abstract boolean receivedEndOfStream();
+
+        @Override
+        public final boolean received(final ByteBuffer data, final boolean endOfStream) {
+            if (endOfStream) {
+                if (m_line.size() > 0 && receivedLine(takeLine())) {
+                    return true;
+                }
+                return receivedEndOfStream();
+            }
+            while (data.hasRemaining()) {
+                final byte b = data.get();
+                if (b == '\n') {
+                    if (receivedLine(takeLine())) {
+                        return true;
+                    }
+                } else {
+                    m_line.write(b);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Discard a partial line, before the handler is used for another
+         * connection.
+         */
+        protected void resetLine() {
+            m_line.reset();
+        }
+
+        private String takeLine() {
+            final String line = new String(m_line.toByteArray(), Charset.defaultCharset());
+            m_line.reset();
+            return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+        }
+    }
+
+    private final Selector m_selector;
+
+    private final Thread m_thread;
+
+    private final Queue<Connection> m_pending = new ConcurrentLinkedQueue<Connection>();
+
+    private final ByteBuffer m_readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private volatile boolean m_running = true;
+
+    /**
+     * Create a client with its own selector thread.
+     *
+     * @param name the name of the selector thread
+     */
+    public AsyncSocketClient(final String name) throws IOException {
+        m_selector = Selector.open();
+        m_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runSelector();
+            }
+        }, name);
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * The client that is shared by all of the asynchronous monitors.
+     */
+    public static synchronized AsyncSocketClient getInstance() {
+        if (s_instance == null) {
+            try {
+                s_instance = new AsyncSocketClient("AsyncSocketClient");
+            } catch (final IOException e) {
+                throw new IllegalStateException("Unable to open a selector for asynchronous polling", e);
+            }
+        }
+        return s_instance;
+    }
+
+    /**
+     * Start a connection. This returns right away and the handler is called
+     * on the selector thread, including when the connection fails.
+     *
+     * @param address the address to connect to
+     * @param timeout the connect and read timeout in milliseconds
+     * @param handler drives the conversation
+     */
+    public void connect(final InetSocketAddress address, final int timeout, final Handler handler) {
+        final Connection connection = new Connection(address, timeout, handler);
+        if (!m_running) {
+            connection.fail(new IOException("The asynchronous socket client has been closed"));
+            return;
+        }
+        m_pending.add(connection);
+        m_selector.wakeup();
+        if (!m_running && m_pending.remove(connection)) {
+            // the selector thread stopped before it could pick this one up
+            connection.fail(new IOException("The asynchronous socket client has been closed"));
+        }
+    }
+
+    /**
+     * Stop the selector thread and fail every connection that is still open.
+     */
+    @Override
+    public void close() throws IOException {
+        m_running = false;
+        m_selector.wakeup();
+        try {
+            m_thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSelector() {
+        long nextTimeoutCheck = System.nanoTime();
+        try {
+            while (m_running) {
+                m_selector.select(TIMEOUT_RESOLUTION);
+
+                Connection connection;
+                while ((connection = m_pending.poll()) != null) {
+                    connection.open();
+                }
+
+                final Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Connection) key.attachment()).ready(key);
+                }
+
+                final long now = System.nanoTime();
+                if (now - nextTimeoutCheck >= 0) {
+                    for (final SelectionKey key : m_selector.keys()) {
+                        ((Connection) key.attachment()).checkTimeout(now);
+                    }
+                    nextTimeoutCheck = now + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_RESOLUTION);
+                }
+            }
+        } catch (final ClosedSelectorException e) {
+            LOG.debug("Selector closed", e);
+        } catch (final Throwable t) {
+            LOG.error("Unexpected error in the selector thread, failing all open connections", t);
+        } finally {
+            m_running = false;
+            final IOException closed = new IOException("The asynchronous socket client has been closed");
+            for (final SelectionKey key : m_selector.keys()) {
+                ((Connection) key.attachment()).fail(closed);
+            }
+            Connection connection;
+            while ((connection = m_pending.poll()) != null) {
+                connection.fail(closed);
+            }
+            try {
+                m_selector.close();
+            } catch (final IOException e) {
+                LOG.debug("Error closing selector", e);
+            }
+        }
+    }
+
+    private final class Connection {
+        private final InetSocketAddress m_address;
+        private final long m_timeoutNanos;
+        private final Handler m_handler;
+        private SocketChannel m_channel;
+        private ByteBuffer m_request;
+        private long m_deadline;
+        private boolean m_done = false;
+
+        public Connection(final InetSocketAddress address, final int timeout, final Handler handler) {
+            m_address = address;
+            m_timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            m_handler = handler;
+        }
+
+        public void open() {
+            try {
+                m_channel = SocketChannel.open();
+                m_channel.configureBlocking(false);
+                m_deadline = System.nanoTime() + m_timeoutNanos;
+                if (m_channel.connect(m_address)) {
+                    m_channel.register(m_selector, 0, this);
+                    connected(m_channel.keyFor(m_selector));
+                } else {
+                    m_channel.register(m_selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (final IOException e) {
+                fail(e);
+            } catch (final RuntimeException e) {
+                fail(new IOException(e.getMessage(), e));
+            }
+        }
+
+        public void ready(final SelectionKey key) {
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isConnectable()) {
+                    if (m_channel.finishConnect()) {
+                        connected(key);
+                    }
+                } else if (key.isWritable()) {
+                    m_channel.write(m_request);
+                    if (!m_request.hasRemaining()) {
+                        m_request = null;
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    progress();
+                } else if (key.isReadable()) {
+                    m_readBuffer.clear();
+                    final int read = m_channel.read(m_readBuffer);
+                    m_readBuffer.flip();
+                    progress();
+                    if (read < 0) {
+                        finish(m_handler.received(m_readBuffer, true));
+                    } else if (m_handler.received(m_readBuffer, false)) {
+                        finish(true);
+                    }
+                }
+            } catch (final IOException e) {
+                fail(e);
+            } catch (final RuntimeException e) {
+                LOG.warn("Unexpected error polling {}", m_address, e);
+                fail(new IOException(e.getMessage(), e));
+            }
+        }
+
+        private void connected(final SelectionKey key) {
+            progress();
+            m_request = m_handler.connected();
+            if (m_request == null) {
+                finish(true);
+            } else if (m_request.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                m_request = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void progress() {
+            m_deadline = System.nanoTime() + m_timeoutNanos;
+        }
+
+        public void checkTimeout(final long now) {
+            if (now - m_deadline >= 0) {
+                fail(new SocketTimeoutException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(m_timeoutNanos) + "ms"));
+            }
+        }
+
+        /**
+         * @param handled false if the handler still expects to be told that
+         *            the connection failed
+         */
+        private void finish(final boolean handled) {
+            if (!handled) {
+                fail(new IOException("Connection closed by " + m_address));
+                return;
+            }
+            m_done = true;
+            closeChannel();
+        }
+
+        public void fail(final IOException e) {
+            if (m_done) {
+                return;
+            }
+            m_done = true;
+            closeChannel();
+            try {
+                m_handler.failed(e);
+            } catch (final Throwable t) {
+                LOG.warn("Unexpected error handling the failure of a connection to {}", m_address, t);
+            }
+        }
+
+        private void closeChannel() {
+            if (m_channel == null) {
+                return;
+            }
+            try {
+                // closing the channel also cancels its key
+                m_channel.close();
+            } catch (final IOException e) {
+                LOG.debug("Error closing connection to {}", m_address, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An asynchronous {@link TcpMonitor}. It takes the same parameters and
+ * reports the same results, but the connections are made on the selector
+ * thread of the {@link AsyncSocketClient} instead of on the poller thread.
+ * The <code>strict-timeout</code> parameter is ignored since it would mean
+ * sleeping on the selector thread.
+ */
+@Distributable
+public class AsyncTcpMonitor extends AbstractAsyncServiceMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncTcpMonitor.class);
+
+    private static final int DEFAULT_PORT = -1;
+
+    private static final int DEFAULT_RETRY = 0;
+
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /**
+     * The client that makes the connections.
+     */
+    protected AsyncSocketClient getSocketClient() {
+        return AsyncSocketClient.getInstance();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void poll(final MonitoredService svc, final Map<String, Object> parameters, final PollCallback callback) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int port = ParameterMap.getKeyedInteger(parameters, TcpMonitor.PARAMETER_PORT, DEFAULT_PORT);
+        if (port == DEFAULT_PORT) {
+            throw new RuntimeException("AsyncTcpMonitor: required parameter 'port' is not present in supplied properties.");
+        }
+
+        final TcpPoll poll = new TcpPoll(getSocketClient(), new InetSocketAddress(iface.getAddress(), port),
+                                         ParameterMap.getKeyedString(parameters, TcpMonitor.PARAMETER_BANNER, null),
+                                         ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY),
+                                         Math.max(10, ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT)),
+                                         callback);
+        LOG.debug("poll: address = {}, port = {}, retry = {}", InetAddressUtils.str(iface.getAddress()), port, poll.m_retry);
+        poll.start();
+    }
+
+    private static final class TcpPoll extends AsyncSocketClient.LineHandler {
+        private final AsyncSocketClient m_client;
+        private final InetSocketAddress m_address;
+        private final String m_banner;
+        private final int m_retry;
+        private final int m_timeout;
+        private final PollCallback m_callback;
+        private int m_attempt = 0;
+        private long m_startTime;
+        private PollStatus m_status = PollStatus.unavailable();
+
+        public TcpPoll(final AsyncSocketClient client, final InetSocketAddress address, final String banner, final int retry, final int timeout, final PollCallback callback) {
+            m_client = client;
+            m_address = address;
+            m_banner = banner;
+            m_retry = retry;
+            m_timeout = timeout;
+            m_callback = callback;
+        }
+
+        public void start() {
+            resetLine();
+            m_startTime = System.nanoTime();
+            m_client.connect(m_address, m_timeout, this);
+        }
+
+        private double elapsedTimeInMillis() {
+            return (System.nanoTime() - m_startTime) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        private boolean isBannerRequired() {
+            return m_banner != null && m_banner.length() > 0 && !m_banner.equals("*");
+        }
+
+        @Override
+        public ByteBuffer connected() {
+            LOG.debug("AsyncTcpMonitor: connected to host: {} on port: {}", m_address.getAddress(), m_address.getPort());
+
+            // We're connected, so upgrade status to unresponsive
+            m_status = PollStatus.unresponsive();
+
+            if (!isBannerRequired()) {
+                m_status = PollStatus.available(elapsedTimeInMillis());
+                m_callback.complete(m_status);
+                return null;
+            }
+
+            // nothing to send, just wait for the banner
+            return ByteBuffer.allocate(0);
+        }
+
+        @Override
+        protected boolean receivedLine(final String response) {
+            final double responseTime = elapsedTimeInMillis();
+            LOG.debug("poll: banner = {}", response);
+            LOG.debug("poll: responseTime= {}ms", responseTime);
+
+            //Could it be a regex?
+            if (m_banner.charAt(0) == '~') {
+                if (!response.matches(m_banner.substring(1))) {
+                    m_status = PollStatus.unavailable("Banner does not match Regex '" + m_banner + "'");
+                } else {
+                    m_status = PollStatus.available(responseTime);
+                }
+            } else {
+                if (response.indexOf(m_banner) > -1) {
+                    m_status = PollStatus.available(responseTime);
+                } else {
+                    m_status = PollStatus.unavailable("Banner: '" + response + "' does not contain match string '" + m_banner + "'");
+                }
+            }
+            nextAttempt();
+            return true;
+        }
+
+        @Override
+        protected boolean receivedEndOfStream() {
+            // closed without a banner, the service stays unresponsive
+            nextAttempt();
+            return true;
+        }
+
+        @Override
+        public void failed(final IOException e) {
+            final String hostAddress = InetAddressUtils.str(m_address.getAddress());
+            if (e instanceof NoRouteToHostException) {
+                final String reason = "No route to host exception for address " + hostAddress;
+                LOG.debug(reason, e);
+                m_status = PollStatus.unavailable(reason);
+                m_callback.complete(m_status);
+                return;
+            } else if (e instanceof InterruptedIOException) {
+                final String reason = "did not connect to host within " + m_timeout + "ms";
+                LOG.debug(reason);
+                m_status = PollStatus.unavailable(reason);
+            } else if (e instanceof ConnectException) {
+                final String reason = "Connection exception for address: " + m_address.getAddress();
+                LOG.debug(reason, e);
+                m_status = PollStatus.unavailable(reason);
+            } else {
+                final String reason = "IOException while polling address: " + m_address.getAddress();
+                LOG.debug(reason, e);
+                m_status = PollStatus.unavailable(reason);
+            }
+            nextAttempt();
+        }
+
+        private void nextAttempt() {
+            m_attempt++;
+            if (!m_status.isAvailable() && m_attempt <= m_retry) {
+                start();
+            } else {
+                m_callback.complete(m_status);
+            }
+        }
+    }
+
+}
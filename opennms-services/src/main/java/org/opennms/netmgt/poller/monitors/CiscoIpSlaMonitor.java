@@ -280,8 +280,17 @@ final public class CiscoIpSlaMonitor extends SnmpMonitorStrategy {
         try {
             LOG.debug("poll: SnmpAgentConfig address: {}", agentConfig);
 
+            // Get the configured ip sla tags along with the latest oper sense,
+            // oper state, type and RTT of every ip sla in a single walk
+            final SnmpObjId adminTagOid = SnmpObjId.get(RTT_ADMIN_TAG_OID);
+            final SnmpObjId operSenseOid = SnmpObjId.get(RTT_LATEST_OPERSENSE_OID);
+            final SnmpObjId operStateOid = SnmpObjId.get(RTT_OPER_STATE_OID);
+            final SnmpObjId adminTypeOid = SnmpObjId.get(RTT_ADMIN_TYPE_OID);
+            final SnmpObjId latestRttOid = SnmpObjId.get(RTT_LATEST_OID);
+            Map<SnmpObjId, Map<SnmpInstId, SnmpValue>> rttResults = getColumnValues(agentConfig, "CiscoIpSlaMonitor", adminTagOid, operSenseOid, operStateOid, adminTypeOid, latestRttOid);
+
             // Get all configured ip sla tags
-            Map<SnmpInstId, SnmpValue> tagResults = SnmpUtils.getOidValues(agentConfig,"CiscoIpSlaMonitor",SnmpObjId.get(RTT_ADMIN_TAG_OID));
+            Map<SnmpInstId, SnmpValue> tagResults = rttResults.get(adminTagOid);
             if (tagResults == null) {
                 LOG.debug("No admin tags received! ");
                 status = PollStatus.unavailable("No admin tags received! ");
@@ -295,7 +304,7 @@ final public class CiscoIpSlaMonitor extends SnmpMonitorStrategy {
                 if (tagResults.get(ipslaInstance).toString().equals(adminTag)) {
 
                     // Get all operation sense
-                    Map<SnmpInstId, SnmpValue> operSenseResults = SnmpUtils.getOidValues(agentConfig,"CiscoIpSlaMonitor",SnmpObjId.get(RTT_LATEST_OPERSENSE_OID));
+                    Map<SnmpInstId, SnmpValue> operSenseResults = rttResults.get(operSenseOid);
                     if (operSenseResults == null) {
                         LOG.debug("No latest oper sense received! ");
                         status = PollStatus.unavailable("No latest oper sense received! ");
@@ -303,7 +312,7 @@ final public class CiscoIpSlaMonitor extends SnmpMonitorStrategy {
                     }
             
                     // Get all operation states
-                    Map<SnmpInstId, SnmpValue> operStateResults = SnmpUtils.getOidValues(agentConfig,"CiscoIpSlaMonitor",SnmpObjId.get(RTT_OPER_STATE_OID));
+                    Map<SnmpInstId, SnmpValue> operStateResults = rttResults.get(operStateOid);
                     if (operStateResults == null) {
                         LOG.debug("No oper state received! ");
                         status = PollStatus.unavailable("No oper state received! ");
@@ -311,7 +320,7 @@ final public class CiscoIpSlaMonitor extends SnmpMonitorStrategy {
                     }
                     
                     // Get all configured ip sla types
-                    Map<SnmpInstId, SnmpValue> adminTypeResults = SnmpUtils.getOidValues(agentConfig,"CiscoIpSlaMonitor",SnmpObjId.get(RTT_ADMIN_TYPE_OID));
+                    Map<SnmpInstId, SnmpValue> adminTypeResults = rttResults.get(adminTypeOid);
                     if (adminTypeResults == null) {
                         LOG.debug("No ip sla types received! ");
                         status = PollStatus.unavailable("No ip sla types received! ");
@@ -319,7 +328,7 @@ final public class CiscoIpSlaMonitor extends SnmpMonitorStrategy {
                     }
                     
                     // Get all configured ip sla latest RTT
-                    Map<SnmpInstId, SnmpValue> latestRttResults = SnmpUtils.getOidValues(agentConfig,"CiscoIpSlaMonitor",SnmpObjId.get(RTT_LATEST_OID));
+                    Map<SnmpInstId, SnmpValue> latestRttResults = rttResults.get(latestRttOid);
                     if (latestRttResults == null) {
                         LOG.debug("No ip sla latest RTT received! ");
                         status = PollStatus.unavailable("No ip sla latest RTT received! ");
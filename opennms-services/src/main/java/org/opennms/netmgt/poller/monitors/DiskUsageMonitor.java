@@ -214,8 +214,9 @@ final public class DiskUsageMonitor extends SnmpMonitorStrategy {
                 	SnmpObjId hrStorageUsedSnmpObject = SnmpObjId.get(hrStorageUsed + "." + e.getKey().toString());
                 	
                 	
-                	SnmpValue snmpSize = SnmpUtils.get(agentConfig, hrStorageSizeSnmpObject);
-                	SnmpValue snmpUsed = SnmpUtils.get(agentConfig, hrStorageUsedSnmpObject);
+                	SnmpValue[] snmpValues = SnmpGetBatcher.getInstance().get(agentConfig, new SnmpObjId[] { hrStorageSizeSnmpObject, hrStorageUsedSnmpObject });
+                	SnmpValue snmpSize = snmpValues[0];
+                	SnmpValue snmpUsed = snmpValues[1];
                 	float calculatedPercentage = ( (( (float)snmpSize.toLong() - (float)snmpUsed.toLong() ) / (float)snmpSize.toLong() ) ) * 100;
                 
                   LOG.debug("DiskUsageMonitor: calculatedPercentage={} percentFree={}", calculatedPercentage, percentFree);
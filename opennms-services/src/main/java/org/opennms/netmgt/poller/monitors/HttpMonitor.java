@@ -81,12 +81,12 @@ public class HttpMonitor extends AbstractServiceMonitor {
     /**
      * Default HTTP ports.
      */
-    private static final int[] DEFAULT_PORTS = { 80, 8080, 8888};
+    static final int[] DEFAULT_PORTS = { 80, 8080, 8888};
 
     /**
      * Default retries.
      */
-    private static final int DEFAULT_RETRY = 0;
+    static final int DEFAULT_RETRY = 0;
 
     /**
      * Default URL to 'GET'
@@ -97,7 +97,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
      * Default timeout. Specifies how long (in milliseconds) to block waiting for data from the
      * monitored interface.
      */
-    private static final int DEFAULT_TIMEOUT = 3000; // 3 second timeout on read()
+    static final int DEFAULT_TIMEOUT = 3000; // 3 second timeout on read()
 
     public static final String PARAMETER_VERBOSE = "verbose";
     public static final String PARAMETER_USER_AGENT = "user-agent";
@@ -267,11 +267,11 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return ParameterMap.getKeyedString(parameters, key, null);
     }
     
-    private static String determineResponseText(final Map<String, Object> parameters) {
+    static String determineResponseText(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE_TEXT, null);
     }
 
-    private static String determineResponse(final Map<String, Object> parameters) {
+    static String determineResponse(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE, determineDefaultResponseRange(determineUrl(parameters)));
     }
 
@@ -296,6 +296,60 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return "100-399";
     }
     
+    static String determineVirtualHost(final String nodeLabel, final NetworkInterface<InetAddress> iface, final Map<String, Object> parameters) {
+        final boolean res = ParameterMap.getKeyedBoolean(parameters, PARAMETER_RESOLVE_IP, false);
+        final boolean useNodeLabel = ParameterMap.getKeyedBoolean(parameters, PARAMETER_NODE_LABEL_HOST_NAME, false);
+        String virtualHost = ParameterMap.getKeyedString(parameters, PARAMETER_HOST_NAME, null);
+
+        if (isBlank(virtualHost)) {
+            if (res) {
+                return iface.getAddress().getCanonicalHostName();
+            } else if (useNodeLabel) {
+                return nodeLabel;
+            } else {
+                final InetAddress addr = iface.getAddress();
+                final String host = InetAddressUtils.str(iface.getAddress());
+                // Wrap IPv6 addresses in square brackets
+                if (addr instanceof Inet6Address) {
+                    return "[" + host + "]";
+                } else {
+                    return host;
+                }
+            }
+        }
+
+        return virtualHost;
+    }
+
+    static String buildCommand(final String nodeLabel, final NetworkInterface<InetAddress> iface, final Map<String, Object> parameters) {
+        /*
+         * Sorting this map just in case the poller gets changed and the Map
+         * is no longer a TreeMap.
+         */
+        final StringBuilder sb = new StringBuilder();
+        sb.append("GET ").append(determineUrl(parameters)).append(" HTTP/1.1\r\n");
+        sb.append("Connection: CLOSE \r\n");
+        sb.append("Host: ").append(determineVirtualHost(nodeLabel, iface, parameters)).append("\r\n");
+        sb.append("User-Agent: ").append(determineUserAgent(parameters)).append("\r\n");
+        
+        if (determineBasicAuthentication(parameters) != null) {
+            sb.append("Authorization: Basic ").append(determineBasicAuthentication(parameters)).append("\r\n");
+        }
+
+        for (final String parmKey : parameters.keySet()) {
+            if (HEADER_PATTERN.matcher(parmKey).matches()) {
+                sb.append(determineHttpHeader(parameters, parmKey)).append("\r\n");
+            }
+        }
+
+        sb.append("\r\n");
+        final String cmd = sb.toString();
+        if (HttpMonitor.LOG.isDebugEnabled()) {
+            HttpMonitor.LOG.debug("checkStatus: cmd:\n", cmd);
+        }
+        return cmd;
+    }
+
     private static boolean isNotBlank(String str) {
         return org.apache.commons.lang.StringUtils.isNotBlank(str);
     }
@@ -327,7 +381,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
             m_nodeLabel = nodeLabel;
             m_iface = iface;
             m_parameters = parameters;
-            buildCommand();
+            m_httpCmd = buildCommand(nodeLabel, iface, parameters);
             m_serviceStatus = PollStatus.SERVICE_UNAVAILABLE;
             m_responseText = determineResponseText(parameters);
         }
@@ -356,31 +410,6 @@ public class HttpMonitor extends AbstractServiceMonitor {
             m_responseTextFound  = found;
         }
 
-        private String determineVirtualHost(final NetworkInterface<InetAddress> iface, final Map<String, Object> parameters) {
-            final boolean res = ParameterMap.getKeyedBoolean(parameters, PARAMETER_RESOLVE_IP, false);
-            final boolean useNodeLabel = ParameterMap.getKeyedBoolean(parameters, PARAMETER_NODE_LABEL_HOST_NAME, false);
-            String virtualHost = ParameterMap.getKeyedString(parameters, PARAMETER_HOST_NAME, null);
-
-            if (isBlank(virtualHost)) {
-                if (res) {
-                    return iface.getAddress().getCanonicalHostName();
-                } else if (useNodeLabel) {
-                    return m_nodeLabel;
-                } else {
-                    final InetAddress addr = iface.getAddress();
-                    final String host = InetAddressUtils.str(iface.getAddress());
-                    // Wrap IPv6 addresses in square brackets
-                    if (addr instanceof Inet6Address) {
-                        return "[" + host + "]";
-                    } else {
-                        return host;
-                    }
-                }
-            }
-
-            return virtualHost;
-        }
-
         public boolean checkCurrentLineMatchesResponseText() {
             if (!m_headerFinished && StringUtils.isEmpty(m_currentLine)) {
                 m_headerFinished = true;  // Set to true when all HTTP headers has been processed.
@@ -554,35 +583,6 @@ public class HttpMonitor extends AbstractServiceMonitor {
             m_headerFinished = false; // Clean header flag for each HTTP request.
         }
 
-        private void buildCommand() {
-            /*
-             * Sorting this map just in case the poller gets changed and the Map
-             * is no longer a TreeMap.
-             */
-            final StringBuilder sb = new StringBuilder();
-            sb.append("GET ").append(determineUrl(m_parameters)).append(" HTTP/1.1\r\n");
-            sb.append("Connection: CLOSE \r\n");
-            sb.append("Host: ").append(determineVirtualHost(m_iface, m_parameters)).append("\r\n");
-            sb.append("User-Agent: ").append(determineUserAgent(m_parameters)).append("\r\n");
-            
-            if (determineBasicAuthentication(m_parameters) != null) {
-                sb.append("Authorization: Basic ").append(determineBasicAuthentication(m_parameters)).append("\r\n");
-            }
-
-            for (final String parmKey : m_parameters.keySet()) {
-                if (HEADER_PATTERN.matcher(parmKey).matches()) {
-                    sb.append(determineHttpHeader(m_parameters, parmKey)).append("\r\n");
-                }
-            }
-
-            sb.append("\r\n");
-            final String cmd = sb.toString();
-            if (HttpMonitor.LOG.isDebugEnabled()) {
-                HttpMonitor.LOG.debug("checkStatus: cmd:\n", cmd);
-            }
-            m_httpCmd = cmd;
-        }
-
         public void setReason(final String reason) {
             m_reason = reason;
         }
@@ -170,7 +170,7 @@ final public class PrTableMonitor extends SnmpMonitorStrategy {
                     LOG.debug("PrTableMonitor.poll: found errorFlag=1");
 
                     SnmpObjId prTableErrorMsgSnmpObject = SnmpObjId.get(prTableErrorMsg + "." + e.getKey().toString());
-                    String PrErrorMsg = SnmpUtils.get(agentConfig,prTableErrorMsgSnmpObject).toDisplayString();
+                    String PrErrorMsg = SnmpGetBatcher.getInstance().get(agentConfig,prTableErrorMsgSnmpObject).toDisplayString();
 
                     //Stash the error in an ArrayList to then enumerate over later
                     errorStringReturn.add(PrErrorMsg);
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpConfiguration;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Coalesces SNMP GET requests that poller threads issue to the same agent at
+ * about the same time into a single multi-varbind GET.
+ * </p>
+ *
+ * <p>
+ * The first thread to ask for a value from an agent opens a batch and waits
+ * for the batch window to pass, or for the batch to reach the agent's
+ * max-vars-per-pdu. Every other thread asking the same agent in the meantime
+ * adds its OIDs to that batch and blocks. The first thread then sends one GET
+ * for all of the OIDs and hands each caller the values it asked for.
+ * </p>
+ *
+ * <p>
+ * Requests are only coalesced for agents configured with equal
+ * {@link SnmpAgentConfig}s, so the timeout, retries and port a monitor sets
+ * are honored. SNMPv1 requests are never coalesced: a v1 agent answers a GET
+ * with a missing OID with a noSuchName error for the whole PDU, which would
+ * fail every service in the batch.
+ * </p>
+ *
+ * <p>
+ * The window is read from the <code>org.opennms.netmgt.poller.snmp.batchWindow</code>
+ * system property, in milliseconds. Batching is off by default: the first
+ * thread of a batch always waits for the whole window, which adds the window
+ * to the poll and to the response time the monitor reports.
+ * </p>
+ */
+public class SnmpGetBatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(SnmpGetBatcher.class);
+
+    /** Constant <code>WINDOW_PROPERTY="org.opennms.netmgt.poller.snmp.batchWindow"</code> */
+    public static final String WINDOW_PROPERTY = "org.opennms.netmgt.poller.snmp.batchWindow";
+
+    private static final long DEFAULT_WINDOW = 0;
+
+    private static final SnmpGetBatcher s_instance = new SnmpGetBatcher(Long.getLong(WINDOW_PROPERTY, DEFAULT_WINDOW));
+
+    private final long m_window;
+
+    private final Map<SnmpAgentConfig, Batch> m_openBatches = new HashMap<SnmpAgentConfig, Batch>();
+
+    private static class Batch {
+        private final SnmpAgentConfig m_agentConfig;
+        private final int m_maxVars;
+        private final Map<SnmpObjId, Integer> m_index = new LinkedHashMap<SnmpObjId, Integer>();
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private boolean m_closed = false;
+        private SnmpValue[] m_values;
+        private RuntimeException m_failure;
+
+        Batch(SnmpAgentConfig agentConfig) {
+            m_agentConfig = agentConfig;
+            m_maxVars = Math.max(1, agentConfig.getMaxVarsPerPdu());
+        }
+
+        boolean canAdd(SnmpObjId[] oids) {
+            if (m_closed) return false;
+            int added = 0;
+            for (SnmpObjId oid : oids) {
+                if (!m_index.containsKey(oid)) added++;
+            }
+            return m_index.size() + added <= m_maxVars;
+        }
+
+        void add(SnmpObjId[] oids) {
+            for (SnmpObjId oid : oids) {
+                if (!m_index.containsKey(oid)) {
+                    m_index.put(oid, Integer.valueOf(m_index.size()));
+                }
+            }
+        }
+
+        boolean isFull() {
+            return m_index.size() >= m_maxVars;
+        }
+
+        SnmpObjId[] getOids() {
+            return m_index.keySet().toArray(new SnmpObjId[m_index.size()]);
+        }
+
+        void complete(SnmpValue[] values, RuntimeException failure) {
+            m_values = values;
+            m_failure = failure;
+            m_done.countDown();
+        }
+
+        SnmpValue[] getValues(SnmpObjId[] oids) throws InterruptedException {
+            m_done.await();
+            if (m_failure != null) {
+                throw m_failure;
+            }
+            SnmpValue[] values = new SnmpValue[oids.length];
+            for (int i = 0; i < oids.length; i++) {
+                values[i] = m_values[m_index.get(oids[i]).intValue()];
+            }
+            return values;
+        }
+    }
+
+    /**
+     * <p>getInstance</p>
+     *
+     * @return the batcher shared by the SNMP monitors
+     */
+    public static SnmpGetBatcher getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * <p>Constructor for SnmpGetBatcher.</p>
+     *
+     * @param window how long, in milliseconds, to wait for other requests to the same agent
+     */
+    public SnmpGetBatcher(long window) {
+        m_window = window;
+    }
+
+    /**
+     * <p>get</p>
+     *
+     * @param agentConfig a {@link org.opennms.netmgt.snmp.SnmpAgentConfig} object.
+     * @param oid a {@link org.opennms.netmgt.snmp.SnmpObjId} object.
+     * @return the value, or null if the agent did not answer
+     */
+    public SnmpValue get(SnmpAgentConfig agentConfig, SnmpObjId oid) {
+        return get(agentConfig, new SnmpObjId[] { oid })[0];
+    }
+
+    /**
+     * <p>get</p>
+     *
+     * @param agentConfig a {@link org.opennms.netmgt.snmp.SnmpAgentConfig} object.
+     * @param oids the OIDs to get
+     * @return the values in the same order as <code>oids</code>, null where the agent did not answer
+     */
+    public SnmpValue[] get(SnmpAgentConfig agentConfig, SnmpObjId[] oids) {
+        if (m_window <= 0 || agentConfig.getVersion() == SnmpConfiguration.VERSION1 || oids.length > agentConfig.getMaxVarsPerPdu()) {
+            return getValues(agentConfig, oids);
+        }
+
+        Batch batch;
+        boolean leader = false;
+        synchronized (this) {
+            batch = m_openBatches.get(agentConfig);
+            if (batch == null || !batch.canAdd(oids)) {
+                if (batch != null) {
+                    closeBatch(batch);
+                }
+                batch = new Batch(agentConfig);
+                m_openBatches.put(agentConfig, batch);
+                leader = true;
+            }
+            batch.add(oids);
+            if (batch.isFull()) {
+                closeBatch(batch);
+            }
+        }
+
+        try {
+            if (leader) {
+                sendBatch(batch);
+            }
+            return batch.getValues(oids);
+        } catch (InterruptedException e) {
+            LOG.debug("Interrupted while waiting for a batched SNMP get from {}", agentConfig.getAddress());
+            Thread.currentThread().interrupt();
+            return new SnmpValue[oids.length];
+        }
+    }
+
+    private void sendBatch(Batch batch) throws InterruptedException {
+        try {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + m_window;
+                long remaining = m_window;
+                while (!batch.m_closed && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                closeBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                closeBatch(batch);
+            }
+            // let the other callers in the batch have their values before giving up
+            execute(batch);
+            throw e;
+        }
+        execute(batch);
+    }
+
+    private void execute(Batch batch) {
+        SnmpObjId[] oids = batch.getOids();
+        LOG.debug("Sending batched SNMP get of {} OIDs to {}", oids.length, batch.m_agentConfig.getAddress());
+        try {
+            batch.complete(getValues(batch.m_agentConfig, oids), null);
+        } catch (RuntimeException e) {
+            batch.complete(null, e);
+        }
+    }
+
+    private SnmpValue[] getValues(SnmpAgentConfig agentConfig, SnmpObjId[] oids) {
+        SnmpValue[] values = doGet(agentConfig, oids);
+        if (values == null || values.length != oids.length) {
+            // the strategies answer a failed request with fewer values than were asked for
+            return new SnmpValue[oids.length];
+        }
+        return values;
+    }
+
+    private void closeBatch(Batch batch) {
+        batch.m_closed = true;
+        if (m_openBatches.get(batch.m_agentConfig) == batch) {
+            m_openBatches.remove(batch.m_agentConfig);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Send a single GET to the agent.
+     *
+     * @param agentConfig a {@link org.opennms.netmgt.snmp.SnmpAgentConfig} object.
+     * @param oids the OIDs to get
+     * @return the values returned by the agent
+     */
+    protected SnmpValue[] doGet(SnmpAgentConfig agentConfig, SnmpObjId[] oids) {
+        if (oids.length == 1) {
+            return new SnmpValue[] { SnmpUtils.get(agentConfig, oids[0]) };
+        }
+        return SnmpUtils.get(agentConfig, oids);
+    }
+}
@@ -272,7 +272,7 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
                     }
                 }
 
-                SnmpValue result = SnmpUtils.get(agentConfig, snmpObjectId);
+                SnmpValue result = SnmpGetBatcher.getInstance().get(agentConfig, snmpObjectId);
 
                 if (result != null) {
                     svcParams.setProperty("observedValue", getStringValue(result));
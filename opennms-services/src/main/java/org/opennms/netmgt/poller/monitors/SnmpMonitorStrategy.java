@@ -29,12 +29,21 @@
 package org.opennms.netmgt.poller.monitors;
 
 import java.math.BigInteger;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.snmp.CollectionTracker;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,6 +87,37 @@ public abstract class SnmpMonitorStrategy extends AbstractServiceMonitor {
     public abstract PollStatus poll(MonitoredService svc, Map<String, Object> parameters);
     
 
+    /**
+     * Walk several columns of a table with a single walker, so that each
+     * GETNEXT or GETBULK asks the agent for the next row of every column
+     * instead of walking the table once per column.
+     *
+     * @param agentConfig a {@link org.opennms.netmgt.snmp.SnmpAgentConfig} object.
+     * @param name the name of the walker
+     * @param columns the columns to walk
+     * @return the values of each column by instance, in the order of <code>columns</code>
+     * @throws java.lang.InterruptedException if interrupted while waiting for the walk
+     */
+    protected static Map<SnmpObjId, Map<SnmpInstId, SnmpValue>> getColumnValues(SnmpAgentConfig agentConfig, String name, SnmpObjId... columns) throws InterruptedException {
+        final Map<SnmpObjId, Map<SnmpInstId, SnmpValue>> results = new LinkedHashMap<SnmpObjId, Map<SnmpInstId, SnmpValue>>();
+        final CollectionTracker[] trackers = new CollectionTracker[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            final Map<SnmpInstId, SnmpValue> column = new LinkedHashMap<SnmpInstId, SnmpValue>();
+            results.put(columns[i], column);
+            trackers[i] = new ColumnTracker(columns[i]) {
+                @Override
+                protected void storeResult(SnmpResult res) {
+                    column.put(res.getInstance(), res.getValue());
+                }
+            };
+        }
+
+        SnmpWalker walker = SnmpUtils.createWalker(agentConfig, name, trackers);
+        walker.start();
+        walker.waitFor();
+        return results;
+    }
+
     public String getStringValue(SnmpValue result) {
     	if (hex)
     		return result.toHexString();
@@ -43,7 +43,9 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollCallback;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.rrd.RrdDataSource;
@@ -108,8 +110,42 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
     /** {@inheritDoc} */
     @Override
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        PollStatus status = m_serviceMonitor.poll(svc, parameters);
+        return processStatus(svc, parameters, m_serviceMonitor.poll(svc, parameters));
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the monitor can poll without blocking the caller
+     */
+    public boolean isAsync() {
+        return m_serviceMonitor instanceof AsyncServiceMonitor;
+    }
+
+    /**
+     * Start an asynchronous poll. The callback gets the status as the monitor
+     * reported it, on a thread of the monitor, and it is up to the caller to
+     * hand it to {@link #processStatus(MonitoredService, Map, PollStatus)}
+     * on a thread that may block.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @param callback a {@link org.opennms.netmgt.poller.PollCallback} object.
+     */
+    public void poll(MonitoredService svc, Map<String, Object> parameters, PollCallback callback) {
+        ((AsyncServiceMonitor) m_serviceMonitor).poll(svc, parameters, callback);
+    }
 
+    /**
+     * Store the response times of a poll and apply the latency thresholds
+     * and the <code>invert-status</code> parameter to it.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @param status the status returned by the monitor
+     * @return the status of the service
+     */
+    public PollStatus processStatus(MonitoredService svc, Map<String, Object> parameters, PollStatus status) {
         if (!status.getProperties().isEmpty()) {
             storeResponseTime(svc, new LinkedHashMap<String, Number>(status.getProperties()), parameters);
         }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import org.opennms.netmgt.poller.PollCallback;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -47,6 +48,21 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the service can be polled with {@link #poll(PollCallback)}
+     */
+    public boolean isAsync();
+
+    /**
+     * Poll the service without blocking the calling thread. The callback is
+     * called exactly once, on a thread that is allowed to block.
+     *
+     * @param callback a {@link org.opennms.netmgt.poller.PollCallback} object.
+     */
+    public void poll(PollCallback callback);
+
     /**
      * <p>getCurrentTime</p>
      *
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.pollables;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.IntervalLatencyHistogram;
+import org.opennms.core.utils.LatencyHistogram;
+
+/**
+ * Latency statistics for the polls of a {@link PollableNetwork}: how long
+ * polls take, overall and for each service name, and how often a poll had to
+ * be postponed because its node was locked.
+ *
+ * Poll durations are reported for the last complete interval of
+ * {@link IntervalLatencyHistogram#DEFAULT_INTERVAL}, so that the percentiles
+ * follow the monitors as they slow down instead of averaging over the
+ * whole uptime.
+ */
+public class PollStatistics {
+
+    private final IntervalLatencyHistogram m_pollDurations = new IntervalLatencyHistogram();
+
+    private final ConcurrentMap<String, IntervalLatencyHistogram> m_pollDurationsByService = new ConcurrentHashMap<String, IntervalLatencyHistogram>();
+
+    private final AtomicLong m_lockUnavailable = new AtomicLong();
+
+    /**
+     * Record how long a poll of a service took.
+     *
+     * @param svcName the name of the service polled
+     * @param duration the duration of the poll in milliseconds
+     */
+    public void recordPoll(String svcName, long duration) {
+        m_pollDurations.record(duration);
+        getRecorder(svcName).record(duration);
+    }
+
+    /**
+     * Count a poll that was postponed because the tree lock of its node was
+     * unavailable.
+     */
+    public void recordLockUnavailable() {
+        m_lockUnavailable.incrementAndGet();
+    }
+
+    /**
+     * <p>getPollDurations</p>
+     *
+     * @return the durations of all polls in the last interval
+     */
+    public LatencyHistogram getPollDurations() {
+        return m_pollDurations.getIntervalHistogram();
+    }
+
+    /**
+     * <p>getPollDurations</p>
+     *
+     * @param svcName the name of a service
+     * @return the durations of the polls of services named <code>svcName</code> in the last interval
+     */
+    public LatencyHistogram getPollDurations(String svcName) {
+        return getRecorder(svcName).getIntervalHistogram();
+    }
+
+    /**
+     * <p>getPollDurationsByService</p>
+     *
+     * @return the poll durations in the last interval of each service name, sorted by name
+     */
+    public Map<String, LatencyHistogram> getPollDurationsByService() {
+        final Map<String, LatencyHistogram> durations = new TreeMap<String, LatencyHistogram>();
+        for (final Map.Entry<String, IntervalLatencyHistogram> entry : m_pollDurationsByService.entrySet()) {
+            durations.put(entry.getKey(), entry.getValue().getIntervalHistogram());
+        }
+        return durations;
+    }
+
+    /**
+     * <p>getLockUnavailableCount</p>
+     *
+     * @return the number of polls postponed because a node was locked
+     */
+    public long getLockUnavailableCount() {
+        return m_lockUnavailable.get();
+    }
+
+    /**
+     * Forget the poll durations recorded so far. The count of postponed polls
+     * is collected as a counter and keeps on counting.
+     */
+    public void reset() {
+        m_pollDurations.reset();
+        m_pollDurationsByService.clear();
+    }
+
+    private IntervalLatencyHistogram getRecorder(String svcName) {
+        IntervalLatencyHistogram histogram = m_pollDurationsByService.get(svcName);
+        if (histogram == null) {
+            final IntervalLatencyHistogram created = new IntervalLatencyHistogram();
+            histogram = m_pollDurationsByService.putIfAbsent(svcName, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+}
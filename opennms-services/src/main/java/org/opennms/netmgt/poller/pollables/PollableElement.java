@@ -212,6 +212,16 @@ public abstract class PollableElement {
         getLockRoot().obtainTreeLock(timeout);
     }
     
+    /**
+     * Obtain the tree lock only if it is available right away. A caller
+     * that gets true must call {@link #releaseTreeLock()}.
+     *
+     * @return true if the lock was obtained
+     */
+    public boolean tryObtainTreeLock() {
+        return getLockRoot().tryObtainTreeLock();
+    }
+
     /**
      * <p>releaseTreeLock</p>
      */
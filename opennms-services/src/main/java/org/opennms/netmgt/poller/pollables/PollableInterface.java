@@ -216,11 +216,22 @@ public class PollableInterface extends PollableContainer {
         return (critSvc != null ? critSvc : super.selectPollElement());
     }
     
+    /**
+     * Whether a poll of the element calls its monitor. While the interface is
+     * down only its critical service is polled, if it has one.
+     *
+     * @param elem a {@link org.opennms.netmgt.poller.pollables.PollableElement} object.
+     * @return a boolean.
+     */
+    public boolean isMemberPolled(PollableElement elem) {
+        PollableService critSvc = getCriticalService();
+        return getStatus().isUp() || critSvc == null || elem == critSvc;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected PollStatus poll(PollableElement elem) {
-        PollableService critSvc = getCriticalService();
-        if (getStatus().isUp() || critSvc == null || elem == critSvc)
+        if (isMemberPolled(elem))
             return super.poll(elem);
     
         return PollStatus.down();
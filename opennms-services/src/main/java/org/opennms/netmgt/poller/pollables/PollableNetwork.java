@@ -51,6 +51,8 @@ public class PollableNetwork extends PollableContainer {
 
     private final PollContext m_context;
 
+    private final PollStatistics m_statistics = new PollStatistics();
+
     /**
      * <p>Constructor for PollableNetwork.</p>
      *
@@ -71,6 +73,15 @@ public class PollableNetwork extends PollableContainer {
         return m_context;
     }
 
+    /**
+     * <p>getStatistics</p>
+     *
+     * @return the latency statistics of the polls of this network
+     */
+    public PollStatistics getStatistics() {
+        return m_statistics;
+    }
+
     /**
      * <p>createNode</p>
      *
@@ -314,6 +325,13 @@ public class PollableNetwork extends PollableContainer {
     @Override
     public void obtainTreeLock(long timeout) {
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean tryObtainTreeLock() {
+        return true;
+    }
+
     /**
      * <p>releaseTreeLock</p>
      */
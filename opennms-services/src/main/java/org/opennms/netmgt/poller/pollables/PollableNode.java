@@ -32,9 +32,9 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.xml.event.Event;
@@ -55,57 +55,52 @@ public class PollableNode extends PollableContainer {
      * @author brozow
      */
     public class Lock {
-        private Thread m_owner = null;
-        private int m_obtainCount = 0;
-        
-        public synchronized void obtain() {
-            
-            if (m_owner != Thread.currentThread()) {
+        private final ReentrantLock m_lock = new ReentrantLock();
+
+        public void obtain() {
+            if (!m_lock.isHeldByCurrentThread()) {
                 LOG.debug("Trying to obtain lock for {}", PollableNode.this);
-                while (m_owner != null) {
-                    try { wait();} catch (InterruptedException e) { throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);}
-                }
-                m_owner = Thread.currentThread();
-                LOG.debug("Obtained lock for {}", PollableNode.this);
             }
-            m_obtainCount++;
+            try {
+                m_lock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);
+            }
         }
-        
-        public synchronized void obtain(long timeout) {
-            
-            if (m_owner != Thread.currentThread()) {
+
+        public void obtain(long timeout) {
+            if (!m_lock.isHeldByCurrentThread()) {
                 LOG.debug("Trying to obtain lock for {}", PollableNode.this);
-                long now = System.currentTimeMillis();
-                long endTime = (timeout == 0 ? Long.MAX_VALUE : now+timeout);
-                while (m_owner != null) {
-                    try { wait(endTime-now);} catch (InterruptedException e) { throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);}
-                    now = System.currentTimeMillis();
-                    if (m_owner != null && now >= endTime) {
-                        throw new LockUnavailable("Unable to obtain lock for "+PollableNode.this+" before timeout");
-                    }
+            }
+            try {
+                if (!m_lock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new LockUnavailable("Unable to obtain lock for "+PollableNode.this+" before timeout");
                 }
-                m_owner = Thread.currentThread();
-                LOG.debug("Obtained lock for {}", PollableNode.this);
+            } catch (InterruptedException e) {
+                throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);
             }
-            m_obtainCount++;
         }
-        
-        public synchronized void release() {
-            if (m_owner == Thread.currentThread()) {
-                m_obtainCount--;
-                if (m_obtainCount == 0) {
-                    LOG.debug("Releasing lock for {}", PollableNode.this);
-                    m_owner = null;
-                    notifyAll();
-                }
+
+        /**
+         * Obtain the lock only if no other thread holds it.
+         *
+         * @return true if the lock was obtained and must be released
+         */
+        public boolean tryObtain() {
+            return m_lock.tryLock();
+        }
+
+        public void release() {
+            if (m_lock.isHeldByCurrentThread()) {
+                m_lock.unlock();
             }
         }
 
         /**
          * @return
          */
-        public synchronized boolean isLockAvailable() {
-            return m_owner == null;
+        public boolean isLockAvailable() {
+            return !m_lock.isLocked();
         }
 
     }
@@ -312,6 +307,12 @@ public class PollableNode extends PollableContainer {
             m_lock.obtain(timeout);
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public boolean tryObtainTreeLock() {
+        return m_lock.tryObtain();
+    }
+
     /**
      * <p>releaseTreeLock</p>
      */
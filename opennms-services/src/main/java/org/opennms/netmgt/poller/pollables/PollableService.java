@@ -31,12 +31,14 @@ package org.opennms.netmgt.poller.pollables;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.poller.InetNetworkInterface;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.PollCallback;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.PostponeNecessary;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
@@ -57,9 +59,20 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private final class PollRunner implements Runnable {
     	
     	private volatile PollStatus m_pollStatus;
+    	private final PollStatus m_asyncStatus;
+
+    	public PollRunner(PollStatus asyncStatus) {
+    	    m_asyncStatus = asyncStatus;
+    	}
+
             @Override
 		public void run() {
-		    doPoll();
+		    m_pendingStatus = m_asyncStatus;
+		    try {
+		        doPoll();
+		    } finally {
+		        m_pendingStatus = null;
+		    }
 		    getNode().processStatusChange(new Date());
 		    m_pollStatus = getStatus();
 		}
@@ -75,6 +88,14 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+
+    /**
+     * The result of an asynchronous poll, used by the next call to
+     * {@link #poll()} while the tree lock is held.
+     */
+    private volatile PollStatus m_pendingStatus;
+
+    private final AtomicBoolean m_asyncPollInProgress = new AtomicBoolean(false);
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -174,9 +195,9 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     /**
      * <p>setPollConfig</p>
      *
-     * @param pollConfig a {@link org.opennms.netmgt.poller.pollables.PollableServiceConfig} object.
+     * @param pollConfig a {@link org.opennms.netmgt.poller.pollables.PollConfig} object.
      */
-    public void setPollConfig(PollableServiceConfig pollConfig) {
+    public void setPollConfig(PollConfig pollConfig) {
         m_pollConfig = pollConfig;
     }
 
@@ -187,7 +208,12 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        PollStatus newStatus = m_pendingStatus;
+        if (newStatus == null) {
+            newStatus = m_pollConfig.poll();
+        } else {
+            m_pendingStatus = null;
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -309,10 +335,7 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     @Override
     public void updateStatus(PollStatus newStatus) {
         
-        if (!getContext().isServiceUnresponsiveEnabled()) {
-            if (newStatus.equals(PollStatus.unresponsive()))
-                newStatus = PollStatus.down();
-        }
+        newStatus = normalizeStatus(newStatus);
         
         PollStatus currentStatus = getStatus();
         if (!currentStatus.equals(newStatus)) {
@@ -328,6 +351,22 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
         }
     }
 
+    private PollStatus normalizeStatus(PollStatus newStatus) {
+        if (!getContext().isServiceUnresponsiveEnabled()) {
+            if (newStatus.equals(PollStatus.unresponsive()))
+                return PollStatus.down();
+        }
+        return newStatus;
+    }
+
+    /**
+     * Whether a poll result leaves the status of this service as it is, in
+     * which case nothing in the node tree above it changes either.
+     */
+    private boolean isStatusUnchanged(PollStatus newStatus) {
+        return newStatus.isUnknown() || getStatus().equals(normalizeStatus(newStatus));
+    }
+
     /**
      * <p>setSchedule</p>
      *
@@ -384,7 +423,41 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public void run() {
-        doRun(500);
+        if (m_pollConfig.isAsync()) {
+            startAsyncPoll();
+        } else {
+            doRun(500, null);
+        }
+    }
+
+    /**
+     * Start polling the service and process the result once it arrives,
+     * without holding on to a poller thread in the meantime. The next poll
+     * is scheduled right away, so if the service is due again before the
+     * result has arrived that poll is skipped.
+     */
+    private void startAsyncPoll() {
+        if (!m_asyncPollInProgress.compareAndSet(false, true)) {
+            LOG.debug("Skipping poll of service {}, the previous poll has not completed yet", this);
+            return;
+        }
+        LOG.debug("Start Scheduled Asynchronous Poll of service {}", this);
+        m_pollConfig.poll(new PollCallback() {
+            @Override
+            public void complete(final PollStatus status) {
+                try {
+                    if (isDeleted()) {
+                        LOG.debug("Discarding the poll result of deleted service {}", PollableService.this);
+                    } else {
+                        doRun(0, status);
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Unexpected exception processing the poll result of service {}", PollableService.this, e);
+                } finally {
+                    m_asyncPollInProgress.set(false);
+                }
+            }
+        });
     }
     
     /**
@@ -393,25 +466,51 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      * @return a {@link org.opennms.netmgt.poller.PollStatus} object.
      */
     public PollStatus doRun() {
-    	return doRun(0);
+    	return doRun(0, null);
     }
 
-    private PollStatus doRun(int timeout) {
+    private PollStatus doRun(int timeout, PollStatus asyncStatus) {
         long startDate = System.currentTimeMillis();
         LOG.debug("Start Scheduled Poll of service {}", this);
         PollStatus status;
         if (getContext().isNodeProcessingEnabled()) {
-            PollRunner r = new PollRunner();
+            /*
+             * Most polls find the service the way it was. The monitor is
+             * called without holding the node lock, so the services of a
+             * node are polled in parallel, and the lock is only waited for
+             * when the status changes and the node tree has to be updated.
+             */
+            if (asyncStatus == null && getInterface().isMemberPolled(this)) {
+                asyncStatus = m_pollConfig.poll();
+            }
+            if (asyncStatus != null && isStatusUnchanged(asyncStatus)) {
+                if (tryObtainTreeLock()) {
+                    try {
+                        resetStatusChanged();
+                    } finally {
+                        releaseTreeLock();
+                    }
+                }
+                LOG.debug("Finish Scheduled Poll of service {}, started at {}, status unchanged", this, new Date(startDate));
+                return getStatus();
+            }
+            PollRunner r = new PollRunner(asyncStatus);
             try {
                 withTreeLock(r, timeout);
             } catch (LockUnavailable e) {
                 LOG.info("Postponing poll for {}", this, e);
+                getNetwork().getStatistics().recordLockUnavailable();
                 throw new PostponeNecessary("LockUnavailable postpone poll");
             }
             status = r.getPollStatus();
         }
         else {
-            doPoll();
+            m_pendingStatus = asyncStatus;
+            try {
+                doPoll();
+            } finally {
+                m_pendingStatus = null;
+            }
             processStatusChange(new Date());
             status = getStatus();
         }
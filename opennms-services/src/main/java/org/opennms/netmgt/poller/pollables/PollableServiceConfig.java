@@ -30,6 +30,8 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.config.PollOutagesConfig;
@@ -38,6 +40,7 @@ import org.opennms.netmgt.config.poller.Downtime;
 import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
+import org.opennms.netmgt.poller.PollCallback;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
@@ -62,6 +65,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     private Timer m_timer;
     private Service m_configService;
     private ServiceMonitor m_serviceMonitor;
+    private final Executor m_executor;
 
     /**
      * <p>Constructor for PollableServiceConfig.</p>
@@ -73,11 +77,27 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
      * @param timer a {@link org.opennms.netmgt.scheduler.Timer} object.
      */
     public PollableServiceConfig(PollableService svc, PollerConfig pollerConfig, PollOutagesConfig pollOutagesConfig, Package pkg, Timer timer) {
+        this(svc, pollerConfig, pollOutagesConfig, pkg, timer, null);
+    }
+
+    /**
+     * <p>Constructor for PollableServiceConfig.</p>
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.pollables.PollableService} object.
+     * @param pollerConfig a {@link org.opennms.netmgt.config.PollerConfig} object.
+     * @param pollOutagesConfig a {@link org.opennms.netmgt.config.PollOutagesConfig} object.
+     * @param pkg a {@link org.opennms.netmgt.config.poller.Package} object.
+     * @param timer a {@link org.opennms.netmgt.scheduler.Timer} object.
+     * @param executor runs the results of asynchronous polls, or <code>null</code>
+     *            to always poll synchronously
+     */
+    public PollableServiceConfig(PollableService svc, PollerConfig pollerConfig, PollOutagesConfig pollOutagesConfig, Package pkg, Timer timer, Executor executor) {
         m_service = svc;
         m_pollerConfig = pollerConfig;
         m_pollOutagesConfig = pollOutagesConfig;
         m_pkg = pkg;
         m_timer = timer;
+        m_executor = executor;
         m_configService = findService(pkg);
 
         ServiceMonitor monitor = getServiceMonitor();
@@ -110,6 +130,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         synchronized(this) {
             packageName = m_pkg.getName();
         }
+        final long start = System.currentTimeMillis();
         try {
             ServiceMonitor monitor = getServiceMonitor();
             LOG.debug("Polling {} using pkg {}", packageName, m_service);
@@ -119,7 +140,76 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         } catch (Throwable e) {
             LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
             return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
+        } finally {
+            recordPoll(start);
+        }
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return a boolean.
+     */
+    @Override
+    public boolean isAsync() {
+        if (m_executor == null) {
+            return false;
         }
+        final ServiceMonitor monitor = getServiceMonitor();
+        return monitor instanceof LatencyStoringServiceMonitorAdaptor && ((LatencyStoringServiceMonitorAdaptor) monitor).isAsync();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The monitor calls back on its own I/O thread, so the response time
+     * is stored and the callback is called on the executor instead.
+     */
+    @Override
+    public void poll(final PollCallback callback) {
+        String packageName = null;
+        synchronized(this) {
+            packageName = m_pkg.getName();
+        }
+        final LatencyStoringServiceMonitorAdaptor monitor = (LatencyStoringServiceMonitorAdaptor) getServiceMonitor();
+        final Map<String,Object> parameters = getParameters();
+        LOG.debug("Polling {} asynchronously using pkg {}", m_service, packageName);
+        final long start = System.currentTimeMillis();
+        try {
+            monitor.poll(m_service, parameters, new PollCallback() {
+                @Override
+                public void complete(final PollStatus status) {
+                    recordPoll(start);
+                    final Runnable processor = new Runnable() {
+                        @Override
+                        public void run() {
+                            PollStatus result;
+                            try {
+                                result = monitor.processStatus(m_service, parameters, status);
+                            } catch (Throwable e) {
+                                LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+                                result = PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
+                            }
+                            LOG.debug("Finish polling {} asynchronously, result = {}", m_service, result);
+                            callback.complete(result);
+                        }
+                    };
+                    try {
+                        m_executor.execute(processor);
+                    } catch (RejectedExecutionException e) {
+                        LOG.debug("Poller threads are not accepting work, processing the result of {} on the monitor thread", m_service);
+                        processor.run();
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+            callback.complete(PollStatus.down("Unexpected exception while polling "+m_service+". "+e));
+        }
+    }
+
+    private void recordPoll(final long start) {
+        m_service.getNetwork().getStatistics().recordPoll(m_service.getSvcName(), System.currentTimeMillis() - start);
     }
 
     private synchronized ServiceMonitor getServiceMonitor() {
@@ -40,6 +40,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.fiber.PausableFiber;
 import org.opennms.core.queue.FifoQueueImpl;
+import org.opennms.core.utils.IntervalLatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -90,6 +91,41 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
      */
     private volatile long m_numTasksExecuted = 0;
 
+    private final IntervalLatencyHistogram m_lagHistogram = new IntervalLatencyHistogram();
+
+    private final IntervalLatencyHistogram m_queueWaitHistogram = new IntervalLatencyHistogram();
+
+    /**
+     * Wraps a runnable scheduled to run after an interval so that it only
+     * becomes ready once the interval has elapsed.
+     */
+    private class TimeKeeper implements ReadyRunnable {
+        private final ReadyRunnable m_runnable;
+        private final long m_timeToRun;
+
+        public TimeKeeper(ReadyRunnable runnable, long timeToRun) {
+            m_runnable = runnable;
+            m_timeToRun = timeToRun;
+        }
+
+        public long getTimeToRun() {
+            return m_timeToRun;
+        }
+
+        @Override
+        public boolean isReady() {
+            return getCurrentTime() >= m_timeToRun && m_runnable.isReady();
+        }
+
+        @Override
+        public void run() {
+            m_runnable.run();
+        }
+
+        @Override
+        public String toString() { return m_runnable.toString()+" (ready in "+Math.max(0, m_timeToRun-getCurrentTime())+"ms)"; }
+    }
+
     /**
      * This queue extends the standard FIFO queue instance so that it is
      * possible to peek at an instance without removing it from the queue.
@@ -197,22 +233,17 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
     /** {@inheritDoc} */
     @Override
     public synchronized void schedule(long interval, final ReadyRunnable runnable) {
-        final long timeToRun = getCurrentTime()+interval;
-        ReadyRunnable timeKeeper = new ReadyRunnable() {
-            @Override
-            public boolean isReady() {
-                return getCurrentTime() >= timeToRun && runnable.isReady();
-            }
-            
-            @Override
-            public void run() {
-                runnable.run();
-            }
-            
-            @Override
-            public String toString() { return runnable.toString()+" (ready in "+Math.max(0, timeToRun-getCurrentTime())+"ms)"; }
-        };
-        schedule(timeKeeper, interval);
+        schedule(new TimeKeeper(runnable, getCurrentTime()+interval), interval);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This scheduler has no jitter window, the runnable is run right away.
+     */
+    @Override
+    public void scheduleWithJitter(final ReadyRunnable runnable) {
+        schedule(0, runnable);
     }
     
     /* (non-Javadoc)
@@ -444,9 +475,13 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
                                 in.remove();
 
                                 // Add runnable to the execution queue
-                                m_runner.execute(readyRun);
+                                m_runner.execute(m_queueWaitHistogram.recordWait(readyRun));
                                 ++runned;
 
+                                if (readyRun instanceof TimeKeeper) {
+                                    m_lagHistogram.record(Math.max(0, getCurrentTime() - ((TimeKeeper) readyRun).getTimeToRun()));
+                                }
+
                                 // Increment the execution counter
                                 ++m_numTasksExecuted;
 
@@ -498,4 +533,25 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
     public long getNumTasksExecuted() {
         return m_numTasksExecuted;
     }
+
+    /**
+     * Returns the distribution of the time between the moment runnables
+     * scheduled after an interval were due and the moment they were handed
+     * to the thread pool, interval by interval.
+     *
+     * @return the scheduling lag histogram
+     */
+    public IntervalLatencyHistogram getSchedulingLagHistogram() {
+        return m_lagHistogram;
+    }
+
+    /**
+     * Returns the distribution of the time runnables waited in the queue of
+     * the thread pool before a thread picked them up, interval by interval.
+     *
+     * @return the queue wait histogram
+     */
+    public IntervalLatencyHistogram getQueueWaitHistogram() {
+        return m_queueWaitHistogram;
+    }
 }
@@ -127,7 +127,7 @@ public class Schedule {
      */
     public void schedule() {
         m_scheduled = true;
-        schedule(0);
+        m_timer.scheduleWithJitter(new ScheduleEntry(++m_currentExpirationCode));
     }
 
     private void schedule(long interval) {
@@ -45,4 +45,14 @@ public interface ScheduleTimer extends Timer {
      */
     public void schedule(long interval, ReadyRunnable schedule);
 
+    /**
+     * Schedule a runnable that is placed for the first time somewhere within
+     * the jitter window of the timer, so that the runnables placed together
+     * do not all run at once. A timer without a jitter window runs it right
+     * away.
+     *
+     * @param schedule a {@link org.opennms.netmgt.scheduler.ReadyRunnable} object.
+     */
+    public void scheduleWithJitter(ReadyRunnable schedule);
+
 }
@@ -0,0 +1,567 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.opennms.core.utils.IntervalLatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A scheduler that keeps its {@link ReadyRunnable ready runnables} in a
+ * hierarchical timing wheel. Scheduling and expiring a runnable costs the
+ * same no matter how many are scheduled, so unlike {@link LegacyScheduler}
+ * the worker thread never has to look at runnables that are not due yet.
+ *
+ * <p>Time is divided into ticks. The first wheel has a slot for each of the
+ * next {@link #WHEEL_SIZE} ticks, and every following wheel has a slot for
+ * each revolution of the wheel below it. Once the first wheel completes a
+ * revolution, the next slot of the wheel above is emptied and its runnables
+ * are spread over the wheels below, down to the tick they are due in.</p>
+ *
+ * <p>Runnables that are scheduled with {@link #scheduleWithJitter(ReadyRunnable)},
+ * as services are when they are first scheduled, are started at a random
+ * point within the jitter window. This spreads their start times, and so
+ * every later run, evenly over the interval instead of starting them all at
+ * once. Runnables scheduled without a delay still run on the next tick.</p>
+ *
+ * <p>Runnables that are due but are not ready are checked again after
+ * {@link #RETRY_DELAY} milliseconds. The delay between the time a runnable
+ * was due and the time it was handed to the thread pool is kept as the
+ * scheduling lag.</p>
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /**
+     * The default length of a tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK = 100L;
+
+    /**
+     * The number of slots in each wheel.
+     */
+    public static final int WHEEL_SIZE = 256;
+
+    private static final int WHEEL_BITS = 8;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int LEVELS = 4;
+
+    /**
+     * The number of ticks after which all runnables are placed in the last
+     * slot of the top wheel.
+     */
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    /**
+     * How long to wait before checking a runnable that was not ready again.
+     */
+    public static final long RETRY_DELAY = 1000L;
+
+    /**
+     * A runnable and the time it is due. Entries in the same slot are kept
+     * in a singly linked list.
+     */
+    private static final class Entry {
+        private final ReadyRunnable m_runnable;
+        private long m_deadline;
+        private long m_tick;
+        private Entry m_next;
+
+        private Entry(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+    }
+
+    /**
+     * The slots of each wheel. They are only touched by the worker thread.
+     */
+    private final Entry[][] m_wheels = new Entry[LEVELS][WHEEL_SIZE];
+
+    /**
+     * Runnables that were scheduled since the last tick. The worker moves
+     * them into the wheels.
+     */
+    private final ConcurrentLinkedQueue<Entry> m_incoming = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * The pool of threads that are used to executed the runnable instances
+     * scheduled by the class' instance.
+     */
+    private final ExecutorService m_runner;
+
+    private final long m_tickLength;
+
+    private final long m_jitter;
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    /**
+     * The time of tick 0.
+     */
+    private long m_startTime;
+
+    /**
+     * The last tick whose runnables have been expired.
+     */
+    private long m_currentTick;
+
+    /**
+     * Runnables whose tick has come while the wheels are being turned.
+     */
+    private Entry m_expired;
+
+    /**
+     * The status for this fiber.
+     */
+    private volatile int m_status;
+
+    /**
+     * The worker thread that executes this instance.
+     */
+    private volatile Thread m_worker;
+
+    /**
+     * Used to keep track of the number of tasks that have been executed.
+     */
+    private volatile long m_numTasksExecuted = 0;
+
+    private volatile double m_schedulingLag = 0;
+
+    private volatile long m_maxSchedulingLag = 0;
+
+    private final IntervalLatencyHistogram m_lagHistogram = new IntervalLatencyHistogram();
+
+    private final IntervalLatencyHistogram m_queueWaitHistogram = new IntervalLatencyHistogram();
+
+    /**
+     * Constructs a new instance of the scheduler with the default tick and
+     * no jitter.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK, 0L);
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickLength
+     *            The length of a tick in milliseconds. Runnables are started
+     *            at most this long after they are due.
+     * @param jitter
+     *            The window in milliseconds over which runnables that are
+     *            scheduled with jitter are spread, or 0 to start them right
+     *            away.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickLength, final long jitter) {
+        Assert.isTrue(tickLength > 0, "tickLength must be positive");
+        Assert.isTrue(jitter >= 0, "jitter must not be negative");
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_tickLength = tickLength;
+        m_jitter = jitter;
+        m_startTime = getCurrentTime();
+        m_currentTick = 0;
+        m_worker = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} in {}ms", runnable, interval);
+
+        m_incoming.add(new Entry(runnable, getCurrentTime() + Math.max(0, interval)));
+        m_scheduled.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void scheduleWithJitter(final ReadyRunnable runnable) {
+        schedule(m_jitter > 0 ? ThreadLocalRandom.current().nextLong(m_jitter) : 0, runnable);
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of runnables waiting in the wheels
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted;
+    }
+
+    /**
+     * Returns the moving average of the time between the moment runnables
+     * were due and the moment they were handed to the thread pool.
+     *
+     * @return the scheduling lag in milliseconds
+     */
+    public long getSchedulingLag() {
+        return Math.round(m_schedulingLag);
+    }
+
+    /**
+     * Returns the largest scheduling lag seen since the scheduler was
+     * started.
+     *
+     * @return the scheduling lag in milliseconds
+     */
+    public long getMaxSchedulingLag() {
+        return m_maxSchedulingLag;
+    }
+
+    /**
+     * Returns the distribution of the scheduling lag of the runnables
+     * dispatched, interval by interval.
+     *
+     * @return the scheduling lag histogram
+     */
+    public IntervalLatencyHistogram getSchedulingLagHistogram() {
+        return m_lagHistogram;
+    }
+
+    /**
+     * Returns the distribution of the time runnables waited in the queue of
+     * the thread pool before a thread picked them up, interval by interval.
+     *
+     * @return the queue wait histogram
+     */
+    public IntervalLatencyHistogram getQueueWaitHistogram() {
+        return m_queueWaitHistogram;
+    }
+
+    /**
+     * The main method of the scheduler. Once every tick, it moves the new
+     * runnables into the wheels, turns the wheels up to the current time
+     * and hands the runnables that are due and ready to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        for (;;) {
+            synchronized (this) {
+
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+
+                    m_status = RUNNING;
+                }
+
+                final long sleep = m_startTime + (m_currentTick + 1) * m_tickLength - getCurrentTime();
+                if (sleep > 0) {
+                    try {
+                        wait(sleep);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                    continue;
+                }
+            }
+
+            try {
+                advance(getCurrentTime());
+            } catch (RejectedExecutionException e) {
+                if (m_runner.isShutdown()) {
+                    break;
+                }
+                LOG.error("run: failed to execute a ready runnable", e);
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Moves the new runnables into the wheels and expires every tick up to
+     * the given time.
+     */
+    void advance(final long now) {
+        final long nowTick = (now - m_startTime) / m_tickLength;
+
+        if (nowTick < m_currentTick) {
+            // the clock was set back, count the ticks from here on
+            LOG.warn("advance: the clock went back {}ms", (m_currentTick - nowTick) * m_tickLength);
+            m_startTime = now - m_currentTick * m_tickLength;
+        }
+
+        Entry entry;
+        while ((entry = m_incoming.poll()) != null) {
+            add(entry);
+        }
+        dispatch(now);
+
+        while (m_currentTick < nowTick) {
+            final long tick = ++m_currentTick;
+
+            // cascade the wheels above once the wheel below went round
+            for (int level = 1; level < LEVELS; level++) {
+                final long shifted = tick >>> (WHEEL_BITS * (level - 1));
+                if ((shifted & WHEEL_MASK) != 0) {
+                    break;
+                }
+                final int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                Entry e = m_wheels[level][slot];
+                m_wheels[level][slot] = null;
+                while (e != null) {
+                    final Entry next = e.m_next;
+                    place(e);
+                    e = next;
+                }
+            }
+
+            final int slot = (int) (tick & WHEEL_MASK);
+            Entry e = m_wheels[0][slot];
+            m_wheels[0][slot] = null;
+            while (e != null) {
+                final Entry next = e.m_next;
+                e.m_next = m_expired;
+                m_expired = e;
+                e = next;
+            }
+            dispatch(now);
+        }
+    }
+
+    private void add(final Entry entry) {
+        // round up so that no runnable starts early
+        entry.m_tick = (entry.m_deadline - m_startTime + m_tickLength - 1) / m_tickLength;
+        place(entry);
+    }
+
+    /**
+     * Puts the entry into the lowest wheel whose revolution covers its tick.
+     */
+    private void place(final Entry entry) {
+        final long ticks = entry.m_tick - m_currentTick;
+        if (ticks <= 0) {
+            entry.m_next = m_expired;
+            m_expired = entry;
+            return;
+        }
+
+        final long tick = ticks > MAX_TICKS ? m_currentTick + MAX_TICKS : entry.m_tick;
+        final long span = tick - m_currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && span >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        final int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        entry.m_next = m_wheels[level][slot];
+        m_wheels[level][slot] = entry;
+    }
+
+    /**
+     * Hands the expired runnables that are ready to the thread pool and
+     * checks the others again later.
+     */
+    private void dispatch(final long now) {
+        Entry e = m_expired;
+        m_expired = null;
+        while (e != null) {
+            final Entry next = e.m_next;
+            e.m_next = null;
+            if (e.m_runnable.isReady()) {
+                LOG.debug("run: found ready runnable {}", e.m_runnable);
+
+                m_scheduled.decrementAndGet();
+                m_runner.execute(m_queueWaitHistogram.recordWait(e.m_runnable));
+                ++m_numTasksExecuted;
+
+                final long lag = Math.max(0, now - e.m_deadline);
+                m_lagHistogram.record(lag);
+                m_schedulingLag += (lag - m_schedulingLag) / 16;
+                if (lag > m_maxSchedulingLag) {
+                    m_maxSchedulingLag = lag;
+                }
+            } else {
+                e.m_deadline = now + RETRY_DELAY;
+                add(e);
+            }
+            e = next;
+        }
+    }
+}
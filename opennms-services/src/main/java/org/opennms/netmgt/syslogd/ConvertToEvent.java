@@ -34,6 +34,8 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -72,13 +74,20 @@ import org.opennms.netmgt.xml.event.Event;
 final class ConvertToEvent {
     private static final Logger LOG = LoggerFactory.getLogger(ConvertToEvent.class);
 
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
     /** Constant <code>HIDDEN_MESSAGE="The message logged has been removed due"{trunked}</code> */
     protected static final String HIDDEN_MESSAGE = "The message logged has been removed due to configuration of Syslogd; it may contain sensitive data.";
 
     /**
      * The received XML event, decoded using the US-ASCII encoding.
      */
-    private final String m_eventXML;
+    private String m_eventXML;
+
+    /**
+     * The received datagram if it has not been decoded.
+     */
+    private final ByteBuffer m_data;
 
     /**
      * The Internet address of the sending agent.
@@ -101,6 +110,19 @@ final class ConvertToEvent {
 
     private static Map<String,Pattern> m_patterns = new ConcurrentHashMap<String,Pattern>();
 
+    private static volatile UeiMatcher m_ueiMatcher = null;
+
+    /**
+     * The message is only used while the event is built, so every thread
+     * parses into the same instance.
+     */
+    private static final ThreadLocal<SyslogMessage> m_messages = new ThreadLocal<SyslogMessage>() {
+        @Override
+        protected SyslogMessage initialValue() {
+            return new SyslogMessage();
+        }
+    };
+
     /**
      * Private constructor to prevent the used of <em>new</em> except by the
      * <code>make</code> method.
@@ -113,11 +135,20 @@ final class ConvertToEvent {
         m_sender = addr;
         m_port = port;
         m_eventXML = eventXml;
+        m_data = null;
+    }
+
+    private ConvertToEvent(InetAddress addr, int port, ByteBuffer data) {
+        m_sender = addr;
+        m_port = port;
+        m_eventXML = null;
+        m_data = data;
     }
 
     public static void invalidate() {
         m_parserClass = null;
         m_patterns.clear();
+        m_ueiMatcher = null;
     }
 
     /**
@@ -154,15 +185,7 @@ final class ConvertToEvent {
                                final int len, final String matchPattern, final int hostGroup, final int messageGroup,
                                final UeiList ueiList, final HideMessage hideMessage, final String discardUei)
             throws UnsupportedEncodingException, MessageDiscardedException {
-        if (m_parserClass == null) {
-            final String parser = SyslogdConfigFactory.getInstance().getParser();
-            try {
-                m_parserClass = Class.forName(parser).asSubclass(SyslogParser.class);
-            } catch (final Exception ex) {
-                LOG.debug("Unable to instantiate Syslog parser class specified in config: {}", parser, ex);
-                m_parserClass = CustomSyslogParser.class;
-            }
-        }
+        final Class<? extends SyslogParser> parserClass = getParserClass();
 
         String deZeroedData = new String(data, 0, len, "US-ASCII");
         if (deZeroedData.endsWith("\0")) {
@@ -175,11 +198,11 @@ final class ConvertToEvent {
 
         final SyslogParser parser;
         try {
-            Method m = m_parserClass.getDeclaredMethod("getParser", String.class);
+            Method m = parserClass.getDeclaredMethod("getParser", String.class);
             Object[] args = new Object[] { e.m_eventXML };
             parser = (SyslogParser)m.invoke(ConvertToEvent.class, args);
         } catch (final Exception ex) {
-            LOG.debug("Unable to get parser for class '{}'", m_parserClass.getName(), ex);
+            LOG.debug("Unable to get parser for class '{}'", parserClass.getName(), ex);
             throw new MessageDiscardedException(ex);
         }
 
@@ -198,6 +221,63 @@ final class ConvertToEvent {
         if (message == null) {
             throw new MessageDiscardedException(String.format("Unable to parse '%s'", e.m_eventXML));
         }
+        return convert(e, message, ueiList, hideMessage, discardUei);
+    }
+
+    /**
+     * Constructs a new event encapsulation instance from a received
+     * datagram without copying it.
+     *
+     * If the configured parser is the {@link TokenizingSyslogParser} the
+     * message is parsed straight from the buffer and only decoded when
+     * {@link #getXmlData()} is called, otherwise this is the same as
+     * {@link #make(InetAddress, int, byte[], int, String, int, int, UeiList, HideMessage, String)}.
+     *
+     * @param addr The remote agent's address.
+     * @param port The remote agent's port
+     * @param data The datagram, from its position to its limit. It must not
+     *        be modified while the returned instance is in use.
+     * @throws java.io.UnsupportedEncodingException
+     *          Thrown if the data buffer cannot be decoded using the
+     *          US-ASCII encoding.
+     * @throws MessageDiscardedException 
+     */
+    static ConvertToEvent make(final InetAddress addr, final int port, final ByteBuffer data,
+                               final String matchPattern, final int hostGroup, final int messageGroup,
+                               final UeiList ueiList, final HideMessage hideMessage, final String discardUei)
+            throws UnsupportedEncodingException, MessageDiscardedException {
+        if (getParserClass() != TokenizingSyslogParser.class) {
+            final byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            return make(addr, port, bytes, bytes.length, matchPattern, hostGroup, messageGroup, ueiList, hideMessage, discardUei);
+        }
+
+        final ConvertToEvent e = new ConvertToEvent(addr, port, data);
+
+        final SyslogMessage message = m_messages.get();
+        message.clear();
+        if (!new TokenizingSyslogParser(data).parse(message)) {
+            throw new MessageDiscardedException("message does not match");
+        }
+
+        LOG.debug("got syslog message {}", message);
+        return convert(e, message, ueiList, hideMessage, discardUei);
+    }
+
+    private static Class<? extends SyslogParser> getParserClass() {
+        if (m_parserClass == null) {
+            final String parser = SyslogdConfigFactory.getInstance().getParser();
+            try {
+                m_parserClass = Class.forName(parser).asSubclass(SyslogParser.class);
+            } catch (final Exception ex) {
+                LOG.debug("Unable to instantiate Syslog parser class specified in config: {}", parser, ex);
+                m_parserClass = CustomSyslogParser.class;
+            }
+        }
+        return m_parserClass;
+    }
+
+    private static ConvertToEvent convert(final ConvertToEvent e, final SyslogMessage message, final UeiList ueiList, final HideMessage hideMessage, final String discardUei) throws MessageDiscardedException {
         // Build a basic event out of the syslog message
         final String priorityTxt = message.getSeverity().toString();
         final String facilityTxt = message.getFacility().toString();
@@ -251,7 +331,8 @@ final class ConvertToEvent {
         if (ueiMatch == null) {
             LOG.warn("No ueiList configured.");
         } else {
-            for (final UeiMatch uei : ueiMatch) {
+            // only the ueiMatches that the facility, severity and literal prefilters did not rule out
+            for (final UeiMatch uei : getUeiMatcher(ueiList).getCandidates(message)) {
                 final boolean otherStuffMatches = matchFacility(uei.getFacilityCollection(), facilityTxt) &&
                                                   matchSeverity(uei.getSeverityCollection(), priorityTxt) &&
                                                   matchProcess(uei.getProcessMatch(), message.getProcessName()) && 
@@ -325,6 +406,15 @@ final class ConvertToEvent {
         return e;
     }
 
+    private static UeiMatcher getUeiMatcher(final UeiList ueiList) {
+        UeiMatcher matcher = m_ueiMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(ueiList)) {
+            matcher = new UeiMatcher(ueiList);
+            m_ueiMatcher = matcher;
+        }
+        return matcher;
+    }
+
     private static boolean matchFind(final String expression, final String input, final String context) {
         final Pattern pat = getPattern(expression);
         if (pat == null) {
@@ -491,6 +581,15 @@ final class ConvertToEvent {
      * Returns the raw XML data as a string.
      */
     String getXmlData() {
+        if (m_eventXML == null) {
+            final byte[] bytes = new byte[m_data.remaining()];
+            m_data.duplicate().get(bytes);
+            String deZeroedData = new String(bytes, US_ASCII);
+            if (deZeroedData.endsWith("\0")) {
+                deZeroedData = deZeroedData.substring(0, deZeroedData.length() - 1);
+            }
+            m_eventXML = deZeroedData;
+        }
         return m_eventXML;
     }
 
@@ -54,6 +54,10 @@ public class SyslogConnection implements Callable<Callable<?>> {
 
     private final DatagramPacket _packet;
 
+    private final InetSocketAddress _source;
+
+    private final ByteBuffer _buffer;
+
     private final String _matchPattern;
 
     private final int _hostGroup;
@@ -79,6 +83,8 @@ public class SyslogConnection implements Callable<Callable<?>> {
      */
     public SyslogConnection(final DatagramPacket packet, final String matchPattern, final int hostGroup, final int messageGroup, final UeiList ueiList, final HideMessage hideMessages, final String discardUei) {
         _packet = copyPacket(packet);
+        _source = null;
+        _buffer = null;
         _matchPattern = matchPattern;
         _hostGroup = hostGroup;
         _messageGroup = messageGroup;
@@ -88,7 +94,9 @@ public class SyslogConnection implements Callable<Callable<?>> {
     }
 
     public SyslogConnection(final InetSocketAddress source, final ByteBuffer buffer, final String matchPattern, final int hostGroup, final int messageGroup, final UeiList ueiList, final HideMessage hideMessages, final String discardUei) {
-        _packet = copyPacket(source, buffer);
+        _packet = null;
+        _source = source;
+        _buffer = copyBuffer(buffer);
         _matchPattern = matchPattern;
         _hostGroup = hostGroup;
         _messageGroup = messageGroup;
@@ -105,7 +113,11 @@ public class SyslogConnection implements Callable<Callable<?>> {
 
         ConvertToEvent re = null;
         try {
-            re = ConvertToEvent.make(_packet, _matchPattern, _hostGroup,  _messageGroup, _ueiList, _hideMessages, _discardUei);
+            if (_buffer == null) {
+                re = ConvertToEvent.make(_packet, _matchPattern, _hostGroup,  _messageGroup, _ueiList, _hideMessages, _discardUei);
+            } else {
+                re = ConvertToEvent.make(_source.getAddress(), _source.getPort(), _buffer, _matchPattern, _hostGroup,  _messageGroup, _ueiList, _hideMessages, _discardUei);
+            }
 
             LOG.debug("Sending received packet to the SyslogProcessor queue");
 
@@ -139,20 +151,13 @@ public class SyslogConnection implements Callable<Callable<?>> {
         return null;
     }
 
-    private static DatagramPacket copyPacket(final InetSocketAddress source, final ByteBuffer buffer) {
-        byte[] message = new byte[0xffff];
-        int i = 0;
-        // Copy the buffer into the byte array
-        while (buffer.hasRemaining()) {
-            message[i++] = buffer.get();
-        }
-        DatagramPacket retPacket = new DatagramPacket(
-            message,
-            0,
-            i,
-            source.getAddress(),
-            source.getPort()
-        );
-        return retPacket;
+    /**
+     * The receiver reuses its buffer for the next datagram, so take a copy
+     * of just the bytes that were received.
+     */
+    private static ByteBuffer copyBuffer(final ByteBuffer buffer) {
+        final byte[] message = new byte[buffer.remaining()];
+        buffer.get(message);
+        return ByteBuffer.wrap(message);
     }
 }
@@ -32,9 +32,12 @@ import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.nio.channels.DatagramChannel;
+import java.util.Collections;
+import java.util.List;
 
 import org.opennms.core.fiber.Fiber;
 import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ReusePortUtils;
 import org.opennms.netmgt.config.SyslogdConfig;
 import org.opennms.netmgt.config.syslogd.HideMessage;
 import org.opennms.netmgt.config.syslogd.UeiList;
@@ -107,6 +110,11 @@ public final class SyslogHandler implements Fiber {
 
     private final String m_DiscardUei;
 
+    /**
+     * The number of threads reading from the syslog port.
+     */
+    private final int m_receivers;
+
     /**
      * Set the Trapd configuration
      */
@@ -134,6 +142,8 @@ public final class SyslogHandler implements Fiber {
 
         m_HideMessages = m_syslogdConfig.getHideMessages();
 
+        m_receivers = m_syslogdConfig.getReceivers();
+
         m_status = START_PENDING;
 
         m_dgSock = null;
@@ -161,7 +171,23 @@ public final class SyslogHandler implements Fiber {
         m_status = STARTING;
 
         try {
-            if (USE_NIO) {
+            if (m_receivers > 1) {
+                // NIO SyslogReceiver implementation with a socket per reader thread if
+                // SO_REUSEPORT is available, or else one socket shared by all of them
+
+                final List<DatagramChannel> channels = openChannels(m_receivers);
+
+                m_receiver = new SyslogReceiverNioThreadPoolImpl(
+                    channels,
+                    m_receivers / channels.size(),
+                    m_ForwardingRegexp,
+                    m_MatchingGroupHost,
+                    m_MatchingGroupMessage,
+                    m_UeiList,
+                    m_HideMessages,
+                    m_DiscardUei
+                );
+            } else if (USE_NIO) {
                 // NIO SyslogReceiver implementation
 
                 DatagramChannel channel = DatagramChannel.open();
@@ -238,6 +264,33 @@ public final class SyslogHandler implements Fiber {
         m_status = RUNNING;
     }
 
+    private InetSocketAddress getBindAddress() {
+        if (m_dgIp != null && m_dgIp.length() != 0) {
+            return new InetSocketAddress(InetAddressUtils.addr(m_dgIp), m_dgPort);
+        } else {
+            return new InetSocketAddress(m_dgPort);
+        }
+    }
+
+    /**
+     * Bind <code>count</code> channels to the syslog port with SO_REUSEPORT,
+     * so that the kernel spreads the datagrams over them. If the JVM or the
+     * operating system does not support SO_REUSEPORT, a single channel is
+     * bound instead.
+     */
+    private List<DatagramChannel> openChannels(final int count) throws IOException {
+        final InetSocketAddress address = getBindAddress();
+        final List<DatagramChannel> channels = ReusePortUtils.openChannels(address, count);
+        if (channels == null) {
+            LOG.info("SO_REUSEPORT is not supported, {} threads will share one socket on {}", count, address);
+            final DatagramChannel channel = DatagramChannel.open();
+            channel.bind(address);
+            return Collections.singletonList(channel);
+        }
+        LOG.debug("Bound {} sockets to {} with SO_REUSEPORT", count, address);
+        return channels;
+    }
+
     /**
      * <p>stop</p>
      */
@@ -85,6 +85,24 @@ public class SyslogMessage {
         m_message = message;
     }
 
+    /**
+     * Resets every field, so that a thread can parse its next message into
+     * the same instance.
+     */
+    void clear() {
+        m_facility = SyslogFacility.UNKNOWN;
+        m_severity = SyslogSeverity.UNKNOWN;
+        m_version = null;
+        m_date = null;
+        m_hostname = null;
+        m_processName = null;
+        m_processId = null;
+        m_messageId = null;
+        m_message = null;
+        m_matchedMessage = null;
+        m_fullText = null;
+    }
+
     public SyslogFacility getFacility() {
         return m_facility;
     }
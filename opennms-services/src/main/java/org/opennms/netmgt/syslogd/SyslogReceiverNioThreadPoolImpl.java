@@ -34,10 +34,15 @@ import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -65,7 +70,11 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
      */
     private volatile boolean m_stop;
 
-    private final DatagramChannel m_channel;
+    /**
+     * The channels bound to the syslog port, more than one if they were
+     * bound with SO_REUSEPORT.
+     */
+    private final List<SyslogReceiverSocket> m_sockets;
 
     /**
      * The context thread
@@ -89,17 +98,36 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
     private final ExecutorService m_socketReceivers;
 
     /**
-     * Construct a new receiver
+     * Construct a new receiver that reads from one channel with a thread
+     * per processor.
      *
-     * @param sock
+     * @param channel
      * @param matchPattern
      * @param hostGroup
      * @param messageGroup
      */
     SyslogReceiverNioThreadPoolImpl(DatagramChannel channel, String matchPattern, int hostGroup, int messageGroup,
                    UeiList ueiList, HideMessage hideMessages, String discardUei) {
+        this(Collections.singletonList(channel), Runtime.getRuntime().availableProcessors(), matchPattern, hostGroup, messageGroup, ueiList, hideMessages, discardUei);
+    }
+
+    /**
+     * Construct a new receiver that reads from each of the channels with
+     * its own threads.
+     *
+     * @param channels
+     * @param readersPerChannel
+     * @param matchPattern
+     * @param hostGroup
+     * @param messageGroup
+     */
+    SyslogReceiverNioThreadPoolImpl(List<DatagramChannel> channels, int readersPerChannel, String matchPattern, int hostGroup, int messageGroup,
+                   UeiList ueiList, HideMessage hideMessages, String discardUei) {
         m_stop = false;
-        m_channel = channel;
+        m_sockets = new ArrayList<SyslogReceiverSocket>(channels.size());
+        for (DatagramChannel channel : channels) {
+            m_sockets.add(new SyslogReceiverSocket(m_sockets.size(), channel, readersPerChannel));
+        }
         m_matchPattern = matchPattern;
         m_hostGroup = hostGroup;
         m_messageGroup = messageGroup;
@@ -120,8 +148,8 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
         // on the syslog port. By using multiple threads, we can optimize the receipt of
         // packet data from the syslog port and avoid discarding UDP syslog packets.
         m_socketReceivers = new ThreadPoolExecutor(
-            Runtime.getRuntime().availableProcessors(),
-            Runtime.getRuntime().availableProcessors(),
+            channels.size() * readersPerChannel,
+            channels.size() * readersPerChannel,
             1000L,
             TimeUnit.MILLISECONDS,
             new LinkedBlockingQueue<Runnable>(),
@@ -138,8 +166,13 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
     public void stop() throws InterruptedException {
         m_stop = true;
 
-        // Shut down the thread pool that is processing DatagramChannel.receive() calls
+        // Shut down the thread pool that is processing DatagramChannel.receive() calls,
+        // closing the channels wakes up the threads blocked in receive()
         m_socketReceivers.shutdown();
+        for (SyslogReceiverSocket socket : m_sockets) {
+            socket.unregisterMBean();
+            socket.close();
+        }
 
         // Shut down the thread pools that are executing SyslogConnection and SyslogProcessor tasks
         m_executor.shutdown();
@@ -169,11 +202,29 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
         } else
             LOG.debug("Thread context started");
 
+        for (SyslogReceiverSocket socket : m_sockets) {
+            configureSocket(socket.getChannel());
+            socket.registerMBean();
+        }
+
+        for (final SyslogReceiverSocket socket : m_sockets) {
+            for (int i = 0; i < socket.getReaders(); i++) {
+                m_socketReceivers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        receive(socket);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void configureSocket(DatagramChannel channel) {
         // set an SO timeout to make sure we don't block forever
         // if a socket is closed.
         try {
             LOG.debug("Setting socket timeout to {}ms", SOCKET_TIMEOUT);
-            m_channel.socket().setSoTimeout(SOCKET_TIMEOUT);
+            channel.socket().setSoTimeout(SOCKET_TIMEOUT);
         } catch (SocketException e) {
             LOG.warn("An I/O error occured while trying to set the socket timeout", e);
         }
@@ -181,71 +232,85 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
         // Increase the receive buffer for the socket
         try {
             LOG.debug("Attempting to set receive buffer size to {}", Integer.MAX_VALUE);
-            m_channel.socket().setReceiveBufferSize(Integer.MAX_VALUE);
-            LOG.debug("Actual receive buffer size is {}", m_channel.socket().getReceiveBufferSize());
+            channel.socket().setReceiveBufferSize(Integer.MAX_VALUE);
+            LOG.debug("Actual receive buffer size is {}", channel.socket().getReceiveBufferSize());
         } catch (SocketException e) {
             LOG.info("Failed to set the receive buffer to {}", Integer.MAX_VALUE, e);
         }
+    }
 
-        for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
-            m_socketReceivers.execute(new Runnable() {
-                public void run() {
-
-                    // set to avoid numerous tracing message
-                    boolean ioInterrupted = false;
-
-                    // Allocate a buffer that's big enough to handle any sane syslog message
-                    ByteBuffer buffer = ByteBuffer.allocate(0xffff);
-                    buffer.clear();
-
-                    // now start processing incoming requests
-                    while (!m_stop) {
-                        if (m_context.isInterrupted()) {
-                            LOG.debug("Thread context interrupted");
-                            break;
-                        }
-
-                        try {
-                            if (!ioInterrupted) {
-                                LOG.debug("Waiting on a datagram to arrive");
-                            }
-
-                            // Write the datagram into the ByteBuffer
-                            InetSocketAddress source = (InetSocketAddress)m_channel.receive(buffer);
-
-                            // Flip the buffer from write to read mode
-                            buffer.flip();
-
-                            WaterfallExecutor.waterfall(m_executor, new SyslogConnection(source, buffer, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei));
-
-                            // Clear the buffer so that it's ready for writing again
-                            buffer.clear();
-
-                            // reset the flag
-                            ioInterrupted = false; 
-                        } catch (SocketTimeoutException e) {
-                            ioInterrupted = true;
-                            continue;
-                        } catch (InterruptedIOException e) {
-                            ioInterrupted = true;
-                            continue;
-                        } catch (ExecutionException e) {
-                            LOG.error("Task execution failed in {}", this.getClass().getSimpleName(), e);
-                            break;
-                        } catch (InterruptedException e) {
-                            LOG.error("Task interrupted in {}", this.getClass().getSimpleName(), e);
-                            break;
-                        } catch (IOException e) {
-                            LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
-                            break;
-                        }
-
-                    } // end while status OK
-
-                    LOG.debug("Thread context exiting");
+    /**
+     * Read datagrams from the socket and hand them to the processors until
+     * the receiver is stopped.
+     */
+    private void receive(SyslogReceiverSocket socket) {
+        final DatagramChannel channel = socket.getChannel();
+
+        // set to avoid numerous tracing message
+        boolean ioInterrupted = false;
+
+        // Allocate a buffer that's big enough to handle any sane syslog message
+        ByteBuffer buffer = ByteBuffer.allocate(0xffff);
+        buffer.clear();
+
+        // now start processing incoming requests
+        while (!m_stop) {
+            if (m_context.isInterrupted()) {
+                LOG.debug("Thread context interrupted");
+                break;
+            }
+
+            try {
+                if (!ioInterrupted) {
+                    LOG.debug("Waiting on a datagram to arrive");
                 }
-            });
-        }
+
+                // Write the datagram into the ByteBuffer
+                InetSocketAddress source = (InetSocketAddress)channel.receive(buffer);
+
+                // Flip the buffer from write to read mode
+                buffer.flip();
+                socket.received(buffer.remaining());
+
+                try {
+                    WaterfallExecutor.waterfall(m_executor, new SyslogConnection(source, buffer, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei));
+                } catch (RejectedExecutionException e) {
+                    socket.dropped();
+                    LOG.debug("Syslog processors are shut down, discarding datagram from {}", source);
+                }
+
+                // Clear the buffer so that it's ready for writing again
+                buffer.clear();
+
+                // reset the flag
+                ioInterrupted = false; 
+            } catch (SocketTimeoutException e) {
+                ioInterrupted = true;
+                continue;
+            } catch (InterruptedIOException e) {
+                ioInterrupted = true;
+                continue;
+            } catch (ExecutionException e) {
+                socket.dropped();
+                LOG.error("Task execution failed in {}", this.getClass().getSimpleName(), e);
+                break;
+            } catch (InterruptedException e) {
+                socket.dropped();
+                LOG.error("Task interrupted in {}", this.getClass().getSimpleName(), e);
+                break;
+            } catch (ClosedChannelException e) {
+                if (!m_stop) {
+                    LOG.error("The datagram receipt port was closed, exiting", e);
+                }
+                break;
+            } catch (IOException e) {
+                LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
+                break;
+            }
+
+        } // end while status OK
+
+        LOG.debug("Thread context exiting");
     }
 
     /**
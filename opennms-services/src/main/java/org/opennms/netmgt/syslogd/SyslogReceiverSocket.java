@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A channel bound to the syslog port together with the counters of what was
+ * read from it. Several of these can be bound to the same port with
+ * SO_REUSEPORT, each with its own reader threads.
+ */
+final class SyslogReceiverSocket implements SyslogReceiverSocketMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogReceiverSocket.class);
+
+    private final int m_index;
+
+    private final DatagramChannel m_channel;
+
+    private final int m_readers;
+
+    private final AtomicLong m_datagramsReceived = new AtomicLong();
+
+    private final AtomicLong m_bytesReceived = new AtomicLong();
+
+    private final AtomicLong m_datagramsDropped = new AtomicLong();
+
+    SyslogReceiverSocket(int index, DatagramChannel channel, int readers) {
+        m_index = index;
+        m_channel = channel;
+        m_readers = readers;
+    }
+
+    DatagramChannel getChannel() {
+        return m_channel;
+    }
+
+    void received(int bytes) {
+        m_datagramsReceived.incrementAndGet();
+        m_bytesReceived.addAndGet(bytes);
+    }
+
+    void dropped() {
+        m_datagramsDropped.incrementAndGet();
+    }
+
+    @Override
+    public String getLocalAddress() {
+        try {
+            return String.valueOf(m_channel.getLocalAddress());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int getReaders() {
+        return m_readers;
+    }
+
+    @Override
+    public int getReceiveBufferSize() {
+        try {
+            return m_channel.socket().getReceiveBufferSize();
+        } catch (SocketException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getDatagramsReceived() {
+        return m_datagramsReceived.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return m_bytesReceived.get();
+    }
+
+    @Override
+    public long getDatagramsDropped() {
+        return m_datagramsDropped.get();
+    }
+
+    private ObjectName getObjectName() throws MalformedObjectNameException {
+        return new ObjectName("OpenNMS:Name=Syslogd,Socket=" + m_index);
+    }
+
+    /**
+     * Expose the counters of this socket over JMX, replacing those of an
+     * earlier socket with the same index.
+     */
+    void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(this, SyslogReceiverSocketMBean.class), name);
+        } catch (final Exception e) {
+            LOG.warn("Unable to register statistics for syslog socket {} with JMX", m_index, e);
+        }
+    }
+
+    void unregisterMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to unregister statistics for syslog socket {} from JMX", m_index, e);
+        }
+    }
+
+    void close() {
+        try {
+            m_channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close syslog socket {}", m_index, e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+/**
+ * One of the sockets that the syslog receiver reads datagrams from,
+ * registered with JMX as <code>OpenNMS:Name=Syslogd,Socket=&lt;n&gt;</code>.
+ *
+ * The datagram counts are counters since the receiver was started; collect
+ * them as counters to get receive and drop rates. Datagrams that the kernel
+ * drops because the socket's receive buffer is full never reach the socket
+ * and are not counted here; on Linux they show up in the drops column of
+ * <code>/proc/net/udp</code>.
+ */
+public interface SyslogReceiverSocketMBean {
+    /**
+     * @return the local address and port the socket is bound to
+     */
+    String getLocalAddress();
+
+    /**
+     * @return the number of threads reading from the socket
+     */
+    int getReaders();
+
+    /**
+     * @return the size of the socket's receive buffer, as granted by the kernel
+     */
+    int getReceiveBufferSize();
+
+    /**
+     * @return the number of datagrams read from the socket
+     */
+    long getDatagramsReceived();
+
+    /**
+     * @return the number of bytes read from the socket
+     */
+    long getBytesReceived();
+
+    /**
+     * @return the number of datagrams read from the socket that could not be handed to the processors
+     */
+    long getDatagramsDropped();
+}
@@ -39,6 +39,4 @@ public abstract interface SyslogdIPMgr {
 	long setNodeId(String ipAddr, long nodeId);
 	
 	long removeNodeId(String ipAddr);
-	
-	long longValue(Long result);
 }
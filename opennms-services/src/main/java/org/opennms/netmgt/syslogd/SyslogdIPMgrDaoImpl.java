@@ -32,11 +32,9 @@ package org.opennms.netmgt.syslogd;
 import java.sql.SQLException;
 //import java.sql.Statement;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 //import org.opennms.core.db.DataSourceFactory;
-import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.InetAddressNodeIdMap;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -56,9 +54,11 @@ final class SyslogdIPMgrDaoImpl implements SyslogdIPMgr{
     private IpInterfaceDao ipInt;
 
     /**
-     * A Map of IP addresses and node IDs
+     * A Map of IP addresses and node IDs, replaced as a whole when the
+     * interfaces are loaded. The map is shared by all instances, so changes
+     * to it are made while holding the class lock.
      */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
+    private static volatile InetAddressNodeIdMap m_knownips = new InetAddressNodeIdMap();
     
     public static SyslogdIPMgr getInstance() {
     	return new SyslogdIPMgrDaoImpl();
@@ -75,18 +75,19 @@ final class SyslogdIPMgrDaoImpl implements SyslogdIPMgr{
      *             error occurs.
      */
     @Override
-    public synchronized void dataSourceSync() throws SQLException {
-    	
-    	List<OnmsIpInterface> list = ipInt.findAll();
-    	
-    	m_knownips.clear();
-    	for (OnmsIpInterface one: list) {
-    		if (one != null) {
-    			m_knownips.put(InetAddressUtils.str(one.getIpAddress()), (long) one.getId());
+    public void dataSourceSync() throws SQLException {
+    	// hold the class lock so that no update to the old map is lost
+    	synchronized (SyslogdIPMgrDaoImpl.class) {
+    		List<OnmsIpInterface> list = ipInt.findAll();
+
+    		final InetAddressNodeIdMap knownips = new InetAddressNodeIdMap();
+    		for (OnmsIpInterface one: list) {
+    			if (one != null && one.getNodeId() != null) {
+    				knownips.put(one.getIpAddress(), one.getNodeId());
+    			}
     		}
-    		
+    		m_knownips = knownips;
     	}
-    	
     }
 
     /**
@@ -96,11 +97,8 @@ final class SyslogdIPMgrDaoImpl implements SyslogdIPMgr{
      * @return The node ID of the IP Address if known.
      */
     @Override
-    public synchronized long getNodeId(final String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    public long getNodeId(final String addr) {
+        return m_knownips.get(addr);
     }
 
     /**
@@ -115,7 +113,9 @@ final class SyslogdIPMgrDaoImpl implements SyslogdIPMgr{
         if (addr == null || nodeid == -1)
             return -1;
 
-        return longValue(m_knownips.put(addr, nodeid));
+        synchronized (SyslogdIPMgrDaoImpl.class) {
+            return m_knownips.put(addr, (int) nodeid);
+        }
     }
 
     /**
@@ -128,12 +128,9 @@ final class SyslogdIPMgrDaoImpl implements SyslogdIPMgr{
     public long removeNodeId(final String addr) {
         if (addr == null)
             return -1;
-        return longValue(m_knownips.remove(addr));
-    }
-
-    @Override
-    public long longValue(final Long result) {
-        return (result == null ? -1 : result);
+        synchronized (SyslogdIPMgrDaoImpl.class) {
+            return m_knownips.remove(addr);
+        }
     }
 
 } // end SyslodIPMgr
@@ -32,14 +32,9 @@ package org.opennms.netmgt.syslogd;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-
-
-
 
 import org.opennms.core.db.DataSourceFactory;
+import org.opennms.core.utils.InetAddressNodeIdMap;
 
 /**
  * This class represents a singular instance that is used to map trap IP
@@ -58,9 +53,11 @@ final class SyslogdIPMgrJDBCImpl implements SyslogdIPMgr{
     private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
 
     /**
-     * A Map of IP addresses and node IDs
+     * A Map of IP addresses and node IDs, replaced as a whole when the
+     * addresses are loaded from the database. The map is shared by all
+     * instances, so changes to it are made while holding the class lock.
      */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
+    private static volatile InetAddressNodeIdMap m_knownips = new InetAddressNodeIdMap();
     
     public static SyslogdIPMgr getInstance() {
     	return new SyslogdIPMgrJDBCImpl();
@@ -77,37 +74,41 @@ final class SyslogdIPMgrJDBCImpl implements SyslogdIPMgr{
      *             error occurs.
      */
     @Override
-    public synchronized void dataSourceSync() throws SQLException {
-        java.sql.Connection c = null;
-        Statement s = null;
-        try {
-            // Get database connection
-            c = DataSourceFactory.getInstance().getConnection();
-
-            // Run with it
-            c.setReadOnly(true);
-
-            s = c.createStatement();
-            final ResultSet rs = s.executeQuery(IP_LOAD_SQL);
-
-            if (rs != null) {
-                m_knownips.clear();
-                while (rs.next()) {
-                    m_knownips.put(rs.getString(1), rs.getLong(2));
+    public void dataSourceSync() throws SQLException {
+        // hold the class lock so that no update to the old map is lost
+        synchronized (SyslogdIPMgrJDBCImpl.class) {
+            java.sql.Connection c = null;
+            Statement s = null;
+            try {
+                // Get database connection
+                c = DataSourceFactory.getInstance().getConnection();
+
+                // Run with it
+                c.setReadOnly(true);
+
+                s = c.createStatement();
+                final ResultSet rs = s.executeQuery(IP_LOAD_SQL);
+
+                if (rs != null) {
+                    final InetAddressNodeIdMap knownips = new InetAddressNodeIdMap();
+                    while (rs.next()) {
+                        knownips.put(rs.getString(1), rs.getInt(2));
+                    }
+                    rs.close();
+                    m_knownips = knownips;
                 }
-                rs.close();
-            }
-        } finally {
-            if (s != null) {
-                try {
-                    s.close();
-                } catch (final SQLException sqlE) {
+            } finally {
+                if (s != null) {
+                    try {
+                        s.close();
+                    } catch (final SQLException sqlE) {
+                    }
                 }
-            }
-            if (c != null) {
-                try {
-                    c.close();
-                } catch (final SQLException sqlE) {
+                if (c != null) {
+                    try {
+                        c.close();
+                    } catch (final SQLException sqlE) {
+                    }
                 }
             }
         }
@@ -120,11 +121,8 @@ final class SyslogdIPMgrJDBCImpl implements SyslogdIPMgr{
      * @return The node ID of the IP Address if known.
      */
     @Override
-    public synchronized long getNodeId(final String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return SyslogdIPMgrJDBCImpl.getInstance().longValue(m_knownips.get(addr));
+    public long getNodeId(final String addr) {
+        return m_knownips.get(addr);
     }
 
     /**
@@ -139,7 +137,9 @@ final class SyslogdIPMgrJDBCImpl implements SyslogdIPMgr{
         if (addr == null || nodeid == -1)
             return -1;
 
-        return SyslogdIPMgrJDBCImpl.getInstance().longValue(m_knownips.put(addr, nodeid));
+        synchronized (SyslogdIPMgrJDBCImpl.class) {
+            return m_knownips.put(addr, (int) nodeid);
+        }
     }
 
     /**
@@ -152,12 +152,9 @@ final class SyslogdIPMgrJDBCImpl implements SyslogdIPMgr{
     public long removeNodeId(final String addr) {
         if (addr == null)
             return -1;
-        return SyslogdIPMgrJDBCImpl.getInstance().longValue(m_knownips.remove(addr));
-    }
-
-    @Override
-    public long longValue(final Long result) {
-        return (result == null ? -1 : result);
+        synchronized (SyslogdIPMgrJDBCImpl.class) {
+            return m_knownips.remove(addr);
+        }
     }
 
 } // end SyslodIPMgr
@@ -0,0 +1,562 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A syslog parser that reads RFC 5424 and RFC 3164 (BSD and syslog-ng
+ * style) messages straight from the received bytes, without regular
+ * expressions and without decoding the whole datagram first.
+ *
+ * Only the header fields that are present and the message itself are turned
+ * into strings; the priority, version, timestamp and process ID are parsed
+ * from the bytes and structured data is skipped. When it is configured as
+ * the parser, {@link ConvertToEvent} hands it the datagram buffer directly.
+ *
+ * Unlike the regex parsers, fractions of seconds are truncated to
+ * milliseconds and the message is decoded as UTF-8.
+ */
+public class TokenizingSyslogParser extends SyslogParser {
+    private static final Logger LOG = LoggerFactory.getLogger(TokenizingSyslogParser.class);
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private static final int MAX_PRIORITY = 191;
+
+    private static final String[] MONTHS = new String[] { "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec" };
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final ByteBuffer m_buffer;
+
+    private final int m_start;
+
+    private final int m_end;
+
+    private int m_pos;
+
+    private Boolean m_found = null;
+
+    private SyslogMessage m_message = null;
+
+    protected TokenizingSyslogParser(final String text) {
+        super(text);
+        m_buffer = ByteBuffer.wrap(text.getBytes(UTF_8));
+        m_start = 0;
+        m_end = m_buffer.limit();
+    }
+
+    /**
+     * @param buffer the datagram, from its position to its limit; neither
+     *        is changed
+     */
+    TokenizingSyslogParser(final ByteBuffer buffer) {
+        super(null);
+        m_buffer = buffer;
+        m_start = buffer.position();
+        m_end = buffer.limit();
+    }
+
+    public static SyslogParser getParser(final String text) {
+        return new TokenizingSyslogParser(text);
+    }
+
+    @Override
+    protected String getText() {
+        final String text = super.getText();
+        return text == null ? ascii(m_start, m_end) : text;
+    }
+
+    @Override
+    public boolean find() {
+        if (m_found == null) {
+            m_message = new SyslogMessage();
+            m_found = parse(m_message);
+        }
+        return m_found;
+    }
+
+    @Override
+    public boolean matches() {
+        return find();
+    }
+
+    @Override
+    public SyslogMessage parse() throws SyslogParserException {
+        if (!find()) {
+            if (traceEnabled()) {
+                LOG.trace("'{}' is not an RFC 5424 or RFC 3164 message", getText());
+            }
+            return null;
+        }
+        return m_message;
+    }
+
+    /**
+     * Parses the message into the given instance, e.g. one that is reused
+     * for every message a thread handles.
+     *
+     * @param message an empty message
+     * @return false if this is not a syslog message, in which case the
+     *         message may have been partially filled in
+     */
+    boolean parse(final SyslogMessage message) {
+        m_pos = m_start;
+        final int priority = readPriority();
+        if (priority < 0) {
+            return false;
+        }
+        message.setFacility(SyslogFacility.getFacilityForCode(priority));
+        message.setSeverity(SyslogSeverity.getSeverityForCode(priority));
+
+        if (m_pos + 1 < m_end && isDigit(byteAt(m_pos)) && byteAt(m_pos) != '0' && (byteAt(m_pos + 1) == ' ' || (m_pos + 2 < m_end && isDigit(byteAt(m_pos + 1)) && byteAt(m_pos + 2) == ' '))) {
+            return parseRfc5424(message);
+        }
+        return parseRfc3164(message);
+    }
+
+    /**
+     * <code>VERSION SP TIMESTAMP SP HOSTNAME SP APP-NAME SP PROCID SP MSGID SP STRUCTURED-DATA [SP MSG]</code>
+     */
+    private boolean parseRfc5424(final SyslogMessage message) {
+        int version = 0;
+        while (byteAt(m_pos) != ' ') {
+            version = version * 10 + byteAt(m_pos++) - '0';
+        }
+        message.setVersion(version);
+        m_pos++;
+
+        if (isNil()) {
+            m_pos++;
+        } else {
+            final long date = readRfc3339Timestamp();
+            if (date == INVALID) return false;
+            message.setDate(new Date(date));
+        }
+
+        if (!skip(' ')) return false;
+        message.setHostName(readHeaderField());
+        if (!skip(' ')) return false;
+        message.setProcessName(readHeaderField());
+        if (!skip(' ')) return false;
+
+        final int procIdStart = m_pos;
+        final String procId = readHeaderField();
+        if (procId != null) {
+            final int pid = readNumber(procIdStart, m_pos);
+            if (pid >= 0) {
+                message.setProcessId(pid);
+            } else {
+                LOG.debug("Unable to parse process ID '{}' as a number.", procId);
+            }
+        }
+
+        if (!skip(' ')) return false;
+        message.setMessageID(readHeaderField());
+        if (!skip(' ')) return false;
+
+        if (isNil()) {
+            m_pos++;
+        } else if (!skipStructuredData()) {
+            return false;
+        }
+
+        if (m_pos < m_end) {
+            if (!skip(' ')) return false;
+            final String text = readMessage();
+            if (text.length() != 0) {
+                message.setMessage(text);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <code>[IDENT[:] SP] TIMESTAMP SP HOSTNAME SP [TAG[\[PID\]]: SP] MSG</code>,
+     * where TIMESTAMP is either <code>Mmm dd hh:mm:ss</code> or <code>yyyy-MM-dd</code>.
+     */
+    private boolean parseRfc3164(final SyslogMessage message) {
+        long date = readRfc3164Timestamp();
+        if (date == INVALID) {
+            // syslog-ng may put an identifier in front of the timestamp
+            final int space = indexOf(' ', m_pos);
+            if (space < 0) return false;
+            final int identEnd = space > m_pos && byteAt(space - 1) == ':' ? space - 1 : space;
+            if (identEnd > m_pos) {
+                message.setMessageID(ascii(m_pos, identEnd));
+            }
+            m_pos = space + 1;
+            date = readRfc3164Timestamp();
+            if (date == INVALID) return false;
+        }
+        message.setDate(new Date(date));
+
+        if (!skip(' ')) return false;
+        final int hostEnd = indexOfWhitespace(m_pos);
+        if (hostEnd == m_pos || hostEnd == m_end) return false;
+        message.setHostName(ascii(m_pos, hostEnd));
+        m_pos = hostEnd + 1;
+
+        // TAG[PID]: is the first word, if it ends with a colon and more words follow
+        final int tagEnd = indexOfWhitespace(m_pos);
+        if (tagEnd - 1 > m_pos && byteAt(tagEnd - 1) == ':' && tagEnd < m_end && !isBlank(tagEnd, m_end)) {
+            final int nameEnd = tagEnd - 1;
+            int pidStart = -1;
+            if (byteAt(nameEnd - 1) == ']') {
+                for (int i = nameEnd - 2; i > m_pos && isDigit(byteAt(i)); i--) {
+                    if (byteAt(i - 1) == '[') {
+                        pidStart = i;
+                        break;
+                    }
+                }
+            }
+            if (pidStart > 0 && pidStart - 1 > m_pos) {
+                message.setProcessName(ascii(m_pos, pidStart - 1));
+                final int pid = readNumber(pidStart, nameEnd - 1);
+                if (pid >= 0) {
+                    message.setProcessId(pid);
+                }
+            } else {
+                message.setProcessName(ascii(m_pos, nameEnd));
+            }
+            m_pos = tagEnd + 1;
+        }
+
+        final String text = readMessage();
+        if (text.length() == 0) return false;
+        message.setMessage(text);
+        return true;
+    }
+
+    private int readPriority() {
+        if (m_pos >= m_end || byteAt(m_pos) != '<') return -1;
+        int priority = 0;
+        int i = m_pos + 1;
+        for (; i < m_end && i < m_pos + 4 && isDigit(byteAt(i)); i++) {
+            priority = priority * 10 + byteAt(i) - '0';
+        }
+        if (i == m_pos + 1 || i >= m_end || byteAt(i) != '>' || priority > MAX_PRIORITY) return -1;
+        m_pos = i + 1;
+        return priority;
+    }
+
+    /**
+     * <code>yyyy-MM-ddTHH:mm:ss[.S+](Z|+HH:mm|-HH:mm)</code>
+     */
+    private long readRfc3339Timestamp() {
+        final int year = readDigits(4);
+        if (year < 0 || !skip('-')) return INVALID;
+        final int month = readDigits(2);
+        if (month < 1 || month > 12 || !skip('-')) return INVALID;
+        final int day = readDigits(2);
+        if (day < 1 || day > 31 || !skip('T')) return INVALID;
+        final long time = readTime();
+        if (time == INVALID) return INVALID;
+
+        int millis = 0;
+        if (skip('.')) {
+            final int start = m_pos;
+            for (; m_pos < m_end && isDigit(byteAt(m_pos)); m_pos++) {
+                if (m_pos - start < 3) {
+                    millis = millis * 10 + byteAt(m_pos) - '0';
+                }
+            }
+            if (m_pos == start) return INVALID;
+            for (int digits = m_pos - start; digits < 3; digits++) {
+                millis *= 10;
+            }
+        }
+
+        long offset = 0;
+        if (!skip('Z')) {
+            final int sign;
+            if (skip('+')) {
+                sign = 1;
+            } else if (skip('-')) {
+                sign = -1;
+            } else {
+                return INVALID;
+            }
+            final int hours = readDigits(2);
+            skip(':');
+            final int minutes = readDigits(2);
+            if (hours < 0 || minutes < 0) return INVALID;
+            offset = sign * (hours * 60L + minutes) * 60000L;
+        }
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY + time + millis - offset;
+    }
+
+    /**
+     * Reads <code>Mmm dd HH:mm:ss</code> in the current year or
+     * <code>yyyy-MM-dd</code>, both in UTC, and leaves the position alone if
+     * there is neither.
+     */
+    private long readRfc3164Timestamp() {
+        final int start = m_pos;
+        long date = INVALID;
+        if (m_pos < m_end && isDigit(byteAt(m_pos))) {
+            final int year = readDigits(4);
+            if (year >= 0 && skip('-')) {
+                final int month = readDigits(2);
+                if (month >= 1 && month <= 12 && skip('-')) {
+                    final int day = readDigits(2);
+                    if (day >= 1 && day <= 31) {
+                        date = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+                    }
+                }
+            }
+        } else if (m_pos + 3 < m_end) {
+            final int month = readMonth();
+            if (month > 0 && skipSpaces()) {
+                int day = readDigits(2);
+                if (day < 0) day = readDigits(1);
+                if (day >= 1 && day <= 31 && skipSpaces()) {
+                    final long time = readTime();
+                    if (time != INVALID) {
+                        date = daysFromCivil(getCurrentYear(), month, day) * MILLIS_PER_DAY + time;
+                    }
+                }
+            }
+        }
+        if (date == INVALID || (m_pos < m_end && byteAt(m_pos) != ' ')) {
+            m_pos = start;
+            return INVALID;
+        }
+        return date;
+    }
+
+    private int readMonth() {
+        for (int month = 0; month < MONTHS.length; month++) {
+            final String name = MONTHS[month];
+            boolean matches = true;
+            for (int i = 0; i < 3 && matches; i++) {
+                matches = Character.toLowerCase((char)byteAt(m_pos + i)) == name.charAt(i);
+            }
+            if (matches) {
+                m_pos += 3;
+                return month + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <code>HH:mm:ss</code> as milliseconds since midnight.
+     */
+    private long readTime() {
+        final int hours = readDigits(2);
+        if (hours < 0 || hours > 23 || !skip(':')) return INVALID;
+        final int minutes = readDigits(2);
+        if (minutes < 0 || minutes > 59 || !skip(':')) return INVALID;
+        final int seconds = readDigits(2);
+        if (seconds < 0 || seconds > 60) return INVALID;
+        return ((hours * 60L + minutes) * 60L + seconds) * 1000L;
+    }
+
+    private int readDigits(final int count) {
+        if (m_pos + count > m_end) return -1;
+        final int value = readNumber(m_pos, m_pos + count);
+        if (value >= 0) {
+            m_pos += count;
+        }
+        return value;
+    }
+
+    /**
+     * @return the decimal number in the range, or -1 if it is not one
+     */
+    private int readNumber(final int from, final int to) {
+        if (to <= from || to - from > 9) return -1;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            final byte b = byteAt(i);
+            if (!isDigit(b)) return -1;
+            value = value * 10 + b - '0';
+        }
+        return value;
+    }
+
+    /**
+     * @return the field up to the next space, or null if it is the NILVALUE
+     */
+    private String readHeaderField() {
+        final int start = m_pos;
+        final int end = indexOf(' ', start);
+        m_pos = end < 0 ? m_end : end;
+        if (m_pos - start == 1 && byteAt(start) == '-') {
+            return null;
+        }
+        return ascii(start, m_pos);
+    }
+
+    private boolean skipStructuredData() {
+        if (m_pos >= m_end || byteAt(m_pos) != '[') return false;
+        while (m_pos < m_end && byteAt(m_pos) == '[') {
+            boolean quoted = false;
+            m_pos++;
+            while (true) {
+                if (m_pos >= m_end) return false;
+                final byte b = byteAt(m_pos++);
+                if (quoted && b == '\\') {
+                    m_pos++;
+                } else if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == ']' && !quoted) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the rest of the datagram without a leading byte order mark,
+     *         trimmed
+     */
+    private String readMessage() {
+        int from = m_pos;
+        if (from + 2 < m_end && byteAt(from) == (byte)0xEF && byteAt(from + 1) == (byte)0xBB && byteAt(from + 2) == (byte)0xBF) {
+            from += 3;
+        }
+        int to = m_end;
+        while (from < to && isBlank(byteAt(from))) from++;
+        while (to > from && isBlank(byteAt(to - 1))) to--;
+        m_pos = m_end;
+
+        for (int i = from; i < to; i++) {
+            if (byteAt(i) < 0) {
+                return utf8(from, to);
+            }
+        }
+        return ascii(from, to);
+    }
+
+    private boolean isNil() {
+        return m_pos < m_end && byteAt(m_pos) == '-' && (m_pos + 1 == m_end || byteAt(m_pos + 1) == ' ');
+    }
+
+    private boolean skip(final char c) {
+        if (m_pos < m_end && byteAt(m_pos) == c) {
+            m_pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean skipSpaces() {
+        final int start = m_pos;
+        while (m_pos < m_end && byteAt(m_pos) == ' ') m_pos++;
+        return m_pos > start;
+    }
+
+    private int indexOf(final char c, final int from) {
+        for (int i = from; i < m_end; i++) {
+            if (byteAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private int indexOfWhitespace(final int from) {
+        int i = from;
+        while (i < m_end && !isBlank(byteAt(i))) i++;
+        return i;
+    }
+
+    private boolean isBlank(final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (!isBlank(byteAt(i))) return false;
+        }
+        return true;
+    }
+
+    private byte byteAt(final int i) {
+        return m_buffer.get(i);
+    }
+
+    private String ascii(final int from, final int to) {
+        final char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) {
+            final byte b = byteAt(i);
+            chars[i - from] = b < 0 ? '\uFFFD' : (char)b;
+        }
+        return new String(chars);
+    }
+
+    private String utf8(final int from, final int to) {
+        if (m_buffer.hasArray()) {
+            return new String(m_buffer.array(), m_buffer.arrayOffset() + from, to - from, UTF_8);
+        }
+        final byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = byteAt(i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * The same characters {@link String#trim()} removes, NUL included.
+     */
+    private static boolean isBlank(final byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static int getCurrentYear() {
+        final long days = System.currentTimeMillis() / MILLIS_PER_DAY;
+        int year = (int)(days / 365.2425) + 1970;
+        while (daysFromCivil(year, 1, 1) > days) year--;
+        while (daysFromCivil(year + 1, 1, 1) <= days) year++;
+        return year;
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
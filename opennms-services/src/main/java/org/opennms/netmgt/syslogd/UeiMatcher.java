@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+/**
+ * A compiled {@link UeiList} that rules out the ueiMatch elements that can
+ * not match a message before {@link ConvertToEvent} runs their regexes.
+ *
+ * Each ueiMatch gets a facility and a severity bitset and, where one can be
+ * found, a literal that every match of its expression must contain: the
+ * expression of a substr match, or the longest run of literal characters
+ * outside of any group in a regex without top-level alternation. All of the
+ * literals are found with a single Aho-Corasick pass over the message, so the
+ * cost of ruling out a ueiMatch does not depend on its expression.
+ *
+ * The candidates are returned in configuration order and still have to be
+ * checked in full, so the first ueiMatch that matches still wins.
+ */
+final class UeiMatcher {
+
+    private static final long ALL = -1L;
+
+    private final UeiList m_ueiList;
+
+    private final List<UeiMatch> m_ueiMatches;
+
+    private final int m_count;
+
+    private final long[] m_facilities;
+
+    private final long[] m_severities;
+
+    /**
+     * Index of the required literal of each ueiMatch in the scanner, or -1.
+     */
+    private final int[] m_literals;
+
+    private final boolean[] m_substr;
+
+    private final LiteralScanner m_scanner;
+
+    UeiMatcher(final UeiList ueiList) {
+        m_ueiList = ueiList;
+        m_ueiMatches = ueiList.getUeiMatchCollection();
+        m_count = m_ueiMatches.size();
+        m_facilities = new long[m_count];
+        m_severities = new long[m_count];
+        m_literals = new int[m_count];
+        m_substr = new boolean[m_count];
+
+        final Map<String, Integer> literals = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < m_count; i++) {
+            final UeiMatch uei = m_ueiMatches.get(i);
+            m_facilities[i] = getFacilityMask(uei.getFacilityCollection());
+            m_severities[i] = getSeverityMask(uei.getSeverityCollection());
+
+            final String type = uei.getMatch().getType();
+            final String literal;
+            if ("substr".equals(type)) {
+                m_substr[i] = true;
+                literal = uei.getMatch().getExpression();
+            } else if (type.startsWith("regex")) {
+                literal = getRequiredLiteral(uei.getMatch().getExpression());
+            } else {
+                literal = null;
+            }
+
+            if (literal == null || literal.length() == 0) {
+                m_literals[i] = -1;
+            } else {
+                Integer index = literals.get(literal);
+                if (index == null) {
+                    index = literals.size();
+                    literals.put(literal, index);
+                }
+                m_literals[i] = index;
+            }
+        }
+        m_scanner = new LiteralScanner(literals.keySet().toArray(new String[literals.size()]));
+    }
+
+    /**
+     * @return true if this was compiled from the given list and the list
+     *         did not grow or shrink since
+     */
+    boolean isCompiledFrom(final UeiList ueiList) {
+        return m_ueiList == ueiList && m_ueiMatches == ueiList.getUeiMatchCollection() && m_count == m_ueiMatches.size();
+    }
+
+    /**
+     * Returns the ueiMatch elements that may match the message, in the order
+     * of the configuration.
+     *
+     * @param message the parsed message
+     * @return the candidates, each of which still has to be checked in full
+     */
+    List<UeiMatch> getCandidates(final SyslogMessage message) {
+        if (m_count == 0) {
+            return Collections.emptyList();
+        }
+
+        final long facility = bit(message.getFacility().ordinal());
+        final long severity = bit(message.getSeverity().ordinal());
+
+        // the texts ConvertToEvent matches substr and regex expressions against
+        final String substrText = message.getMatchedMessage();
+        final String regexText = substrText == null ? message.getFullText() : substrText;
+        final boolean[] found = m_scanner.scan(regexText);
+
+        final List<UeiMatch> candidates = new ArrayList<UeiMatch>();
+        for (int i = 0; i < m_count; i++) {
+            if ((m_facilities[i] & facility) == 0 || (m_severities[i] & severity) == 0) {
+                continue;
+            }
+            final int literal = m_literals[i];
+            if (literal >= 0 && !found[literal] && !(m_substr[i] && substrText == null)) {
+                continue;
+            }
+            candidates.add(m_ueiMatches.get(i));
+        }
+        return candidates;
+    }
+
+    private static long bit(final int ordinal) {
+        return 1L << ordinal;
+    }
+
+    private static long getFacilityMask(final List<String> facilities) {
+        if (facilities.size() == 0) return ALL;
+        long mask = 0;
+        for (final SyslogFacility facility : SyslogFacility.values()) {
+            for (final String name : facilities) {
+                if (name.equalsIgnoreCase(facility.toString())) {
+                    mask |= bit(facility.ordinal());
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static long getSeverityMask(final List<String> severities) {
+        if (severities.size() == 0) return ALL;
+        long mask = 0;
+        for (final SyslogSeverity severity : SyslogSeverity.values()) {
+            for (final String name : severities) {
+                if (name.equalsIgnoreCase(severity.toString())) {
+                    mask |= bit(severity.ordinal());
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the longest string that every match of the regex contains.
+     *
+     * Only literal characters outside of groups and character classes are
+     * considered, and anything this does not understand (embedded flags,
+     * quoting, back references, ...) gives up rather than guess.
+     *
+     * @param regex a regex as compiled by {@link ConvertToEvent}
+     * @return the literal, or null if there is none
+     */
+    static String getRequiredLiteral(final String regex) {
+        try {
+            Pattern.compile(regex, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException e) {
+            return null;
+        }
+
+        String best = null;
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        boolean literal = false;
+
+        final int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            final char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (++i == length) return null;
+                final char escaped = regex.charAt(i);
+                final char unescaped = unescape(escaped);
+                if (unescaped != 0) {
+                    literal = append(run, unescaped, depth);
+                } else if ("dDsSwWbBAGZzhHvVR".indexOf(escaped) >= 0) {
+                    best = longest(best, run);
+                    literal = false;
+                } else {
+                    return null;
+                }
+                break;
+            case '[':
+                i = skipClass(regex, i);
+                if (i < 0) return null;
+                best = longest(best, run);
+                literal = false;
+                break;
+            case '(':
+                if (i + 2 < length && regex.charAt(i + 1) == '?' && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                    // embedded flags, e.g. (?i)
+                    return null;
+                }
+                depth++;
+                best = longest(best, run);
+                literal = false;
+                break;
+            case ')':
+                depth--;
+                best = longest(best, run);
+                literal = false;
+                break;
+            case '|':
+                if (depth == 0) return null;
+                literal = false;
+                break;
+            case '*':
+            case '?':
+            case '{':
+                // the preceding character is optional
+                if (literal) {
+                    run.setLength(run.length() - 1);
+                    if (run.length() > 0 && Character.isHighSurrogate(run.charAt(run.length() - 1))) {
+                        run.setLength(run.length() - 1);
+                    }
+                }
+                best = longest(best, run);
+                literal = false;
+                if (c == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i < 0) return null;
+                }
+                i = skipModifier(regex, i);
+                break;
+            case '+':
+                // the preceding character is required, but may be repeated
+                best = longest(best, run);
+                literal = false;
+                i = skipModifier(regex, i);
+                break;
+            case '.':
+            case '^':
+            case '$':
+                best = longest(best, run);
+                literal = false;
+                break;
+            default:
+                literal = append(run, c, depth);
+                break;
+            }
+        }
+        return longest(best, run);
+    }
+
+    private static boolean append(final StringBuilder run, final char c, final int depth) {
+        if (depth > 0) return false;
+        run.append(c);
+        return true;
+    }
+
+    private static String longest(final String best, final StringBuilder run) {
+        String result = best;
+        if (run.length() > 0 && (best == null || run.length() > best.length())) {
+            result = run.toString();
+        }
+        run.setLength(0);
+        return result;
+    }
+
+    private static char unescape(final char c) {
+        switch (c) {
+        case 't': return '\t';
+        case 'n': return '\n';
+        case 'r': return '\r';
+        case 'f': return '\f';
+        case 'a': return '\u0007';
+        case 'e': return '\u001B';
+        default:
+            return Character.isLetterOrDigit(c) ? 0 : c;
+        }
+    }
+
+    /**
+     * @return the index of the ']' that closes the class opened at start, or -1
+     */
+    private static int skipClass(final String regex, final int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+        int nested = 0;
+        for (; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nested++;
+            } else if (c == ']') {
+                if (nested == 0) return i;
+                nested--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the reluctant or possessive modifier of the quantifier at i.
+     */
+    private static int skipModifier(final String regex, final int i) {
+        if (i + 1 < regex.length() && (regex.charAt(i + 1) == '?' || regex.charAt(i + 1) == '+')) {
+            return i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * An Aho-Corasick automaton over a fixed set of literals.
+     */
+    static final class LiteralScanner {
+        private final int m_literalCount;
+        private final char[][] m_keys;
+        private final int[][] m_next;
+        private final int[] m_fail;
+        /** The literals that end in each state, including those of its fail states. */
+        private final int[][] m_output;
+
+        LiteralScanner(final String[] literals) {
+            m_literalCount = literals.length;
+
+            final List<TreeMap<Character, Integer>> gotos = new ArrayList<TreeMap<Character, Integer>>();
+            final List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+            gotos.add(new TreeMap<Character, Integer>());
+            outputs.add(new ArrayList<Integer>());
+            for (int i = 0; i < literals.length; i++) {
+                int state = 0;
+                for (int j = 0; j < literals[i].length(); j++) {
+                    final Character c = literals[i].charAt(j);
+                    Integer next = gotos.get(state).get(c);
+                    if (next == null) {
+                        next = gotos.size();
+                        gotos.get(state).put(c, next);
+                        gotos.add(new TreeMap<Character, Integer>());
+                        outputs.add(new ArrayList<Integer>());
+                    }
+                    state = next;
+                }
+                outputs.get(state).add(i);
+            }
+
+            final int states = gotos.size();
+            m_keys = new char[states][];
+            m_next = new int[states][];
+            m_fail = new int[states];
+            for (int state = 0; state < states; state++) {
+                final TreeMap<Character, Integer> transitions = gotos.get(state);
+                m_keys[state] = new char[transitions.size()];
+                m_next[state] = new int[transitions.size()];
+                int i = 0;
+                for (final Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                    m_keys[state][i] = entry.getKey();
+                    m_next[state][i] = entry.getValue();
+                    i++;
+                }
+            }
+
+            // breadth first, so the fail state of a state is done before the state
+            final int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (final int child : m_next[0]) {
+                m_fail[child] = 0;
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                final int state = queue[head++];
+                for (int i = 0; i < m_keys[state].length; i++) {
+                    final char c = m_keys[state][i];
+                    final int child = m_next[state][i];
+                    int fail = m_fail[state];
+                    while (fail != 0 && next(fail, c) < 0) {
+                        fail = m_fail[fail];
+                    }
+                    final int target = next(fail, c);
+                    m_fail[child] = target < 0 ? 0 : target;
+                    outputs.get(child).addAll(outputs.get(m_fail[child]));
+                    queue[tail++] = child;
+                }
+            }
+
+            m_output = new int[states][];
+            for (int state = 0; state < states; state++) {
+                final List<Integer> output = outputs.get(state);
+                m_output[state] = new int[output.size()];
+                for (int i = 0; i < output.size(); i++) {
+                    m_output[state][i] = output.get(i);
+                }
+            }
+        }
+
+        private int next(final int state, final char c) {
+            final int i = Arrays.binarySearch(m_keys[state], c);
+            return i < 0 ? -1 : m_next[state][i];
+        }
+
+        /**
+         * @param text the text to scan, may be null
+         * @return whether each literal occurs in the text
+         */
+        boolean[] scan(final String text) {
+            final boolean[] found = new boolean[m_literalCount];
+            if (text == null || m_literalCount == 0) {
+                return found;
+            }
+            int state = 0;
+            final int length = text.length();
+            for (int i = 0; i < length; i++) {
+                final char c = text.charAt(i);
+                int next = next(state, c);
+                while (next < 0 && state != 0) {
+                    state = m_fail[state];
+                    next = next(state, c);
+                }
+                state = next < 0 ? 0 : next;
+                for (final int literal : m_output[state]) {
+                    found[literal] = true;
+                }
+            }
+            return found;
+        }
+    }
+}
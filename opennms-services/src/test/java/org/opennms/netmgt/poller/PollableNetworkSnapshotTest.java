@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.poller.PollableNetworkSnapshot.SnapshotService;
+import org.opennms.netmgt.poller.mock.MockPollContext;
+import org.opennms.netmgt.poller.pollables.DbPollEvent;
+import org.opennms.netmgt.poller.pollables.PollConfig;
+import org.opennms.netmgt.poller.pollables.PollableNetwork;
+import org.opennms.netmgt.poller.pollables.PollableService;
+import org.opennms.netmgt.scheduler.Schedule;
+import org.opennms.netmgt.scheduler.ScheduleInterval;
+import org.opennms.netmgt.scheduler.ScheduleTimer;
+
+public class PollableNetworkSnapshotTest {
+
+    private File m_file;
+
+    @Before
+    public void setUp() throws Exception {
+        m_file = File.createTempFile("pollerd", ".snapshot");
+        m_file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        m_file.delete();
+        new File(m_file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        PollableNetwork network = new PollableNetwork(new MockPollContext());
+        Date lostDate = new Date(1400000000000L);
+
+        PollableService icmp = createService(network, 1, "Router", "192.168.1.1", "ICMP");
+        icmp.updateStatus(PollStatus.up());
+        PollableService snmp = createService(network, 1, "Router", "192.168.1.1", "SNMP");
+        snmp.updateStatus(PollStatus.down());
+        snmp.setCause(new DbPollEvent(42, EventConstants.NODE_LOST_SERVICE_EVENT_UEI, lostDate));
+        PollableService http = createService(network, 2, null, "10.0.0.1", "HTTP");
+        http.updateStatus(PollStatus.down());
+        // the lost service event has not been stored yet
+        http.setCause(new DbPollEvent(0, EventConstants.NODE_LOST_SERVICE_EVENT_UEI, lostDate));
+
+        PollableNetworkSnapshot snapshot = new PollableNetworkSnapshot(m_file);
+        assertEquals(3, snapshot.write(network));
+
+        // rewriting replaces the previous snapshot
+        assertEquals(3, snapshot.write(network));
+
+        List<SnapshotService> services = snapshot.read();
+        assertEquals(3, services.size());
+
+        SnapshotService readIcmp = find(services, 1, "ICMP");
+        assertEquals("Router", readIcmp.getNodeLabel());
+        assertEquals("192.168.1.1", readIcmp.getIpAddr());
+        assertNull(readIcmp.getSvcLostEventId());
+
+        SnapshotService readSnmp = find(services, 1, "SNMP");
+        assertEquals(Integer.valueOf(42), readSnmp.getSvcLostEventId());
+        assertEquals(EventConstants.NODE_LOST_SERVICE_EVENT_UEI, readSnmp.getSvcLostUei());
+        assertEquals(lostDate, readSnmp.getIfLostService());
+
+        SnapshotService readHttp = find(services, 2, "HTTP");
+        assertNull(readHttp.getNodeLabel());
+        assertEquals("10.0.0.1", readHttp.getIpAddr());
+        assertNull(readHttp.getSvcLostEventId());
+    }
+
+    @Test
+    public void testReadGarbage() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(m_file)) {
+            out.write("not a snapshot".getBytes("UTF-8"));
+        }
+
+        try {
+            new PollableNetworkSnapshot(m_file).read();
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static PollableService createService(PollableNetwork network, int nodeId, String nodeLabel, String ipAddr, String svcName) {
+        PollableService svc = network.createService(nodeId, nodeLabel, InetAddressUtils.addr(ipAddr), svcName);
+        svc.setPollConfig(mock(PollConfig.class));
+        svc.setSchedule(new Schedule(svc, mock(ScheduleInterval.class), mock(ScheduleTimer.class)));
+        return svc;
+    }
+
+    private static SnapshotService find(List<SnapshotService> services, int nodeId, String svcName) {
+        for (SnapshotService service : services) {
+            if (service.getNodeId() == nodeId && service.getSvcName().equals(svcName)) {
+                return service;
+            }
+        }
+        fail("service " + nodeId + "/" + svcName + " not in snapshot");
+        return null;
+    }
+}
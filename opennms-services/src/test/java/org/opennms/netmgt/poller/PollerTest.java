@@ -34,6 +34,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.InputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -1581,6 +1582,84 @@ public class PollerTest implements TemporaryDatabaseAware<MockDatabase> {
         }
     }
 
+    /**
+     * Starts the poller from a snapshot after services and outages have
+     * changed in the database, and verifies that reconciling brings the
+     * pollable network in line with the database without sending any events.
+     */
+    @Test
+    public void testWarmStartReconcilesChangesSinceSnapshot() throws Exception {
+        m_pollerConfig.setNodeOutageProcessingEnabled(false);
+
+        final File snapshotFile = File.createTempFile("pollerd", ".snapshot");
+        snapshotFile.delete();
+        snapshotFile.deleteOnExit();
+        m_poller.setSnapshot(new PollableNetworkSnapshot(snapshotFile), 3600000L);
+
+        MockService removedSvc = m_network.getService(2, "192.168.1.3", "SMTP");
+        MockService lostSvc = m_network.getService(1, "192.168.1.1", "SMTP");
+        MockService regainedSvc = m_network.getService(1, "192.168.1.2", "SMTP");
+
+        regainedSvc.bringDown();
+        Event lostEvent = MockEventUtil.createNodeLostServiceEvent("Test", regainedSvc);
+        m_db.writeEvent(lostEvent);
+        m_db.createOutage(regainedSvc, lostEvent);
+
+        // start cold, and write the snapshot on stop
+        startDaemons();
+        sleep(2000);
+        stopDaemons();
+        assertTrue("The poller snapshot was not written", snapshotFile.exists());
+
+        // a service is added
+        MockService addedSvc = m_network.addService(5, "192.168.1.7", "HTTP");
+        m_db.writeService(addedSvc);
+        m_pollerConfig.addService(addedSvc);
+
+        // a service is removed, but still answers polls
+        m_db.setServiceStatus(removedSvc, 'D');
+
+        // an outage is opened
+        lostSvc.bringDown();
+        Event lostEvent2 = MockEventUtil.createNodeLostServiceEvent("Test", lostSvc);
+        m_db.writeEvent(lostEvent2);
+        m_db.createOutage(lostSvc, lostEvent2);
+
+        // an outage is closed
+        regainedSvc.bringUp();
+        Event regainedEvent = MockEventUtil.createNodeRegainedServiceEvent("Test", regainedSvc);
+        m_db.writeEvent(regainedEvent);
+        m_db.resolveOutage(regainedSvc, regainedEvent);
+
+        resetAnticipated();
+
+        PollableNetwork network = new PollableNetwork(m_poller.getNetwork().getContext());
+        m_poller.setNetwork(network);
+        m_poller.init();
+
+        // the services of the snapshot are scheduled
+        assertNotNull(network.getService(2, removedSvc.getAddress(), "SMTP"));
+        assertNull(network.getService(5, addedSvc.getAddress(), "HTTP"));
+
+        // the mock monitor polls while holding the mock network, so the
+        // polls wait for the snapshot to be reconciled
+        synchronized (m_network) {
+            m_poller.start();
+            m_daemonsStarted = true;
+            for (int i = 0; i < 100 && m_poller.isReconciling(); i++) {
+                sleep(100);
+            }
+            assertFalse("The poller snapshot was not reconciled", m_poller.isReconciling());
+        }
+
+        assertNotNull(network.getService(5, addedSvc.getAddress(), "HTTP"));
+        assertNull(network.getService(2, removedSvc.getAddress(), "SMTP"));
+        assertTrue(network.getService(1, lostSvc.getAddress(), "SMTP").getStatus().isDown());
+        assertTrue(network.getService(1, regainedSvc.getAddress(), "SMTP").getStatus().isUp());
+
+        verifyAnticipated(0);
+    }
+
     //
     // Utility methods
     //
@@ -75,6 +75,11 @@ public class MockScheduler implements Scheduler {
         entries.add(schedule);
     }
     
+    @Override
+    public void scheduleWithJitter(ReadyRunnable schedule) {
+        schedule(0, schedule);
+    }
+
     public int getEntryCount() {
         return m_scheduleEntries.size();
     }
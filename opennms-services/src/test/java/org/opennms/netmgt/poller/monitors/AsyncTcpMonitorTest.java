@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+import org.opennms.netmgt.provision.server.AsyncSimpleServer;
+import org.opennms.test.mock.MockUtil;
+
+public class AsyncTcpMonitorTest {
+    private static final String BANNER = "+OK Async Test Server";
+
+    private AsyncSimpleServer m_server;
+
+    private InetAddress m_localhost;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "INFO");
+
+        m_localhost = InetAddress.getByName("127.0.0.1");
+
+        m_server = new AsyncSimpleServer();
+        m_server.setPort(findFreePort());
+        m_server.setBacklog(1024);
+        m_server.init();
+        m_server.setBanner(BANNER);
+        m_server.startServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_server.stopServer();
+    }
+
+    private static int findFreePort() throws Exception {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Map<String, Object> getParameters(final int port, final String banner) {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(port));
+        m.put("retry", "1");
+        m.put("timeout", "3000");
+        if (banner != null) {
+            m.put("banner", banner);
+        }
+        return m;
+    }
+
+    @Test
+    public void testConnectOnly() throws Exception {
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(1, m_localhost, "TCP");
+        final PollStatus status = new AsyncTcpMonitor().poll(svc, getParameters(m_server.getPort(), null));
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNull(status.getReason());
+    }
+
+    @Test
+    public void testBannerMatch() throws Exception {
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(1, m_localhost, "TCP");
+        PollStatus status = new AsyncTcpMonitor().poll(svc, getParameters(m_server.getPort(), "+OK"));
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+
+        status = new AsyncTcpMonitor().poll(svc, getParameters(m_server.getPort(), "~^\\+OK.*Server$"));
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testBannerMismatch() throws Exception {
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(1, m_localhost, "TCP");
+        final PollStatus status = new AsyncTcpMonitor().poll(svc, getParameters(m_server.getPort(), "-ERR"));
+        MockUtil.println("Reason: "+status.getReason());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertEquals("Banner: '" + BANNER + "' does not contain match string '-ERR'", status.getReason());
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(1, m_localhost, "TCP");
+        final PollStatus status = new AsyncTcpMonitor().poll(svc, getParameters(findFreePort(), null));
+        MockUtil.println("Reason: "+status.getReason());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertNotNull(status.getReason());
+    }
+
+    /**
+     * Poll 10,000 services against the mock server. The polls are started
+     * from this thread and complete on the selector thread, so no thread is
+     * held per poll. The number of polls in flight is bounded only to stay
+     * clear of the file descriptor limit of the build machines.
+     */
+    @Test(timeout=300000)
+    public void testTenThousandEndpoints() throws Exception {
+        final int endpoints = 10000;
+        final Semaphore inFlight = new Semaphore(500);
+        final CountDownLatch done = new CountDownLatch(endpoints);
+        final AtomicInteger available = new AtomicInteger();
+        final Map<String, Object> parameters = getParameters(m_server.getPort(), "+OK");
+        final AsyncTcpMonitor monitor = new AsyncTcpMonitor();
+
+        final int threadsBefore = Thread.activeCount();
+        final long start = System.nanoTime();
+        for (int i = 0; i < endpoints; i++) {
+            inFlight.acquire();
+            final MonitoredService svc = MonitorTestUtils.getMonitoredService(i, m_localhost, "TCP");
+            monitor.poll(svc, parameters, new PollCallback() {
+                @Override
+                public void complete(final PollStatus status) {
+                    if (status.isAvailable()) {
+                        available.incrementAndGet();
+                    }
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(2, TimeUnit.MINUTES));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        MockUtil.println("Polled " + endpoints + " endpoints in " + elapsed + "ms");
+
+        assertEquals(endpoints, available.get());
+        // the selector thread and at most a few server threads
+        assertTrue("too many threads were started: " + (Thread.activeCount() - threadsBefore), Thread.activeCount() - threadsBefore < 50);
+    }
+}
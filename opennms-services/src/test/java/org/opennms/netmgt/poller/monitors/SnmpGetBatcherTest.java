@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpConfiguration;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpValue;
+
+public class SnmpGetBatcherTest {
+
+    private static class RecordingBatcher extends SnmpGetBatcher {
+        private final List<SnmpObjId[]> m_requests = new ArrayList<SnmpObjId[]>();
+        private final Map<SnmpObjId, SnmpValue> m_values = new ConcurrentHashMap<SnmpObjId, SnmpValue>();
+        private final boolean m_fail;
+
+        RecordingBatcher(long window, boolean fail) {
+            super(window);
+            m_fail = fail;
+        }
+
+        @Override
+        protected SnmpValue[] doGet(SnmpAgentConfig agentConfig, SnmpObjId[] oids) {
+            synchronized (m_requests) {
+                m_requests.add(oids);
+            }
+            if (m_fail) {
+                return new SnmpValue[] { null };
+            }
+            SnmpValue[] values = new SnmpValue[oids.length];
+            for (int i = 0; i < oids.length; i++) {
+                values[i] = getValue(oids[i]);
+            }
+            return values;
+        }
+
+        SnmpValue getValue(SnmpObjId oid) {
+            SnmpValue value = m_values.get(oid);
+            if (value == null) {
+                value = mock(SnmpValue.class);
+                m_values.put(oid, value);
+            }
+            return value;
+        }
+
+        int getRequestCount() {
+            synchronized (m_requests) {
+                return m_requests.size();
+            }
+        }
+    }
+
+    private static SnmpAgentConfig createAgentConfig(int version, int maxVarsPerPdu) throws Exception {
+        SnmpAgentConfig agentConfig = new SnmpAgentConfig(InetAddress.getByName("192.0.2.1"));
+        agentConfig.setVersion(version);
+        agentConfig.setMaxVarsPerPdu(maxVarsPerPdu);
+        return agentConfig;
+    }
+
+    private static SnmpValue[] getConcurrently(final SnmpGetBatcher batcher, final int version, final int maxVarsPerPdu, int count) throws Exception {
+        final SnmpValue[] results = new SnmpValue[count];
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        // every poll builds its own agent config, as the monitors do
+                        results[index] = batcher.get(createAgentConfig(version, maxVarsPerPdu), SnmpObjId.get(".1.3.6.1.2.1.2.2.1.8." + index));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+
+    @Test
+    public void testConcurrentGetsAreCoalesced() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(500, false);
+        SnmpValue[] results = getConcurrently(batcher, SnmpConfiguration.VERSION2C, 10, 8);
+
+        assertEquals(1, batcher.getRequestCount());
+        assertEquals(8, batcher.m_requests.get(0).length);
+        for (int i = 0; i < results.length; i++) {
+            assertSame(batcher.getValue(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.8." + i)), results[i]);
+        }
+    }
+
+    @Test
+    public void testBatchesAreLimitedToMaxVarsPerPdu() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(500, false);
+        SnmpValue[] results = getConcurrently(batcher, SnmpConfiguration.VERSION2C, 4, 8);
+
+        assertEquals(2, batcher.getRequestCount());
+        for (SnmpObjId[] request : batcher.m_requests) {
+            assertEquals(4, request.length);
+        }
+        for (int i = 0; i < results.length; i++) {
+            assertSame(batcher.getValue(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.8." + i)), results[i]);
+        }
+    }
+
+    @Test
+    public void testVersion1IsNotBatched() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(500, false);
+        getConcurrently(batcher, SnmpConfiguration.VERSION1, 10, 4);
+
+        assertEquals(4, batcher.getRequestCount());
+    }
+
+    @Test
+    public void testDuplicateOidsAreRequestedOnce() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(500, false);
+        SnmpObjId oid = SnmpObjId.get(".1.3.6.1.2.1.1.3.0");
+        SnmpValue[] results = batcher.get(createAgentConfig(SnmpConfiguration.VERSION2C, 10), new SnmpObjId[] { oid, oid });
+
+        assertEquals(1, batcher.getRequestCount());
+        assertEquals(1, batcher.m_requests.get(0).length);
+        assertSame(results[0], results[1]);
+    }
+
+    @Test
+    public void testFailedGetAnswersEveryCallerWithNull() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(500, true);
+        SnmpValue[] results = getConcurrently(batcher, SnmpConfiguration.VERSION2C, 10, 4);
+
+        assertEquals(1, batcher.getRequestCount());
+        for (SnmpValue result : results) {
+            assertNull(result);
+        }
+    }
+}
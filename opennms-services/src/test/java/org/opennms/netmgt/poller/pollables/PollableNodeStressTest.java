@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.pollables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.scheduler.PostponeNecessary;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Schedule;
+import org.opennms.netmgt.scheduler.ScheduleInterval;
+import org.opennms.netmgt.scheduler.ScheduleTimer;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Polls the services of one large node from many threads at once, the way
+ * the poller threads do when the services of a node share a poll interval.
+ */
+public class PollableNodeStressTest {
+
+    private static final int INTERFACES = 10;
+    private static final int SERVICES_PER_INTERFACE = 100;
+    private static final int THREADS = 64;
+
+    private final Queue<Event> m_events = new ConcurrentLinkedQueue<Event>();
+    private final AtomicInteger m_activePolls = new AtomicInteger();
+    private final AtomicInteger m_maxActivePolls = new AtomicInteger();
+    private final List<PollableService> m_services = new ArrayList<PollableService>();
+    private final List<StressPollConfig> m_configs = new ArrayList<StressPollConfig>();
+
+    private PollableNode m_node;
+    private ExecutorService m_executor;
+
+    private class StressPollContext implements PollContext {
+        @Override
+        public String getCriticalServiceName() {
+            return null;
+        }
+
+        @Override
+        public boolean isNodeProcessingEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isPollingAllIfCritServiceUndefined() {
+            return true;
+        }
+
+        @Override
+        public PollEvent sendEvent(Event event) {
+            m_events.add(event);
+            return new PendingPollEvent(event);
+        }
+
+        @Override
+        public Event createEvent(String uei, int nodeId, InetAddress address, String svcName, Date date, String reason) {
+            return new EventBuilder(uei, "PollableNodeStressTest", date)
+                .setNodeid(nodeId)
+                .setInterface(address)
+                .setService(svcName)
+                .getEvent();
+        }
+
+        @Override
+        public void openOutage(PollableService pSvc, PollEvent svcLostEvent) {
+        }
+
+        @Override
+        public void resolveOutage(PollableService pSvc, PollEvent svcRegainEvent) {
+        }
+
+        @Override
+        public boolean isServiceUnresponsiveEnabled() {
+            return false;
+        }
+
+        @Override
+        public void reparentOutages(String ipAddr, int oldNodeId, int newNodeId) {
+        }
+    }
+
+    private class StressPollConfig implements PollConfig, ScheduleInterval {
+        private volatile boolean m_down = false;
+
+        @Override
+        public PollStatus poll() {
+            int active = m_activePolls.incrementAndGet();
+            int max = m_maxActivePolls.get();
+            while (active > max && !m_maxActivePolls.compareAndSet(max, active)) {
+                max = m_maxActivePolls.get();
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                m_activePolls.decrementAndGet();
+            }
+            return m_down ? PollStatus.down("stress test") : PollStatus.up();
+        }
+
+        @Override
+        public boolean isAsync() {
+            return false;
+        }
+
+        @Override
+        public void poll(PollCallback callback) {
+            callback.complete(poll());
+        }
+
+        @Override
+        public long getCurrentTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void refresh() {
+        }
+
+        @Override
+        public void refreshThresholds() {
+        }
+
+        @Override
+        public long getInterval() {
+            return 300000L;
+        }
+
+        @Override
+        public boolean scheduledSuspension() {
+            return false;
+        }
+    }
+
+    private static class NullTimer implements ScheduleTimer {
+        @Override
+        public long getCurrentTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void schedule(long interval, ReadyRunnable schedule) {
+        }
+
+        @Override
+        public void scheduleWithJitter(ReadyRunnable schedule) {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        PollableNetwork network = new PollableNetwork(new StressPollContext());
+        m_node = network.createNode(1, "stress");
+        NullTimer timer = new NullTimer();
+        for (int i = 0; i < INTERFACES; i++) {
+            InetAddress addr = InetAddressUtils.addr("192.168.1." + (i + 1));
+            for (int j = 0; j < SERVICES_PER_INTERFACE; j++) {
+                PollableService svc = m_node.createService(addr, "SVC" + j);
+                StressPollConfig config = new StressPollConfig();
+                svc.setPollConfig(config);
+                svc.setSchedule(new Schedule(svc, config, timer));
+                svc.updateStatus(PollStatus.up());
+                m_services.add(svc);
+                m_configs.add(config);
+            }
+        }
+        m_node.recalculateStatus();
+        m_node.resetStatusChanged();
+        m_executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        m_executor.shutdownNow();
+    }
+
+    @Test
+    public void testSteadyStatePollsRunInParallel() throws Exception {
+        assertEquals(0, pollAll());
+        assertTrue("Expected polls of the same node to overlap, at most " + m_maxActivePolls.get() + " did", m_maxActivePolls.get() > 1);
+        assertTrue("Unexpected events: " + m_events, m_events.isEmpty());
+        assertTrue(m_node.getStatus().isUp());
+    }
+
+    @Test
+    public void testStatusChangesUnderLoad() throws Exception {
+        Set<PollableService> down = new HashSet<PollableService>();
+        for (int i = 0; i < m_services.size(); i += 10) {
+            m_configs.get(i).m_down = true;
+            down.add(m_services.get(i));
+        }
+
+        // a service whose poll was postponed is polled again, as the scheduler would
+        while (pollAll() > 0) {
+        }
+        // polling again once everything has settled changes nothing
+        assertEquals(0, pollAll());
+
+        for (PollableService svc : m_services) {
+            assertEquals("Unexpected status for " + svc, down.contains(svc), svc.getStatus().isDown());
+        }
+        assertTrue(m_node.getStatus().isUp());
+
+        Set<String> lost = new HashSet<String>();
+        for (Event e : m_events) {
+            assertEquals(EventConstants.NODE_LOST_SERVICE_EVENT_UEI, e.getUei());
+            assertTrue("Duplicate event for " + e.getInterface() + ":" + e.getService(), lost.add(e.getInterface() + ":" + e.getService()));
+        }
+        assertEquals(down.size(), lost.size());
+    }
+
+    /**
+     * Run every service once on the thread pool.
+     *
+     * @return the number of polls that were postponed
+     */
+    private int pollAll() throws Exception {
+        final AtomicInteger postponed = new AtomicInteger();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(m_services.size());
+        for (final PollableService svc : m_services) {
+            tasks.add(Executors.callable(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        svc.run();
+                    } catch (PostponeNecessary e) {
+                        postponed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        m_executor.invokeAll(tasks);
+        return postponed.get();
+    }
+}
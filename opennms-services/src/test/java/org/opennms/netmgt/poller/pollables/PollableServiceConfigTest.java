@@ -28,22 +28,36 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.PollOutagesConfig;
 import org.opennms.netmgt.config.PollerConfigFactory;
 import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.api.FilterDao;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.PollCallback;
+import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -74,4 +88,66 @@ public class PollableServiceConfigTest {
 
         psc.poll();
     }
+
+    @Test
+    public void testAsyncPoll() throws Exception {
+        final FilterDao fd = mock(FilterDao.class);
+        FilterDaoFactory.setInstance(fd);
+
+        InputStream is = new FileInputStream(new File("src/test/resources/etc/psm-poller-configuration.xml"));
+        PollerConfigFactory factory = new PollerConfigFactory(0, is, "localhost", false);
+        PollerConfigFactory.setInstance(factory);        
+        IOUtils.closeQuietly(is);
+
+        final PollContext context = mock(PollContext.class);
+        final PollableNetwork network = new PollableNetwork(context);
+        final PollableNode node = network.createNodeIfNecessary(1, "foo");
+        final PollableInterface iface = new PollableInterface(node, InetAddressUtils.addr("127.0.0.1"));
+        final PollableService svc = new PollableService(iface, "MQ_API_DirectRte_v2");
+        final PollOutagesConfig pollOutagesConfig = mock(PollOutagesConfig.class);
+        final Package pkg = factory.getPackage("MapQuest");
+        final Timer timer = mock(Timer.class);
+
+        final AtomicReference<Runnable> processor = new AtomicReference<Runnable>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                processor.set(command);
+            }
+        };
+
+        final PollableServiceConfig syncConfig = new PollableServiceConfig(svc, factory, pollOutagesConfig, pkg, timer);
+        syncConfig.setServiceMonitor(new LatencyStoringServiceMonitorAdaptor(mock(AsyncServiceMonitor.class), factory, pkg));
+        assertFalse(syncConfig.isAsync());
+
+        final PollableServiceConfig psc = new PollableServiceConfig(svc, factory, pollOutagesConfig, pkg, timer, executor);
+        final ServiceMonitor syncMonitor = new LatencyStoringServiceMonitorAdaptor(mock(ServiceMonitor.class), factory, pkg);
+        psc.setServiceMonitor(syncMonitor);
+        assertFalse(psc.isAsync());
+
+        final AsyncServiceMonitor sm = mock(AsyncServiceMonitor.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                ((PollCallback) invocation.getArguments()[2]).complete(PollStatus.unavailable("async"));
+                return null;
+            }
+        }).when(sm).poll(eq(svc), anyMap(), any(PollCallback.class));
+        psc.setServiceMonitor(new LatencyStoringServiceMonitorAdaptor(sm, factory, pkg));
+        assertTrue(psc.isAsync());
+
+        final AtomicReference<PollStatus> result = new AtomicReference<PollStatus>();
+        psc.poll(new PollCallback() {
+            @Override
+            public void complete(final PollStatus status) {
+                result.set(status);
+            }
+        });
+
+        // the result is handed to the executor instead of being processed on the monitor's thread
+        assertEquals(null, result.get());
+        processor.get().run();
+        assertTrue(result.get().isDown());
+        assertEquals("async", result.get().getReason());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+
+public class TimingWheelSchedulerTest {
+
+    private static final long TICK = 100L;
+
+    private final AtomicLong m_now = new AtomicLong(1000000L);
+
+    private TimingWheelScheduler m_scheduler;
+
+    /**
+     * A runnable that remembers when the scheduler first found it due.
+     */
+    private class Recorder implements ReadyRunnable {
+        private final long m_deadline;
+        private final CountDownLatch m_latch;
+        private volatile long m_readyAt = -1;
+        private volatile long m_notReadyUntil = 0;
+
+        public Recorder(final long deadline, final CountDownLatch latch) {
+            m_deadline = deadline;
+            m_latch = latch;
+        }
+
+        @Override
+        public boolean isReady() {
+            final long now = m_now.get();
+            if (now < m_notReadyUntil) {
+                return false;
+            }
+            if (m_readyAt < 0) {
+                m_readyAt = now;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_latch.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+    }
+
+    @After
+    public void tearDown() {
+        if (m_scheduler != null) {
+            m_scheduler.getRunner().shutdown();
+        }
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    private TimingWheelScheduler createScheduler(final long jitter) {
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2, TICK, jitter) {
+            @Override
+            public long getCurrentTime() {
+                return m_now.get();
+            }
+        };
+        return m_scheduler;
+    }
+
+    private void advanceTo(final long time) {
+        while (m_now.get() < time) {
+            m_now.addAndGet(TICK);
+            m_scheduler.advance(m_now.get());
+        }
+    }
+
+    @Test
+    public void testRunnablesExpireOnTime() throws Exception {
+        createScheduler(0);
+        final Random random = new Random(42);
+        final Recorder[] recorders = new Recorder[5000];
+        final CountDownLatch latch = new CountDownLatch(recorders.length);
+
+        // up to four hours, so that the runnables cascade through three wheels
+        final long start = m_now.get();
+        for (int i = 0; i < recorders.length; i++) {
+            final long delay = (long)(random.nextDouble() * 4 * 60 * 60 * 1000);
+            recorders[i] = new Recorder(start + delay, latch);
+            m_scheduler.schedule(delay, recorders[i]);
+        }
+        assertEquals(recorders.length, m_scheduler.getScheduled());
+
+        advanceTo(start + 4 * 60 * 60 * 1000 + TICK);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        for (final Recorder recorder : recorders) {
+            assertTrue("started " + (recorder.m_deadline - recorder.m_readyAt) + "ms early", recorder.m_readyAt >= recorder.m_deadline);
+            assertTrue("started " + (recorder.m_readyAt - recorder.m_deadline) + "ms late", recorder.m_readyAt < recorder.m_deadline + 2 * TICK);
+        }
+        assertEquals(0, m_scheduler.getScheduled());
+        assertEquals(recorders.length, m_scheduler.getNumTasksExecuted());
+    }
+
+    @Test
+    public void testRunnableThatIsNotReadyIsCheckedAgain() throws Exception {
+        createScheduler(0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = m_now.get();
+        final Recorder recorder = new Recorder(start + 1000, latch);
+        recorder.m_notReadyUntil = start + 5000;
+
+        m_scheduler.schedule(1000, recorder);
+        advanceTo(start + 4900);
+        assertEquals(-1, recorder.m_readyAt);
+        assertEquals(1, m_scheduler.getScheduled());
+
+        advanceTo(start + 5000 + TimingWheelScheduler.RETRY_DELAY + TICK);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(recorder.m_readyAt >= start + 5000);
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testJitterSpreadsStartTimes() throws Exception {
+        final long jitter = 60000;
+        createScheduler(jitter);
+        final Recorder[] recorders = new Recorder[6000];
+        final CountDownLatch latch = new CountDownLatch(recorders.length);
+
+        final long start = m_now.get();
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new Recorder(start, latch);
+            m_scheduler.scheduleWithJitter(recorders[i]);
+        }
+        advanceTo(start + jitter + TICK);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        final int[] buckets = new int[6];
+        for (final Recorder recorder : recorders) {
+            final long offset = recorder.m_readyAt - start;
+            assertTrue(offset >= 0 && offset <= jitter + TICK);
+            buckets[(int) Math.min(buckets.length - 1, offset * buckets.length / jitter)]++;
+        }
+        for (final int bucket : buckets) {
+            assertTrue("uneven spread: " + bucket, bucket > 800 && bucket < 1200);
+        }
+    }
+
+    @Test
+    public void testZeroDelayIgnoresJitter() throws Exception {
+        createScheduler(60000);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = m_now.get();
+        final Recorder recorder = new Recorder(start, latch);
+
+        m_scheduler.schedule(0, recorder);
+        advanceTo(start + TICK);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(start + TICK, recorder.m_readyAt);
+    }
+
+    @Test
+    public void testSchedulingLag() throws Exception {
+        createScheduler(0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = m_now.get();
+
+        m_scheduler.schedule(1000, new Recorder(start + 1000, latch));
+        m_now.set(start + 6000);
+        m_scheduler.advance(m_now.get());
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        assertEquals(5000, m_scheduler.getMaxSchedulingLag());
+        assertTrue(m_scheduler.getSchedulingLag() > 0);
+    }
+
+    @Test
+    public void testStartAndStop() throws Exception {
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2);
+        final CountDownLatch latch = new CountDownLatch(3);
+        final ReadyRunnable runnable = new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+                if (latch.getCount() > 0) {
+                    m_scheduler.schedule(50, this);
+                }
+            }
+        };
+
+        m_scheduler.start();
+        m_scheduler.schedule(0, runnable);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        m_scheduler.stop();
+        for (int i = 0; i < 100 && m_scheduler.getStatus() != TimingWheelScheduler.STOPPED; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(TimingWheelScheduler.STOPPED, m_scheduler.getStatus());
+    }
+}
@@ -257,6 +257,38 @@ public class SyslogdLoadTest implements InitializingBean {
         System.err.println(String.format("total time: %d, wait time: %d, events per second: %8.4f", total, (end - mid), eventsPerSecond));
     }
 
+    /**
+     * Send the messages over the wire to a syslogd that reads the port with
+     * several threads, each with a socket of its own if SO_REUSEPORT is
+     * supported.
+     */
+    @Test
+    @Transactional
+    public void testMultipleReceivers() throws Exception {
+        loadSyslogConfiguration("/etc/syslogd-receivers-configuration.xml");
+        assertEquals(4, SyslogdConfigFactory.getInstance().getReceivers());
+
+        startSyslogdGracefully();
+
+        final int eventCount = 100;
+        m_eventCounter.setAnticipated(eventCount);
+
+        final SyslogClient sc = new SyslogClient(null, 10, SyslogClient.LOG_USER);
+        final DatagramSocket socket = new DatagramSocket();
+        try {
+            for (int i = 0; i < eventCount; i++) {
+                final DatagramPacket pkt = sc.getPacket(SyslogClient.LOG_DEBUG, String.format("2010-08-19 localhost foo0: load test %d on tty1", i));
+                socket.send(pkt);
+            }
+        } finally {
+            socket.close();
+        }
+
+        m_eventCounter.waitForFinish(120000);
+
+        assertEquals(eventCount, m_eventCounter.getCount());
+    }
+
     @Test
     @Transactional
     public void testRfcSyslog() throws Exception {
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TokenizingSyslogParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MESSAGES = 200000;
+
+    @Test
+    public void testRfc5424() throws Exception {
+        final SyslogMessage message = parse("<34>1 2003-10-11T22:14:15.000Z mymachine.example.com su - ID47 - \uFEFF'su root' failed for lonvick on /dev/pts/8");
+        assertEquals(1, message.getVersion().intValue());
+        assertEquals(SyslogFacility.AUTH, message.getFacility());
+        assertEquals(SyslogSeverity.CRITICAL, message.getSeverity());
+        assertEquals(new Date(1065910455000L), message.getDate());
+        assertEquals("mymachine.example.com", message.getHostName());
+        assertEquals("su", message.getProcessName());
+        assertNull(message.getProcessId());
+        assertEquals("ID47", message.getMessageID());
+        assertEquals("'su root' failed for lonvick on /dev/pts/8", message.getMessage());
+    }
+
+    @Test
+    public void testRfc5424WithOffsetAndFraction() throws Exception {
+        final SyslogMessage message = parse("<165>1 2003-10-11T22:14:15.003456-07:00 192.0.2.1 myproc 8710 - - %% It's time to make the do-nuts.");
+        assertEquals(SyslogFacility.LOCAL4, message.getFacility());
+        assertEquals(SyslogSeverity.NOTICE, message.getSeverity());
+        assertEquals(new Date(1065910455003L + 7 * 3600000L), message.getDate());
+        assertEquals("192.0.2.1", message.getHostName());
+        assertEquals("myproc", message.getProcessName());
+        assertEquals(8710, message.getProcessId().intValue());
+        assertNull(message.getMessageID());
+        assertEquals("%% It's time to make the do-nuts.", message.getMessage());
+
+        assertEquals(new Date(1321364538000L), parse("<85>1 2011-11-15T14:42:18+0100 hostname sudo - - - pam_unix(sudo:auth)").getDate());
+    }
+
+    @Test
+    public void testRfc5424StructuredData() throws Exception {
+        SyslogMessage message = parse("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"App ]lication\" eventID=\"1\\\"0\\]11\"][examplePriority@32473 class=\"high\"] An application event log entry...");
+        assertEquals("evntslog", message.getProcessName());
+        assertEquals("ID47", message.getMessageID());
+        assertEquals("An application event log entry...", message.getMessage());
+
+        message = parse("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\"]");
+        assertNull(message.getMessage());
+
+        message = parse("<27>1 - - - - - -");
+        assertNull(message.getDate());
+        assertNull(message.getHostName());
+        assertNull(message.getMessage());
+    }
+
+    @Test
+    public void testRfc5424Utf8() throws Exception {
+        final byte[] bytes = "<13>1 - host app - - - \u00fcber caf\u00e9".getBytes(UTF_8);
+        final SyslogMessage message = new SyslogMessage();
+        assertTrue(new TokenizingSyslogParser(ByteBuffer.wrap(bytes)).parse(message));
+        assertEquals("\u00fcber caf\u00e9", message.getMessage());
+    }
+
+    @Test
+    public void testSyslogNGWithProcess() throws Exception {
+        final SyslogMessage message = parse("<6>test: 2007-01-01 127.0.0.1 OpenNMS[1234]: A SyslogNG style message");
+        assertEquals(SyslogFacility.KERNEL, message.getFacility());
+        assertEquals(SyslogSeverity.INFORMATIONAL, message.getSeverity());
+        assertEquals("test", message.getMessageID());
+        assertEquals(new Date(1167609600000L), message.getDate());
+        assertEquals("127.0.0.1", message.getHostName());
+        assertEquals("OpenNMS", message.getProcessName());
+        assertEquals(1234, message.getProcessId().intValue());
+        assertEquals("A SyslogNG style message", message.getMessage());
+    }
+
+    @Test
+    public void testSyslogNGWithoutProcess() throws Exception {
+        final SyslogMessage message = parse("<6>test: 2007-01-01 127.0.0.1 A SyslogNG style message");
+        assertEquals("test", message.getMessageID());
+        assertEquals("127.0.0.1", message.getHostName());
+        assertNull(message.getProcessName());
+        assertNull(message.getProcessId());
+        assertEquals("A SyslogNG style message", message.getMessage());
+    }
+
+    @Test
+    public void testRfc3164() throws Exception {
+        final SyslogMessage message = parse("<173>Dec  7 12:02:06 10.13.110.116 mgmtd[8326]: [mgmtd.NOTICE]: Configuration saved to database initial\0");
+
+        final Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.setTime(new Date(1323259326000L));
+        cal.set(Calendar.YEAR, Calendar.getInstance(TimeZone.getTimeZone("UTC")).get(Calendar.YEAR));
+
+        assertEquals(SyslogFacility.LOCAL5, message.getFacility());
+        assertEquals(SyslogSeverity.NOTICE, message.getSeverity());
+        assertNull(message.getMessageID());
+        assertEquals(cal.getTime(), message.getDate());
+        assertEquals("10.13.110.116", message.getHostName());
+        assertEquals("mgmtd", message.getProcessName());
+        assertEquals(8326, message.getProcessId().intValue());
+        assertEquals("[mgmtd.NOTICE]: Configuration saved to database initial", message.getMessage());
+
+        assertEquals("sshd", parse("<38>Jan 15 08:00:00 host sshd: Accepted publickey").getProcessName());
+        assertEquals("a[1]", parse("<38>Jan 15 08:00:00 host a[1][2]: b").getProcessName());
+        assertEquals("a[x]", parse("<38>Jan 15 08:00:00 host a[x]: b").getProcessName());
+        assertNull(parse("<38>Jan 15 08:00:00 host no:tag here").getProcessName());
+        assertEquals("last:", parse("<38>Jan 15 08:00:00 host last:").getMessage());
+    }
+
+    @Test
+    public void testNotSyslog() throws Exception {
+        for (final String text : new String[] { "", "no priority", "<>1 - - - - - -", "<192>1 - - - - - -", "<1234>Jan 15 08:00:00 host message",
+                "<13>1 2003-13-11T22:14:15Z host app - - - msg", "<13>1 - host app - - [unterminated", "<13>1 - host app - - -x",
+                "<13>Foo 15 08:00:00 host message", "<13>Jan 15 08:00:00 host", "<13>Jan 15 08:00:00 host   ", "<13>2007-01-01" }) {
+            assertFalse(text, TokenizingSyslogParser.getParser(text).find());
+            assertNull(text, TokenizingSyslogParser.getParser(text).parse());
+        }
+    }
+
+    @Test
+    public void testBufferIsNotModified() throws Exception {
+        final byte[] bytes = "xx<13>1 - host app - - - message yy".getBytes(UTF_8);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, bytes.length - 5);
+        final SyslogMessage message = new SyslogMessage();
+        final TokenizingSyslogParser parser = new TokenizingSyslogParser(buffer);
+        assertTrue(parser.parse(message));
+        assertEquals("message", message.getMessage());
+        assertEquals("<13>1 - host app - - - message", parser.getText());
+        assertEquals(2, buffer.position());
+        assertEquals(bytes.length - 3, buffer.limit());
+
+        // reusing the message
+        message.clear();
+        assertTrue(new TokenizingSyslogParser(ByteBuffer.wrap("<13>Jan 15 08:00:00 host sshd[1]: hello".getBytes(UTF_8))).parse(message));
+        assertNull(message.getVersion());
+        assertEquals(1, message.getProcessId().intValue());
+        assertEquals("hello", message.getMessage());
+    }
+
+    @Test
+    public void testDaysFromCivil() {
+        final Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        for (final int[] date : new int[][] { { 1970, 1, 1 }, { 1969, 12, 31 }, { 2000, 2, 29 }, { 2100, 3, 1 }, { 1600, 1, 1 }, { 2014, 12, 31 } }) {
+            cal.clear();
+            cal.set(date[0], date[1] - 1, date[2]);
+            assertEquals(cal.getTimeInMillis() / 86400000L, TokenizingSyslogParser.daysFromCivil(date[0], date[1], date[2]));
+        }
+    }
+
+    /**
+     * Compares the regex parsers with the tokenizer. Too slow for the unit
+     * tests, run with -DrunThroughputTests=true.
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        if (!Boolean.getBoolean("runThroughputTests")) return;
+
+        final String rfc5424 = "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog 1234 ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\"] An application event log entry";
+        final String syslogNG = "<173>Dec  7 12:02:06 10.13.110.116 mgmtd[8326]: [mgmtd.NOTICE]: Configuration saved to database initial";
+        final ByteBuffer rfc5424Buffer = ByteBuffer.wrap(rfc5424.getBytes(UTF_8));
+        final ByteBuffer syslogNGBuffer = ByteBuffer.wrap(syslogNG.getBytes(UTF_8));
+        final SyslogMessage message = new SyslogMessage();
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                final String text = new String(rfc5424Buffer.array(), "US-ASCII");
+                assertTrue(Rfc5424SyslogParser.getParser(text).parse() != null);
+                final String text2 = new String(syslogNGBuffer.array(), "US-ASCII");
+                assertTrue(SyslogNGParser.getParser(text2).parse() != null);
+            }
+            final long regex = Math.max(1, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                message.clear();
+                assertTrue(new TokenizingSyslogParser(rfc5424Buffer).parse(message));
+                message.clear();
+                assertTrue(new TokenizingSyslogParser(syslogNGBuffer).parse(message));
+            }
+            final long tokenizer = Math.max(1, System.nanoTime() - start);
+
+            System.err.printf("regex parsers: %.0f messages/s, tokenizer: %.0f messages/s%n", 2 * MESSAGES * 1e9 / regex, 2 * MESSAGES * 1e9 / tokenizer);
+        }
+    }
+
+    private static SyslogMessage parse(final String text) throws SyslogParserException {
+        final SyslogParser parser = TokenizingSyslogParser.getParser(text);
+        assertTrue(text, parser.find());
+        return parser.parse();
+    }
+}
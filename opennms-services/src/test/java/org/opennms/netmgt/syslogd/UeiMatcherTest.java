@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+public class UeiMatcherTest {
+
+    private static final int MESSAGES = 20000;
+
+    private static final Map<String, Pattern> s_patterns = new HashMap<String, Pattern>();
+
+    private UeiList m_ueiList;
+
+    private List<SyslogMessage> m_messages;
+
+    @Before
+    public void setUp() {
+        m_ueiList = new UeiList();
+        // the kind of rules a site with a few hundred ueiMatches has: vendor message
+        // ids first, then generic daemon rules and a few catch-alls at the end
+        for (int i = 0; i < 200; i++) {
+            addUeiMatch("regex", "%LINK-" + (i % 7) + "-UPDOWN" + i + ": Interface (\\S+), changed state to (up|down)", "uei.opennms.org/vendor/cisco/link" + i);
+            if (i % 4 == 0) {
+                addUeiMatch("substr", "%SYS-5-CONFIG_I" + i + ":", "uei.opennms.org/vendor/cisco/config" + i, "local7");
+            }
+        }
+        addUeiMatch("regex", "Failed password for (invalid user )?(\\S+) from (\\S+) port (\\d+)", "uei.opennms.org/syslog/sshd/failedPassword", "auth", "authpriv");
+        addUeiMatch("regex", "Accepted (password|publickey) for (\\S+) from (\\S+)", "uei.opennms.org/syslog/sshd/accepted", "auth", "authpriv");
+        addUeiMatch("regex", "^\\s*(\\S+) : TTY=(\\S+) ; PWD=(\\S+) ; USER=root ; COMMAND=(.*)$", "uei.opennms.org/syslog/sudo/root");
+        addUeiMatch("regex", "[Cc]ritical", "uei.opennms.org/syslog/critical");
+        addUeiMatch("regex", "Out of memory: Kill(ed)? process (\\d+)", "uei.opennms.org/syslog/kernel/oom", "kernel");
+        addUeiMatch("substr", "JUNK", "DISCARD-MATCHING-MESSAGES");
+        addUeiMatch("regex", "[Tt][Rr][Aa][Ss][Hh]", "DISCARD-MATCHING-MESSAGES");
+        addUeiMatch("regex", ".*", "uei.opennms.org/syslog/local0", "local0").getSeverityCollection().add("Error");
+
+        final String[] texts = new String[] {
+            "%LINK-3-UPDOWN17: Interface GigabitEthernet0/1, changed state to down",
+            "%LINK-1-UPDOWN190: Interface Vlan12, changed state to up",
+            "%LINK-3-UPDOWN17: Interface GigabitEthernet0/1 is flapping",
+            "%SYS-5-CONFIG_I40: Configured from console by admin on vty0",
+            "Failed password for invalid user oracle from 10.1.2.3 port 52211 ssh2",
+            "Accepted publickey for deploy from 192.168.0.10 port 41000 ssh2",
+            "  alice : TTY=pts/0 ; PWD=/home/alice ; USER=root ; COMMAND=/bin/ls",
+            "raid controller reports a Critical battery condition",
+            "Out of memory: Killed process 4242 (java)",
+            "this message is JUNK",
+            "taking out the TRASH",
+            "postfix/smtpd[1234]: connect from unknown[10.0.0.1]",
+            "CRON[3301]: (root) CMD (run-parts /etc/cron.hourly)",
+            "ntpd[802]: synchronized to 10.0.0.5, stratum 2",
+            "dhcpd: DHCPACK on 10.0.0.77 to 00:11:22:33:44:55 via eth0"
+        };
+        final SyslogFacility[] facilities = new SyslogFacility[] { SyslogFacility.LOCAL7, SyslogFacility.AUTH, SyslogFacility.KERNEL, SyslogFacility.LOCAL0, SyslogFacility.USER };
+        final SyslogSeverity[] severities = new SyslogSeverity[] { SyslogSeverity.ERROR, SyslogSeverity.NOTICE, SyslogSeverity.INFORMATIONAL };
+        final Random random = new Random(42);
+        m_messages = new ArrayList<SyslogMessage>();
+        for (int i = 0; i < MESSAGES; i++) {
+            final String text = texts[random.nextInt(texts.length)];
+            final SyslogFacility facility = facilities[random.nextInt(facilities.length)];
+            final SyslogSeverity severity = severities[random.nextInt(severities.length)];
+            m_messages.add(new SyslogMessage(facility.getFacilityNumber(), severity.getSeverityNumber(), new Date(), "host" + i % 50, "proc", 1, text));
+        }
+    }
+
+    @Test
+    public void testRequiredLiteral() {
+        assertEquals(" tests failed for ", UeiMatcher.getRequiredLiteral("foo: (\\d+) out of (\\d+) tests failed for (\\S+)$"));
+        assertEquals(" out of ", UeiMatcher.getRequiredLiteral("(\\d+) out of (\\d+)"));
+        assertEquals("ritical", UeiMatcher.getRequiredLiteral("[Cc]ritical"));
+        assertEquals("Failed password for ", UeiMatcher.getRequiredLiteral("Failed password for (invalid user )?(\\S+) from"));
+        assertEquals(" : TTY=", UeiMatcher.getRequiredLiteral("^\\s*(\\S+) : TTY=(\\S+) ; PWD=(\\S+)"));
+        assertEquals("a.b", UeiMatcher.getRequiredLiteral("x*a\\.b"));
+        // an optional character is not required, and repeated ones split the run
+        assertEquals("abc", UeiMatcher.getRequiredLiteral("abcd?ef"));
+        assertEquals("abdef", UeiMatcher.getRequiredLiteral("abc{0,2}abdef"));
+        assertEquals("abc", UeiMatcher.getRequiredLiteral("ab+?abc"));
+        assertEquals("de", UeiMatcher.getRequiredLiteral("[a-z]]*de"));
+
+        assertNull(UeiMatcher.getRequiredLiteral(".*"));
+        assertNull(UeiMatcher.getRequiredLiteral("[Tt][Rr][Aa][Ss][Hh]"));
+        assertNull(UeiMatcher.getRequiredLiteral("foo|bar"));
+        assertNull(UeiMatcher.getRequiredLiteral("(?i)critical"));
+        assertNull(UeiMatcher.getRequiredLiteral("\\Qa|b\\E"));
+        assertNull(UeiMatcher.getRequiredLiteral("(foo)\\1"));
+        assertNull(UeiMatcher.getRequiredLiteral("broken("));
+        assertEquals("abc", UeiMatcher.getRequiredLiteral("(x|y)abc"));
+    }
+
+    @Test
+    public void testLiteralScanner() {
+        final UeiMatcher.LiteralScanner scanner = new UeiMatcher.LiteralScanner(new String[] { "he", "she", "his", "hers", "xyz" });
+        assertEquals("[true, true, false, true, false]", Arrays.toString(scanner.scan("ushers")));
+        assertEquals("[false, false, true, false, false]", Arrays.toString(scanner.scan("ahis")));
+        assertEquals(5, scanner.scan(null).length);
+        assertTrue(!scanner.scan(null)[0]);
+        assertEquals(0, new UeiMatcher.LiteralScanner(new String[0]).scan("anything").length);
+    }
+
+    @Test
+    public void testFacilityAndSeverity() {
+        final UeiList ueiList = new UeiList();
+        final UeiMatch local0 = addUeiMatch(ueiList, "regex", ".*", "local0", "LOCAL0");
+        local0.getSeverityCollection().add("error");
+        final UeiMatch any = addUeiMatch(ueiList, "substr", "foo", "any");
+        final UeiMatcher matcher = new UeiMatcher(ueiList);
+
+        assertEquals(Arrays.asList(local0, any), matcher.getCandidates(message(SyslogFacility.LOCAL0, SyslogSeverity.ERROR, "foo")));
+        assertEquals(Arrays.asList(local0), matcher.getCandidates(message(SyslogFacility.LOCAL0, SyslogSeverity.ERROR, "bar")));
+        assertEquals(Arrays.asList(any), matcher.getCandidates(message(SyslogFacility.LOCAL0, SyslogSeverity.WARNING, "foo")));
+        assertEquals(Collections.emptyList(), matcher.getCandidates(message(SyslogFacility.LOCAL1, SyslogSeverity.ERROR, "bar")));
+
+        assertTrue(matcher.isCompiledFrom(ueiList));
+        addUeiMatch(ueiList, "substr", "bar", "bar");
+        assertTrue(!matcher.isCompiledFrom(ueiList));
+    }
+
+    @Test
+    public void testSameFirstMatchAsLinearScan() {
+        final UeiMatcher matcher = new UeiMatcher(m_ueiList);
+        final int[] matched = new int[2];
+        for (final SyslogMessage message : m_messages) {
+            final UeiMatch expected = firstMatch(m_ueiList.getUeiMatchCollection(), message);
+            final UeiMatch actual = firstMatch(matcher.getCandidates(message), message);
+            assertSame(message.getMessage(), expected, actual);
+            matched[expected == null ? 0 : 1]++;
+        }
+        // the message mix exercises both outcomes
+        assertTrue(matched[0] > 0 && matched[1] > 0);
+    }
+
+    /**
+     * Compares the linear scan with the compiled matcher. Too slow for the
+     * unit tests, run with -DrunThroughputTests=true.
+     */
+    @Test
+    public void testThroughput() {
+        if (!Boolean.getBoolean("runThroughputTests")) return;
+
+        final UeiMatcher matcher = new UeiMatcher(m_ueiList);
+        final List<UeiMatch> ueiMatches = m_ueiList.getUeiMatchCollection();
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            int linear = 0;
+            for (final SyslogMessage message : m_messages) {
+                if (firstMatch(ueiMatches, message) != null) linear++;
+            }
+            final long linearTime = Math.max(1, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int compiled = 0;
+            for (final SyslogMessage message : m_messages) {
+                if (firstMatch(matcher.getCandidates(message), message) != null) compiled++;
+            }
+            final long compiledTime = Math.max(1, System.nanoTime() - start);
+
+            assertEquals(linear, compiled);
+            System.err.printf("%d ueiMatches, %d messages: linear scan %.0f messages/s, compiled %.0f messages/s%n",
+                              ueiMatches.size(), MESSAGES, MESSAGES * 1e9 / linearTime, MESSAGES * 1e9 / compiledTime);
+        }
+    }
+
+    /**
+     * The facility, severity and match checks of {@link ConvertToEvent}.
+     */
+    private static UeiMatch firstMatch(final List<UeiMatch> ueiMatches, final SyslogMessage message) {
+        final String text = message.getMatchedMessage();
+        for (final UeiMatch uei : ueiMatches) {
+            if (!matches(uei.getFacilityCollection(), message.getFacility().toString()) || !matches(uei.getSeverityCollection(), message.getSeverity().toString())) {
+                continue;
+            }
+            final String expression = uei.getMatch().getExpression();
+            if ("substr".equals(uei.getMatch().getType())) {
+                if (text.contains(expression)) return uei;
+            } else if (getPattern(expression).matcher(text).find()) {
+                return uei;
+            }
+        }
+        return null;
+    }
+
+    private static Pattern getPattern(final String expression) {
+        Pattern pattern = s_patterns.get(expression);
+        if (pattern == null) {
+            pattern = Pattern.compile(expression, Pattern.MULTILINE);
+            s_patterns.put(expression, pattern);
+        }
+        return pattern;
+    }
+
+    private static boolean matches(final List<String> names, final String name) {
+        if (names.isEmpty()) return true;
+        for (final String n : names) {
+            if (n.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+    private static SyslogMessage message(final SyslogFacility facility, final SyslogSeverity severity, final String text) {
+        return new SyslogMessage(facility.getFacilityNumber(), severity.getSeverityNumber(), new Date(), "localhost", "test", 1, text);
+    }
+
+    private UeiMatch addUeiMatch(final String type, final String expression, final String uei, final String... facilities) {
+        return addUeiMatch(m_ueiList, type, expression, uei, facilities);
+    }
+
+    private static UeiMatch addUeiMatch(final UeiList ueiList, final String type, final String expression, final String uei, final String... facilities) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setMatch(match);
+        ueiMatch.setUei(uei);
+        for (final String facility : facilities) {
+            ueiMatch.addFacility(facility);
+        }
+        ueiList.addUeiMatch(ueiMatch);
+        return ueiMatch;
+    }
+}